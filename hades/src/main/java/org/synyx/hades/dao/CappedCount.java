@@ -0,0 +1,49 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Annotation to cap the count query of query methods returning a
+ * {@link org.synyx.hades.domain.Page}. Instead of computing the exact total
+ * only up to the given number of elements will be counted, which bounds the
+ * cost of the count query for huge result sets. If more elements are
+ * available the {@link org.synyx.hades.domain.Page} returned will report a
+ * lower bound of the total (see
+ * {@link org.synyx.hades.domain.Page#isTotalCapped()}). A cap given by a
+ * {@link org.synyx.hades.domain.CappedPageRequest} overrides the annotated
+ * one.
+ * 
+ * @author Oliver Gierke
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface CappedCount {
+
+    /**
+     * The maximum number of elements to count.
+     * 
+     * @return
+     */
+    int value();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Annotation for query methods returning a
+ * {@link org.synyx.hades.domain.Page} to read the page in two steps. First
+ * only the identifiers of the entities of the requested page are selected,
+ * then the entities with these identifiers are loaded using the fetch joins
+ * of the original query and returned in the order of the identifiers. Thus
+ * paging is done by the database even for queries fetch joining collections
+ * (which persistence providers page in memory otherwise) and deep offsets only
+ * scan the identifiers instead of the full rows.
+ * <p>
+ * Only applies to queries declared by {@link Query} or derived from the
+ * method name that simply select the entity. Falls back to the plain query
+ * otherwise, e.g. for queries selecting distinct entities joining
+ * collections and ordering by other attributes.
+ * 
+ * @author Oliver Gierke
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface DeferredJoin {
+
+}
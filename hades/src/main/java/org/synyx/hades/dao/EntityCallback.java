@@ -0,0 +1,35 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+/**
+ * Callback interface to process entities one by one, e.g. while streaming
+ * them from the database.
+ * 
+ * @see GenericDao#readAllInBatches(org.synyx.hades.domain.Specification,
+ *      EntityCallback)
+ * @author Oliver Gierke
+ * @param <T> the type of the entities handled
+ */
+public interface EntityCallback<T> {
+
+    /**
+     * Processes the given entity.
+     * 
+     * @param entity will never be {@literal null}
+     */
+    void doWith(T entity);
+}
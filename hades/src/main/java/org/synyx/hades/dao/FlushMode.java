@@ -0,0 +1,48 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.persistence.FlushModeType;
+
+
+/**
+ * Annotation to declare the {@link FlushModeType} the queries of a query
+ * method are executed with. Use {@link FlushModeType#COMMIT} to prevent the
+ * persistence provider from flushing pending changes before executing them.
+ * The queries will not see these changes then. Annotated on a DAO interface
+ * it applies to all its query methods and the reads of the
+ * {@link GenericDao} backing it.
+ * 
+ * @author Oliver Gierke
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Documented
+public @interface FlushMode {
+
+    /**
+     * The {@link FlushModeType} to execute queries with.
+     * 
+     * @return
+     */
+    FlushModeType value();
+}
@@ -19,10 +19,13 @@ package org.synyx.hades.dao;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.transaction.annotation.Transactional;
+import org.synyx.hades.domain.FetchPlan;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
 import org.synyx.hades.domain.Sort;
 import org.synyx.hades.domain.Specification;
 
@@ -86,6 +89,27 @@ public interface GenericDao<T, PK extends Serializable> {
     boolean exists(final PK primaryKey);
 
 
+    /**
+     * Returns whether an entity matching the given {@link Specification}
+     * exists. Will not load any entity to answer the question.
+     * 
+     * @param spec can be {@literal null}
+     * @return true if at least one entity matches the given
+     *         {@link Specification}, false otherwise
+     */
+    boolean exists(final Specification<T> spec);
+
+
+    /**
+     * Returns the subset of the given primary keys entities exist for.
+     * 
+     * @param primaryKeys
+     * @return the primary keys of the given ones entities exist for, will
+     *         never be {@literal null}
+     */
+    Set<PK> existingIds(final Collection<PK> primaryKeys);
+
+
     /**
      * Returns all instances of the type.
      * 
@@ -94,6 +118,21 @@ public interface GenericDao<T, PK extends Serializable> {
     List<T> readAll();
 
 
+    /**
+     * Returns the entities with the given primary keys in the order of the
+     * given keys. Entities already managed by the persistence context will not
+     * be looked up from the database again. Primary keys no entity exists for
+     * will be skipped.
+     * 
+     * @param primaryKeys
+     * @return the entities with the given primary keys, will never be
+     *         {@literal null}
+     * @throws IllegalArgumentException if one of the primary keys is
+     *             {@literal null}
+     */
+    List<T> readAll(final Iterable<PK> primaryKeys);
+
+
     /**
      * Returns all entities sorted by the given options.
      * 
@@ -122,6 +161,36 @@ public interface GenericDao<T, PK extends Serializable> {
     List<T> readAll(final Specification<T> spec);
 
 
+    /**
+     * Returns all entities matching the given {@link Specification} with the
+     * associations of the given {@link FetchPlan} loaded alongside.
+     * 
+     * @param spec can be {@literal null}
+     * @param fetchPlan must not be {@literal null}
+     * @return
+     */
+    List<T> readAll(final Specification<T> spec, final FetchPlan fetchPlan);
+
+
+    /**
+     * Returns all entities matching the given {@link Specification} projected
+     * onto the given type. Only the properties required by the projection are
+     * selected and no entities are loaded into the persistence context. The
+     * type can either be a class exposing a single constructor taking the
+     * properties to select (compiled with debug information to detect the
+     * parameter names) or an interface exposing getters for them.
+     * 
+     * @see org.synyx.hades.dao.query.Projection
+     * @param <P> the type projected onto
+     * @param spec can be {@literal null}
+     * @param projection must not be {@literal null}
+     * @return
+     * @throws IllegalArgumentException if the given type is not a projection
+     *             of the domain class or its properties cannot be derived
+     */
+    <P> List<P> readAll(final Specification<T> spec, final Class<P> projection);
+
+
     /**
      * Returns a {@link Page} of entities matching the given
      * {@link Specification}.
@@ -133,6 +202,69 @@ public interface GenericDao<T, PK extends Serializable> {
     Page<T> readAll(final Specification<T> spec, final Pageable pageable);
 
 
+    /**
+     * Returns a {@link Page} of entities matching the given
+     * {@link Specification} with the associations of the given
+     * {@link FetchPlan} loaded alongside. Collections are not fetch joined
+     * into the query reading the page but loaded with an additional query for
+     * all entities of the page.
+     * 
+     * @param spec can be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param fetchPlan must not be {@literal null}
+     * @return
+     */
+    Page<T> readAll(final Specification<T> spec, final Pageable pageable,
+            final FetchPlan fetchPlan);
+
+
+    /**
+     * Returns a {@link Slice} of entities matching the given
+     * {@link Specification}. In contrast to
+     * {@link #readAll(Specification, Pageable)} no count query is issued but
+     * one additional entity is read to find out whether there is a following
+     * slice.
+     * 
+     * @param spec can be {@literal null}
+     * @param pageable must not be {@literal null}
+     * @return
+     */
+    Slice<T> readSlice(final Specification<T> spec, final Pageable pageable);
+
+
+    /**
+     * Hands all entities matching the given {@link Specification} to the
+     * given {@link EntityCallback} one by one. Entities are read from the
+     * database using a cursor where supported by the persistence provider and
+     * are processed in batches. After each batch, changes made by the callback
+     * are flushed and the entities get detached. Thus the memory consumption
+     * does not depend on the number of entities read.
+     * 
+     * @param spec can be {@literal null} to process all entities
+     * @param callback must not be {@literal null}
+     */
+    void readAllInBatches(final Specification<T> spec,
+            final EntityCallback<T> callback);
+
+
+    /**
+     * Hands the consecutive {@link Slice}s of entities matching the given
+     * {@link Specification} to the given {@link SliceCallback}, starting with
+     * the one requested by the given {@link Pageable}. The following slices
+     * are read in the background with a separate {@code EntityManager} while
+     * the callback processes the current one, so the entities handed to the
+     * callback are detached and reflect committed data only. Reading ahead is
+     * bounded, so a slow callback slows down reading.
+     * 
+     * @param spec can be {@literal null} to process all entities
+     * @param pageable must not be {@literal null} and must not be a
+     *            {@link org.synyx.hades.domain.KeysetPageRequest}
+     * @param callback must not be {@literal null}
+     */
+    void readSlices(final Specification<T> spec, final Pageable pageable,
+            final SliceCallback<T> callback);
+
+
     /**
      * Returns the number of entities available.
      * 
@@ -169,6 +301,28 @@ public interface GenericDao<T, PK extends Serializable> {
     void delete(final Collection<? extends T> entities);
 
 
+    /**
+     * Deletes the entity with the given primary key. Does not load the entity
+     * before unless its mapping requires it (e.g. as removals are cascaded).
+     * 
+     * @param primaryKey
+     * @throws IllegalArgumentException if primaryKey is {@code null}
+     */
+    @Transactional
+    void deleteByPrimaryKey(final PK primaryKey);
+
+
+    /**
+     * Deletes the entities with the given primary keys. Does not load the
+     * entities before unless their mapping requires it (e.g. as removals are
+     * cascaded).
+     * 
+     * @param primaryKeys
+     */
+    @Transactional
+    void deleteByPrimaryKeys(final Collection<PK> primaryKeys);
+
+
     /**
      * Deletes all entities managed by the DAO.
      */
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.synyx.hades.domain.CountPredicate;
+
+
+/**
+ * Annotation for DAO interfaces to serve {@link GenericDao#count()} and
+ * {@link GenericDao#count(org.synyx.hades.domain.Specification)} for the
+ * declared {@link CountPredicate}s from counters maintained in memory instead
+ * of executing count queries. The counters are updated incrementally by the
+ * save and delete methods of the DAO once the transaction commits and get
+ * reconciled against the database periodically or whenever they cannot be
+ * updated incrementally (e.g. after bulk updates through modifying query
+ * methods).
+ * 
+ * @see org.synyx.hades.dao.query.MaterializedCounts
+ * @author Oliver Gierke
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+public @interface MaterializedCount {
+
+    /**
+     * The number of milliseconds after which the counters are reconciled
+     * against the database. Defaults to one minute.
+     * 
+     * @return
+     */
+    long reconciliationInterval() default 60000;
+
+
+    /**
+     * The {@link CountPredicate}s to maintain counters for additionally to
+     * the total. Have to provide a no-argument constructor. Counting
+     * {@link org.synyx.hades.domain.Specification}s of these types will be
+     * served from the counters.
+     * 
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends CountPredicate>[] predicates() default {};
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Annotation to declare the property of the entity to be passed to a
+ * constructor parameter of a class projection. Allows deriving the properties
+ * to select from the constructor of classes compiled without debug
+ * information. Either all or none of the constructor parameters have to be
+ * annotated.
+ * 
+ * @see org.synyx.hades.dao.query.Projection
+ * @author Oliver Gierke
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ProjectedProperty {
+
+    /**
+     * The name of the property of the entity.
+     * 
+     * @return
+     */
+    String value();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import org.springframework.dao.TransientDataAccessException;
+
+
+/**
+ * Exception to indicate a DAO query was cancelled as it exceeded the timeout
+ * configured through {@link QueryTimeout} or the {@code query-timeout}
+ * attribute of the namespace. Retrying the operation might succeed.
+ * 
+ * @author Oliver Gierke
+ */
+public class QueryTimeoutExceededException extends
+        TransientDataAccessException {
+
+    private static final long serialVersionUID = -4462418736735574836L;
+
+
+    /**
+     * Creates a new {@link QueryTimeoutExceededException}.
+     * 
+     * @param message
+     * @param cause
+     */
+    public QueryTimeoutExceededException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+}
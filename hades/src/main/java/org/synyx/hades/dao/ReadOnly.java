@@ -0,0 +1,48 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Annotation to load the entities returned by a query method read-only. The
+ * persistence provider does not keep a snapshot of them for dirty checking
+ * then, so changes to them will not be flushed and
+ * {@link GenericDao#save(Object)} rejects them. Overrides the DAO wide
+ * setting configured through
+ * {@link org.synyx.hades.dao.orm.GenericDaoFactory#setReadOnlyQueries(boolean)}
+ * . Not supported on {@link Modifying} methods.
+ * 
+ * @author Oliver Gierke
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface ReadOnly {
+
+    /**
+     * Whether to load the entities read-only. Set to {@literal false} to load
+     * them as usual although the DAO reads entities read-only by default.
+     * 
+     * @return
+     */
+    boolean value() default true;
+}
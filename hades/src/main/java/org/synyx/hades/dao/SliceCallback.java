@@ -0,0 +1,38 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao;
+
+import org.synyx.hades.domain.Slice;
+
+
+/**
+ * Callback interface to process the {@link Slice}s of a larger result one
+ * after another, e.g. while the following ones are read in the background.
+ * 
+ * @see GenericDao#readSlices(org.synyx.hades.domain.Specification,
+ *      org.synyx.hades.domain.Pageable, SliceCallback)
+ * @author Oliver Gierke
+ * @param <T> the type of the entities handled
+ */
+public interface SliceCallback<T> {
+
+    /**
+     * Processes the given {@link Slice}.
+     * 
+     * @param slice will never be {@literal null}
+     */
+    void doWith(Slice<T> slice);
+}
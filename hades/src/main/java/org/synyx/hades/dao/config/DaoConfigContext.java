@@ -17,8 +17,11 @@
 package org.synyx.hades.dao.config;
 
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
+import javax.persistence.FlushModeType;
+
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.synyx.hades.dao.query.QueryLookupStrategy;
@@ -51,6 +54,9 @@ class DaoConfigContext {
             "entity-manager-factory-ref";
     protected static final String TRANSACTION_MANAGER_REF =
             "transaction-manager-ref";
+    protected static final String FLUSH_MODE = "flush-mode";
+    protected static final String QUERY_TIMEOUT = "query-timeout";
+    protected static final String FETCH_SIZE = "fetch-size";
 
     private final Element element;
     private final Set<DaoContext> daoContexts;
@@ -208,4 +214,68 @@ class DaoConfigContext {
         return StringUtils.hasText(ref) ? ref
                 : TxUtils.DEFAULT_TRANSACTION_MANAGER;
     }
+
+
+    /**
+     * Returns the {@link FlushModeType} the DAOs shall execute queries with
+     * or {@literal null} if they shall use the one of the
+     * {@link javax.persistence.EntityManager}.
+     * 
+     * @return
+     */
+    protected FlushModeType getFlushMode() {
+
+        return parseFlushMode(element.getAttribute(FLUSH_MODE));
+    }
+
+
+    /**
+     * Parses the given value of the {@value #FLUSH_MODE} attribute.
+     * 
+     * @param flushMode
+     * @return the {@link FlushModeType} or {@literal null} if no value given
+     */
+    protected static FlushModeType parseFlushMode(String flushMode) {
+
+        return StringUtils.hasText(flushMode) ? FlushModeType.valueOf(flushMode
+                .toUpperCase(Locale.ENGLISH)) : null;
+    }
+
+
+    /**
+     * Returns the timeout in milliseconds the DAOs shall execute queries with
+     * or {@literal null} if no timeout shall be applied.
+     * 
+     * @return
+     */
+    protected Integer getQueryTimeout() {
+
+        return parseInteger(element.getAttribute(QUERY_TIMEOUT));
+    }
+
+
+    /**
+     * Returns the JDBC fetch size the DAOs shall read entities with or
+     * {@literal null} if they shall use the driver's default.
+     * 
+     * @return
+     */
+    protected Integer getFetchSize() {
+
+        return parseInteger(element.getAttribute(FETCH_SIZE));
+    }
+
+
+    /**
+     * Parses the given value of a numeric attribute like
+     * {@value #QUERY_TIMEOUT} or {@value #FETCH_SIZE}.
+     * 
+     * @param value
+     * @return the number or {@literal null} if no value given
+     */
+    protected static Integer parseInteger(String value) {
+
+        return StringUtils.hasText(value) ? Integer.valueOf(value.trim())
+                : null;
+    }
 }
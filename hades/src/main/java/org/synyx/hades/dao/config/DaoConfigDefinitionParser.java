@@ -24,6 +24,8 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import javax.persistence.FlushModeType;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
@@ -217,6 +219,25 @@ class DaoConfigDefinitionParser implements BeanDefinitionParser {
         beanDefinitionBuilder.addPropertyValue("transactionManager",
                 context.getTransactionManagerRef());
 
+        FlushModeType flushMode = context.getFlushMode();
+
+        if (null != flushMode) {
+            beanDefinitionBuilder.addPropertyValue("flushMode", flushMode);
+        }
+
+        Integer queryTimeout = context.getQueryTimeout();
+
+        if (null != queryTimeout) {
+            beanDefinitionBuilder.addPropertyValue("queryTimeout",
+                    queryTimeout);
+        }
+
+        Integer fetchSize = context.getFetchSize();
+
+        if (null != fetchSize) {
+            beanDefinitionBuilder.addPropertyValue("fetchSize", fetchSize);
+        }
+
         String customImplementationBeanName =
                 registerCustomImplementation(context, parserContext, beanSource);
 
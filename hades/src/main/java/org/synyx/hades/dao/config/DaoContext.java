@@ -16,6 +16,8 @@
 
 package org.synyx.hades.dao.config;
 
+import javax.persistence.FlushModeType;
+
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
@@ -263,4 +265,45 @@ class DaoContext extends DaoConfigContext {
         return StringUtils.hasText(ref) ? ref : parent
                 .getTransactionManagerRef();
     }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.config.DaoConfigContext#getFlushMode()
+     */
+    @Override
+    protected FlushModeType getFlushMode() {
+
+        FlushModeType flushMode =
+                parseFlushMode(getElement().getAttribute(FLUSH_MODE));
+        return flushMode != null ? flushMode : parent.getFlushMode();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.config.DaoConfigContext#getQueryTimeout()
+     */
+    @Override
+    protected Integer getQueryTimeout() {
+
+        Integer queryTimeout =
+                parseInteger(getElement().getAttribute(QUERY_TIMEOUT));
+        return queryTimeout != null ? queryTimeout : parent.getQueryTimeout();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.config.DaoConfigContext#getFetchSize()
+     */
+    @Override
+    protected Integer getFetchSize() {
+
+        Integer fetchSize = parseInteger(getElement().getAttribute(FETCH_SIZE));
+        return fetchSize != null ? fetchSize : parent.getFetchSize();
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+import org.springframework.util.Assert;
+
+
+/**
+ * {@link PersistenceUnitPostProcessor} to enable JDBC statement batching for
+ * the persistence unit. As statement batching is configured on the
+ * {@link javax.persistence.EntityManagerFactory} level for all supported
+ * persistence providers, this has to be registered with the
+ * {@link org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean}
+ * to make bulk saves of {@link GenericJpaDao} (see
+ * {@link GenericJpaDao#setBatchSize(int)}) send their statements in batches.
+ * <p>
+ * The provider specific properties are derived from the persistence provider
+ * configured for the persistence unit. If none is configured (e.g. as it is
+ * set through a {@link org.springframework.orm.jpa.JpaVendorAdapter}) the
+ * properties of all supported providers will be registered. Properties
+ * already configured for the persistence unit will not be overridden.
+ * 
+ * @author Oliver Gierke
+ */
+public class BatchWritingPersistenceUnitPostProcessor implements
+        PersistenceUnitPostProcessor {
+
+    private final int batchSize;
+
+
+    /**
+     * Creates a new {@link BatchWritingPersistenceUnitPostProcessor} using the
+     * given batch size.
+     * 
+     * @param batchSize must be greater than 0
+     */
+    public BatchWritingPersistenceUnitPostProcessor(int batchSize) {
+
+        Assert.isTrue(batchSize > 0, "Batch size must be greater than 0!");
+        this.batchSize = batchSize;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.springframework.orm.jpa.persistenceunit.
+     * PersistenceUnitPostProcessor
+     * #postProcessPersistenceUnitInfo(org.springframework
+     * .orm.jpa.persistenceunit.MutablePersistenceUnitInfo)
+     */
+    public void postProcessPersistenceUnitInfo(MutablePersistenceUnitInfo pui) {
+
+        Properties properties = pui.getProperties();
+
+        for (PersistenceProvider provider : getProviders(pui)) {
+            for (Entry<String, Object> entry : provider
+                    .getBatchWritingProperties(batchSize).entrySet()) {
+
+                if (!properties.containsKey(entry.getKey())) {
+                    properties.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the {@link PersistenceProvider}s to register properties for.
+     * 
+     * @param pui
+     * @return
+     */
+    private List<PersistenceProvider> getProviders(
+            MutablePersistenceUnitInfo pui) {
+
+        PersistenceProvider provider =
+                PersistenceProvider.fromPersistenceProviderClassName(pui
+                        .getPersistenceProviderClassName());
+
+        return PersistenceProvider.GENERIC_JPA.equals(provider) ? Arrays
+                .asList(PersistenceProvider.values()) : Arrays.asList(provider);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import java.util.Iterator;
+
+
+/**
+ * {@link Iterator} backed by resources (e.g. a database cursor) that have to
+ * be released after iteration.
+ * 
+ * @author Oliver Gierke
+ * @param <T> the type of the elements iterated over
+ */
+interface CloseableIterator<T> extends Iterator<T> {
+
+    /**
+     * Releases all resources held by the iterator.
+     */
+    void close();
+}
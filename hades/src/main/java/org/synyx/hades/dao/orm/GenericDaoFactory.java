@@ -21,24 +21,43 @@ import static org.synyx.hades.util.ClassUtils.*;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.PersistenceContext;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.util.Assert;
+import org.synyx.hades.dao.FetchSize;
+import org.synyx.hades.dao.FlushMode;
 import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.MaterializedCount;
+import org.synyx.hades.dao.QueryTimeout;
+import org.synyx.hades.dao.query.CountCache;
 import org.synyx.hades.dao.query.HadesQuery;
+import org.synyx.hades.dao.query.MaterializedCounts;
+import org.synyx.hades.dao.query.PagePrefetcher;
+import org.synyx.hades.dao.query.QueryExecutionSettings;
 import org.synyx.hades.dao.query.QueryExtractor;
 import org.synyx.hades.dao.query.QueryLookupStrategy;
 import org.synyx.hades.dao.query.QueryMethod;
+import org.synyx.hades.domain.CountPredicate;
 import org.synyx.hades.util.ClassUtils;
 
 
@@ -55,9 +74,30 @@ import org.synyx.hades.util.ClassUtils;
  */
 public class GenericDaoFactory {
 
+    /**
+     * Default number of milliseconds prefetched pages are kept, see
+     * {@link #setPrefetchTimeToLive(long)}.
+     */
+    public static final long DEFAULT_PREFETCH_TIME_TO_LIVE = 10000;
+
     private EntityManager entityManager;
     private QueryLookupStrategy queryLookupStrategy = QueryLookupStrategy
             .getDefault();
+    private int batchSize = 0;
+    private ExecutorService countQueryExecutor;
+    private boolean inlineCountQueries = false;
+    private boolean lazyCountQueries = false;
+    private long countCacheTimeToLive = 0;
+    private int countCacheMaxSize = CountCache.DEFAULT_MAX_SIZE;
+    private ExecutorService prefetchExecutor;
+    private long prefetchTimeToLive = DEFAULT_PREFETCH_TIME_TO_LIVE;
+    private int prefetchMaxSize = PagePrefetcher.DEFAULT_MAX_SIZE;
+    private Executor pipelineExecutor;
+    private int pipelineLookAhead = GenericJpaDao.DEFAULT_PIPELINE_LOOK_AHEAD;
+    private boolean readOnlyQueries = false;
+    private FlushModeType flushMode;
+    private Integer queryTimeout;
+    private Integer fetchSize;
 
     private Map<Method, Method> methodCache =
             new ConcurrentHashMap<Method, Method>();
@@ -143,6 +183,400 @@ public class GenericDaoFactory {
     }
 
 
+    /**
+     * Configures the number of entities the DAOs created will save in one
+     * chunk when saving collections of entities.
+     * 
+     * @see GenericJpaDao#setBatchSize(int)
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(int batchSize) {
+
+        Assert.isTrue(batchSize >= 0, "Batch size must not be negative!");
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Configures an {@link ExecutorService} to execute the count queries of
+     * paged query methods concurrently to their content queries. Use an
+     * executor with a bounded pool and queue.
+     * 
+     * @see QueryExecutionSettings#setCountQueryExecutor(ExecutorService)
+     * @param countQueryExecutor can be {@literal null} to execute count
+     *            queries sequentially
+     */
+    public void setCountQueryExecutor(ExecutorService countQueryExecutor) {
+
+        this.countQueryExecutor = countQueryExecutor;
+    }
+
+
+    /**
+     * Configures whether paged query methods shall select the total number
+     * of elements alongside the entities to read a page in a single round
+     * trip. Only applied if the persistence provider supports subqueries in
+     * the select clause.
+     * 
+     * @see QueryExecutionSettings#setInlineCountQueries(boolean)
+     * @param inlineCountQueries
+     */
+    public void setInlineCountQueries(boolean inlineCountQueries) {
+
+        this.inlineCountQueries = inlineCountQueries;
+    }
+
+
+    /**
+     * Configures whether paged query methods and the paging methods of the
+     * DAOs created shall defer their count query until the total number of
+     * elements is requested from the page for the first time.
+     * 
+     * @see QueryExecutionSettings#setLazyCountQueries(boolean)
+     * @see GenericJpaDao#setLazyCountQueries(boolean)
+     * @param lazyCountQueries
+     */
+    public void setLazyCountQueries(boolean lazyCountQueries) {
+
+        this.lazyCountQueries = lazyCountQueries;
+    }
+
+
+    /**
+     * Configures the number of milliseconds the results of count queries shall
+     * be cached for. Every DAO created gets its own {@link CountCache} that is
+     * cleared whenever the DAO saves or deletes entities or executes a
+     * modifying query method. Use this for DAOs whose totals may be slightly
+     * stale, e.g. ones backing dashboards. Defaults to {@literal 0}, which
+     * means no caching.
+     * 
+     * @see GenericJpaDao#setCountCache(CountCache)
+     * @see QueryExecutionSettings#setCountCache(CountCache)
+     * @param countCacheTimeToLive
+     */
+    public void setCountCacheTimeToLive(long countCacheTimeToLive) {
+
+        Assert.isTrue(countCacheTimeToLive >= 0,
+                "Count cache time to live must not be negative!");
+        this.countCacheTimeToLive = countCacheTimeToLive;
+    }
+
+
+    /**
+     * Configures the maximum number of counts cached per DAO. Least recently
+     * used counts are evicted once the maximum is exceeded. Defaults to
+     * {@value CountCache#DEFAULT_MAX_SIZE}.
+     * 
+     * @param countCacheMaxSize
+     */
+    public void setCountCacheMaxSize(int countCacheMaxSize) {
+
+        Assert.isTrue(countCacheMaxSize > 0,
+                "Count cache maximum size must be greater than 0!");
+        this.countCacheMaxSize = countCacheMaxSize;
+    }
+
+
+    /**
+     * Creates the {@link CountCache} for a DAO to be created. Returns
+     * {@literal null} if count queries shall not be cached.
+     * 
+     * @return
+     */
+    protected CountCache createCountCache() {
+
+        return countCacheTimeToLive > 0 ? new CountCache(countCacheTimeToLive,
+                TimeUnit.MILLISECONDS, countCacheMaxSize) : null;
+    }
+
+
+    /**
+     * Configures an {@link ExecutorService} to load the page following the one
+     * returned by paged query methods and the DAO's {@code readAll(Pageable)}
+     * method in the background. Every DAO created
+     * gets its own {@link PagePrefetcher} that is cleared whenever the DAO
+     * saves or deletes entities or executes a modifying query method. Use an
+     * executor with a bounded pool and queue. Defaults to {@literal null},
+     * which means no prefetching.
+     * 
+     * @see GenericJpaDao#setPagePrefetcher(PagePrefetcher)
+     * @see QueryExecutionSettings#setPagePrefetcher(PagePrefetcher)
+     * @param prefetchExecutor
+     */
+    public void setPrefetchExecutor(ExecutorService prefetchExecutor) {
+
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+
+    /**
+     * Configures the number of milliseconds prefetched pages are kept.
+     * Defaults to {@value #DEFAULT_PREFETCH_TIME_TO_LIVE}.
+     * 
+     * @param prefetchTimeToLive
+     */
+    public void setPrefetchTimeToLive(long prefetchTimeToLive) {
+
+        Assert.isTrue(prefetchTimeToLive > 0,
+                "Prefetch time to live must be greater than 0!");
+        this.prefetchTimeToLive = prefetchTimeToLive;
+    }
+
+
+    /**
+     * Configures the maximum number of pages prefetched per DAO. Least
+     * recently used pages are evicted once the maximum is exceeded. Defaults
+     * to {@value PagePrefetcher#DEFAULT_MAX_SIZE}.
+     * 
+     * @param prefetchMaxSize
+     */
+    public void setPrefetchMaxSize(int prefetchMaxSize) {
+
+        Assert.isTrue(prefetchMaxSize > 0,
+                "Prefetch maximum size must be greater than 0!");
+        this.prefetchMaxSize = prefetchMaxSize;
+    }
+
+
+    /**
+     * Configures the {@link Executor} the DAOs created use to read slices in
+     * the background when processing them in a pipeline.
+     * 
+     * @see GenericJpaDao#setPipelineExecutor(Executor)
+     * @param pipelineExecutor can be {@literal null} to start a new thread
+     *            per pipeline
+     */
+    public void setPipelineExecutor(Executor pipelineExecutor) {
+
+        this.pipelineExecutor = pipelineExecutor;
+    }
+
+
+    /**
+     * Configures the maximum number of slices the DAOs created read in advance
+     * when processing them in a pipeline. Defaults to
+     * {@value GenericJpaDao#DEFAULT_PIPELINE_LOOK_AHEAD}.
+     * 
+     * @see GenericJpaDao#setPipelineLookAhead(int)
+     * @param pipelineLookAhead
+     */
+    public void setPipelineLookAhead(int pipelineLookAhead) {
+
+        Assert.isTrue(pipelineLookAhead > 0,
+                "Pipeline look ahead must be greater than 0!");
+        this.pipelineLookAhead = pipelineLookAhead;
+    }
+
+
+    /**
+     * Configures whether the DAOs created and their query methods shall load
+     * entities read-only using the hints of the persistence provider. Query
+     * methods can override this with {@link org.synyx.hades.dao.ReadOnly}.
+     * Entities loaded read-only cannot be saved, so only enable this for
+     * DAOs that do not update the entities they read.
+     * 
+     * @see GenericJpaDao#setReadOnlyQueries(boolean)
+     * @see QueryExecutionSettings#setReadOnlyQueries(boolean)
+     * @param readOnlyQueries
+     */
+    public void setReadOnlyQueries(boolean readOnlyQueries) {
+
+        this.readOnlyQueries = readOnlyQueries;
+    }
+
+
+    /**
+     * Configures the {@link FlushModeType} the DAOs created and their query
+     * methods shall execute queries with. DAO interfaces and query methods
+     * can override this with {@link FlushMode}.
+     * 
+     * @see GenericJpaDao#setFlushMode(FlushModeType)
+     * @see QueryExecutionSettings#setFlushMode(FlushModeType)
+     * @param flushMode can be {@literal null} to use the one of the
+     *            {@link EntityManager} (default)
+     */
+    public void setFlushMode(FlushModeType flushMode) {
+
+        this.flushMode = flushMode;
+    }
+
+
+    /**
+     * Returns the {@link FlushModeType} for the DAO with the given interface.
+     * Prefers the one declared by {@link FlushMode} on the interface over the
+     * one configured for the factory.
+     * 
+     * @param daoInterface
+     * @return
+     */
+    private FlushModeType getFlushMode(Class<?> daoInterface) {
+
+        FlushMode annotation =
+                AnnotationUtils.findAnnotation(daoInterface, FlushMode.class);
+
+        return annotation == null ? flushMode : annotation.value();
+    }
+
+
+    /**
+     * Configures the timeout in milliseconds the queries of the DAOs created
+     * and their query methods shall be executed with. DAO interfaces and query
+     * methods can override this with {@link QueryTimeout}. Queries exceeding
+     * the timeout cause a
+     * {@link org.synyx.hades.dao.QueryTimeoutExceededException}.
+     * 
+     * @see #getQueryTimeouts(GenericDao)
+     * @see GenericJpaDao#setQueryTimeout(Integer)
+     * @see QueryExecutionSettings#setQueryTimeout(Integer)
+     * @param queryTimeout can be {@literal null} to not apply a timeout
+     *            (default)
+     */
+    public void setQueryTimeout(Integer queryTimeout) {
+
+        this.queryTimeout = queryTimeout;
+    }
+
+
+    /**
+     * Returns the query timeout for the DAO with the given interface. Prefers
+     * the one declared by {@link QueryTimeout} on the interface over the one
+     * configured for the factory.
+     * 
+     * @param daoInterface
+     * @return
+     */
+    private Integer getQueryTimeout(Class<?> daoInterface) {
+
+        QueryTimeout annotation =
+                AnnotationUtils
+                        .findAnnotation(daoInterface, QueryTimeout.class);
+
+        return annotation == null ? queryTimeout : Integer.valueOf(annotation
+                .value());
+    }
+
+
+    /**
+     * Configures the JDBC fetch size the DAOs created and their query methods
+     * shall read entities with. DAO interfaces and query methods can override
+     * this with {@link FetchSize}.
+     * 
+     * @see GenericJpaDao#setFetchSize(Integer)
+     * @see QueryExecutionSettings#setFetchSize(Integer)
+     * @param fetchSize can be {@literal null} to use the driver's default
+     *            (default)
+     */
+    public void setFetchSize(Integer fetchSize) {
+
+        Assert.isTrue(fetchSize == null || fetchSize > 0,
+                "Fetch size must be positive!");
+        this.fetchSize = fetchSize;
+    }
+
+
+    /**
+     * Returns the JDBC fetch size for the DAO with the given interface.
+     * Prefers the one declared by {@link FetchSize} on the interface over the
+     * one configured for the factory.
+     * 
+     * @param daoInterface
+     * @return
+     */
+    private Integer getFetchSize(Class<?> daoInterface) {
+
+        FetchSize annotation =
+                AnnotationUtils.findAnnotation(daoInterface, FetchSize.class);
+
+        return annotation == null ? fetchSize : Integer.valueOf(annotation
+                .value());
+    }
+
+
+    /**
+     * Creates the {@link PagePrefetcher} for a DAO to be created. Returns
+     * {@literal null} if pages shall not be prefetched.
+     * 
+     * @return
+     */
+    protected PagePrefetcher createPagePrefetcher() {
+
+        return prefetchExecutor == null ? null : new PagePrefetcher(
+                prefetchExecutor, prefetchTimeToLive, TimeUnit.MILLISECONDS,
+                prefetchMaxSize);
+    }
+
+
+    /**
+     * Creates the {@link MaterializedCounts} for the given DAO interface if it
+     * is annotated with {@link MaterializedCount}. Returns {@literal null}
+     * otherwise.
+     * 
+     * @param daoInterface
+     * @return
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected MaterializedCounts<?> createMaterializedCounts(
+            Class<?> daoInterface) {
+
+        MaterializedCount annotation =
+                daoInterface.getAnnotation(MaterializedCount.class);
+
+        if (annotation == null) {
+            return null;
+        }
+
+        Collection<CountPredicate> predicates = new ArrayList<CountPredicate>();
+
+        for (Class<? extends CountPredicate> type : annotation.predicates()) {
+            predicates.add(BeanUtils.instantiateClass(type));
+        }
+
+        return new MaterializedCounts(annotation.reconciliationInterval(),
+                predicates);
+    }
+
+
+    /**
+     * Hands the given {@link MaterializedCounts} created for the DAO's domain
+     * class to the given {@link GenericJpaDao}.
+     * 
+     * @param dao
+     * @param materializedCounts can be {@literal null}
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void setMaterializedCounts(GenericJpaDao<T, ?> dao,
+            MaterializedCounts<?> materializedCounts) {
+
+        dao.setMaterializedCounts((MaterializedCounts<T>) materializedCounts);
+    }
+
+
+    /**
+     * Creates the {@link QueryExecutionSettings} to be applied to the query
+     * methods of a DAO.
+     * 
+     * @return
+     */
+    protected QueryExecutionSettings getQueryExecutionSettings() {
+
+        PersistenceProvider provider =
+                PersistenceProvider.fromEntityManager(entityManager);
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setCountQueryExecutor(countQueryExecutor);
+        settings.setInlineCountQueries(inlineCountQueries
+                && provider.supportsSubqueriesInSelectClause());
+        settings.setLazyCountQueries(lazyCountQueries);
+        settings.setReadOnlyQueries(readOnlyQueries);
+        settings.setReadOnlyHints(provider.getReadOnlyHints());
+        settings.setQueryTimeoutHint(provider.getQueryTimeoutHint(),
+                provider.getQueryTimeoutUnit());
+        settings.setFetchSizeHint(provider.getFetchSizeHint());
+
+        return settings;
+    }
+
+
     /**
      * Adds {@link DaoProxyPostProcessor}s to the factory to allow manipulation
      * of the {@link ProxyFactory} before the proxy gets created. Note that the
@@ -195,17 +629,41 @@ public class GenericDaoFactory {
                     .getDomainClass(daoInterface));
             genericJpaDao.validate();
 
+            CountCache countCache = createCountCache();
+            AtomicLong skippedCountQueries = new AtomicLong();
+            MaterializedCounts<?> materializedCounts =
+                    createMaterializedCounts(daoInterface);
+            PagePrefetcher pagePrefetcher = createPagePrefetcher();
+
+            if (genericJpaDao instanceof GenericJpaDao) {
+                GenericJpaDao<?, ?> dao = (GenericJpaDao<?, ?>) genericJpaDao;
+                dao.setBatchSize(batchSize);
+                dao.setLazyCountQueries(lazyCountQueries);
+                dao.setCountCache(countCache);
+                dao.setSkippedCountQueries(skippedCountQueries);
+                setMaterializedCounts(dao, materializedCounts);
+                dao.setPagePrefetcher(pagePrefetcher);
+                dao.setPipelineExecutor(pipelineExecutor);
+                dao.setPipelineLookAhead(pipelineLookAhead);
+                dao.setReadOnlyQueries(readOnlyQueries);
+                dao.setFlushMode(getFlushMode(daoInterface));
+                dao.setQueryTimeout(getQueryTimeout(daoInterface));
+                dao.setFetchSize(getFetchSize(daoInterface));
+            }
+
             // Create proxy
             ProxyFactory result = new ProxyFactory();
             result.setTarget(genericJpaDao);
             result.setInterfaces(new Class[] { daoInterface });
+            result.addAdvice(new QueryTimeoutInterceptor());
 
             for (DaoProxyPostProcessor processor : postProcessors) {
                 processor.postProcess(result);
             }
 
             result.addAdvice(new QueryExecuterMethodInterceptor(daoInterface,
-                    customDaoImplementation, genericJpaDao));
+                    customDaoImplementation, genericJpaDao, countCache,
+                    skippedCountQueries, materializedCounts, pagePrefetcher));
 
             return (T) result.getProxy();
         } catch (InstantiationException e) {
@@ -216,6 +674,58 @@ public class GenericDaoFactory {
     }
 
 
+    /**
+     * Returns the number of queries of the given DAO that exceeded their
+     * timeout so far.
+     * 
+     * @param dao must be a DAO created by a {@link GenericDaoFactory}
+     * @return
+     * @throws IllegalArgumentException if the given DAO was not created by a
+     *             {@link GenericDaoFactory}
+     */
+    public static long getQueryTimeouts(GenericDao<?, ?> dao) {
+
+        Assert.isInstanceOf(Advised.class, dao,
+                "DAO was not created by a GenericDaoFactory!");
+
+        for (Advisor advisor : ((Advised) dao).getAdvisors()) {
+            if (advisor.getAdvice() instanceof QueryTimeoutInterceptor) {
+                return ((QueryTimeoutInterceptor) advisor.getAdvice())
+                        .getQueryTimeouts();
+            }
+        }
+
+        throw new IllegalArgumentException(
+                "DAO was not created by a GenericDaoFactory!");
+    }
+
+
+    /**
+     * Returns how often the given DAO skipped a count query so far as the
+     * total number of elements could be derived from the content of a page.
+     * 
+     * @param dao must be a DAO created by a {@link GenericDaoFactory}
+     * @return
+     * @throws IllegalArgumentException if the given DAO was not created by a
+     *             {@link GenericDaoFactory}
+     */
+    public static long getSkippedCountQueries(GenericDao<?, ?> dao) {
+
+        Assert.isInstanceOf(Advised.class, dao,
+                "DAO was not created by a GenericDaoFactory!");
+
+        for (Advisor advisor : ((Advised) dao).getAdvisors()) {
+            if (advisor.getAdvice() instanceof QueryExecuterMethodInterceptor) {
+                return ((QueryExecuterMethodInterceptor) advisor.getAdvice())
+                        .getSkippedCountQueries();
+            }
+        }
+
+        throw new IllegalArgumentException(
+                "DAO was not created by a GenericDaoFactory!");
+    }
+
+
     /**
      * Determines the base class for the DAO to be created by checking the
      * {@link EntityManager}'s concrete type. If no well known type can be
@@ -403,6 +913,7 @@ public class GenericDaoFactory {
         private final Object customDaoImplementation;
         private final Class<?> daoInterface;
         private final GenericDaoSupport<?> dao;
+        private final AtomicLong skippedCountQueries;
 
 
         /**
@@ -411,11 +922,24 @@ public class GenericDaoFactory {
          * methods.
          */
         public QueryExecuterMethodInterceptor(Class<?> daoInterface,
-                Object customDaoImplementation, GenericDaoSupport<?> dao) {
+                Object customDaoImplementation, GenericDaoSupport<?> dao,
+                CountCache countCache, AtomicLong skippedCountQueries,
+                MaterializedCounts<?> materializedCounts,
+                PagePrefetcher pagePrefetcher) {
 
             this.daoInterface = daoInterface;
             this.customDaoImplementation = customDaoImplementation;
             this.dao = dao;
+            this.skippedCountQueries = skippedCountQueries;
+
+            QueryExecutionSettings settings = getQueryExecutionSettings();
+            settings.setCountCache(countCache);
+            settings.setSkippedCountQueries(skippedCountQueries);
+            settings.setMaterializedCounts(materializedCounts);
+            settings.setPagePrefetcher(pagePrefetcher);
+            settings.setFlushMode(getFlushMode(daoInterface));
+            settings.setQueryTimeout(getQueryTimeout(daoInterface));
+            settings.setFetchSize(getFetchSize(daoInterface));
 
             for (Method method : getFinderMethods(daoInterface)) {
 
@@ -424,7 +948,8 @@ public class GenericDaoFactory {
                         PersistenceProvider.fromEntityManager(entityManager);
 
                 QueryMethod finder =
-                        new QueryMethod(method, domainClass, extractor);
+                        new QueryMethod(method, domainClass, extractor,
+                                settings);
 
                 queries.put(method,
                         queryLookupStrategy.resolveQuery(finder, entityManager));
@@ -515,5 +1040,16 @@ public class GenericDaoFactory {
 
             return isCustomMethod(invocation.getMethod(), daoInterface);
         }
+
+
+        /**
+         * Returns how often the DAO skipped a count query so far.
+         * 
+         * @return
+         */
+        public long getSkippedCountQueries() {
+
+            return skippedCountQueries.get();
+        }
     }
 }
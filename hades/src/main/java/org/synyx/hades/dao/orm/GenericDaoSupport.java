@@ -21,21 +21,34 @@ import static org.synyx.hades.dao.query.QueryUtils.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 
+import javax.persistence.CascadeType;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.EntityManager;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PostRemove;
+import javax.persistence.PreRemove;
 import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type.PersistenceType;
 
 import org.springframework.util.Assert;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.ReflectionUtils.FieldCallback;
 import org.springframework.util.ReflectionUtils.MethodCallback;
+import org.synyx.hades.util.ClassUtils;
 import org.synyx.hades.domain.Persistable;
 
 
@@ -51,6 +64,10 @@ public abstract class GenericDaoSupport<T> {
     private Class<T> domainClass;
     private IsNewAware isNewStrategy;
 
+    private SingularAttribute<? super T, ?> idAttribute;
+    private boolean idAttributeResolved = false;
+    private Boolean bulkDeletable;
+
 
     /**
      * Returns the {@link EntityManager}.
@@ -140,6 +157,278 @@ public abstract class GenericDaoSupport<T> {
     }
 
 
+    /**
+     * Returns the query string to check whether an entity with a given id
+     * exists. The id has to be bound to the named parameter {@code id}.
+     * 
+     * @return string to check for the existence of an entity
+     */
+    protected String getExistsQueryString() {
+
+        Assert.state(hasSingleIdAttribute(),
+                "Exists query requires a single id attribute!");
+
+        PersistenceProvider provider =
+                PersistenceProvider.fromEntityManager(getEntityManager());
+
+        return String.format(EXISTS_QUERY_STRING,
+                provider.getCountQueryPlaceholder(),
+                ClassUtils.getEntityName(getDomainClass()), getIdAttribute()
+                        .getName());
+    }
+
+
+    /**
+     * Returns the attribute mapping the id of the domain class. Returns
+     * {@literal null} if the domain class does not declare a single id
+     * attribute, e.g. as it uses an {@link javax.persistence.IdClass}.
+     * 
+     * @return the id attribute or {@literal null} if none available
+     */
+    protected SingularAttribute<? super T, ?> getIdAttribute() {
+
+        if (!idAttributeResolved) {
+            this.idAttribute = resolveIdAttribute();
+            this.idAttributeResolved = true;
+        }
+
+        return idAttribute;
+    }
+
+
+    /**
+     * Returns whether the domain class declares a single id attribute.
+     * 
+     * @return
+     */
+    protected boolean hasSingleIdAttribute() {
+
+        return getIdAttribute() != null;
+    }
+
+
+    /**
+     * Returns whether the domain class uses an embedded, compound id.
+     * 
+     * @return
+     */
+    protected boolean hasCompoundId() {
+
+        SingularAttribute<? super T, ?> attribute = getIdAttribute();
+
+        return attribute != null
+                && PersistenceType.EMBEDDABLE.equals(attribute.getType()
+                        .getPersistenceType());
+    }
+
+
+    /**
+     * Returns whether entities of the domain class can be deleted by a bulk
+     * delete query without loading them. This is the case if the domain class
+     * has a single id attribute, is not versioned, does not cascade removals
+     * or remove orphans, does not declare remove lifecycle callbacks and does
+     * not map associations or element collections using a join or collection
+     * table.
+     * Note, that mapping information declared in XML only is not considered.
+     * 
+     * @return
+     */
+    protected boolean isBulkDeletable() {
+
+        if (null == bulkDeletable) {
+            this.bulkDeletable = determineBulkDeletable();
+        }
+
+        return bulkDeletable;
+    }
+
+
+    /**
+     * Returns the id of the given entity.
+     * 
+     * @param entity
+     * @return the id of the given entity or {@literal null} if it does not
+     *         have one yet
+     */
+    protected Object getId(T entity) {
+
+        if (isNewStrategy instanceof IdAware) {
+            return ((IdAware) isNewStrategy).getId(entity);
+        }
+
+        return getEntityManager().getEntityManagerFactory()
+                .getPersistenceUnitUtil().getIdentifier(entity);
+    }
+
+
+    /**
+     * Inspects the mapping of the domain class to find out whether bulk
+     * deletes can be used.
+     * 
+     * @see #isBulkDeletable()
+     * @return
+     */
+    private boolean determineBulkDeletable() {
+
+        if (!hasSingleIdAttribute() || hasRemoveCallbacks(getDomainClass())) {
+            return false;
+        }
+
+        EntityType<T> type =
+                getEntityManager().getMetamodel().entity(getDomainClass());
+
+        // Bulk deletes would bypass the version check of optimistic locking
+        if (type.hasVersionAttribute()) {
+            return false;
+        }
+
+        for (Attribute<? super T, ?> attribute : type.getAttributes()) {
+
+            Member member = attribute.getJavaMember();
+
+            if (!attribute.isAssociation() && !attribute.isCollection()) {
+                continue;
+            }
+
+            if (!(member instanceof AnnotatedElement)) {
+                return false;
+            }
+
+            AnnotatedElement element = (AnnotatedElement) member;
+
+            switch (attribute.getPersistentAttributeType()) {
+
+            case ONE_TO_MANY:
+                OneToMany oneToMany = element.getAnnotation(OneToMany.class);
+
+                if (null == oneToMany || "".equals(oneToMany.mappedBy())
+                        || oneToMany.orphanRemoval()
+                        || cascadesRemoval(oneToMany.cascade())) {
+                    return false;
+                }
+                break;
+
+            case ONE_TO_ONE:
+                OneToOne oneToOne = element.getAnnotation(OneToOne.class);
+
+                if (null == oneToOne || oneToOne.orphanRemoval()
+                        || cascadesRemoval(oneToOne.cascade())) {
+                    return false;
+                }
+                break;
+
+            case MANY_TO_ONE:
+                ManyToOne manyToOne = element.getAnnotation(ManyToOne.class);
+
+                if (null == manyToOne || cascadesRemoval(manyToOne.cascade())) {
+                    return false;
+                }
+                break;
+
+            default:
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns whether the given {@link CascadeType}s include removals.
+     * 
+     * @param types
+     * @return
+     */
+    private static boolean cascadesRemoval(CascadeType[] types) {
+
+        List<CascadeType> cascades = Arrays.asList(types);
+
+        return cascades.contains(CascadeType.ALL)
+                || cascades.contains(CascadeType.REMOVE);
+    }
+
+
+    /**
+     * Returns whether the given type or one of its entity listeners declares
+     * {@link PreRemove} or {@link PostRemove} callbacks.
+     * 
+     * @param type
+     * @return
+     */
+    private static boolean hasRemoveCallbacks(Class<?> type) {
+
+        Class<?> current = type;
+
+        while (current != null && !Object.class.equals(current)) {
+
+            if (declaresRemoveCallbacks(current)) {
+                return true;
+            }
+
+            EntityListeners listeners =
+                    current.getAnnotation(EntityListeners.class);
+            Class<?>[] listenerTypes =
+                    null == listeners ? new Class<?>[0] : listeners.value();
+
+            for (Class<?> listener : listenerTypes) {
+                if (declaresRemoveCallbacks(listener)) {
+                    return true;
+                }
+            }
+
+            current = current.getSuperclass();
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns whether the given type declares a method annotated with
+     * {@link PreRemove} or {@link PostRemove}.
+     * 
+     * @param type
+     * @return
+     */
+    private static boolean declaresRemoveCallbacks(Class<?> type) {
+
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(PreRemove.class)
+                    || method.isAnnotationPresent(PostRemove.class)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Looks up the id attribute of the domain class from the JPA metamodel.
+     * 
+     * @return
+     */
+    private SingularAttribute<? super T, ?> resolveIdAttribute() {
+
+        EntityType<T> type =
+                getEntityManager().getMetamodel().entity(getDomainClass());
+
+        if (!type.hasSingleIdAttribute()) {
+            return null;
+        }
+
+        for (SingularAttribute<? super T, ?> attribute : type
+                .getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute;
+            }
+        }
+
+        return null;
+    }
+
+
     /**
      * Returns the query to retrieve all entities.
      * 
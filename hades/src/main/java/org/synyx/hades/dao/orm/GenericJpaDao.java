@@ -19,24 +19,60 @@ package org.synyx.hades.dao.orm;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import org.synyx.hades.dao.EntityCallback;
 import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.ProjectedProperty;
+import org.synyx.hades.dao.SliceCallback;
+import org.synyx.hades.dao.orm.SlicePipeline.SliceReader;
+import org.synyx.hades.dao.query.CountCache;
+import org.synyx.hades.dao.query.MaterializedCounts;
+import org.synyx.hades.dao.query.PagePrefetcher;
+import org.synyx.hades.dao.query.PagePrefetcher.ContentReader;
+import org.synyx.hades.dao.query.PageableExecutionUtils;
+import org.synyx.hades.dao.query.PageableExecutionUtils.TotalSupplier;
+import org.synyx.hades.dao.query.Projection;
 import org.synyx.hades.dao.query.QueryUtils;
+import org.synyx.hades.domain.FetchPlan;
+import org.synyx.hades.domain.KeysetPageRequest;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.PageImpl;
 import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
+import org.synyx.hades.domain.SliceImpl;
 import org.synyx.hades.domain.Sort;
 import org.synyx.hades.domain.Sort.Property;
 import org.synyx.hades.domain.Specification;
@@ -55,6 +91,39 @@ import org.synyx.hades.domain.Specification;
 public class GenericJpaDao<T, PK extends Serializable> extends
         GenericDaoSupport<T> implements GenericDao<T, PK> {
 
+    /**
+     * Default maximum number of ids bound to a single query, see
+     * {@link #setInClauseLimit(int)}.
+     */
+    public static final int DEFAULT_IN_CLAUSE_LIMIT = 500;
+
+    /**
+     * Default number of entities to be processed in one chunk when streaming
+     * entities, see {@link #readAllInBatches(Specification, EntityCallback)}.
+     */
+    public static final int DEFAULT_STREAMING_CHUNK_SIZE = 100;
+
+    /**
+     * Default number of slices read in advance, see
+     * {@link #readSlices(Specification, Pageable, SliceCallback)}.
+     */
+    public static final int DEFAULT_PIPELINE_LOOK_AHEAD = 2;
+
+    private int batchSize = 0;
+    private int inClauseLimit = DEFAULT_IN_CLAUSE_LIMIT;
+    private boolean lazyCountQueries = false;
+    private CountCache countCache;
+    private AtomicLong skippedCountQueries;
+    private MaterializedCounts<T> materializedCounts;
+    private PagePrefetcher pagePrefetcher;
+    private Executor pipelineExecutor;
+    private int pipelineLookAhead = DEFAULT_PIPELINE_LOOK_AHEAD;
+    private boolean readOnlyQueries = false;
+    private FlushModeType flushMode;
+    private Integer queryTimeout;
+    private Integer fetchSize;
+
+
     /**
      * Factory method to create {@link GenericJpaDao} instances.
      * 
@@ -76,190 +145,299 @@ public class GenericJpaDao<T, PK extends Serializable> extends
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the number of entities to be saved in one chunk by
+     * {@link #save(Collection)}. If set to a value greater than {@literal 0}
+     * the {@link EntityManager} will be flushed and cleared after each chunk
+     * to keep the persistence context from growing with the number of entities
+     * saved. Thus entities returned from {@link #save(Collection)} will be
+     * detached as well as all other entities managed by the
+     * {@link EntityManager} before. Combine this with a
+     * {@link BatchWritingPersistenceUnitPostProcessor} using the same batch
+     * size to let the persistence provider send the statements of a chunk in
+     * JDBC batches. Defaults to {@literal 0}, which means no chunking.
      * 
-     * @see com.synyx.jpa.support.GenericDao#delete(java.lang.Object)
+     * @param batchSize the batchSize to set
      */
-    public void delete(final T entity) {
+    public void setBatchSize(int batchSize) {
 
-        EntityManager em = getEntityManager();
-        em.remove(em.contains(entity) ? entity : em.merge(entity));
+        Assert.isTrue(batchSize >= 0, "Batch size must not be negative!");
+        this.batchSize = batchSize;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Returns the number of entities to be saved in one chunk by
+     * {@link #save(Collection)}.
      * 
-     * @see org.synyx.hades.dao.GenericDao#delete(java.util.List)
+     * @return the batchSize
      */
-    public void delete(final Collection<? extends T> entities) {
-
-        if (null == entities || entities.isEmpty()) {
-            return;
-        }
+    protected int getBatchSize() {
 
-        QueryUtils.applyAndBind(getDeleteAllQueryString(), entities,
-                getEntityManager()).executeUpdate();
+        return batchSize;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the maximum number of ids to be bound to a single query when
+     * looking up, checking the existence of or deleting multiple entities by
+     * id.
+     * Operations on more ids will be split up into multiple queries to stay
+     * below the parameter limits of the database. Defaults to
+     * {@value #DEFAULT_IN_CLAUSE_LIMIT}.
      * 
-     * @see org.synyx.hades.dao.GenericDao#deleteAll()
+     * @param inClauseLimit the inClauseLimit to set
      */
-    public void deleteAll() {
+    public void setInClauseLimit(int inClauseLimit) {
 
-        getEntityManager().createQuery(getDeleteAllQueryString())
-                .executeUpdate();
+        Assert.isTrue(inClauseLimit > 0, "In clause limit must be positive!");
+        this.inClauseLimit = inClauseLimit;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures whether {@link Page}s read by the DAO shall defer their count
+     * query until the total number of elements is requested for the first
+     * time. The total then has to be requested within the transaction the page
+     * was read in. Defaults to {@literal false}.
      * 
-     * @see
-     * com.synyx.jpa.support.GenericDao#readByPrimaryKey(java.io.Serializable)
+     * @see org.synyx.hades.dao.query.LazyTotalPage
+     * @param lazyCountQueries
      */
-    public T readByPrimaryKey(final PK primaryKey) {
+    public void setLazyCountQueries(boolean lazyCountQueries) {
 
-        Assert.notNull(primaryKey, "The given primaryKey must not be null!");
-
-        return getEntityManager().find(getDomainClass(), primaryKey);
+        this.lazyCountQueries = lazyCountQueries;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures a {@link CountCache} to cache the results of
+     * {@link #count()}, {@link #count(Specification)} and the count queries
+     * of paged reads. The cache is evicted whenever the DAO saves or deletes
+     * entities and bypassed until the writing transaction completes. Totals
+     * can only be stale regarding changes applied by other DAOs or
+     * applications, at most for the time to live of the cache. Counts for
+     * {@link Specification}s are only cached if the {@link Specification}
+     * implements {@link Object#equals(Object)} and {@link Object#hashCode()},
+     * as instances compared by identity, e.g. anonymous classes, would never
+     * be served from the cache but push other counts out of it. Defaults to
+     * {@literal null}, which means no caching.
      * 
-     * @see org.synyx.hades.dao.GenericDao#exists(java.io.Serializable)
+     * @param countCache the countCache to set
      */
-    public boolean exists(final PK primaryKey) {
-
-        Assert.notNull(primaryKey, "The given primary key must not be null!");
+    public void setCountCache(CountCache countCache) {
 
-        return null != readByPrimaryKey(primaryKey);
+        this.countCache = countCache;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the counter to increment whenever {@link #readAll(Pageable)}
+     * or {@link #readAll(Specification, Pageable)} skip the count query as
+     * the total number of elements can be derived from the content of the
+     * page. Defaults to {@literal null}, which means skipped count queries are
+     * not counted.
      * 
-     * @see com.synyx.jpa.support.GenericDao#readAll()
+     * @param skippedCountQueries the skippedCountQueries to set
      */
-    public List<T> readAll() {
+    public void setSkippedCountQueries(AtomicLong skippedCountQueries) {
 
-        return getReadAllQuery().getResultList();
+        this.skippedCountQueries = skippedCountQueries;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures {@link MaterializedCounts} to serve {@link #count()} and
+     * {@link #count(Specification)} for the {@link Specification}s
+     * materialized from. The counters are updated by the save and delete
+     * methods of the DAO and reconciled with the database if necessary.
+     * Defaults to {@literal null}, which means counts are always read from the
+     * database.
      * 
-     * @see
-     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
-     * )
+     * @param materializedCounts the materializedCounts to set
      */
-    public List<T> readAll(Specification<T> spec) {
+    public void setMaterializedCounts(
+            MaterializedCounts<T> materializedCounts) {
 
-        return getQuery(spec, null).getResultList();
+        this.materializedCounts = materializedCounts;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures a {@link PagePrefetcher} to load the page following the one
+     * returned by {@link #readAll(Pageable)} in the background, so that
+     * sequential page access is served from memory. Prefetched pages are
+     * discarded whenever the DAO saves or deletes entities. Defaults to
+     * {@literal null}, which means no prefetching.
      * 
-     * @see
-     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
-     * , org.synyx.hades.domain.Pageable)
+     * @param pagePrefetcher the pagePrefetcher to set
      */
-    public Page<T> readAll(Specification<T> spec, Pageable pageable) {
+    public void setPagePrefetcher(PagePrefetcher pagePrefetcher) {
 
-        if (spec == null) {
-            return readAll(pageable);
-        }
+        this.pagePrefetcher = pagePrefetcher;
+    }
 
-        TypedQuery<T> query = getQuery(spec, pageable);
 
-        return pageable == null ? new PageImpl<T>(query.getResultList())
-                : readPage(query, pageable, spec);
+    /**
+     * Configures the {@link Executor} to read the slices handed to
+     * {@link #readSlices(Specification, Pageable, SliceCallback)} in the
+     * background. Defaults to {@literal null}, which means a new thread is
+     * started for each invocation.
+     * 
+     * @param pipelineExecutor the pipelineExecutor to set
+     */
+    public void setPipelineExecutor(Executor pipelineExecutor) {
+
+        this.pipelineExecutor = pipelineExecutor;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the maximum number of slices
+     * {@link #readSlices(Specification, Pageable, SliceCallback)} reads in
+     * advance of the one being processed. Defaults to
+     * {@value #DEFAULT_PIPELINE_LOOK_AHEAD}.
      * 
-     * @see org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Sort)
+     * @param pipelineLookAhead the pipelineLookAhead to set
      */
-    public List<T> readAll(final Sort sort) {
+    public void setPipelineLookAhead(int pipelineLookAhead) {
 
-        String queryString =
-                QueryUtils.applySorting(getReadAllQueryString(), sort);
-        TypedQuery<T> query =
-                getEntityManager().createQuery(queryString, getDomainClass());
+        Assert.isTrue(pipelineLookAhead > 0,
+                "Pipeline look ahead must be greater than 0!");
+        this.pipelineLookAhead = pipelineLookAhead;
+    }
+
+
+    /**
+     * Configures whether the DAO shall load entities read-only by applying
+     * the read-only hints of the persistence provider to the queries reading
+     * entities and to {@link #readByPrimaryKey(Serializable)}. Entities are
+     * not tracked for changes then, so changes applied to them will not be
+     * flushed. With EclipseLink the shared cache instances are returned,
+     * which must not be modified at all. Hibernate ignores the hint when
+     * looking up a single entity by its primary key and OpenJPA does not
+     * offer a read-only hint, so entities are loaded as usual in these cases.
+     * As merging entities loaded read-only would silently drop the changes,
+     * {@link #save(Object)} rejects them. Thus only enable this for DAOs
+     * that do not update the entities they read. Defaults to
+     * {@literal false}.
+     * 
+     * @param readOnlyQueries
+     */
+    public void setReadOnlyQueries(boolean readOnlyQueries) {
 
-        return (null == sort) ? readAll() : query.getResultList();
+        this.readOnlyQueries = readOnlyQueries;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the {@link FlushModeType} the queries of the DAO shall be
+     * executed with. Use {@link FlushModeType#COMMIT} to prevent the
+     * persistence provider from flushing pending changes before each read.
+     * Reads will not see these changes then.
      * 
-     * @see
-     * org.synyx.hades.hades.dao.GenericDao#readAll(org.synyx.hades.hades.dao
-     * .Pageable)
+     * @param flushMode can be {@literal null} to use the one of the
+     *            {@link EntityManager} (default)
      */
-    public Page<T> readAll(final Pageable pageable) {
+    public void setFlushMode(FlushModeType flushMode) {
 
-        if (null == pageable) {
+        this.flushMode = flushMode;
+    }
 
-            return new PageImpl<T>(readAll());
-        }
 
-        return readPage(pageable, getReadAllQueryString());
+    /**
+     * Configures the timeout in milliseconds the queries of the DAO shall be
+     * executed with. Queries exceeding it will be cancelled by the database.
+     * 
+     * @see org.synyx.hades.dao.QueryTimeout
+     * @param queryTimeout can be {@literal null} to not apply a timeout
+     *            (default)
+     */
+    public void setQueryTimeout(Integer queryTimeout) {
+
+        this.queryTimeout = queryTimeout;
     }
 
 
-    /*
-     * (non-Javadoc)
+    /**
+     * Configures the JDBC fetch size the entities read by the DAO shall be
+     * fetched from the database with. Raise it to reduce the number of round
+     * trips when reading large results. Applies to {@link #readAll()} and the
+     * reads by {@link Specification}. Also used as the number of entities
+     * {@link #readAllInBatches(Specification, EntityCallback)} processes before
+     * flushing and detaching them.
      * 
-     * @see org.synyx.hades.hades.jpa.support.GenericDao#count()
+     * @see org.synyx.hades.dao.FetchSize
+     * @param fetchSize can be {@literal null} to use the driver's default
+     *            (default)
      */
-    public Long count() {
+    public void setFetchSize(Integer fetchSize) {
 
-        return getEntityManager()
-                .createQuery(getCountQueryString(), Long.class)
-                .getSingleResult();
+        Assert.isTrue(fetchSize == null || fetchSize > 0,
+                "Fetch size must be positive!");
+        this.fetchSize = fetchSize;
     }
 
 
     /*
      * (non-Javadoc)
      * 
-     * @see
-     * org.synyx.hades.dao.GenericDao#count(org.synyx.hades.domain.Specification
-     * )
+     * @see com.synyx.jpa.support.GenericDao#delete(java.lang.Object)
      */
-    public Long count(Specification<T> spec) {
+    public void delete(final T entity) {
 
-        return getCountQuery(spec).getSingleResult();
+        evictCaches();
+
+        EntityManager em = getEntityManager();
+
+        if (em.contains(entity) || !isBulkDeletable()) {
+            em.remove(em.contains(entity) ? entity : em.merge(entity));
+            removed(entity);
+            return;
+        }
+
+        Object id = getId(entity);
+
+        if (null != id) {
+            deleteByIds(Collections.singleton(id));
+        }
     }
 
 
     /*
      * (non-Javadoc)
      * 
-     * @see com.synyx.jpa.support.GenericDao#save(java.lang.Object)
+     * @see org.synyx.hades.dao.GenericDao#delete(java.util.List)
      */
-    public T save(final T entity) {
+    public void delete(final Collection<? extends T> entities) {
 
-        if (getIsNewStrategy().isNew(entity)) {
-            getEntityManager().persist(entity);
-            return entity;
-        } else {
-            return getEntityManager().merge(entity);
+        evictCaches();
+
+        if (null == entities || entities.isEmpty()) {
+            return;
+        }
+
+        if (!isBulkDeletable()) {
+
+            for (T entity : entities) {
+                delete(entity);
+            }
+
+            return;
+        }
+
+        Set<Object> ids = new LinkedHashSet<Object>();
+
+        for (T entity : entities) {
+
+            Object id = getId(entity);
+
+            if (null != id) {
+                ids.add(id);
+            }
         }
+
+        deleteByIds(ids);
     }
 
 
@@ -267,153 +445,1459 @@ public class GenericJpaDao<T, PK extends Serializable> extends
      * (non-Javadoc)
      * 
      * @see
-     * org.synyx.hades.hades.jpa.support.GenericDao#saveAndFlush(org.synyx.hades
-     * .hades.jpa.support.Entity)
+     * org.synyx.hades.dao.GenericDao#deleteByPrimaryKey(java.io.Serializable)
      */
-    public T saveAndFlush(final T entity) {
+    public void deleteByPrimaryKey(final PK primaryKey) {
 
-        T result = save(entity);
-        flush();
+        Assert.notNull(primaryKey, "The given primary key must not be null!");
 
-        return result;
+        deleteByPrimaryKeys(Collections.singleton(primaryKey));
     }
 
 
     /*
      * (non-Javadoc)
      * 
-     * @see org.synyx.hades.dao.GenericDao#saveAll(java.util.List)
+     * @see
+     * org.synyx.hades.dao.GenericDao#deleteByPrimaryKeys(java.util.Collection)
      */
-    public List<T> save(Collection<? extends T> entities) {
+    public void deleteByPrimaryKeys(final Collection<PK> primaryKeys) {
 
-        List<T> result = new ArrayList<T>();
+        evictCaches();
 
-        if (entities == null) {
-            return result;
+        if (null == primaryKeys || primaryKeys.isEmpty()) {
+            return;
         }
 
-        for (T entity : entities) {
-            result.add(save(entity));
+        if (isBulkDeletable()) {
+            deleteByIds(new LinkedHashSet<Object>(primaryKeys));
+            return;
         }
 
-        return result;
+        EntityManager em = getEntityManager();
+
+        for (T entity : readAll(primaryKeys)) {
+            em.remove(entity);
+            removed(entity);
+        }
     }
 
 
     /*
      * (non-Javadoc)
      * 
-     * @see org.synyx.hades.hades.jpa.support.GenericDao#flush()
+     * @see org.synyx.hades.dao.GenericDao#deleteAll()
      */
-    public void flush() {
-
-        getEntityManager().flush();
-    }
-
+    public void deleteAll() {
 
-    /**
-     * Reads a page of entities for the given JPQL query.
-     * 
-     * @param pageable
-     * @param query
-     * @return a page of entities for the given JPQL query
-     */
-    protected Page<T> readPage(final Pageable pageable, final String query) {
+        evictCaches();
 
-        String queryString = QueryUtils.applySorting(query, pageable.getSort());
-        TypedQuery<T> jpaQuery =
-                getEntityManager().createQuery(queryString, getDomainClass());
+        int deleted =
+                applyQuerySettings(
+                        getEntityManager().createQuery(
+                                getDeleteAllQueryString())).executeUpdate();
 
-        return readPage(jpaQuery, pageable, null);
+        if (materializedCounts != null) {
+            materializedCounts.removed(deleted);
+        }
     }
 
 
-    /**
-     * @param query
-     * @param spec
-     * @param pageable
-     * @return
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.synyx.jpa.support.GenericDao#readByPrimaryKey(java.io.Serializable)
      */
-    private Page<T> readPage(final TypedQuery<T> query,
-            final Pageable pageable, final Specification<T> spec) {
+    public T readByPrimaryKey(final PK primaryKey) {
 
-        query.setFirstResult(pageable.getFirstItem());
-        query.setMaxResults(pageable.getPageSize());
+        Assert.notNull(primaryKey, "The given primaryKey must not be null!");
 
-        return new PageImpl<T>(query.getResultList(), pageable, count(spec));
+        Map<String, Object> hints =
+                new HashMap<String, Object>(
+                        getReadOnlyHints(getEntityManager()));
+        hints.putAll(getQueryTimeoutHints(getEntityManager()));
+
+        return hints.isEmpty() ? getEntityManager().find(getDomainClass(),
+                primaryKey) : getEntityManager().find(getDomainClass(),
+                primaryKey, hints);
     }
 
 
-    /**
-     * Creates a new {@link TypedQuery} from the given {@link Specification}.
+    /*
+     * (non-Javadoc)
      * 
-     * @param spec can be {@literal null}
-     * @param pageable can be {@literal null}
-     * @return
+     * @see org.synyx.hades.dao.GenericDao#exists(java.io.Serializable)
      */
-    private TypedQuery<T> getQuery(Specification<T> spec, Pageable pageable) {
-
-        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
-        CriteriaQuery<T> query = builder.createQuery(getDomainClass());
+    public boolean exists(final PK primaryKey) {
 
-        Root<T> root = applySpecificationToCriteria(spec, query);
-        query.select(root);
+        Assert.notNull(primaryKey, "The given primary key must not be null!");
 
-        if (pageable != null) {
-            query.orderBy(toOrders(pageable.getSort(), root, builder));
+        if (!hasSingleIdAttribute()) {
+            return null != readByPrimaryKey(primaryKey);
         }
 
-        return getEntityManager().createQuery(query);
+        TypedQuery<Long> query =
+                applyQuerySettings(getEntityManager().createQuery(
+                        getExistsQueryString(), Long.class));
+        query.setParameter("id", primaryKey);
+
+        return query.getSingleResult() > 0;
     }
 
 
-    /**
-     * Creates a new count query for the given {@link Specification}.
+    /*
+     * (non-Javadoc)
      * 
-     * @param spec can be {@literal null}.
-     * @return
+     * @see
+     * org.synyx.hades.dao.GenericDao#exists(org.synyx.hades.domain.Specification
+     * )
      */
-    private TypedQuery<Long> getCountQuery(Specification<T> spec) {
+    public boolean exists(Specification<T> spec) {
 
-        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
-        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        CriteriaQuery<Object> query =
+                getEntityManager().getCriteriaBuilder().createQuery(
+                        Object.class);
 
         Root<T> root = applySpecificationToCriteria(spec, query);
-        query.select(builder.count(root)).distinct(true);
+        query.select(hasSingleIdAttribute() ? getIdPath(root) : root);
 
-        return getEntityManager().createQuery(query);
+        return !applyQuerySettings(getEntityManager().createQuery(query))
+                .setMaxResults(1).getResultList().isEmpty();
     }
 
 
-    /**
-     * Applies the given {@link Specification} to the given
-     * {@link CriteriaQuery}.
+    /*
+     * (non-Javadoc)
      * 
-     * @param spec can be {@literal null}
-     * @param query
-     * @return
+     * @see org.synyx.hades.dao.GenericDao#existingIds(java.util.Collection)
      */
-    private <S> Root<T> applySpecificationToCriteria(Specification<T> spec,
-            CriteriaQuery<S> query) {
+    @SuppressWarnings("unchecked")
+    public Set<PK> existingIds(Collection<PK> primaryKeys) {
 
-        Assert.notNull(query);
-        Root<T> root = query.from(getDomainClass());
+        Set<PK> result = new HashSet<PK>();
 
-        if (spec == null) {
-            return root;
+        if (null == primaryKeys || primaryKeys.isEmpty()) {
+            return result;
         }
 
-        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
-        Predicate predicate = spec.toPredicate(root, query, builder);
+        if (!hasSingleIdAttribute()) {
 
-        if (predicate != null) {
-            query.where(predicate);
-        }
+            for (PK primaryKey : primaryKeys) {
+                if (exists(primaryKey)) {
+                    result.add(primaryKey);
+                }
+            }
+
+            return result;
+        }
+
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+
+        for (List<PK> chunk : chunk(new LinkedHashSet<PK>(primaryKeys))) {
+
+            CriteriaQuery<Object> query = builder.createQuery(Object.class);
+
+            Path<Object> id = getIdPath(query.from(getDomainClass()));
+            query.select(id).where(toIdPredicate(id, chunk, builder));
+
+            for (Object primaryKey : applyQuerySettings(
+                    getEntityManager().createQuery(query)).getResultList()) {
+                result.add((PK) primaryKey);
+            }
+        }
+
+        return result;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.GenericDao#readAll(java.lang.Iterable)
+     */
+    public List<T> readAll(Iterable<PK> primaryKeys) {
+
+        List<T> result = new ArrayList<T>();
+
+        if (null == primaryKeys) {
+            return result;
+        }
+
+        List<PK> ids = new ArrayList<PK>();
+        Map<Object, T> entities = new HashMap<Object, T>();
+        Set<PK> misses = new LinkedHashSet<PK>();
+
+        EntityManager em = getEntityManager();
+        PersistenceProvider provider =
+                PersistenceProvider.fromEntityManager(em);
+
+        for (PK primaryKey : primaryKeys) {
+
+            Assert.notNull(primaryKey, "Primary keys must not be null!");
+            ids.add(primaryKey);
+
+            if (entities.containsKey(primaryKey)) {
+                continue;
+            }
+
+            Object entity =
+                    provider.findInPersistenceContext(em, getDomainClass(),
+                            primaryKey);
+
+            if (null == entity) {
+                misses.add(primaryKey);
+            } else {
+                entities.put(primaryKey, getDomainClass().cast(entity));
+            }
+        }
+
+        for (List<PK> chunk : chunk(misses)) {
+            entities.putAll(readByPrimaryKeys(chunk));
+        }
+
+        for (PK primaryKey : ids) {
+
+            T entity = entities.get(primaryKey);
+
+            if (null != entity) {
+                result.add(entity);
+            }
+        }
+
+        return result;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.synyx.jpa.support.GenericDao#readAll()
+     */
+    public List<T> readAll() {
+
+        return applyReadSettings(getReadAllQuery(), getEntityManager())
+                .getResultList();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
+     * )
+     */
+    public List<T> readAll(Specification<T> spec) {
+
+        return getQuery(spec, null).getResultList();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
+     * , org.synyx.hades.domain.FetchPlan)
+     */
+    public List<T> readAll(Specification<T> spec, FetchPlan fetchPlan) {
+
+        Assert.notNull(fetchPlan, "Fetch plan must not be null!");
+
+        return getQuery(spec, null, fetchPlan, getEntityManager())
+                .getResultList();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
+     * , java.lang.Class)
+     */
+    @SuppressWarnings("unchecked")
+    public <P> List<P> readAll(Specification<T> spec, Class<P> type) {
+
+        Projection projection = Projection.of(type, getDomainClass());
+
+        Assert.notNull(projection, String.format(
+                "%s is not a projection of %s!", type, getDomainClass()));
+        Assert.isTrue(!BeanUtils.isSimpleValueType(type), String.format(
+                "Cannot select %s without a property to select!", type));
+        Assert.isTrue(projection.hasProperties(), String.format(
+                "Cannot derive the properties to select for %s! Annotate its "
+                        + "constructor parameters with @%s or compile it with "
+                        + "debug information.", type,
+                ProjectedProperty.class.getSimpleName()));
+
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Object> query = builder.createQuery(Object.class);
+        Root<T> root = applySpecificationToCriteria(spec, query);
+        List<Selection<?>> selections = projection.getSelections(root);
+
+        if (type.isInterface()) {
+            query.multiselect(selections);
+        } else {
+            query.select(builder.construct(type, selections
+                    .toArray(new Selection<?>[selections.size()])));
+        }
+
+        return (List<P>) projection.convert(applyQuerySettings(
+                getEntityManager().createQuery(query)).getResultList(), null);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
+     * , org.synyx.hades.domain.Pageable)
+     */
+    public Page<T> readAll(Specification<T> spec, Pageable pageable) {
+
+        if (spec == null) {
+            return readAll(pageable);
+        }
+
+        TypedQuery<T> query = getQuery(spec, pageable);
+
+        return pageable == null ? new PageImpl<T>(query.getResultList())
+                : readPage(query, pageable, spec);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Specification
+     * , org.synyx.hades.domain.Pageable, org.synyx.hades.domain.FetchPlan)
+     */
+    public Page<T> readAll(Specification<T> spec, Pageable pageable,
+            FetchPlan fetchPlan) {
+
+        Assert.notNull(fetchPlan, "Fetch plan must not be null!");
+
+        if (pageable == null) {
+            return new PageImpl<T>(readAll(spec, fetchPlan));
+        }
+
+        Page<T> page =
+                readPage(getQuery(spec, pageable, fetchPlan,
+                        getEntityManager()), pageable, spec);
+
+        EntityManager em = getEntityManager();
+
+        for (Query query : QueryUtils.createFetchQueries(em, getDomainClass(),
+                page.asList(), fetchPlan.getAttributes())) {
+            applyReadSettings(query, em).getResultList();
+        }
+
+        return page;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readSlice(org.synyx.hades.domain.Specification
+     * , org.synyx.hades.domain.Pageable)
+     */
+    public Slice<T> readSlice(Specification<T> spec, Pageable pageable) {
+
+        Assert.notNull(pageable, "Pageable must not be null!");
+
+        return readSlice(getQuery(spec, pageable), pageable);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readSlices(org.synyx.hades.domain.Specification
+     * , org.synyx.hades.domain.Pageable, org.synyx.hades.dao.SliceCallback)
+     */
+    public void readSlices(final Specification<T> spec, Pageable pageable,
+            SliceCallback<T> callback) {
+
+        Assert.notNull(pageable, "Pageable must not be null!");
+        Assert.isTrue(!(pageable instanceof KeysetPageRequest),
+                "Keyset page requests are not supported for pipelined reads!");
+        Assert.notNull(callback, "Callback must not be null!");
+
+        Executor executor =
+                pipelineExecutor == null ? new SimpleAsyncTaskExecutor(
+                        "hades-slice-pipeline-") : pipelineExecutor;
+
+        SlicePipeline<T> pipeline =
+                new SlicePipeline<T>(getEntityManager()
+                        .getEntityManagerFactory(), executor,
+                        pipelineLookAhead);
+
+        pipeline.run(pageable, new SliceReader<T>() {
+
+            public Slice<T> readSlice(EntityManager em, Pageable pageable) {
+
+                return GenericJpaDao.this.readSlice(
+                        getQuery(spec, pageable, em), pageable);
+            }
+        }, callback);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#readAllInBatches(org.synyx.hades.domain.
+     * Specification, org.synyx.hades.dao.EntityCallback)
+     */
+    public void readAllInBatches(Specification<T> spec,
+            EntityCallback<T> callback) {
+
+        Assert.notNull(callback, "Callback must not be null!");
+
+        EntityManager em = getEntityManager();
+        int chunkSize =
+                fetchSize == null ? DEFAULT_STREAMING_CHUNK_SIZE : fetchSize;
+
+        CloseableIterator<T> iterator =
+                PersistenceProvider.fromEntityManager(em).executeWithCursor(
+                        getQuery(spec, null), chunkSize);
+
+        List<T> processed = new ArrayList<T>(chunkSize);
+
+        try {
+
+            while (iterator.hasNext()) {
+
+                T entity = iterator.next();
+                callback.doWith(entity);
+                processed.add(entity);
+
+                if (processed.size() == chunkSize) {
+                    flushAndDetach(processed);
+                }
+            }
+
+            flushAndDetach(processed);
+
+        } finally {
+            iterator.close();
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.GenericDao#readAll(org.synyx.hades.domain.Sort)
+     */
+    public List<T> readAll(final Sort sort) {
+
+        String queryString =
+                QueryUtils.applySorting(getReadAllQueryString(), sort);
+        TypedQuery<T> query =
+                getEntityManager().createQuery(queryString, getDomainClass());
+
+        return (null == sort) ? readAll() : applyReadSettings(query,
+                getEntityManager()).getResultList();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.hades.dao.GenericDao#readAll(org.synyx.hades.hades.dao
+     * .Pageable)
+     */
+    public Page<T> readAll(final Pageable pageable) {
+
+        if (null == pageable) {
+
+            return new PageImpl<T>(readAll());
+        }
+
+        if (pageable instanceof KeysetPageRequest) {
+            return readPage(getQuery(null, pageable), pageable, null);
+        }
+
+        if (pagePrefetcher == null) {
+            return readPage(pageable, getReadAllQueryString());
+        }
+
+        Page<T> page =
+                pagePrefetcher.getPage(PagePrefetcher.createKey(pageable));
+
+        if (page == null) {
+            page = readPage(pageable, getReadAllQueryString());
+        }
+
+        prefetchNextPage(page, pageable);
+
+        return page;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.hades.jpa.support.GenericDao#count()
+     */
+    public Long count() {
+
+        if (isMaterialized(null)) {
+            return countMaterialized(null);
+        }
+
+        Long cached = getCachedCount(null, 0);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        return cacheCount(null, 0, executeCount(null));
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.GenericDao#count(org.synyx.hades.domain.Specification
+     * )
+     */
+    public Long count(Specification<T> spec) {
+
+        if (isMaterialized(spec)) {
+            return countMaterialized(spec);
+        }
+
+        Long cached = getCachedCount(spec, 0);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        return cacheCount(spec, 0, executeCount(spec));
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.synyx.jpa.support.GenericDao#save(java.lang.Object)
+     */
+    public T save(final T entity) {
+
+        evictCaches();
+
+        if (getIsNewStrategy().isNew(entity)) {
+            getEntityManager().persist(entity);
+
+            if (materializedCounts != null) {
+                materializedCounts.persisted(entity);
+            }
+
+            return entity;
+        } else {
+
+            EntityManager em = getEntityManager();
+
+            Assert.isTrue(!PersistenceProvider.fromEntityManager(em)
+                    .isReadOnly(em, entity),
+                    "Entity was loaded read-only, changes to it cannot be "
+                            + "saved! Load it without read-only hints, e.g. "
+                            + "using a query method annotated with "
+                            + "@ReadOnly(false), to update it.");
+
+            if (materializedCounts != null) {
+                materializedCounts.merged(entity);
+            }
+
+            return em.merge(entity);
+        }
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.hades.jpa.support.GenericDao#saveAndFlush(org.synyx.hades
+     * .hades.jpa.support.Entity)
+     */
+    public T saveAndFlush(final T entity) {
+
+        T result = save(entity);
+        flush();
+
+        return result;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.dao.GenericDao#saveAll(java.util.List)
+     */
+    public List<T> save(Collection<? extends T> entities) {
+
+        List<T> result = new ArrayList<T>();
+
+        if (entities == null) {
+            return result;
+        }
+
+        for (T entity : entities) {
+
+            result.add(save(entity));
+
+            if (batchSize > 0 && result.size() % batchSize == 0) {
+                flushAndClear();
+            }
+        }
+
+        if (batchSize > 0 && result.size() % batchSize != 0) {
+            flushAndClear();
+        }
+
+        return result;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.hades.jpa.support.GenericDao#flush()
+     */
+    public void flush() {
+
+        getEntityManager().flush();
+    }
+
+
+    /**
+     * Flushes the current chunk of entities to the database and detaches all
+     * entities from the {@link EntityManager} afterwards.
+     */
+    private void flushAndClear() {
+
+        EntityManager em = getEntityManager();
+
+        em.flush();
+        em.clear();
+    }
+
+
+    /**
+     * Flushes the changes made to the given entities and detaches them from
+     * the {@link EntityManager}. Clears the given {@link List} afterwards.
+     * 
+     * @param entities
+     */
+    private void flushAndDetach(List<T> entities) {
+
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        EntityManager em = getEntityManager();
+        em.flush();
+
+        for (T entity : entities) {
+            if (em.contains(entity)) {
+                em.detach(entity);
+            }
+        }
+
+        entities.clear();
+    }
+
+
+    /**
+     * Reads a page of entities for the given JPQL query.
+     * 
+     * @param pageable
+     * @param query
+     * @return a page of entities for the given JPQL query
+     */
+    protected Page<T> readPage(final Pageable pageable, final String query) {
+
+        String queryString = QueryUtils.applySorting(query, pageable.getSort());
+        TypedQuery<T> jpaQuery =
+                getEntityManager().createQuery(queryString, getDomainClass());
+
+        return readPage(applyReadSettings(jpaQuery, getEntityManager()),
+                pageable, null);
+    }
+
+
+    /**
+     * Reads the page requested by the given {@link Pageable} using the given
+     * query. The count query is only executed if the total cannot be derived
+     * from the content read.
+     * 
+     * @param query
+     * @param spec
+     * @param pageable
+     * @return
+     */
+    private Page<T> readPage(final TypedQuery<T> query,
+            final Pageable pageable, final Specification<T> spec) {
+
+        query.setFirstResult(pageable.getFirstItem());
+        query.setMaxResults(pageable.getPageSize());
+
+        final int countCap = PageableExecutionUtils.getCountCap(pageable, 0);
+
+        TotalSupplier totalSupplier = new TotalSupplier() {
+
+            public long getTotal() {
+
+                return countCap > 0 ? countCapped(spec, countCap) : count(spec);
+            }
+        };
+
+        return lazyCountQueries ? PageableExecutionUtils.getLazyPage(
+                query.getResultList(), pageable, countCap, totalSupplier,
+                getEntityManager(), skippedCountQueries)
+                : PageableExecutionUtils.getPage(query.getResultList(),
+                        pageable, countCap, totalSupplier,
+                        skippedCountQueries);
+    }
+
+
+    /**
+     * Counts the entities matching the given {@link Specification} but stops
+     * counting once more than the given cap were found. Selects the
+     * identifiers only and limits the result to {@code countCap + 1} rows so
+     * that the database can stop scanning early.
+     * 
+     * @param spec can be {@literal null}
+     * @param countCap
+     * @return the number of entities but at most {@code countCap + 1}
+     */
+    private long countCapped(Specification<T> spec, int countCap) {
+
+        Long cached = getCachedCount(spec, countCap);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        CriteriaQuery<Object> query =
+                getEntityManager().getCriteriaBuilder().createQuery(
+                        Object.class);
+
+        Root<T> root = applySpecificationToCriteria(spec, query);
+        query.select(hasSingleIdAttribute() ? getIdPath(root) : root);
+
+        if (hasToManyJoins(query)) {
+            query.distinct(true);
+        }
+
+        return cacheCount(spec, countCap, applyQuerySettings(
+                getEntityManager().createQuery(query)).setFirstResult(0)
+                .setMaxResults(countCap + 1).getResultList().size());
+    }
+
+
+    /**
+     * Returns the cached count for the given {@link Specification} and count
+     * cap or {@literal null} if none cached or no {@link CountCache}
+     * configured.
+     * 
+     * @param spec can be {@literal null}
+     * @param countCap
+     * @return
+     */
+    private Long getCachedCount(Specification<T> spec, int countCap) {
+
+        return isCacheable(spec) ? countCache.get(CountCache.createKey(spec,
+                countCap)) : null;
+    }
+
+
+    /**
+     * Caches the given count for the given {@link Specification} and count cap
+     * if a {@link CountCache} is configured.
+     * 
+     * @param spec can be {@literal null}
+     * @param countCap
+     * @param count
+     * @return the given count
+     */
+    private Long cacheCount(Specification<T> spec, int countCap, long count) {
+
+        if (isCacheable(spec)) {
+            countCache.put(CountCache.createKey(spec, countCap), count);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Returns whether counts for the given {@link Specification} can be
+     * cached, i.e. whether a {@link CountCache} is configured and the
+     * {@link Specification} is {@literal null} or overrides
+     * {@link Object#equals(Object)}.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    private boolean isCacheable(Specification<T> spec) {
+
+        if (countCache == null) {
+            return false;
+        }
+
+        return spec == null
+                || !Object.class.equals(ReflectionUtils.findMethod(
+                        spec.getClass(), "equals", Object.class)
+                        .getDeclaringClass());
+    }
+
+
+    /**
+     * Executes the count query for the given {@link Specification}.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    private Long executeCount(Specification<T> spec) {
+
+        if (spec == null) {
+            return applyQuerySettings(
+                    getEntityManager().createQuery(getCountQueryString(),
+                            Long.class)).getSingleResult();
+        }
+
+        return getCountQuery(spec).getSingleResult();
+    }
+
+
+    /**
+     * Returns whether the count for the given {@link Specification} is
+     * materialized.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    private boolean isMaterialized(Specification<T> spec) {
+
+        return materializedCounts != null
+                && materializedCounts.isMaterialized(spec);
+    }
+
+
+    /**
+     * Returns the materialized count for the given {@link Specification}.
+     * Executes the count query and reconciles the counter with its result if
+     * the counter cannot be used.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    private Long countMaterialized(Specification<T> spec) {
+
+        Long count = materializedCounts.getCount(spec);
+
+        if (count != null) {
+            return count;
+        }
+
+        long version = materializedCounts.getVersion(spec);
+        count = executeCount(spec);
+        materializedCounts.reconcile(spec, count, version);
+
+        return count;
+    }
+
+
+    /**
+     * Registers the given entity as removed with the
+     * {@link MaterializedCounts} if configured.
+     * 
+     * @param entity
+     */
+    private void removed(T entity) {
+
+        if (materializedCounts != null) {
+            materializedCounts.removed(entity);
+        }
+    }
+
+
+    /**
+     * Removes all cached counts and prefetched pages as the DAO is about to
+     * change entities.
+     */
+    private void evictCaches() {
+
+        if (countCache != null) {
+            countCache.evict();
+        }
+
+        if (pagePrefetcher != null) {
+            pagePrefetcher.evict();
+        }
+    }
+
+
+    /**
+     * Hands the page following the given one to the {@link PagePrefetcher} if
+     * it can be prefetched.
+     * 
+     * @param page
+     * @param pageable
+     */
+    private void prefetchNextPage(Page<T> page, Pageable pageable) {
+
+        Pageable next = PagePrefetcher.getNextPageable(page, pageable);
+
+        if (next == null) {
+            return;
+        }
+
+        final EntityManagerFactory factory =
+                getEntityManager().getEntityManagerFactory();
+
+        pagePrefetcher.prefetch(PagePrefetcher.createKey(next), next, page,
+                new ContentReader() {
+
+                    public List<?> readContent(Pageable pageable) {
+
+                        String query =
+                                QueryUtils.applySorting(
+                                        getReadAllQueryString(),
+                                        pageable.getSort());
+                        EntityManager em = factory.createEntityManager();
+
+                        try {
+                            return applyReadSettings(
+                                    em.createQuery(query, getDomainClass()), em)
+                                    .setFirstResult(pageable.getFirstItem())
+                                    .setMaxResults(pageable.getPageSize())
+                                    .getResultList();
+                        } finally {
+                            em.close();
+                        }
+                    }
+                });
+    }
+
+
+    /**
+     * Creates a new {@link TypedQuery} from the given {@link Specification}. A
+     * {@link KeysetPageRequest} will restrict the query to the entities
+     * following the last one seen.
+     * 
+     * @param spec can be {@literal null}
+     * @param pageable can be {@literal null}
+     * @return
+     */
+    private TypedQuery<T> getQuery(Specification<T> spec, Pageable pageable) {
+
+        return getQuery(spec, pageable, getEntityManager());
+    }
+
+
+    /**
+     * Creates a new {@link TypedQuery} from the given {@link Specification}
+     * using the given {@link EntityManager}.
+     * 
+     * @param spec can be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param em must not be {@literal null}
+     * @return
+     */
+    private TypedQuery<T> getQuery(Specification<T> spec, Pageable pageable,
+            EntityManager em) {
+
+        return getQuery(spec, pageable, null, em);
+    }
+
+
+    /**
+     * Creates a new {@link TypedQuery} from the given {@link Specification}
+     * using the given {@link EntityManager} and fetching the associations of
+     * the given {@link FetchPlan}. Collections are only fetched if no page is
+     * requested, the query selects distinct entities then.
+     * 
+     * @param spec can be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param fetchPlan can be {@literal null}
+     * @param em must not be {@literal null}
+     * @return
+     */
+    private TypedQuery<T> getQuery(Specification<T> spec, Pageable pageable,
+            FetchPlan fetchPlan, EntityManager em) {
+
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = builder.createQuery(getDomainClass());
+
+        Root<T> root = applySpecificationToCriteria(spec, query, builder);
+        query.select(root);
+
+        if (fetchPlan != null) {
+
+            for (String attribute : fetchPlan) {
+
+                boolean collection =
+                        QueryUtils.isCollectionAttribute(em, getDomainClass(),
+                                attribute);
+
+                if (!collection || pageable == null) {
+                    root.fetch(attribute, JoinType.LEFT);
+                    query.distinct(query.isDistinct() || collection);
+                }
+            }
+        }
+
+        if (pageable != null) {
+            query.orderBy(toOrders(pageable.getSort(), root, builder));
+        }
+
+        if (pageable instanceof KeysetPageRequest
+                && ((KeysetPageRequest) pageable).hasLastValues()) {
+
+            Predicate keyset =
+                    toKeysetPredicate((KeysetPageRequest) pageable, root,
+                            builder);
+            Predicate restriction = query.getRestriction();
+
+            query.where(restriction == null ? keyset : builder.and(
+                    restriction, keyset));
+        }
+
+        return applyReadSettings(em.createQuery(query), em);
+    }
+
+
+    /**
+     * Applies the read-only hints of the persistence provider to the given
+     * query if the DAO is configured to load entities read-only as well as
+     * the hints to apply the configured JDBC fetch size. Applies the
+     * configured {@link FlushModeType} and query timeout as well.
+     * 
+     * @param query
+     * @param em the {@link EntityManager} the query was created with
+     * @return
+     */
+    private <Q extends Query> Q applyReadSettings(Q query, EntityManager em) {
+
+        for (Entry<String, Object> hint : getReadOnlyHints(em).entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        String fetchSizeHint =
+                PersistenceProvider.fromEntityManager(em).getFetchSizeHint();
+
+        for (Entry<String, Object> hint : QueryUtils.getFetchSizeHints(
+                fetchSize, fetchSizeHint).entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        return applyQuerySettings(query);
+    }
+
+
+    /**
+     * Applies the configured {@link FlushModeType} and query timeout to the
+     * given query.
+     * 
+     * @param query
+     * @return
+     */
+    private <Q extends Query> Q applyQuerySettings(Q query) {
+
+        if (flushMode != null) {
+            query.setFlushMode(flushMode);
+        }
+
+        for (Entry<String, Object> hint : getQueryTimeoutHints(
+                getEntityManager()).entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Returns the hints to apply the configured query timeout with using the
+     * persistence provider of the given {@link EntityManager}.
+     * 
+     * @param em
+     * @return
+     */
+    private Map<String, Object> getQueryTimeoutHints(EntityManager em) {
+
+        return queryTimeout == null ? Collections.<String, Object> emptyMap()
+                : PersistenceProvider.fromEntityManager(em)
+                        .getQueryTimeoutHints(queryTimeout);
+    }
+
+
+    /**
+     * Returns the read-only hints of the persistence provider of the given
+     * {@link EntityManager} or an empty {@link Map} if the DAO shall not load
+     * entities read-only.
+     * 
+     * @param em
+     * @return
+     */
+    private Map<String, Object> getReadOnlyHints(EntityManager em) {
+
+        return readOnlyQueries ? PersistenceProvider.fromEntityManager(em)
+                .getReadOnlyHints() : Collections.<String, Object> emptyMap();
+    }
+
+
+    /**
+     * Reads the {@link Slice} requested by the given {@link Pageable} using
+     * the given query. Reads one additional entity to find out whether there
+     * is a following slice.
+     * 
+     * @param query
+     * @param pageable
+     * @return
+     */
+    private Slice<T> readSlice(TypedQuery<T> query, Pageable pageable) {
+
+        query.setFirstResult(pageable.getFirstItem());
+        query.setMaxResults(pageable.getPageSize() + 1);
+
+        List<T> content = query.getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+
+        return new SliceImpl<T>(hasNext ? content.subList(0,
+                pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+
+    /**
+     * Creates a new count query for the given {@link Specification}.
+     * 
+     * @param spec can be {@literal null}.
+     * @return
+     */
+    private TypedQuery<Long> getCountQuery(Specification<T> spec) {
+
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+
+        Root<T> root = applySpecificationToCriteria(spec, query);
+
+        // Distinct has to go into the count expression as selecting distinct
+        // counts would still count duplicates
+        if (query.isDistinct() || hasToManyJoins(query)) {
+            query.select(builder.countDistinct(root));
+        } else {
+            query.select(builder.count(root));
+        }
+
+        return applyQuerySettings(getEntityManager().createQuery(query));
+    }
+
+
+    /**
+     * Returns whether any root of the given {@link CriteriaQuery} joins or
+     * fetches a collection valued association, directly or transitively. Only
+     * then a count query can see duplicates and has to count distinct
+     * entities.
+     * 
+     * @param query
+     * @return
+     */
+    private static boolean hasToManyJoins(CriteriaQuery<?> query) {
+
+        for (Root<?> root : query.getRoots()) {
+            if (hasToManyJoins(root)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns whether the given {@link From} joins or fetches a collection
+     * valued association, directly or transitively.
+     * 
+     * @param from
+     * @return
+     */
+    private static boolean hasToManyJoins(From<?, ?> from) {
+
+        for (Join<?, ?> join : from.getJoins()) {
+            if (join.getAttribute().isCollection() || hasToManyJoins(join)) {
+                return true;
+            }
+        }
+
+        for (Fetch<?, ?> fetch : from.getFetches()) {
+            if (fetch.getAttribute().isCollection()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Applies the given {@link Specification} to the given
+     * {@link CriteriaQuery}.
+     * 
+     * @param spec can be {@literal null}
+     * @param query
+     * @return
+     */
+    private <S> Root<T> applySpecificationToCriteria(Specification<T> spec,
+            CriteriaQuery<S> query) {
+
+        return applySpecificationToCriteria(spec, query, getEntityManager()
+                .getCriteriaBuilder());
+    }
+
+
+    /**
+     * Applies the given {@link Specification} to the given
+     * {@link CriteriaQuery} using the given {@link CriteriaBuilder}.
+     * 
+     * @param spec can be {@literal null}
+     * @param query
+     * @param builder
+     * @return
+     */
+    private <S> Root<T> applySpecificationToCriteria(Specification<T> spec,
+            CriteriaQuery<S> query, CriteriaBuilder builder) {
+
+        Assert.notNull(query);
+        Root<T> root = query.from(getDomainClass());
+
+        if (spec == null) {
+            return root;
+        }
+
+        Predicate predicate = spec.toPredicate(root, query, builder);
+
+        if (predicate != null) {
+            query.where(predicate);
+        }
 
         return root;
     }
 
 
+    /**
+     * Deletes the entities with the given ids using bulk delete queries
+     * without loading them. Pending changes are flushed and instances managed
+     * by the persistence context are detached before.
+     * 
+     * @param ids
+     */
+    private void deleteByIds(Collection<Object> ids) {
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        EntityManager em = getEntityManager();
+        PersistenceProvider provider =
+                PersistenceProvider.fromEntityManager(em);
+
+        em.flush();
+
+        for (Object id : ids) {
+
+            Object entity =
+                    provider.findInPersistenceContext(em, getDomainClass(), id);
+
+            if (null != entity) {
+                em.detach(entity);
+            }
+        }
+
+        String idAttribute = getIdAttribute().getName();
+        int deleted = 0;
+
+        for (List<Object> chunk : chunk(ids)) {
+            deleted +=
+                    applyQuerySettings(
+                            QueryUtils.applyAndBindIds(
+                                    getDeleteAllQueryString(), idAttribute,
+                                    chunk, hasCompoundId(), em))
+                            .executeUpdate();
+        }
+
+        if (materializedCounts != null) {
+            materializedCounts.removed(deleted);
+        }
+    }
+
+
+    /**
+     * Reads the entities with the given ids from the database and returns them
+     * keyed by their ids.
+     * 
+     * @param primaryKeys
+     * @return
+     */
+    private Map<Object, T> readByPrimaryKeys(Collection<PK> primaryKeys) {
+
+        Map<Object, T> result = new HashMap<Object, T>();
+
+        if (!hasSingleIdAttribute()) {
+
+            for (PK primaryKey : primaryKeys) {
+
+                T entity = readByPrimaryKey(primaryKey);
+
+                if (null != entity) {
+                    result.put(primaryKey, entity);
+                }
+            }
+
+            return result;
+        }
+
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+
+        Root<T> root = query.from(getDomainClass());
+        Path<Object> id = getIdPath(root);
+        query.multiselect(id, root).where(
+                toIdPredicate(id, primaryKeys, builder));
+
+        for (Object[] row : applyQuerySettings(
+                getEntityManager().createQuery(query)).getResultList()) {
+            result.put(row[0], getDomainClass().cast(row[1]));
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Splits up the given ids into chunks not exceeding the configured in
+     * clause limit.
+     * 
+     * @param ids
+     * @return
+     */
+    private <S> List<List<S>> chunk(Collection<S> ids) {
+
+        List<List<S>> result = new ArrayList<List<S>>();
+        List<S> chunk = new ArrayList<S>();
+
+        for (S id : ids) {
+
+            if (chunk.size() == inClauseLimit) {
+                result.add(chunk);
+                chunk = new ArrayList<S>();
+            }
+
+            chunk.add(id);
+        }
+
+        if (!chunk.isEmpty()) {
+            result.add(chunk);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Returns the {@link Path} pointing to the id attribute of the given
+     * {@link Root}.
+     * 
+     * @param root
+     * @return
+     */
+    private Path<Object> getIdPath(Root<T> root) {
+
+        return root.get(getIdAttribute().getName());
+    }
+
+
+    /**
+     * Creates a {@link Predicate} matching the given id {@link Path} against
+     * all of the given ids. Uses an {@literal in} clause for simple ids and
+     * falls back to or-concatenated equality checks for compound ones.
+     * 
+     * @param id
+     * @param ids
+     * @param builder
+     * @return
+     */
+    private Predicate toIdPredicate(Path<Object> id, Collection<?> ids,
+            CriteriaBuilder builder) {
+
+        if (!hasCompoundId()) {
+            return id.in(ids);
+        }
+
+        List<Predicate> predicates = new ArrayList<Predicate>();
+
+        for (Object value : ids) {
+            predicates.add(builder.equal(id, value));
+        }
+
+        return builder.or(predicates.toArray(new Predicate[predicates.size()]));
+    }
+
+
+    /**
+     * Creates a {@link Predicate} selecting the entities sorting after the
+     * last one seen as described by the given {@link KeysetPageRequest}. As
+     * JPQL does not support row value comparisons the predicate is expanded to
+     * {@code (a > ?) or (a = ? and id > ?)}.
+     * 
+     * @param pageable
+     * @param root
+     * @param builder
+     * @return
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Predicate toKeysetPredicate(KeysetPageRequest pageable,
+            Root<T> root, CriteriaBuilder builder) {
+
+        Object[] values = pageable.getLastValues();
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        List<Predicate> equalities = new ArrayList<Predicate>();
+        int index = 0;
+
+        for (Property property : pageable.getSort()) {
+
+            Expression<Comparable> expression =
+                    root.<Comparable> get(property.getName());
+            Comparable value = (Comparable) values[index++];
+
+            List<Predicate> parts = new ArrayList<Predicate>(equalities);
+            parts.add(property.isAscending() ? builder.greaterThan(expression,
+                    value) : builder.lessThan(expression, value));
+
+            predicates.add(builder.and(parts.toArray(new Predicate[parts
+                    .size()])));
+            equalities.add(builder.equal(expression, value));
+        }
+
+        return builder.or(predicates.toArray(new Predicate[predicates.size()]));
+    }
+
+
     private List<Order> toOrders(Sort sort, Root<T> root, CriteriaBuilder cb) {
 
         List<Order> orders = new ArrayList<Order>();
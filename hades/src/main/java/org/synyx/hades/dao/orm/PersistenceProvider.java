@@ -15,13 +15,38 @@
  */
 package org.synyx.hades.dao.orm;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
 import org.apache.openjpa.persistence.OpenJPAQuery;
+import org.eclipse.persistence.jpa.JpaEntityManager;
 import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.CursoredStream;
+import org.hibernate.EntityMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.ejb.HibernateQuery;
+import org.hibernate.engine.EntityEntry;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.PersistenceContext;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.engine.Status;
+import org.hibernate.persister.entity.EntityPersister;
 import org.synyx.hades.dao.query.QueryExtractor;
+import org.synyx.hades.dao.query.QueryUtils;
 import org.synyx.hades.util.ClassUtils;
 
 
@@ -35,7 +60,8 @@ enum PersistenceProvider implements QueryExtractor {
     /**
      * Hibernate persistence provider.
      */
-    HIBERNATE("org.hibernate.ejb.HibernateEntityManager") {
+    HIBERNATE("org.hibernate.ejb.HibernateEntityManager",
+            "org.hibernate.ejb.HibernatePersistence") {
 
         public String extractQueryString(Query query) {
 
@@ -56,35 +82,368 @@ enum PersistenceProvider implements QueryExtractor {
 
             return "*";
         }
+
+
+        @Override
+        public boolean supportsSubqueriesInSelectClause() {
+
+            return true;
+        }
+
+
+        /**
+         * Enables JDBC batching and orders inserts by entity type to allow
+         * Hibernate to batch statements for entity graphs as well.
+         */
+        @Override
+        public Map<String, Object> getBatchWritingProperties(int batchSize) {
+
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("hibernate.jdbc.batch_size",
+                    String.valueOf(batchSize));
+            properties.put("hibernate.order_inserts", "true");
+            properties.put("hibernate.order_updates", "true");
+
+            return properties;
+        }
+
+
+        /**
+         * Loads entities without keeping a snapshot for dirty checking.
+         */
+        @Override
+        public Map<String, Object> getReadOnlyHints() {
+
+            Map<String, Object> hints = new HashMap<String, Object>();
+            hints.put("org.hibernate.readOnly", true);
+
+            return hints;
+        }
+
+
+        @Override
+        public String getFetchSizeHint() {
+
+            return "org.hibernate.fetchSize";
+        }
+
+
+        @Override
+        public Object findInPersistenceContext(EntityManager em,
+                Class<?> type, Object id) {
+
+            SessionImplementor session = (SessionImplementor) em.getDelegate();
+            EntityPersister persister =
+                    session.getFactory().getEntityPersister(type.getName());
+            PersistenceContext context = session.getPersistenceContext();
+
+            Object entity =
+                    context.getEntity(new EntityKey((Serializable) id,
+                            persister, EntityMode.POJO));
+
+            if (null == entity) {
+                return null;
+            }
+
+            EntityEntry entry = context.getEntry(entity);
+            boolean managed =
+                    entry != null && Status.MANAGED.equals(entry.getStatus());
+
+            return managed ? entity : null;
+        }
+
+
+        @Override
+        public boolean isReadOnly(EntityManager em, Object entity) {
+
+            Session session = (Session) em.getDelegate();
+            return session.contains(entity) && session.isReadOnly(entity);
+        }
+
+
+        /**
+         * Uses forward only {@link ScrollableResults}.
+         */
+        @Override
+        public <T> CloseableIterator<T> executeWithCursor(TypedQuery<T> query,
+                int fetchSize) {
+
+            org.hibernate.Query hibernateQuery =
+                    query.unwrap(org.hibernate.Query.class);
+            hibernateQuery.setFetchSize(fetchSize);
+
+            final ScrollableResults results =
+                    hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+
+            return new CloseableIterator<T>() {
+
+                private Boolean hasNext;
+
+
+                public boolean hasNext() {
+
+                    if (null == hasNext) {
+                        hasNext = results.next();
+                    }
+
+                    return hasNext;
+                }
+
+
+                @SuppressWarnings("unchecked")
+                public T next() {
+
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    hasNext = null;
+                    return (T) results.get(0);
+                }
+
+
+                public void remove() {
+
+                    throw new UnsupportedOperationException();
+                }
+
+
+                public void close() {
+
+                    results.close();
+                }
+            };
+        }
     },
 
     /**
      * EclipseLink persistence provider.
      */
-    ECLIPSELINK("org.eclipse.persistence.jpa.JpaEntityManager") {
+    ECLIPSELINK("org.eclipse.persistence.jpa.JpaEntityManager",
+            "org.eclipse.persistence.jpa.PersistenceProvider") {
 
         public String extractQueryString(Query query) {
 
             return ((JpaQuery<?>) query).getDatabaseQuery().getJPQLString();
         }
 
+
+        @Override
+        public Map<String, Object> getBatchWritingProperties(int batchSize) {
+
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("eclipselink.jdbc.batch-writing", "JDBC");
+            properties.put("eclipselink.jdbc.batch-writing.size",
+                    String.valueOf(batchSize));
+
+            return properties;
+        }
+
+
+        /**
+         * Returns the shared cache instances without cloning them for the
+         * persistence context, so they must not be modified at all.
+         */
+        @Override
+        public Map<String, Object> getReadOnlyHints() {
+
+            Map<String, Object> hints = new HashMap<String, Object>();
+            hints.put("eclipselink.read-only", "True");
+
+            return hints;
+        }
+
+
+        /**
+         * EclipseLink ignores the JPA query timeout hint on queries and
+         * expects the JDBC timeout in seconds.
+         */
+        @Override
+        public String getQueryTimeoutHint() {
+
+            return "eclipselink.jdbc.timeout";
+        }
+
+
+        @Override
+        public TimeUnit getQueryTimeoutUnit() {
+
+            return TimeUnit.SECONDS;
+        }
+
+
+        @Override
+        public String getFetchSizeHint() {
+
+            return "eclipselink.jdbc.fetch-size";
+        }
+
+
+        /**
+         * Entities loaded read-only are the instances of the shared cache
+         * instead of clones registered with the persistence context.
+         */
+        @Override
+        public boolean isReadOnly(EntityManager em, Object entity) {
+
+            if (em.contains(entity)) {
+                return false;
+            }
+
+            JpaEntityManager jpaEm = (JpaEntityManager) em.getDelegate();
+            return entity == jpaEm.getServerSession().getIdentityMapAccessor()
+                    .getFromIdentityMap(entity);
+        }
+
+
+        /**
+         * Uses a {@link CursoredStream} releasing the elements already read.
+         */
+        @Override
+        public <T> CloseableIterator<T> executeWithCursor(TypedQuery<T> query,
+                int fetchSize) {
+
+            query.setHint("eclipselink.cursor", true);
+            query.setHint("eclipselink.cursor.page-size", fetchSize);
+
+            final CursoredStream stream =
+                    (CursoredStream) ((Query) query).getSingleResult();
+
+            return new CloseableIterator<T>() {
+
+                private int read = 0;
+
+
+                public boolean hasNext() {
+
+                    return stream.hasNext();
+                }
+
+
+                @SuppressWarnings("unchecked")
+                public T next() {
+
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    if (++read % Math.max(stream.getPageSize(), 1) == 0) {
+                        stream.releasePrevious();
+                    }
+
+                    return (T) stream.next();
+                }
+
+
+                public void remove() {
+
+                    throw new UnsupportedOperationException();
+                }
+
+
+                public void close() {
+
+                    stream.close();
+                }
+            };
+        }
+
     },
 
     /**
      * OpenJpa persistence provider.
      */
-    OPEN_JPA("org.apache.openjpa.persistence.OpenJPAEntityManager") {
+    OPEN_JPA("org.apache.openjpa.persistence.OpenJPAEntityManager",
+            "org.apache.openjpa.persistence.PersistenceProviderImpl") {
 
         public String extractQueryString(Query query) {
 
             return ((OpenJPAQuery<?>) query).getQueryString();
         }
+
+
+        /**
+         * Configures the batch limit of the database dictionary. Note that
+         * this will not be applied if the dictionary is configured explicitly
+         * already, use {@code batchLimit} in the dictionary's plugin string
+         * then.
+         */
+        @Override
+        public Map<String, Object> getBatchWritingProperties(int batchSize) {
+
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("openjpa.jdbc.DBDictionary", "batchLimit="
+                    + batchSize);
+
+            return properties;
+        }
+
+
+        @Override
+        public String getFetchSizeHint() {
+
+            return "openjpa.FetchPlan.FetchBatchSize";
+        }
+
+
+        @Override
+        public Object findInPersistenceContext(EntityManager em,
+                Class<?> type, Object id) {
+
+            Broker broker =
+                    JPAFacadeHelper.toBroker((EntityManager) em.getDelegate());
+            Object entity = broker.findCached(broker.newObjectId(type, id), null);
+
+            return entity == null || broker.isDeleted(entity) ? null : entity;
+        }
+
+
+        /**
+         * Uses a large result set loading the results in windows of the given
+         * fetch size.
+         */
+        @Override
+        public <T> CloseableIterator<T> executeWithCursor(TypedQuery<T> query,
+                int fetchSize) {
+
+            query.setHint("openjpa.FetchPlan.FetchBatchSize", fetchSize);
+
+            final List<T> result = query.getResultList();
+            final Iterator<T> iterator = result.iterator();
+
+            return new CloseableIterator<T>() {
+
+                public boolean hasNext() {
+
+                    return iterator.hasNext();
+                }
+
+
+                public T next() {
+
+                    return iterator.next();
+                }
+
+
+                public void remove() {
+
+                    throw new UnsupportedOperationException();
+                }
+
+
+                public void close() {
+
+                    OpenJPAPersistence.close(result);
+                }
+            };
+        }
     },
 
     /**
      * Unknown special provider. Use standard JPA.
      */
-    GENERIC_JPA("javax.persistence.EntityManager") {
+    GENERIC_JPA("javax.persistence.EntityManager",
+            "javax.persistence.spi.PersistenceProvider") {
 
         public String extractQueryString(Query query) {
 
@@ -100,6 +459,7 @@ enum PersistenceProvider implements QueryExtractor {
     };
 
     private String entityManagerClassName;
+    private String persistenceProviderClassName;
 
 
     /**
@@ -107,10 +467,15 @@ enum PersistenceProvider implements QueryExtractor {
      * 
      * @param entityManagerClassName the name of the provider specific
      *            {@link EntityManager} implementation
+     * @param persistenceProviderClassName the name of the provider's
+     *            {@link javax.persistence.spi.PersistenceProvider}
+     *            implementation
      */
-    private PersistenceProvider(String entityManagerClassName) {
+    private PersistenceProvider(String entityManagerClassName,
+            String persistenceProviderClassName) {
 
         this.entityManagerClassName = entityManagerClassName;
+        this.persistenceProviderClassName = persistenceProviderClassName;
     }
 
 
@@ -135,6 +500,27 @@ enum PersistenceProvider implements QueryExtractor {
     }
 
 
+    /**
+     * Determines the {@link PersistenceProvider} from the given
+     * {@link javax.persistence.spi.PersistenceProvider} class name. If no
+     * special one can be determined {@value #GENERIC_JPA} will be returned.
+     * 
+     * @param className can be {@literal null}
+     * @return
+     */
+    public static PersistenceProvider fromPersistenceProviderClassName(
+            String className) {
+
+        for (PersistenceProvider provider : values()) {
+            if (provider.persistenceProviderClassName.equals(className)) {
+                return provider;
+            }
+        }
+
+        return GENERIC_JPA;
+    }
+
+
     /*
      * (non-Javadoc)
      * 
@@ -156,4 +542,178 @@ enum PersistenceProvider implements QueryExtractor {
 
         return "x";
     }
+
+
+    /**
+     * Returns whether the persistence provider supports subqueries in the
+     * select clause of a query, which is not required by the JPA
+     * specification. Default implementation returns {@literal false}.
+     * 
+     * @return
+     */
+    public boolean supportsSubqueriesInSelectClause() {
+
+        return false;
+    }
+
+
+    /**
+     * Returns the properties to be handed to the
+     * {@link javax.persistence.EntityManagerFactory} to enable JDBC statement
+     * batching with the given batch size. Default implementation returns an
+     * empty {@link Map}.
+     * 
+     * @param batchSize
+     * @return
+     */
+    public Map<String, Object> getBatchWritingProperties(int batchSize) {
+
+        return new HashMap<String, Object>();
+    }
+
+
+    /**
+     * Returns the hints to be set on queries to load the entities read-only,
+     * i.e. without tracking them for changes. Default implementation returns
+     * an empty {@link Map} as JPA does not define such a hint. This applies to
+     * OpenJPA as well, which does not offer an equivalent query hint.
+     * 
+     * @return
+     */
+    public Map<String, Object> getReadOnlyHints() {
+
+        return new HashMap<String, Object>();
+    }
+
+
+    /**
+     * Returns the query hint to apply a query timeout with. Defaults to
+     * {@value QueryUtils#QUERY_TIMEOUT_HINT} as defined by JPA.
+     * 
+     * @see #getQueryTimeoutUnit()
+     * @return
+     */
+    public String getQueryTimeoutHint() {
+
+        return QueryUtils.QUERY_TIMEOUT_HINT;
+    }
+
+
+    /**
+     * Returns the {@link TimeUnit} the persistence provider expects the value
+     * of the {@link #getQueryTimeoutHint()} in. Defaults to milliseconds as
+     * defined by JPA.
+     * 
+     * @return
+     */
+    public TimeUnit getQueryTimeoutUnit() {
+
+        return TimeUnit.MILLISECONDS;
+    }
+
+
+    /**
+     * Returns the query hints to apply the given timeout in milliseconds with.
+     * 
+     * @param timeout can be {@literal null}
+     * @return the hints or an empty {@link Map} if no timeout given
+     */
+    public Map<String, Object> getQueryTimeoutHints(Integer timeout) {
+
+        return QueryUtils.getQueryTimeoutHints(timeout, getQueryTimeoutHint(),
+                getQueryTimeoutUnit());
+    }
+
+
+    /**
+     * Returns the query hint to configure the JDBC fetch size of a query with.
+     * Returns {@literal null} by default as JPA does not define one.
+     * 
+     * @return
+     */
+    public String getFetchSizeHint() {
+
+        return null;
+    }
+
+
+    /**
+     * Returns the entity of the given type and with the given id if it is
+     * already managed by the persistence context of the given
+     * {@link EntityManager}. Does not hit the database. Default implementation
+     * returns {@literal null} which means the entity will always be looked up
+     * from the database.
+     * 
+     * @param em
+     * @param type
+     * @param id
+     * @return the managed entity or {@literal null} if the persistence context
+     *         does not contain it.
+     */
+    public Object findInPersistenceContext(EntityManager em, Class<?> type,
+            Object id) {
+
+        return null;
+    }
+
+
+    /**
+     * Returns whether the given entity was loaded read-only by applying the
+     * {@link #getReadOnlyHints()}, i.e. whether changes to it would not be
+     * written to the database, not even by merging it. Default implementation
+     * returns {@literal false} as there are no read-only hints by default.
+     * 
+     * @param em
+     * @param entity
+     * @return
+     */
+    public boolean isReadOnly(EntityManager em, Object entity) {
+
+        return false;
+    }
+
+
+    /**
+     * Executes the given {@link TypedQuery} using a database cursor if
+     * supported by the persistence provider. Thus results will be read from
+     * the database while iterating over them. Default implementation reads all
+     * results at once.
+     * 
+     * @param <T>
+     * @param query
+     * @param fetchSize the number of rows to be fetched from the database at
+     *            once
+     * @return a {@link CloseableIterator} over the query results, has to be
+     *         closed by the caller
+     */
+    public <T> CloseableIterator<T> executeWithCursor(TypedQuery<T> query,
+            int fetchSize) {
+
+        final Iterator<T> iterator = query.getResultList().iterator();
+
+        return new CloseableIterator<T>() {
+
+            public boolean hasNext() {
+
+                return iterator.hasNext();
+            }
+
+
+            public T next() {
+
+                return iterator.next();
+            }
+
+
+            public void remove() {
+
+                throw new UnsupportedOperationException();
+            }
+
+
+            public void close() {
+
+            }
+        };
+    }
 }
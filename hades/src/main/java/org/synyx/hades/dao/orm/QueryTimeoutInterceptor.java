@@ -0,0 +1,122 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.QueryTimeoutExceededException;
+
+
+/**
+ * {@link MethodInterceptor} to translate exceptions caused by queries
+ * exceeding their timeout into {@link QueryTimeoutExceededException}s. As
+ * persistence providers report timeouts differently, it inspects the cause
+ * chain for a {@link javax.persistence.QueryTimeoutException} or
+ * {@link SQLTimeoutException}. Timeouts reported by JDBC drivers through a
+ * plain {@link java.sql.SQLException} carrying a vendor specific error code
+ * or SQL state are not detected, as there is no portable way to identify
+ * them. Keeps track of the number of timeouts translated by the DAO it is
+ * applied to to allow monitoring them.
+ * 
+ * @see GenericDaoFactory#getQueryTimeouts(GenericDao)
+ * 
+ * @author Oliver Gierke
+ */
+public class QueryTimeoutInterceptor implements MethodInterceptor {
+
+    private final AtomicLong queryTimeouts = new AtomicLong();
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.aopalliance.intercept.MethodInterceptor#invoke(org.aopalliance
+     * .intercept.MethodInvocation)
+     */
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+
+        try {
+            return invocation.proceed();
+        } catch (RuntimeException e) {
+            throw translateIfNecessary(e, invocation);
+        }
+    }
+
+
+    /**
+     * Returns the number of query timeouts translated by the interceptor so
+     * far.
+     * 
+     * @return
+     */
+    public long getQueryTimeouts() {
+
+        return queryTimeouts.get();
+    }
+
+
+    /**
+     * Translates the given exception into a
+     * {@link QueryTimeoutExceededException} if it was caused by a query
+     * timeout. Returns the exception itself otherwise.
+     * 
+     * @param e
+     * @param invocation
+     * @return
+     */
+    private RuntimeException translateIfNecessary(RuntimeException e,
+            MethodInvocation invocation) {
+
+        if (e instanceof QueryTimeoutExceededException || !isQueryTimeout(e)) {
+            return e;
+        }
+
+        queryTimeouts.incrementAndGet();
+
+        return new QueryTimeoutExceededException(String.format(
+                "Query timeout exceeded executing %s!",
+                invocation.getMethod()), e);
+    }
+
+
+    /**
+     * Returns whether the given exception was caused by a query timeout.
+     * 
+     * @param e
+     * @return
+     */
+    private static boolean isQueryTimeout(Throwable e) {
+
+        Throwable cause = e;
+
+        while (cause != null) {
+
+            if (cause instanceof javax.persistence.QueryTimeoutException
+                    || cause instanceof SQLTimeoutException) {
+                return true;
+            }
+
+            cause = cause.getCause() == cause ? null : cause.getCause();
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.util.Assert;
+import org.synyx.hades.dao.SliceCallback;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
+
+
+/**
+ * Reads consecutive {@link Slice}s on a background thread while the caller
+ * processes the ones read before. The background thread uses an
+ * {@link EntityManager} of its own, so the entities handed to the caller are
+ * detached and reflect committed data only. At most {@code lookAhead} slices
+ * are read in advance. The background thread blocks until the caller has
+ * caught up.
+ * 
+ * @author Oliver Gierke
+ * @param <T> the type of the entities read
+ */
+class SlicePipeline<T> {
+
+    private final EntityManagerFactory factory;
+    private final Executor executor;
+    private final int lookAhead;
+
+
+    /**
+     * Creates a new {@link SlicePipeline}.
+     * 
+     * @param factory the {@link EntityManagerFactory} to create the background
+     *            {@link EntityManager} from, must not be {@literal null}
+     * @param executor the {@link Executor} to run the background reads, must
+     *            not be {@literal null}
+     * @param lookAhead the maximum number of slices to read in advance, must
+     *            be greater than {@literal 0}
+     */
+    public SlicePipeline(EntityManagerFactory factory, Executor executor,
+            int lookAhead) {
+
+        Assert.notNull(factory);
+        Assert.notNull(executor);
+        Assert.isTrue(lookAhead > 0, "Look ahead must be greater than 0!");
+
+        this.factory = factory;
+        this.executor = executor;
+        this.lookAhead = lookAhead;
+    }
+
+
+    /**
+     * Reads the slices starting with the given {@link Pageable} using the
+     * given {@link SliceReader} and hands them to the given
+     * {@link SliceCallback} until the last slice was processed. Exceptions
+     * raised while reading are rethrown to the caller. If the callback throws
+     * an exception, reading is cancelled.
+     * 
+     * @param pageable the first slice to read, must not be {@literal null}
+     * @param reader must not be {@literal null}
+     * @param callback must not be {@literal null}
+     */
+    @SuppressWarnings("unchecked")
+    public void run(Pageable pageable, SliceReader<T> reader,
+            SliceCallback<T> callback) {
+
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(lookAhead);
+        FutureTask<Object> task =
+                new FutureTask<Object>(new Producer(pageable, reader, queue),
+                        null);
+
+        executor.execute(task);
+
+        try {
+
+            while (true) {
+
+                Object item = queue.take();
+
+                if (item instanceof End) {
+                    ((End) item).rethrowFailure();
+                    return;
+                }
+
+                callback.doWith((Slice<T>) item);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while waiting for the next slice!", e);
+        } finally {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Strategy to read a single {@link Slice} with a given
+     * {@link EntityManager}.
+     * 
+     * @author Oliver Gierke
+     */
+    interface SliceReader<T> {
+
+        /**
+         * Reads the {@link Slice} for the given {@link Pageable}.
+         * 
+         * @param em
+         * @param pageable
+         * @return
+         */
+        Slice<T> readSlice(EntityManager em, Pageable pageable);
+    }
+
+    /**
+     * Reads the slices on the background thread and hands them to the queue.
+     * Always finishes with an {@link End} marker unless it was cancelled.
+     * 
+     * @author Oliver Gierke
+     */
+    private class Producer implements Runnable {
+
+        private final Pageable first;
+        private final SliceReader<T> reader;
+        private final BlockingQueue<Object> queue;
+
+
+        public Producer(Pageable first, SliceReader<T> reader,
+                BlockingQueue<Object> queue) {
+
+            this.first = first;
+            this.reader = reader;
+            this.queue = queue;
+        }
+
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+
+            Throwable failure = null;
+            EntityManager em = factory.createEntityManager();
+
+            try {
+
+                Pageable pageable = first;
+
+                while (true) {
+
+                    Slice<T> slice = reader.readSlice(em, pageable);
+                    em.clear();
+                    queue.put(slice);
+
+                    if (!slice.hasNextPage()) {
+                        break;
+                    }
+
+                    pageable =
+                            new PageRequest(pageable.getPageNumber() + 1,
+                                    pageable.getPageSize(), pageable.getSort());
+                }
+
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                em.close();
+            }
+
+            try {
+                queue.put(new End(failure));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Marker for the end of the slices, carrying the failure that stopped
+     * reading, if any.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class End {
+
+        private final Throwable failure;
+
+
+        public End(Throwable failure) {
+
+            this.failure = failure;
+        }
+
+
+        public void rethrowFailure() {
+
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+}
@@ -15,9 +15,17 @@
  */
 package org.synyx.hades.dao.query;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.Query;
 
+import org.springframework.util.Assert;
+import org.synyx.hades.domain.Slice;
+
 
 /**
  * Abstract base class to implement {@link HadesQuery}s. Simply looks up a JPA
@@ -52,7 +60,18 @@ abstract class AbstractHadesQuery implements HadesQuery {
      */
     public Query createJpaQuery(ParameterBinder binder) {
 
-        return createQuery(em, binder);
+        return applyQuerySettings(createQuery(em, binder));
+    }
+
+
+    /**
+     * Returns the {@link EntityManager} the query is executed on.
+     * 
+     * @return
+     */
+    EntityManager getEntityManager() {
+
+        return em;
     }
 
 
@@ -65,13 +84,114 @@ abstract class AbstractHadesQuery implements HadesQuery {
      */
     public Query createCountQuery() {
 
-        return createCountQuery(em);
+        return applyQuerySettings(createCountQuery(em));
+    }
+
+
+    /**
+     * Creates a JPA {@link Query} with the given {@link ParameterBinder} that
+     * selects the total number of elements alongside each entity. Returns
+     * {@literal null} if the query does not support this.
+     * 
+     * @param binder
+     * @return
+     */
+    public Query createJpaQueryWithInlineCount(ParameterBinder binder) {
+
+        return applyQuerySettings(createInlineCountQuery(em, binder));
+    }
+
+
+    /**
+     * Creates a JPA {@link Query} selecting the identifiers of the instances
+     * to be counted. Executed with a maximum number of results it allows
+     * counting up to a cap without scanning all matching rows. Returns
+     * {@literal null} if the query does not support this.
+     * 
+     * @return
+     */
+    public Query createCappedCountQuery() {
+
+        return applyQuerySettings(createCappedCountQuery(em));
+    }
+
+
+    /**
+     * Creates a JPA {@link Query} with the given {@link ParameterBinder}
+     * selecting the identifiers of the entities in the order they would be
+     * returned by the query. Returns {@literal null} if the query does not
+     * support this.
+     * 
+     * @see #createJpaQueryForIds(List)
+     * @param binder
+     * @return
+     */
+    public Query createIdQuery(ParameterBinder binder) {
+
+        return applyQuerySettings(createIdQuery(em, binder));
+    }
+
+
+    /**
+     * Creates a JPA {@link Query} loading the entities with the given
+     * identifiers using the fetch plan of the query. Selects pairs of the
+     * identifier and the entity. Only supported if
+     * {@link #createIdQuery(ParameterBinder)} returns a query.
+     * 
+     * @param ids must not be {@literal null} or empty
+     * @return
+     */
+    public Query createJpaQueryForIds(List<?> ids) {
+
+        return applyQuerySettings(createQueryForIds(em, ids));
+    }
+
+
+    /**
+     * Executes the count query with the given {@link ParameterBinder} on a
+     * new {@link EntityManager} created from the factory of the one the query
+     * was created for. Thus it can be executed concurrently to queries on the
+     * original {@link EntityManager}.
+     * 
+     * @param binder
+     * @return
+     */
+    public Long executeCountQueryInSeparateEntityManager(
+            ParameterBinder binder) {
+
+        EntityManager countEm =
+                em.getEntityManagerFactory().createEntityManager();
+
+        try {
+            return (Long) binder.bind(
+                    applyQuerySettings(createCountQuery(countEm)))
+                    .getSingleResult();
+        } finally {
+            countEm.close();
+        }
+    }
+
+
+    /**
+     * Returns a view of the query creating all JPA queries on the given
+     * {@link EntityManager}, e.g. a separate one to execute the query
+     * concurrently to queries on the original {@link EntityManager}.
+     * 
+     * @param em must not be {@literal null}
+     * @return
+     */
+    AbstractHadesQuery withEntityManager(EntityManager em) {
+
+        Assert.notNull(em);
+
+        return new EntityManagerBoundQuery(this, em);
     }
 
 
     /**
      * Executes the {@link javax.persistence.Query} backing the
-     * {@link QueryMethod} with the given parameters.
+     * {@link QueryMethod} with the given parameters. Converts the result if
+     * the {@link QueryMethod} returns a {@link Projection}.
      * 
      * @param em
      * @param parameters
@@ -82,7 +202,134 @@ abstract class AbstractHadesQuery implements HadesQuery {
         ParameterBinder binder =
                 new ParameterBinder(method.getParameters(), parameters);
 
-        return method.getExecution(em).execute(this, binder);
+        Object result = method.getExecution(em).execute(this, binder);
+
+        fetchAssociations(getEntities(result), binder);
+
+        Projection projection = method.getProjection();
+
+        return projection == null ? result : projection.convert(result,
+                binder.getPageable());
+    }
+
+
+    /**
+     * Applies the {@link FlushModeType} and the timeout of the
+     * {@link QueryMethod} to the given query if configured.
+     * 
+     * @param query can be {@literal null}
+     * @return
+     */
+    private Query applyQuerySettings(Query query) {
+
+        if (query == null) {
+            return null;
+        }
+
+        FlushModeType flushMode = method.getFlushMode();
+
+        if (flushMode != null) {
+            query.setFlushMode(flushMode);
+        }
+
+        for (Entry<String, Object> hint : method.getQueryTimeoutHints()
+                .entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Applies the hints to load entities read-only to the given query if the
+     * {@link QueryMethod} is to be executed read-only as well as the hints to
+     * apply its JDBC fetch size. To be applied to the queries reading the
+     * entities returned only.
+     * 
+     * @param query
+     * @return
+     */
+    protected Query applyReadHints(Query query) {
+
+        for (Entry<String, Object> hint : method.getReadOnlyHints().entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        for (Entry<String, Object> hint : method.getFetchSizeHints()
+                .entrySet()) {
+            query.setHint(hint.getKey(), hint.getValue());
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Applies the {@link FlushModeType}, the timeout and the read hints of the
+     * {@link QueryMethod} to the given query. To be used for additional
+     * queries loading state of the entities returned, e.g. the ones fetching
+     * associations.
+     * 
+     * @see #applyReadHints(Query)
+     * @param query
+     * @return
+     */
+    protected Query applyReadSettings(Query query) {
+
+        return applyQuerySettings(applyReadHints(query));
+    }
+
+
+    /**
+     * Returns the entities contained in the given query result.
+     * 
+     * @param result
+     * @return
+     */
+    private List<?> getEntities(Object result) {
+
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).asList();
+        }
+
+        if (result instanceof List) {
+            return (List<?>) result;
+        }
+
+        return result == null ? Collections.emptyList() : Collections
+                .singletonList(result);
+    }
+
+
+    /**
+     * Loads the associations of the {@link org.synyx.hades.domain.FetchPlan}
+     * of the {@link QueryMethod} for the given entities if it has one.
+     * 
+     * @param entities
+     * @param binder
+     */
+    void fetchAssociations(List<?> entities, ParameterBinder binder) {
+
+        if (method.getFetchPlan() != null) {
+            fetchAssociations(em, entities, binder);
+        }
+    }
+
+
+    /**
+     * Loads the associations of the {@link org.synyx.hades.domain.FetchPlan}
+     * of the {@link QueryMethod} for the given entities read with the given
+     * {@link ParameterBinder} that could not be fetched by the query itself.
+     * Does nothing by default.
+     * 
+     * @param em
+     * @param entities
+     * @param binder
+     */
+    protected void fetchAssociations(EntityManager em, List<?> entities,
+            ParameterBinder binder) {
+
     }
 
 
@@ -106,4 +353,139 @@ abstract class AbstractHadesQuery implements HadesQuery {
      * @return
      */
     protected abstract Query createCountQuery(EntityManager em);
-}
\ No newline at end of file
+
+
+    /**
+     * Returns a JPA {@link Query} selecting the result of the count query
+     * alongside each entity, so that a page and the total number of elements
+     * can be read in a single round trip. Returns {@literal null} by default,
+     * subclasses may override if they are able to create such a query.
+     * 
+     * @param em
+     * @param binder
+     * @return
+     */
+    protected Query createInlineCountQuery(EntityManager em,
+            ParameterBinder binder) {
+
+        return null;
+    }
+
+
+    /**
+     * Returns a JPA {@link Query} selecting one row per instance to be
+     * counted, preferably the identifier only. Returns {@literal null} by
+     * default, subclasses may override if they are able to create such a
+     * query.
+     * 
+     * @param em
+     * @return
+     */
+    protected Query createCappedCountQuery(EntityManager em) {
+
+        return null;
+    }
+
+
+    /**
+     * Returns a JPA {@link Query} selecting the identifiers of the entities to
+     * be returned. Returns {@literal null} by default, subclasses may override
+     * if they are able to create such a query. They have to override
+     * {@link #createQueryForIds(EntityManager, List)} as well then.
+     * 
+     * @param em
+     * @param binder
+     * @return
+     */
+    protected Query createIdQuery(EntityManager em, ParameterBinder binder) {
+
+        return null;
+    }
+
+
+    /**
+     * Returns a JPA {@link Query} loading the entities with the given
+     * identifiers, selecting pairs of the identifier and the entity. Has to
+     * be overridden if {@link #createIdQuery(EntityManager, ParameterBinder)}
+     * is.
+     * 
+     * @param em
+     * @param ids
+     * @return
+     */
+    protected Query createQueryForIds(EntityManager em, List<?> ids) {
+
+        throw new UnsupportedOperationException(
+                "Query does not support loading entities by identifiers!");
+    }
+
+    /**
+     * {@link AbstractHadesQuery} creating the JPA queries of another one on a
+     * different {@link EntityManager}.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class EntityManagerBoundQuery extends AbstractHadesQuery {
+
+        private final AbstractHadesQuery delegate;
+
+
+        public EntityManagerBoundQuery(AbstractHadesQuery delegate,
+                EntityManager em) {
+
+            super(delegate.method, em);
+            this.delegate = delegate;
+        }
+
+
+        @Override
+        protected Query createQuery(EntityManager em, ParameterBinder binder) {
+
+            return delegate.createQuery(em, binder);
+        }
+
+
+        @Override
+        protected Query createCountQuery(EntityManager em) {
+
+            return delegate.createCountQuery(em);
+        }
+
+
+        @Override
+        protected Query createInlineCountQuery(EntityManager em,
+                ParameterBinder binder) {
+
+            return delegate.createInlineCountQuery(em, binder);
+        }
+
+
+        @Override
+        protected Query createCappedCountQuery(EntityManager em) {
+
+            return delegate.createCappedCountQuery(em);
+        }
+
+
+        @Override
+        protected Query createIdQuery(EntityManager em, ParameterBinder binder) {
+
+            return delegate.createIdQuery(em, binder);
+        }
+
+
+        @Override
+        protected Query createQueryForIds(EntityManager em, List<?> ids) {
+
+            return delegate.createQueryForIds(em, ids);
+        }
+
+
+        @Override
+        protected void fetchAssociations(EntityManager em, List<?> entities,
+                ParameterBinder binder) {
+
+            delegate.fetchAssociations(em, entities, binder);
+        }
+    }
+}
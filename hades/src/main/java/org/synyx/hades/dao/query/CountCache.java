@@ -0,0 +1,272 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+
+/**
+ * Size bounded cache for the results of count queries. Entries expire after a
+ * configurable time to live, the least recently used entries are evicted if
+ * the maximum size is exceeded. Usually a single instance is used per DAO and
+ * evicted whenever the DAO writes entities, so that totals read from the cache
+ * are at most as stale as the time to live.
+ * <p>
+ * Counts read by a transaction after it wrote entities include uncommitted
+ * changes. Thus they are neither read from nor put into the cache until the
+ * transaction completes. Completing the transaction evicts the cache again to
+ * drop counts other transactions cached in the meantime.
+ * 
+ * @author Oliver Gierke
+ */
+public class CountCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final long timeToLive;
+    private final Map<Object, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    /**
+     * Creates a new {@link CountCache} with the given time to live and a
+     * maximum size of {@value #DEFAULT_MAX_SIZE} entries.
+     * 
+     * @param timeToLive must be greater than zero
+     * @param unit must not be {@literal null}
+     */
+    public CountCache(long timeToLive, TimeUnit unit) {
+
+        this(timeToLive, unit, DEFAULT_MAX_SIZE);
+    }
+
+
+    /**
+     * Creates a new {@link CountCache} with the given time to live and maximum
+     * size.
+     * 
+     * @param timeToLive must be greater than zero
+     * @param unit must not be {@literal null}
+     * @param maxSize must be greater than zero
+     */
+    public CountCache(long timeToLive, TimeUnit unit, final int maxSize) {
+
+        Assert.isTrue(timeToLive > 0, "Time to live must be greater than 0!");
+        Assert.notNull(unit);
+        Assert.isTrue(maxSize > 0, "Maximum size must be greater than 0!");
+
+        this.timeToLive = unit.toMillis(timeToLive);
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -3295618426427045723L;
+
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Creates a cache key from the given parts, e.g. a query and the values
+     * bound to it. Keys are equal if all their parts are equal.
+     * 
+     * @param parts
+     * @return
+     */
+    public static Object createKey(Object... parts) {
+
+        return Arrays.asList(parts);
+    }
+
+
+    /**
+     * Returns the cached count for the given key or {@literal null} if none
+     * is cached or it has expired.
+     * 
+     * @param key
+     * @return
+     */
+    public synchronized Long get(Object key) {
+
+        if (hasPendingWrites()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Entry entry = entries.get(key);
+
+        if (entry == null || entry.isExpired()) {
+
+            if (entry != null) {
+                entries.remove(key);
+            }
+
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.count;
+    }
+
+
+    /**
+     * Caches the given count for the given key.
+     * 
+     * @param key
+     * @param count
+     */
+    public synchronized void put(Object key, long count) {
+
+        if (hasPendingWrites()) {
+            return;
+        }
+
+        entries.put(key, new Entry(count, System.currentTimeMillis()
+                + timeToLive));
+    }
+
+
+    /**
+     * Removes all cached counts.
+     */
+    public synchronized void clear() {
+
+        entries.clear();
+    }
+
+
+    /**
+     * Removes all cached counts as entities are about to be written. If a
+     * transaction is active the cache is bypassed for the rest of it and
+     * evicted again after its completion.
+     */
+    public void evict() {
+
+        clear();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || hasPendingWrites()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager
+                .registerSynchronization(new EvictingSynchronization());
+    }
+
+
+    /**
+     * Returns whether the current transaction has written entities the
+     * cached counts do not reflect yet.
+     * 
+     * @return
+     */
+    private boolean hasPendingWrites() {
+
+        return TransactionSynchronizationManager.hasResource(this);
+    }
+
+
+    /**
+     * Returns the number of cached counts including expired ones not evicted
+     * yet.
+     * 
+     * @return
+     */
+    public synchronized int size() {
+
+        return entries.size();
+    }
+
+
+    /**
+     * Returns how often a count was read from the cache.
+     * 
+     * @return
+     */
+    public long getHits() {
+
+        return hits.get();
+    }
+
+
+    /**
+     * Returns how often a count was not found in the cache.
+     * 
+     * @return
+     */
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    /**
+     * Synchronization to evict the cache after a transaction writing entities
+     * completed.
+     * 
+     * @author Oliver Gierke
+     */
+    private class EvictingSynchronization extends
+            TransactionSynchronizationAdapter {
+
+        @Override
+        public void afterCompletion(int status) {
+
+            TransactionSynchronizationManager
+                    .unbindResourceIfPossible(CountCache.this);
+            clear();
+        }
+    }
+
+    /**
+     * A cached count and its expiry.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class Entry {
+
+        private final long count;
+        private final long expires;
+
+
+        public Entry(long count, long expires) {
+
+            this.count = count;
+            this.expires = expires;
+        }
+
+
+        public boolean isExpired() {
+
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.synyx.hades.dao.query.PageableExecutionUtils.TotalSupplier;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Sort;
+
+
+/**
+ * {@link Page} that defers computing the total number of elements until it is
+ * requested for the first time. Thus the count query is not executed at all
+ * for clients only interested in the content. As the count query needs the
+ * resources the page was read with, the total has to be requested within the
+ * transaction the page was read in (if any) and while the
+ * {@link EntityManager} is still open. Requesting it afterwards results in an
+ * {@link IllegalStateException}.
+ * 
+ * @author Oliver Gierke
+ * @param <T>
+ */
+public class LazyTotalPage<T> implements Page<T> {
+
+    private final List<T> content;
+    private final Pageable pageable;
+    private final int countCap;
+    private final TotalSupplier totalSupplier;
+    private final EntityManager em;
+
+    private volatile boolean valid = true;
+    private volatile Page<T> page;
+
+
+    /**
+     * Creates a new {@link LazyTotalPage}. If transaction synchronization is
+     * active, the page gets invalidated on completion of the current
+     * transaction.
+     * 
+     * @param content must not be {@literal null}
+     * @param pageable must not be {@literal null}
+     * @param countCap the maximum number of elements to count or {@literal 0}
+     *            if the count is not capped
+     * @param totalSupplier must not be {@literal null}
+     * @param em the {@link EntityManager} the count query will be executed
+     *            on, can be {@literal null}
+     */
+    public LazyTotalPage(List<T> content, Pageable pageable, int countCap,
+            TotalSupplier totalSupplier, EntityManager em) {
+
+        Assert.notNull(content);
+        Assert.notNull(pageable);
+        Assert.notNull(totalSupplier);
+
+        this.content = new ArrayList<T>(content);
+        this.pageable = pageable;
+        this.countCap = countCap;
+        this.totalSupplier = totalSupplier;
+        this.em = em;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCompletion(int status) {
+
+                            invalidate();
+                        }
+                    });
+        }
+    }
+
+
+    /**
+     * Invalidates the page. Requesting the total afterwards results in an
+     * {@link IllegalStateException} unless it was already computed.
+     */
+    void invalidate() {
+
+        this.valid = false;
+    }
+
+
+    /**
+     * Returns whether the total number of elements was already computed.
+     * 
+     * @return
+     */
+    public boolean isTotalComputed() {
+
+        return page != null;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getNumber()
+     */
+    public int getNumber() {
+
+        return pageable.getPageNumber();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getSize()
+     */
+    public int getSize() {
+
+        return pageable.getPageSize();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getNumberOfElements()
+     */
+    public int getNumberOfElements() {
+
+        return content.size();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#hasPreviousPage()
+     */
+    public boolean hasPreviousPage() {
+
+        return getNumber() > 0;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#hasNextPage()
+     */
+    public boolean hasNextPage() {
+
+        // A page not filled completely has to be the last one
+        if (content.size() < getSize()) {
+            return false;
+        }
+
+        return getPage().hasNextPage();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Page#getTotalPages()
+     */
+    public int getTotalPages() {
+
+        return getPage().getTotalPages();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Page#getTotalElements()
+     */
+    public long getTotalElements() {
+
+        return getPage().getTotalElements();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Page#isTotalCapped()
+     */
+    public boolean isTotalCapped() {
+
+        return getPage().isTotalCapped();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#iterator()
+     */
+    public Iterator<T> iterator() {
+
+        return asList().iterator();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#asList()
+     */
+    public List<T> asList() {
+
+        return Collections.unmodifiableList(content);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getSort()
+     */
+    public Sort getSort() {
+
+        return pageable.getSort();
+    }
+
+
+    /**
+     * Returns the {@link Page} carrying the total number of elements. Computes
+     * the total on first access.
+     * 
+     * @return
+     * @throws IllegalStateException if the total has not been computed yet
+     *             and the transaction the page was read in has completed or
+     *             the {@link EntityManager} was closed
+     */
+    private synchronized Page<T> getPage() {
+
+        if (page != null) {
+            return page;
+        }
+
+        if (!valid || (em != null && !em.isOpen())) {
+            throw new IllegalStateException(
+                    "Cannot compute the total number of elements of a lazy "
+                            + "page after the transaction it was read in "
+                            + "completed or its EntityManager was closed! "
+                            + "Request the total within the transaction.");
+        }
+
+        page =
+                PageableExecutionUtils.getPage(content, pageable, countCap,
+                        totalSupplier);
+
+        return page;
+    }
+
+
+    /**
+     * Considers {@link LazyTotalPage}s with the same content and
+     * {@link Pageable} equal. Does not trigger computing the total but
+     * compares the totals if both pages have already computed them.
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof LazyTotalPage<?>)) {
+            return false;
+        }
+
+        LazyTotalPage<?> that = (LazyTotalPage<?>) obj;
+
+        boolean contentEqual = this.content.equals(that.content);
+        boolean pageableEqual = this.pageable.equals(that.pageable);
+        boolean countCapEqual = this.countCap == that.countCap;
+
+        Page<?> thisPage = this.page;
+        Page<?> thatPage = that.page;
+
+        boolean totalEqual =
+                thisPage == null || thatPage == null
+                        || thisPage.equals(thatPage);
+
+        return contentEqual && pageableEqual && countCapEqual && totalEqual;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        int result = 17;
+
+        result = 31 * result + countCap;
+        result = 31 * result + pageable.hashCode();
+        result = 31 * result + content.hashCode();
+
+        return result;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        if (page != null) {
+            return page.toString();
+        }
+
+        String contentType =
+                content.isEmpty() ? "UNKNOWN" : content.get(0).getClass()
+                        .getName();
+
+        return String.format("Page %s of unknown total containing %s instances",
+                getNumber(), contentType);
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.synyx.hades.domain.CountPredicate;
+import org.synyx.hades.domain.Specification;
+
+
+/**
+ * Counters for the total number of entities of a type and the number of
+ * entities matching a set of {@link CountPredicate}s maintained in memory.
+ * Counters are initialized and reconciled with counts read from the database
+ * (see {@link #reconcile(Specification, long, long)}) and updated
+ * incrementally when entities are persisted or removed afterwards. Changes
+ * done inside a transaction are applied once it commits, so that other
+ * transactions don't see uncommitted changes. Counts read while changes were
+ * committed are not used for reconciliation as they might or might not
+ * contain these changes already. Changes a counter cannot be updated for
+ * incrementally (e.g. merged entities or bulk updates) require the counter to
+ * be reconciled with the database again. Counters are reconciled after the
+ * configured interval at the latest to catch up with changes done by other
+ * applications.
+ * <p>
+ * Counters for {@link CountPredicate}s are held per predicate type, so all
+ * instances of a {@link CountPredicate} type have to match the same entities.
+ * {@link CountPredicate}s are evaluated against an entity only when it is
+ * persisted or removed. Changes to a managed entity that make it match a
+ * {@link CountPredicate} or not are not tracked, so entities have to be
+ * merged (i.e. saved again while detached) to reflect such changes.
+ * 
+ * @author Oliver Gierke
+ * @param <T>
+ */
+public class MaterializedCounts<T> {
+
+    private static final Object TOTAL = new Object();
+
+    private final long reconciliationInterval;
+    private final Map<Class<?>, CountPredicate<T>> predicates;
+    private final Map<Object, Counter> counters;
+
+
+    /**
+     * Creates a new {@link MaterializedCounts} instance maintaining a counter
+     * for the total number of entities only.
+     * 
+     * @param reconciliationInterval the number of milliseconds after which a
+     *            counter has to be reconciled, must be greater than zero
+     */
+    public MaterializedCounts(long reconciliationInterval) {
+
+        this(reconciliationInterval, Collections
+                .<CountPredicate<T>> emptySet());
+    }
+
+
+    /**
+     * Creates a new {@link MaterializedCounts} instance maintaining counters
+     * for the total number of entities and the given {@link CountPredicate}s.
+     * 
+     * @param reconciliationInterval the number of milliseconds after which a
+     *            counter has to be reconciled, must be greater than zero
+     * @param predicates must not be {@literal null}
+     */
+    public MaterializedCounts(long reconciliationInterval,
+            Collection<? extends CountPredicate<T>> predicates) {
+
+        Assert.isTrue(reconciliationInterval > 0,
+                "Reconciliation interval must be greater than 0!");
+        Assert.notNull(predicates);
+
+        this.reconciliationInterval = reconciliationInterval;
+        this.predicates = new HashMap<Class<?>, CountPredicate<T>>();
+        this.counters = new HashMap<Object, Counter>();
+
+        this.counters.put(TOTAL, new Counter());
+
+        for (CountPredicate<T> predicate : predicates) {
+            this.predicates.put(predicate.getClass(), predicate);
+            this.counters.put(predicate.getClass(), new Counter());
+        }
+    }
+
+
+    /**
+     * Returns whether a counter is maintained for the given
+     * {@link Specification}. A {@literal null} {@link Specification} denotes
+     * the total number of entities.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    public boolean isMaterialized(Specification<T> spec) {
+
+        return counters.containsKey(getKey(spec));
+    }
+
+
+    /**
+     * Returns the current count for the given {@link Specification} or
+     * {@literal null} if it is not materialized or the counter has to be
+     * reconciled with the database. The latter is also the case if the current
+     * transaction changed the count, as the counter does not reflect these
+     * changes until the transaction commits.
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    public synchronized Long getCount(Specification<T> spec) {
+
+        Object key = getKey(spec);
+        Counter counter = counters.get(key);
+
+        if (counter == null || counter.needsReconciliation()) {
+            return null;
+        }
+
+        Changes changes = getCurrentChanges(false);
+
+        return changes != null && changes.affects(key) ? null : counter.count;
+    }
+
+
+    /**
+     * Returns the version of the counter for the given {@link Specification}.
+     * Has to be obtained before reading the count to reconcile the counter
+     * with (see {@link #reconcile(Specification, long, long)}).
+     * 
+     * @param spec can be {@literal null}
+     * @return
+     */
+    public synchronized long getVersion(Specification<T> spec) {
+
+        Counter counter = counters.get(getKey(spec));
+
+        return counter == null ? 0 : counter.version;
+    }
+
+
+    /**
+     * Reconciles the counter for the given {@link Specification} with the
+     * given count read from the database. Counts read by a transaction that
+     * changed the count itself are ignored as they contain uncommitted
+     * changes. So are counts read while other transactions committed changes
+     * to the counter, i.e. if changes are being committed right now or the
+     * counter changed since the given version was obtained.
+     * 
+     * @param spec can be {@literal null}
+     * @param count
+     * @param version the version of the counter obtained before reading the
+     *            count (see {@link #getVersion(Specification)})
+     */
+    public synchronized void reconcile(Specification<T> spec, long count,
+            long version) {
+
+        Object key = getKey(spec);
+        Counter counter = counters.get(key);
+
+        if (counter == null || counter.version != version
+                || counter.committing > 0) {
+            return;
+        }
+
+        Changes changes = getCurrentChanges(false);
+
+        if (changes == null || !changes.affects(key)) {
+            counter.reconcile(count);
+        }
+    }
+
+
+    /**
+     * Registers the given entity as persisted. Increments the total and the
+     * counters of all {@link CountPredicate}s the entity matches. The
+     * {@link CountPredicate}s are evaluated right away, so changes applied to
+     * the entity afterwards are not considered.
+     * 
+     * @param entity must not be {@literal null}
+     */
+    public void persisted(T entity) {
+
+        Assert.notNull(entity);
+        apply(entity, 1);
+    }
+
+
+    /**
+     * Registers the given entity as removed. Decrements the total and the
+     * counters of all {@link CountPredicate}s the entity matches.
+     * 
+     * @param entity must not be {@literal null}
+     */
+    public void removed(T entity) {
+
+        Assert.notNull(entity);
+        apply(entity, -1);
+    }
+
+
+    /**
+     * Registers the given number of entities as removed without knowing which
+     * entities were removed (e.g. by a bulk delete). Decrements the total and
+     * requires all {@link CountPredicate} counters to be reconciled.
+     * 
+     * @param count
+     */
+    public synchronized void removed(long count) {
+
+        Changes changes = getCurrentChanges(true);
+
+        changes.add(TOTAL, -count);
+        changes.invalidate(predicates.keySet());
+
+        applyIfUnsynchronized(changes);
+    }
+
+
+    /**
+     * Registers the given entity as merged. As the state the entity had
+     * before is unknown, all {@link CountPredicate} counters have to be
+     * reconciled.
+     * 
+     * @param entity
+     */
+    public synchronized void merged(T entity) {
+
+        if (predicates.isEmpty()) {
+            return;
+        }
+
+        Changes changes = getCurrentChanges(true);
+        changes.invalidate(predicates.keySet());
+
+        applyIfUnsynchronized(changes);
+    }
+
+
+    /**
+     * Requires all counters to be reconciled, e.g. as entities were changed
+     * in a way that cannot be tracked.
+     */
+    public synchronized void invalidate() {
+
+        Changes changes = getCurrentChanges(true);
+        changes.invalidate(counters.keySet());
+
+        applyIfUnsynchronized(changes);
+    }
+
+
+    /**
+     * Applies the given delta for the given entity to the total and all
+     * {@link CountPredicate} counters the entity matches.
+     * 
+     * @param entity
+     * @param delta
+     */
+    private synchronized void apply(T entity, long delta) {
+
+        Changes changes = getCurrentChanges(true);
+        changes.add(TOTAL, delta);
+
+        for (Map.Entry<Class<?>, CountPredicate<T>> entry : predicates
+                .entrySet()) {
+
+            if (entry.getValue().matches(entity)) {
+                changes.add(entry.getKey(), delta);
+            }
+        }
+
+        applyIfUnsynchronized(changes);
+    }
+
+
+    /**
+     * Returns the changes of the current transaction. If no transaction
+     * synchronization is active a new {@link Changes} instance is returned
+     * that has to be applied immediately (see
+     * {@link #applyIfUnsynchronized(Changes)}).
+     * 
+     * @param create whether to create and bind the {@link Changes} for the
+     *            current transaction if none bound yet
+     * @return the changes or {@literal null} if {@code create} is
+     *         {@literal false} and none bound
+     */
+    private Changes getCurrentChanges(boolean create) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return create ? new Changes() : null;
+        }
+
+        Changes changes =
+                (Changes) TransactionSynchronizationManager.getResource(this);
+
+        if (changes == null && create) {
+
+            Changes newChanges = new Changes();
+
+            TransactionSynchronizationManager.bindResource(this, newChanges);
+            TransactionSynchronizationManager
+                    .registerSynchronization(new CommittingSynchronization(
+                            newChanges));
+
+            return newChanges;
+        }
+
+        return changes;
+    }
+
+
+    /**
+     * Applies the given {@link Changes} immediately if no transaction
+     * synchronization is active.
+     * 
+     * @param changes
+     */
+    private void applyIfUnsynchronized(Changes changes) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyChanges(changes);
+        }
+    }
+
+
+    /**
+     * Marks the counters affected by the given {@link Changes} as being
+     * committed. Counts read until the commit completed must not be used for
+     * reconciliation.
+     * 
+     * @param changes
+     */
+    private synchronized void startCommit(Changes changes) {
+
+        for (Object key : changes.getKeys()) {
+            counters.get(key).committing++;
+        }
+
+        changes.committing = true;
+    }
+
+
+    /**
+     * Completes the commit of the given {@link Changes} and applies them if
+     * the transaction was committed.
+     * 
+     * @param changes
+     * @param committed
+     */
+    private synchronized void completeCommit(Changes changes,
+            boolean committed) {
+
+        if (changes.committing) {
+
+            for (Object key : changes.getKeys()) {
+                counters.get(key).committing--;
+            }
+
+            changes.committing = false;
+        }
+
+        if (committed) {
+            applyChanges(changes);
+        }
+    }
+
+
+    /**
+     * Applies the given {@link Changes} to the counters.
+     * 
+     * @param changes
+     */
+    private synchronized void applyChanges(Changes changes) {
+
+        for (Object key : changes.invalidated) {
+            counters.get(key).invalidate();
+        }
+
+        for (Map.Entry<Object, Long> entry : changes.deltas.entrySet()) {
+            counters.get(entry.getKey()).add(entry.getValue());
+        }
+    }
+
+
+    /**
+     * Returns the counter key for the given {@link Specification}.
+     * 
+     * @param spec
+     * @return
+     */
+    private Object getKey(Specification<T> spec) {
+
+        return spec == null ? TOTAL : spec.getClass();
+    }
+
+    /**
+     * Synchronization to apply the {@link Changes} of a transaction to the
+     * counters once it completed.
+     * 
+     * @author Oliver Gierke
+     */
+    private class CommittingSynchronization extends
+            TransactionSynchronizationAdapter {
+
+        private final Changes changes;
+
+
+        public CommittingSynchronization(Changes changes) {
+
+            this.changes = changes;
+        }
+
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+
+            startCommit(changes);
+        }
+
+
+        @Override
+        public void afterCompletion(int status) {
+
+            TransactionSynchronizationManager
+                    .unbindResourceIfPossible(MaterializedCounts.this);
+
+            completeCommit(changes,
+                    status == TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+
+    /**
+     * A single counter.
+     * 
+     * @author Oliver Gierke
+     */
+    private class Counter {
+
+        private long count;
+        private boolean initialized;
+        private long reconciled;
+        private long version;
+        private int committing;
+
+
+        public void reconcile(long count) {
+
+            this.count = count;
+            this.initialized = true;
+            this.reconciled = System.currentTimeMillis();
+        }
+
+
+        public void add(long delta) {
+
+            this.count += delta;
+            this.version++;
+        }
+
+
+        public void invalidate() {
+
+            this.initialized = false;
+            this.version++;
+        }
+
+
+        public boolean needsReconciliation() {
+
+            long sinceReconciliation = System.currentTimeMillis() - reconciled;
+
+            return !initialized || sinceReconciliation > reconciliationInterval;
+        }
+    }
+
+    /**
+     * Changes to the counters done within a single transaction.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class Changes {
+
+        private final Map<Object, Long> deltas = new HashMap<Object, Long>();
+        private final Set<Object> invalidated = new HashSet<Object>();
+        private boolean committing;
+
+
+        public void add(Object key, long delta) {
+
+            Long current = deltas.get(key);
+            deltas.put(key, current == null ? delta : current + delta);
+        }
+
+
+        public void invalidate(Collection<?> keys) {
+
+            invalidated.addAll(keys);
+        }
+
+
+        public boolean affects(Object key) {
+
+            return deltas.containsKey(key) || invalidated.contains(key);
+        }
+
+
+        public Set<Object> getKeys() {
+
+            Set<Object> keys = new HashSet<Object>(deltas.keySet());
+            keys.addAll(invalidated);
+
+            return keys;
+        }
+    }
+}
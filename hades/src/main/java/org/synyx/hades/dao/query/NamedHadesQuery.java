@@ -20,11 +20,15 @@ import javax.persistence.Query;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.synyx.hades.domain.KeysetPageRequest;
 
 
 /**
  * Implementation of {@link HadesQuery} based on
- * {@link javax.persistence.NamedQuery}s.
+ * {@link javax.persistence.NamedQuery}s. Paged executions count their results
+ * with a named query suffixed with {@literal .count} (e.g.
+ * {@literal User.findByLastname.count}) if declared. Otherwise the count query
+ * is derived from the named query once and reused for following executions.
  * 
  * @author Oliver Gierke
  */
@@ -34,8 +38,12 @@ final class NamedHadesQuery extends AbstractHadesQuery {
             .getLogger(NamedHadesQuery.class);
 
     private String queryName;
+    private String countQueryName;
+    private boolean namedCountQueryPresent;
     private QueryExtractor extractor;
 
+    private volatile String countQueryString;
+
 
     /**
      * Creates a new {@link NamedHadesQuery}.
@@ -45,6 +53,7 @@ final class NamedHadesQuery extends AbstractHadesQuery {
         super(method, em);
 
         this.queryName = method.getNamedQueryName();
+        this.countQueryName = method.getNamedCountQueryName();
         this.extractor = method.getQueryExtractor();
         Query query = em.createNamedQuery(queryName);
 
@@ -53,11 +62,37 @@ final class NamedHadesQuery extends AbstractHadesQuery {
         if (null != query) {
             query.getHints();
         }
+
+        this.namedCountQueryPresent = hasNamedQuery(em, countQueryName);
+
+        if (namedCountQueryPresent) {
+            LOG.debug("Using named query {} to count results of {}",
+                    countQueryName, queryName);
+        }
     }
 
 
     /**
-     * Looks up a named query for the given {@link QueryMethod}.
+     * Returns whether a named query with the given name is declared.
+     * 
+     * @param em
+     * @param queryName
+     * @return
+     */
+    private static boolean hasNamedQuery(EntityManager em, String queryName) {
+
+        try {
+            return null != em.createNamedQuery(queryName);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Looks up a named query for the given {@link QueryMethod}. Named queries
+     * are not considered for methods returning interface projections, as the
+     * values selected cannot be mapped onto the interface reliably.
      * 
      * @param method
      * @return
@@ -65,6 +100,13 @@ final class NamedHadesQuery extends AbstractHadesQuery {
     public static HadesQuery lookupFrom(QueryMethod method, EntityManager em) {
 
         final String queryName = method.getNamedQueryName();
+        Projection projection = method.getProjection();
+
+        if (projection != null && projection.requiresConversion()) {
+            LOG.debug("Not looking up named query {} for interface projection",
+                    queryName);
+            return null;
+        }
 
         LOG.debug("Looking up named query {}", queryName);
 
@@ -118,7 +160,16 @@ final class NamedHadesQuery extends AbstractHadesQuery {
     @Override
     protected Query createQuery(EntityManager em, ParameterBinder binder) {
 
-        return em.createNamedQuery(queryName);
+        if (binder != null && binder.getPageable() instanceof KeysetPageRequest) {
+            throw new IllegalStateException(
+                    String.format(
+                            "Finder method %s is backed by a NamedQuery and "
+                                    + "cannot use keyset pagination as we cannot "
+                                    + "modify the query! Use @Query instead!",
+                            queryName));
+        }
+
+        return applyReadHints(em.createNamedQuery(queryName));
     }
 
 
@@ -131,9 +182,19 @@ final class NamedHadesQuery extends AbstractHadesQuery {
     @Override
     protected Query createCountQuery(EntityManager em) {
 
-        Query query = createQuery(em, null);
-        String queryString = extractor.extractQueryString(query);
+        if (namedCountQueryPresent) {
+            return em.createNamedQuery(countQueryName);
+        }
+
+        // Derive count query only once, races simply derive it twice
+        if (countQueryString == null) {
+
+            Query query = createQuery(em, null);
+            String queryString = extractor.extractQueryString(query);
+
+            countQueryString = QueryUtils.createCountQueryFor(queryString);
+        }
 
-        return em.createQuery(QueryUtils.createCountQueryFor(queryString));
+        return em.createQuery(countQueryString);
     }
 }
\ No newline at end of file
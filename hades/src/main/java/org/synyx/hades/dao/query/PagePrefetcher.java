@@ -0,0 +1,483 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.synyx.hades.domain.CappedPageRequest;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
+
+
+/**
+ * Loads the page following a page just read in the background, so that
+ * clients paging through results sequentially get the next page served from
+ * memory. Prefetched pages are kept for a configurable time to live, the least
+ * recently used ones are evicted if the maximum size is exceeded. Usually a
+ * single instance is used per DAO and evicted whenever the DAO writes
+ * entities.
+ * <p>
+ * As the next page is read concurrently, it has to be read on a separate
+ * {@link javax.persistence.EntityManager}. Thus prefetched pages contain
+ * detached entities and only reflect committed changes. For the same reason
+ * pages are neither prefetched nor served inside transactions that are not
+ * read-only. Pages requested before the executor started reading them are not
+ * waited for, the client reads them itself instead.
+ * <p>
+ * Pages prefetched by concurrent clients while a transaction writes entities
+ * would not contain its changes once committed. Thus no pages are prefetched
+ * or served until all writing transactions have completed, completing them
+ * clears the prefetched pages again.
+ * 
+ * @author Oliver Gierke
+ */
+public class PagePrefetcher {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(PagePrefetcher.class);
+
+    private final ExecutorService executor;
+    private final long timeToLive;
+    private final Map<Object, Entry> entries;
+
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    /**
+     * Creates a new {@link PagePrefetcher} reading pages with the given
+     * {@link ExecutorService} and keeping them for the given time to live. At
+     * most {@value #DEFAULT_MAX_SIZE} pages are kept.
+     * 
+     * @param executor must not be {@literal null}
+     * @param timeToLive must be greater than zero
+     * @param unit must not be {@literal null}
+     */
+    public PagePrefetcher(ExecutorService executor, long timeToLive,
+            TimeUnit unit) {
+
+        this(executor, timeToLive, unit, DEFAULT_MAX_SIZE);
+    }
+
+
+    /**
+     * Creates a new {@link PagePrefetcher} reading pages with the given
+     * {@link ExecutorService} and keeping at most the given number of pages
+     * for the given time to live.
+     * 
+     * @param executor must not be {@literal null}
+     * @param timeToLive must be greater than zero
+     * @param unit must not be {@literal null}
+     * @param maxSize must be greater than zero
+     */
+    public PagePrefetcher(ExecutorService executor, long timeToLive,
+            TimeUnit unit, final int maxSize) {
+
+        Assert.notNull(executor);
+        Assert.isTrue(timeToLive > 0, "Time to live must be greater than 0!");
+        Assert.notNull(unit);
+        Assert.isTrue(maxSize > 0, "Maximum size must be greater than 0!");
+
+        this.executor = executor;
+        this.timeToLive = unit.toMillis(timeToLive);
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 2640187433563925418L;
+
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+
+                if (size() > maxSize) {
+                    eldest.getValue().future.cancel(false);
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Creates a key for a page from the given parts, e.g. a query, the values
+     * bound to it and the {@link Pageable} of the page. Keys are equal if all
+     * their parts are equal.
+     * 
+     * @param parts
+     * @return
+     */
+    public static Object createKey(Object... parts) {
+
+        return Arrays.asList(parts);
+    }
+
+
+    /**
+     * Returns the {@link Pageable} of the page following the given one, read
+     * for the given {@link Pageable}, if it can be prefetched. This requires
+     * the total of the given page to be known and the page to be requested by
+     * a {@link PageRequest} or {@link CappedPageRequest}. Returns
+     * {@literal null} otherwise.
+     * 
+     * @param page can be {@literal null}
+     * @param pageable can be {@literal null}
+     * @return
+     */
+    public static Pageable getNextPageable(Page<?> page, Pageable pageable) {
+
+        if (!(page instanceof PageImpl) || pageable == null
+                || !page.hasNextPage()) {
+            return null;
+        }
+
+        int next = pageable.getPageNumber() + 1;
+
+        if (CappedPageRequest.class.equals(pageable.getClass())) {
+            return new CappedPageRequest(next, pageable.getPageSize(),
+                    pageable.getSort(),
+                    ((CappedPageRequest) pageable).getCountCap());
+        }
+
+        if (PageRequest.class.equals(pageable.getClass())) {
+            return new PageRequest(next, pageable.getPageSize(),
+                    pageable.getSort());
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns the prefetched page for the given key. Waits for the page if it
+     * is being read. Returns {@literal null} if no page was prefetched for the
+     * key, it has expired or could not be read. Also returns {@literal null}
+     * if the executor did not start reading the page yet, as the caller can
+     * read it faster itself than waiting for it. The prefetch is cancelled
+     * then.
+     * 
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Page<T> getPage(Object key) {
+
+        Entry entry = isPrefetchingAllowed() ? getEntry(key) : null;
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.claim()) {
+            entry.future.cancel(false);
+            removeEntry(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+
+            Page<T> page = (Page<T>) entry.future.get();
+            hits.incrementAndGet();
+
+            return page;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug("Prefetching page failed!", e.getCause());
+        } catch (CancellationException e) {
+            // Invalidated in the meantime
+        }
+
+        removeEntry(key, entry);
+        misses.incrementAndGet();
+
+        return null;
+    }
+
+
+    /**
+     * Reads the page for the given {@link Pageable} in the background using
+     * the given {@link ContentReader} and keeps it under the given key. The
+     * total number of elements is taken from the given current page. Does
+     * nothing if the page is already prefetched, the executor rejects the
+     * task or the current transaction is not read-only.
+     * 
+     * @param key
+     * @param pageable must not be {@literal null}
+     * @param current the page read before, must not be {@literal null}
+     * @param reader must not be {@literal null}
+     */
+    public void prefetch(Object key, final Pageable pageable,
+            final Page<?> current, final ContentReader reader) {
+
+        Assert.notNull(pageable);
+        Assert.notNull(current);
+        Assert.notNull(reader);
+
+        if (!isPrefetchingAllowed()) {
+            return;
+        }
+
+        synchronized (this) {
+
+            Entry existing = entries.get(key);
+
+            if (existing != null && !existing.isExpired()) {
+                return;
+            }
+
+            try {
+                final Entry entry =
+                        new Entry(System.currentTimeMillis() + timeToLive);
+
+                entry.future = executor.submit(new Callable<Page<?>>() {
+
+                    public Page<?> call() {
+
+                        if (!entry.claim()) {
+                            throw new CancellationException(
+                                    "Page requested before being prefetched!");
+                        }
+
+                        List<Object> content =
+                                new ArrayList<Object>(reader
+                                        .readContent(pageable));
+
+                        return new PageImpl<Object>(content, pageable, current
+                                .getTotalElements(), current.isTotalCapped());
+                    }
+                });
+
+                entries.put(key, entry);
+
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Prefetching page rejected by executor!");
+            }
+        }
+    }
+
+
+    /**
+     * Discards all prefetched pages and cancels the ones not being read yet.
+     * Pages already being read are not interrupted but discarded when done.
+     */
+    public synchronized void clear() {
+
+        for (Entry entry : entries.values()) {
+            entry.future.cancel(false);
+        }
+
+        entries.clear();
+    }
+
+
+    /**
+     * Discards all prefetched pages as entities are about to be written. If a
+     * transaction is active no pages are prefetched or served until it
+     * completes, completing it discards the pages again.
+     */
+    public void evict() {
+
+        clear();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        pendingWrites.incrementAndGet();
+        TransactionSynchronizationManager
+                .registerSynchronization(new EvictingSynchronization());
+    }
+
+
+    /**
+     * Returns the number of prefetched pages including expired ones not
+     * evicted yet.
+     * 
+     * @return
+     */
+    public synchronized int size() {
+
+        return entries.size();
+    }
+
+
+    /**
+     * Returns how often a page was served from the prefetched ones.
+     * 
+     * @return
+     */
+    public long getHits() {
+
+        return hits.get();
+    }
+
+
+    /**
+     * Returns how often a page was not prefetched.
+     * 
+     * @return
+     */
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+
+    private synchronized Entry getEntry(Object key) {
+
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.isExpired()) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+
+    private synchronized void removeEntry(Object key, Entry entry) {
+
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+        }
+    }
+
+
+    /**
+     * Returns whether pages may be prefetched and served. This is not the
+     * case inside a transaction that is not read-only as pages read on a
+     * separate {@link javax.persistence.EntityManager} would not see the
+     * changes made inside of it. Neither is it while any transaction writing
+     * entities has not completed yet.
+     * 
+     * @return
+     */
+    private boolean isPrefetchingAllowed() {
+
+        if (pendingWrites.get() > 0) {
+            return false;
+        }
+
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager
+                        .isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Callback to read the content of a page.
+     * 
+     * @author Oliver Gierke
+     */
+    public interface ContentReader {
+
+        /**
+         * Reads the content of the page for the given {@link Pageable}. Will
+         * be invoked from a different thread than the one the page was
+         * requested by.
+         * 
+         * @param pageable
+         * @return
+         */
+        List<?> readContent(Pageable pageable);
+    }
+
+    /**
+     * Synchronization to clear the prefetched pages after a transaction
+     * writing entities completed.
+     * 
+     * @author Oliver Gierke
+     */
+    private class EvictingSynchronization extends
+            TransactionSynchronizationAdapter {
+
+        @Override
+        public void afterCompletion(int status) {
+
+            TransactionSynchronizationManager
+                    .unbindResourceIfPossible(PagePrefetcher.this);
+            pendingWrites.decrementAndGet();
+            clear();
+        }
+    }
+
+    /**
+     * A prefetched page and its expiry.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class Entry {
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final long expires;
+        private volatile Future<Page<?>> future;
+
+
+        public Entry(long expires) {
+
+            this.expires = expires;
+        }
+
+
+        /**
+         * Claims reading the page. Only the first caller succeeds, which is
+         * either the executor starting to read the page or a client
+         * requesting it before.
+         * 
+         * @return
+         */
+        public boolean claim() {
+
+            return claimed.compareAndSet(false, true);
+        }
+
+
+        public boolean isExpired() {
+
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.util.Assert;
+import org.synyx.hades.domain.CappedPageRequest;
+import org.synyx.hades.domain.KeysetPageRequest;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.Pageable;
+
+
+/**
+ * Utility class to create {@link Page}s from the content read for a
+ * {@link Pageable}. Avoids executing the count query if the total number of
+ * elements can be derived from the content and the offset already. This is
+ * the case if the page is not filled completely and it is either the first one
+ * or is not empty. Callers can hand in a counter to keep track of how often
+ * the count query was skipped.
+ * 
+ * @author Oliver Gierke
+ */
+public abstract class PageableExecutionUtils {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PageableExecutionUtils() {
+
+    }
+
+
+    /**
+     * Callback to lazily look up the total number of elements, usually by
+     * executing a count query.
+     * 
+     * @author Oliver Gierke
+     */
+    public interface TotalSupplier {
+
+        /**
+         * Returns the total number of elements.
+         * 
+         * @return
+         */
+        long getTotal();
+    }
+
+
+    /**
+     * Creates a {@link Page} for the given content and {@link Pageable}. Only
+     * invokes the given {@link TotalSupplier} if the total number of elements
+     * cannot be derived from the content.
+     * 
+     * @param <T>
+     * @param content must not be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param totalSupplier must not be {@literal null}
+     * @return
+     */
+    public static <T> Page<T> getPage(List<T> content, Pageable pageable,
+            TotalSupplier totalSupplier) {
+
+        return getPage(content, pageable, 0, totalSupplier);
+    }
+
+
+    /**
+     * Creates a {@link Page} for the given content and {@link Pageable}. Only
+     * invokes the given {@link TotalSupplier} if the total number of elements
+     * cannot be derived from the content. If a count cap is given the
+     * {@link TotalSupplier} is expected to count at most one element more
+     * than the cap. If it does the {@link Page} will report a lower bound of
+     * the total (see {@link Page#isTotalCapped()}).
+     * 
+     * @param <T>
+     * @param content must not be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param countCap the maximum number of elements to count or {@literal 0}
+     *            if the count is not capped
+     * @param totalSupplier must not be {@literal null}
+     * @return
+     */
+    public static <T> Page<T> getPage(List<T> content, Pageable pageable,
+            int countCap, TotalSupplier totalSupplier) {
+
+        return getPage(content, pageable, countCap, totalSupplier, null);
+    }
+
+
+    /**
+     * Creates a {@link Page} for the given content and {@link Pageable} like
+     * {@link #getPage(List, Pageable, int, TotalSupplier)} does. Increments
+     * the given counter if the {@link TotalSupplier} was not invoked as the
+     * total could be derived from the content.
+     * 
+     * @param <T>
+     * @param content must not be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param countCap the maximum number of elements to count or {@literal 0}
+     *            if the count is not capped
+     * @param totalSupplier must not be {@literal null}
+     * @param skippedCountQueries the counter of skipped count queries, can be
+     *            {@literal null}
+     * @return
+     */
+    public static <T> Page<T> getPage(List<T> content, Pageable pageable,
+            int countCap, TotalSupplier totalSupplier,
+            AtomicLong skippedCountQueries) {
+
+        Assert.notNull(content);
+        Assert.notNull(totalSupplier);
+
+        if (pageable == null) {
+            return new PageImpl<T>(content);
+        }
+
+        if (isTotalKnown(content, pageable)) {
+
+            if (skippedCountQueries != null) {
+                skippedCountQueries.incrementAndGet();
+            }
+
+            return new PageImpl<T>(content, pageable, pageable.getFirstItem()
+                    + content.size());
+        }
+
+        long total = totalSupplier.getTotal();
+
+        if (countCap > 0 && total > countCap) {
+            return new PageImpl<T>(content, pageable, Math.max(total,
+                    pageable.getFirstItem() + content.size()), true);
+        }
+
+        return new PageImpl<T>(content, pageable, total);
+    }
+
+
+    /**
+     * Creates a {@link Page} for the given content and {@link Pageable} that
+     * invokes the given {@link TotalSupplier} not before the total number of
+     * elements is requested (see {@link LazyTotalPage}). Returns a plain
+     * {@link Page} if the total can be derived from the content.
+     * 
+     * @param <T>
+     * @param content must not be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param countCap the maximum number of elements to count or {@literal 0}
+     *            if the count is not capped
+     * @param totalSupplier must not be {@literal null}
+     * @param em the {@link EntityManager} the count query will be executed
+     *            on, can be {@literal null}
+     * @return
+     */
+    public static <T> Page<T> getLazyPage(List<T> content, Pageable pageable,
+            int countCap, TotalSupplier totalSupplier, EntityManager em) {
+
+        return getLazyPage(content, pageable, countCap, totalSupplier, em,
+                null);
+    }
+
+
+    /**
+     * Creates a {@link Page} for the given content and {@link Pageable} like
+     * {@link #getLazyPage(List, Pageable, int, TotalSupplier, EntityManager)}
+     * does. Increments the given counter if the total could be derived from
+     * the content.
+     * 
+     * @param <T>
+     * @param content must not be {@literal null}
+     * @param pageable can be {@literal null}
+     * @param countCap the maximum number of elements to count or {@literal 0}
+     *            if the count is not capped
+     * @param totalSupplier must not be {@literal null}
+     * @param em the {@link EntityManager} the count query will be executed
+     *            on, can be {@literal null}
+     * @param skippedCountQueries the counter of skipped count queries, can be
+     *            {@literal null}
+     * @return
+     */
+    public static <T> Page<T> getLazyPage(List<T> content, Pageable pageable,
+            int countCap, TotalSupplier totalSupplier, EntityManager em,
+            AtomicLong skippedCountQueries) {
+
+        Assert.notNull(content);
+        Assert.notNull(totalSupplier);
+
+        if (pageable == null || isTotalKnown(content, pageable)) {
+            return getPage(content, pageable, countCap, totalSupplier,
+                    skippedCountQueries);
+        }
+
+        return new LazyTotalPage<T>(content, pageable, countCap,
+                totalSupplier, em);
+    }
+
+
+    /**
+     * Returns the count cap to be used for the given {@link Pageable}. A cap
+     * given by a {@link CappedPageRequest} overrides the given default one.
+     * 
+     * @param pageable can be {@literal null}
+     * @param defaultCap the cap to be used if none is given by the
+     *            {@link Pageable}, {@literal 0} for no cap
+     * @return the count cap or {@literal 0} if the count is not capped
+     */
+    public static int getCountCap(Pageable pageable, int defaultCap) {
+
+        return pageable instanceof CappedPageRequest ? ((CappedPageRequest) pageable)
+                .getCountCap() : defaultCap;
+    }
+
+
+    /**
+     * Returns whether the given content of the page requested by the given
+     * {@link Pageable} proves the total number of elements.
+     * 
+     * @param content
+     * @param pageable
+     * @return
+     */
+    private static boolean isTotalKnown(List<?> content, Pageable pageable) {
+
+        if (content.size() >= pageable.getPageSize()) {
+            return false;
+        }
+
+        // Offset of keyset pages following the first one is unknown
+        if (pageable instanceof KeysetPageRequest
+                && ((KeysetPageRequest) pageable).hasLastValues()) {
+            return false;
+        }
+
+        return pageable.getFirstItem() == 0 || !content.isEmpty();
+    }
+}
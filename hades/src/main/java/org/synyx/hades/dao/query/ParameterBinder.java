@@ -15,9 +15,13 @@
  */
 package org.synyx.hades.dao.query;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.persistence.Query;
 
 import org.springframework.util.Assert;
+import org.synyx.hades.domain.KeysetPageRequest;
 import org.synyx.hades.domain.Pageable;
 import org.synyx.hades.domain.Sort;
 
@@ -30,6 +34,8 @@ import org.synyx.hades.domain.Sort;
  */
 class ParameterBinder {
 
+    private static final String KEYSET_PARAMETER_NAME = "keyset%d";
+
     private final Parameters parameters;
     private final Object[] values;
 
@@ -69,6 +75,122 @@ class ParameterBinder {
     }
 
 
+    /**
+     * Returns a new {@link ParameterBinder} binding the same values but using
+     * the given {@link Pageable}.
+     * 
+     * @param pageable
+     * @return
+     */
+    public ParameterBinder withPageable(Pageable pageable) {
+
+        Assert.isTrue(parameters.hasPageableParameter(),
+                "Parameters do not contain a Pageable!");
+
+        Object[] newValues = values.clone();
+        newValues[parameters.getPageableIndex()] = pageable;
+
+        return new ParameterBinder(parameters, newValues);
+    }
+
+
+    /**
+     * Returns the {@link KeysetPageRequest} given as {@link Pageable} if it
+     * points to a page following a previous one. Returns {@literal null}
+     * otherwise.
+     * 
+     * @return
+     */
+    public KeysetPageRequest getKeysetPageable() {
+
+        Pageable pageable = getPageable();
+
+        if (!(pageable instanceof KeysetPageRequest)) {
+            return null;
+        }
+
+        KeysetPageRequest keyset = (KeysetPageRequest) pageable;
+        return keyset.hasLastValues() ? keyset : null;
+    }
+
+
+    /**
+     * Returns the placeholders to be used for the values of the
+     * {@link KeysetPageRequest} (see {@link #getKeysetPageable()}). Will use
+     * named parameters if the method parameters are named ones and positional
+     * ones following the method parameters otherwise.
+     * 
+     * @return
+     */
+    public String[] getKeysetPlaceholders() {
+
+        Object[] keysetValues = getKeysetPageable().getLastValues();
+        String[] placeholders = new String[keysetValues.length];
+
+        for (int i = 0; i < keysetValues.length; i++) {
+            placeholders[i] =
+                    usesNamedParameters() ? ":"
+                            + String.format(KEYSET_PARAMETER_NAME, i) : "?"
+                            + getKeysetPosition(i);
+        }
+
+        return placeholders;
+    }
+
+
+    /**
+     * Binds the values of the {@link KeysetPageRequest} (see
+     * {@link #getKeysetPageable()}) to the given {@link Query} using the
+     * placeholders returned by {@link #getKeysetPlaceholders()}.
+     * 
+     * @param query
+     * @return
+     */
+    public Query bindKeyset(Query query) {
+
+        Object[] keysetValues = getKeysetPageable().getLastValues();
+
+        for (int i = 0; i < keysetValues.length; i++) {
+
+            if (usesNamedParameters()) {
+                query.setParameter(String.format(KEYSET_PARAMETER_NAME, i),
+                        keysetValues[i]);
+            } else {
+                query.setParameter(getKeysetPosition(i), keysetValues[i]);
+            }
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Returns whether the bindable method parameters are named ones.
+     * 
+     * @return
+     */
+    private boolean usesNamedParameters() {
+
+        Parameters bindable = parameters.getBindableParameters();
+
+        return bindable.getNumberOfParameters() > 0
+                && bindable.getParameter(0).isNamedParameter();
+    }
+
+
+    /**
+     * Returns the parameter position of the keyset value with the given index.
+     * 
+     * @param index
+     * @return
+     */
+    private int getKeysetPosition(int index) {
+
+        return parameters.getBindableParameters().getNumberOfParameters()
+                + index + 1;
+    }
+
+
     /**
      * Returns the sort instance to be used for query creation. Will use a
      * {@link Sort} parameter if available or the {@link Sort} contained in a
@@ -91,6 +213,30 @@ class ParameterBinder {
     }
 
 
+    /**
+     * Returns the values of all bindable parameters, i.e. the ones bound to
+     * the query (see {@link #bind(Query)}).
+     * 
+     * @return
+     */
+    public List<Object> getBindableValues() {
+
+        List<Object> result = new ArrayList<Object>();
+        int methodParameterPosition = 0;
+
+        for (Parameter parameter : parameters) {
+
+            if (parameter.isBindable()) {
+                result.add(values[methodParameterPosition]);
+            }
+
+            methodParameterPosition++;
+        }
+
+        return result;
+    }
+
+
     /**
      * Binds the parameters to the given {@link Query}.
      * 
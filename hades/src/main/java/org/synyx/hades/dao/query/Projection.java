@@ -0,0 +1,535 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Selection;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.synyx.hades.dao.ProjectedProperty;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
+import org.synyx.hades.domain.SliceImpl;
+
+
+/**
+ * A type the entities read are projected onto instead of being returned
+ * themselves. Thus only the selected properties are read and no entities end
+ * up in the persistence context. Three kinds of projections are supported:
+ * <ul>
+ * <li>Simple value types (e.g. {@link String}, numbers, dates or enums)
+ * selecting a single property.</li>
+ * <li>Classes (DTOs) instantiated with a constructor expression. The
+ * properties are passed to the constructor in the order they were declared.
+ * </li>
+ * <li>Interfaces exposing getters for the selected properties. Results are
+ * backed by proxies.</li>
+ * </ul>
+ * If no properties are declared explicitly, interfaces select the properties
+ * of their getters and classes the parameters of their single constructor.
+ * The constructor parameters have to be annotated with
+ * {@link ProjectedProperty} unless the class is compiled with debug
+ * information, as their names cannot be determined otherwise.
+ * 
+ * @author Oliver Gierke
+ */
+public class Projection {
+
+    private static final ParameterNameDiscoverer DISCOVERER =
+            new LocalVariableTableParameterNameDiscoverer();
+
+    private final Class<?> type;
+    private final Kind kind;
+    private final List<String> properties;
+
+
+    /**
+     * Creates a new {@link Projection}.
+     * 
+     * @param type
+     * @param kind
+     * @param properties
+     */
+    private Projection(Class<?> type, Kind kind, List<String> properties) {
+
+        this.type = type;
+        this.kind = kind;
+        this.properties = Collections.unmodifiableList(properties);
+    }
+
+
+    /**
+     * Returns whether the given type is a projection of the given domain
+     * class rather than the domain class itself, one of its super- or
+     * subtypes or another entity.
+     * 
+     * @param type can be {@literal null}
+     * @param domainClass must not be {@literal null}
+     * @return
+     */
+    public static boolean isProjection(Class<?> type, Class<?> domainClass) {
+
+        Assert.notNull(domainClass);
+
+        if (type == null || type.isAssignableFrom(domainClass)
+                || domainClass.isAssignableFrom(type)) {
+            return false;
+        }
+
+        if (Iterable.class.isAssignableFrom(type)
+                || Slice.class.isAssignableFrom(type)
+                || Map.class.isAssignableFrom(type) || type.isArray()) {
+            return false;
+        }
+
+        return !(void.class.equals(type) || Void.class.equals(type) || type
+                .isAnnotationPresent(Entity.class));
+    }
+
+
+    /**
+     * Creates a {@link Projection} of the given domain class onto the given
+     * type deriving the properties to select from the type. Returns
+     * {@literal null} if the type is not a projection.
+     * 
+     * @see #isProjection(Class, Class)
+     * @param type
+     * @param domainClass must not be {@literal null}
+     * @return
+     */
+    public static Projection of(Class<?> type, Class<?> domainClass) {
+
+        return of(type, domainClass, Collections.<String> emptyList());
+    }
+
+
+    /**
+     * Creates a {@link Projection} of the given domain class onto the given
+     * type selecting the given properties. Falls back to deriving the
+     * properties from the type if none are given. Returns {@literal null} if
+     * the type is not a projection.
+     * 
+     * @see #isProjection(Class, Class)
+     * @param type
+     * @param domainClass must not be {@literal null}
+     * @param properties must not be {@literal null}
+     * @return
+     * @throws IllegalArgumentException if more than one property shall be
+     *             selected for a simple value type or only some constructor
+     *             parameters of a class are annotated with
+     *             {@link ProjectedProperty}
+     */
+    public static Projection of(Class<?> type, Class<?> domainClass,
+            List<String> properties) {
+
+        Assert.notNull(properties);
+
+        if (!isProjection(type, domainClass)) {
+            return null;
+        }
+
+        Kind kind = Kind.of(type);
+
+        if (kind == Kind.SCALAR && properties.size() > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot select more than one property for %s!",
+                    type.getName()));
+        }
+
+        return new Projection(type, kind, properties.isEmpty() ? kind
+                .getProperties(type) : new ArrayList<String>(properties));
+    }
+
+
+    /**
+     * Returns the type projected onto.
+     * 
+     * @return
+     */
+    public Class<?> getType() {
+
+        return type;
+    }
+
+
+    /**
+     * Returns the properties to select.
+     * 
+     * @return the properties, will never be {@literal null}
+     */
+    public List<String> getProperties() {
+
+        return properties;
+    }
+
+
+    /**
+     * Returns whether the properties to select are known.
+     * 
+     * @return
+     */
+    public boolean hasProperties() {
+
+        return !properties.isEmpty();
+    }
+
+
+    /**
+     * Returns whether the rows read have to be converted by
+     * {@link #convert(Object, Pageable)}.
+     * 
+     * @return
+     */
+    public boolean requiresConversion() {
+
+        return kind == Kind.INTERFACE;
+    }
+
+
+    /**
+     * Returns the JPQL selection clause (without the {@literal select}
+     * keyword) for the projection of the entity with the given alias.
+     * 
+     * @param alias must not be {@literal null} or empty
+     * @return
+     * @throws IllegalStateException if the properties to select are not known
+     */
+    public String getSelection(String alias) {
+
+        Assert.hasText(alias);
+        assertHasProperties();
+
+        List<String> paths = new ArrayList<String>();
+
+        for (String property : properties) {
+            paths.add(alias + "." + property);
+        }
+
+        String selection =
+                StringUtils.collectionToDelimitedString(paths, ", ");
+
+        return kind == Kind.DTO ? String.format("new %s(%s)", type.getName(),
+                selection) : selection;
+    }
+
+
+    /**
+     * Returns the {@link Selection}s of the properties to select from the
+     * given {@link Path}. Entities have to be projected onto classes with
+     * {@link javax.persistence.criteria.CriteriaBuilder#construct(Class, Selection...)}
+     * and onto interfaces with a multiselect and {@link #convert(Object,
+     * Pageable)}.
+     * 
+     * @param path must not be {@literal null}
+     * @return
+     * @throws IllegalStateException if the properties to select are not known
+     */
+    public List<Selection<?>> getSelections(Path<?> path) {
+
+        Assert.notNull(path);
+        assertHasProperties();
+
+        List<Selection<?>> selections = new ArrayList<Selection<?>>();
+
+        for (String property : properties) {
+            selections.add(path.get(property));
+        }
+
+        return selections;
+    }
+
+
+    /**
+     * Converts the given query result into instances of the type projected
+     * onto if necessary. Supports {@link List}s, {@link Page}s and
+     * {@link Slice}s of rows as well as single rows. Pages are converted
+     * eagerly, so that a lazily computed total is computed on conversion.
+     * 
+     * @param result can be {@literal null}
+     * @param pageable the {@link Pageable} a {@link Page} or {@link Slice}
+     *            was read for, can be {@literal null}
+     * @return
+     */
+    public Object convert(Object result, Pageable pageable) {
+
+        if (!requiresConversion() || result == null) {
+            return result;
+        }
+
+        if (result instanceof Page) {
+
+            Page<?> page = (Page<?>) result;
+            return new PageImpl<Object>(convertRows(page.asList()), pageable,
+                    page.getTotalElements(), page.isTotalCapped());
+        }
+
+        if (result instanceof Slice) {
+
+            Slice<?> slice = (Slice<?>) result;
+            return new SliceImpl<Object>(convertRows(slice.asList()),
+                    pageable, slice.hasNextPage());
+        }
+
+        if (result instanceof List) {
+            return convertRows((List<?>) result);
+        }
+
+        return convertRow(result);
+    }
+
+
+    /**
+     * Converts the given rows into instances of the type projected onto.
+     * 
+     * @param rows
+     * @return
+     */
+    private List<Object> convertRows(List<?> rows) {
+
+        List<Object> result = new ArrayList<Object>(rows.size());
+
+        for (Object row : rows) {
+            result.add(convertRow(row));
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Converts the given row into a proxy of the interface projected onto.
+     * 
+     * @param row a single value or an array of values in the order of the
+     *            properties
+     * @return
+     */
+    private Object convertRow(Object row) {
+
+        Object[] values = row instanceof Object[] ? (Object[]) row
+                : new Object[] { row };
+
+        Assert.isTrue(values.length == properties.size(), String.format(
+                "Expected %s values but got %s!", properties.size(),
+                values.length));
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+
+        for (int i = 0; i < values.length; i++) {
+            map.put(properties.get(i), values[i]);
+        }
+
+        return Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[] { type }, new ProjectionHandler(type, map));
+    }
+
+
+    private void assertHasProperties() {
+
+        if (!hasProperties()) {
+            throw new IllegalStateException(String.format(
+                    "Cannot derive the properties to select for %s! Declare "
+                            + "them explicitly or use a class with a single "
+                            + "constructor whose parameters are annotated "
+                            + "with @%s or that is compiled with debug "
+                            + "information.", type.getName(),
+                    ProjectedProperty.class.getSimpleName()));
+        }
+    }
+
+    /**
+     * The kinds of types entities can be projected onto.
+     * 
+     * @author Oliver Gierke
+     */
+    private static enum Kind {
+
+        SCALAR, DTO, INTERFACE;
+
+        /**
+         * Returns the {@link Kind} of the given type.
+         * 
+         * @param type
+         * @return
+         */
+        public static Kind of(Class<?> type) {
+
+            if (BeanUtils.isSimpleValueType(type)) {
+                return SCALAR;
+            }
+
+            return type.isInterface() ? INTERFACE : DTO;
+        }
+
+
+        /**
+         * Derives the properties to select from the given type. Returns an
+         * empty list if they cannot be derived.
+         * 
+         * @param type
+         * @return
+         */
+        public List<String> getProperties(Class<?> type) {
+
+            List<String> result = new ArrayList<String>();
+
+            if (this == INTERFACE) {
+
+                for (PropertyDescriptor descriptor : BeanUtils
+                        .getPropertyDescriptors(type)) {
+                    if (descriptor.getReadMethod() != null) {
+                        result.add(descriptor.getName());
+                    }
+                }
+            }
+
+            if (this == DTO && type.getConstructors().length == 1) {
+                result.addAll(getProperties(type.getConstructors()[0]));
+            }
+
+            return result;
+        }
+
+
+        /**
+         * Returns the properties to pass to the given constructor. Takes them
+         * from {@link ProjectedProperty} annotations if present and from the
+         * parameter names otherwise. Returns an empty list if the parameter
+         * names cannot be determined.
+         * 
+         * @param constructor
+         * @return
+         */
+        private static List<String> getProperties(Constructor<?> constructor) {
+
+            Annotation[][] parameters = constructor.getParameterAnnotations();
+            List<String> result = new ArrayList<String>();
+
+            for (Annotation[] annotations : parameters) {
+                for (Annotation annotation : annotations) {
+                    if (annotation instanceof ProjectedProperty) {
+                        result.add(((ProjectedProperty) annotation).value());
+                    }
+                }
+            }
+
+            if (!result.isEmpty()) {
+
+                if (result.size() != parameters.length) {
+                    throw new IllegalArgumentException(String.format(
+                            "Either all or no parameters of %s have to be "
+                                    + "annotated with @%s!", constructor,
+                            ProjectedProperty.class.getSimpleName()));
+                }
+
+                return result;
+            }
+
+            String[] names = DISCOVERER.getParameterNames(constructor);
+
+            return names == null ? result : Arrays.asList(names);
+        }
+    }
+
+    /**
+     * {@link InvocationHandler} backing interface projections with a map of
+     * property values.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class ProjectionHandler implements InvocationHandler {
+
+        private final Class<?> type;
+        private final Map<String, Object> values;
+
+
+        public ProjectionHandler(Class<?> type, Map<String, Object> values) {
+
+            this.type = type;
+            this.values = values;
+        }
+
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+         * java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+
+            String name = method.getName();
+            int arguments = args == null ? 0 : args.length;
+
+            if ("equals".equals(name) && arguments == 1) {
+                return isEqual(args[0]);
+            }
+
+            if ("hashCode".equals(name) && arguments == 0) {
+                return values.hashCode();
+            }
+
+            if ("toString".equals(name) && arguments == 0) {
+                return type.getSimpleName() + values;
+            }
+
+            PropertyDescriptor descriptor =
+                    BeanUtils.findPropertyForMethod(method);
+
+            if (arguments == 0 && descriptor != null
+                    && values.containsKey(descriptor.getName())) {
+                return values.get(descriptor.getName());
+            }
+
+            throw new UnsupportedOperationException(String.format(
+                    "%s is not backed by a selected property!", method));
+        }
+
+
+        private boolean isEqual(Object other) {
+
+            if (other == null || !Proxy.isProxyClass(other.getClass())) {
+                return false;
+            }
+
+            InvocationHandler handler = Proxy.getInvocationHandler(other);
+
+            return handler instanceof ProjectionHandler
+                    && type.equals(((ProjectionHandler) handler).type)
+                    && values.equals(((ProjectionHandler) handler).values);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.synyx.hades.dao.ProjectedProperty;
 import org.synyx.hades.domain.Order;
 import org.synyx.hades.domain.Sort.Property;
 
@@ -45,6 +46,8 @@ class QueryCreator {
             "You have to provide method arguments for each query "
                     + "criteria to construct the query correctly!";
 
+    private static final String PROJECTING_QUERY = "select %s from %s x";
+
     private static final String AND = "And";
     private static final String OR = "Or";
 
@@ -75,9 +78,13 @@ class QueryCreator {
      */
     String constructQuery() {
 
+        Projection projection = method.getProjection();
+        String entityName = getEntityName(method.getDomainClass());
+
         StringBuilder queryBuilder =
-                new StringBuilder(getQueryString(READ_ALL_QUERY,
-                        getEntityName(method.getDomainClass())));
+                new StringBuilder(projection == null ? getQueryString(
+                        READ_ALL_QUERY, entityName) : String.format(
+                        PROJECTING_QUERY, getSelection(projection), entityName));
         queryBuilder.append(" where ");
 
         PartSource source = new PartSource(method.getName());
@@ -140,6 +147,35 @@ class QueryCreator {
         return query;
     }
 
+
+    /**
+     * Returns the selection for the given {@link Projection} after verifying
+     * the properties to select.
+     * 
+     * @param projection
+     * @return
+     * @throws QueryCreationException
+     */
+    private String getSelection(Projection projection) {
+
+        if (!projection.hasProperties()) {
+            throw QueryCreationException.create(method, String.format(
+                    "Declare the properties to select for %s in the method "
+                            + "name, e.g. findFirstnameAndLastnameBy..., or "
+                            + "annotate its constructor parameters with @%s!",
+                    projection.getType().getName(),
+                    ProjectedProperty.class.getSimpleName()));
+        }
+
+        for (String property : projection.getProperties()) {
+            if (!method.isValidField(StringUtils.capitalize(property))) {
+                throw QueryCreationException.invalidProperty(method, property);
+            }
+        }
+
+        return projection.getSelection("x");
+    }
+
     /**
      * A single part of a method name that has to be transformed into a query
      * part. The actual transformation is defined by a {@link Type} that is
@@ -472,13 +508,20 @@ class QueryCreator {
 
         /**
          * Strips a prefix from the given method name if it starts with one of
-         * {@value #PREFIXES}.
+         * {@value #PREFIXES}. Strips the properties declared before the
+         * {@code By} keyword as well.
          * 
          * @param methodName
          * @return
          */
         private String strip(String methodName) {
 
+            Matcher matcher = QueryMethod.SUBJECT.matcher(methodName);
+
+            if (matcher.find()) {
+                return methodName.substring(matcher.end());
+            }
+
             for (String prefix : PREFIXES) {
 
                 String regex = String.format(PREFIX_TEMPLATE, prefix);
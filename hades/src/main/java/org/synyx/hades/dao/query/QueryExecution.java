@@ -16,13 +16,30 @@
 package org.synyx.hades.dao.query;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
+import org.synyx.hades.dao.query.PagePrefetcher.ContentReader;
+import org.synyx.hades.dao.query.PageableExecutionUtils.TotalSupplier;
+import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.SliceImpl;
 
 
 /**
@@ -83,24 +100,658 @@ abstract class QueryExecution {
 
     /**
      * Executes the {@link HadesQuery} to return a
-     * {@link org.synyx.hades.domain.Page} of entities.
+     * {@link org.synyx.hades.domain.Page} of entities. If an
+     * {@link ExecutorService} is configured the count query is executed
+     * concurrently to the content query on a separate {@link EntityManager}
+     * (see {@link QueryExecutionSettings#setCountQueryExecutor(ExecutorService)}
+     * ). Alternatively the total can be selected alongside the entities to
+     * read the page in a single round trip (see
+     * {@link QueryExecutionSettings#setInlineCountQueries(boolean)}) or the
+     * count query can be deferred until the total is requested (see
+     * {@link QueryExecutionSettings#setLazyCountQueries(boolean)}). If a
+     * {@link PagePrefetcher} is configured the following page is read in the
+     * background (see
+     * {@link QueryExecutionSettings#setPagePrefetcher(PagePrefetcher)}).
      */
     static class PagedExecution extends QueryExecution {
 
+        private final ExecutorService countQueryExecutor;
+        private final boolean inlineCountQueries;
+        private final boolean lazyCountQueries;
+        private final CountCache countCache;
+        private final AtomicLong skippedCountQueries;
+        private final PagePrefetcher pagePrefetcher;
+        private final int countCap;
+
+
+        /**
+         * Creates a new {@link PagedExecution} executing count queries
+         * sequentially.
+         */
+        public PagedExecution() {
+
+            this(null);
+        }
+
+
+        /**
+         * Creates a new {@link PagedExecution} executing count queries with
+         * the given {@link ExecutorService}.
+         * 
+         * @param countQueryExecutor can be {@literal null} to execute count
+         *            queries sequentially
+         */
+        public PagedExecution(ExecutorService countQueryExecutor) {
+
+            this(countQueryExecutor, false);
+        }
+
+
+        /**
+         * Creates a new {@link PagedExecution} executing count queries with
+         * the given {@link ExecutorService} or inside the content query.
+         * 
+         * @param countQueryExecutor can be {@literal null} to execute count
+         *            queries sequentially
+         * @param inlineCountQueries whether to select the total alongside the
+         *            entities if possible
+         */
+        public PagedExecution(ExecutorService countQueryExecutor,
+                boolean inlineCountQueries) {
+
+            this(createSettings(countQueryExecutor, inlineCountQueries), 0);
+        }
+
+
+        /**
+         * Creates a new {@link PagedExecution} applying the given
+         * {@link QueryExecutionSettings} and counting at most the given
+         * number of elements. Capped count queries are always executed
+         * sequentially.
+         * 
+         * @param settings must not be {@literal null}
+         * @param countCap the maximum number of elements to count,
+         *            {@literal 0} for an exact count
+         */
+        public PagedExecution(QueryExecutionSettings settings, int countCap) {
+
+            Assert.notNull(settings);
+
+            this.countQueryExecutor = settings.getCountQueryExecutor();
+            this.inlineCountQueries = settings.isInlineCountQueries();
+            this.lazyCountQueries = settings.isLazyCountQueries();
+            this.countCache = settings.getCountCache();
+            this.skippedCountQueries = settings.getSkippedCountQueries();
+            this.pagePrefetcher = settings.getPagePrefetcher();
+            this.countCap = countCap;
+        }
+
+
+        private static QueryExecutionSettings createSettings(
+                ExecutorService countQueryExecutor, boolean inlineCountQueries) {
+
+            QueryExecutionSettings settings = new QueryExecutionSettings();
+            settings.setCountQueryExecutor(countQueryExecutor);
+            settings.setInlineCountQueries(inlineCountQueries);
+
+            return settings;
+        }
+
+
+        @Override
+        protected Object doExecute(AbstractHadesQuery query,
+                ParameterBinder binder) {
+
+            if (pagePrefetcher == null) {
+                return readPage(query, binder);
+            }
+
+            Page<?> page =
+                    pagePrefetcher.getPage(createPrefetchKey(query, binder));
+
+            if (page == null) {
+                page = (Page<?>) readPage(query, binder);
+            }
+
+            prefetchNextPage(query, binder, page);
+
+            return page;
+        }
+
+
+        /**
+         * Reads the page requested by the given {@link ParameterBinder}.
+         * 
+         * @param query
+         * @param binder
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        private Object readPage(final AbstractHadesQuery query,
+                final ParameterBinder binder) {
+
+            int cap =
+                    PageableExecutionUtils.getCountCap(binder.getPageable(),
+                            countCap);
+
+            if (lazyCountQueries) {
+                return doExecuteWithLazyCount(cap, query, binder);
+            }
+
+            if (cap > 0) {
+                return doExecuteWithCappedCount(cap, query, binder);
+            }
+
+            final Long cached = getCachedCount(query, binder, 0);
+
+            Query inlineCountQuery =
+                    cached == null && inlineCountQueries
+                            && isInlineCountSupported() ? query
+                            .createJpaQueryWithInlineCount(binder) : null;
+
+            if (inlineCountQuery != null) {
+                return doExecuteWithInlineCount(inlineCountQuery, query,
+                        binder);
+            }
+
+            final Future<Long> total =
+                    cached == null ? submitCountQuery(query, binder) : null;
+
+            try {
+
+                return PageableExecutionUtils.getPage(
+                        readContent(query, binder), binder.getPageable(),
+                        0, new TotalSupplier() {
+
+                            public long getTotal() {
+
+                                if (cached != null) {
+                                    return cached;
+                                }
+
+                                if (total != null) {
+                                    return cacheCount(query, binder, 0,
+                                            getResult(total));
+                                }
+
+                                return count(query, binder, 0);
+                            }
+                        }, skippedCountQueries);
+            } finally {
+
+                // No-op if the total was already retrieved
+                if (total != null) {
+                    total.cancel(true);
+                }
+            }
+        }
+
+
+        /**
+         * Hands the page following the given one to the
+         * {@link PagePrefetcher} if it can be prefetched.
+         * 
+         * @param query
+         * @param binder
+         * @param page
+         */
+        private void prefetchNextPage(final AbstractHadesQuery query,
+                ParameterBinder binder, Page<?> page) {
+
+            Pageable next =
+                    PagePrefetcher.getNextPageable(page, binder.getPageable());
+
+            if (next == null) {
+                return;
+            }
+
+            final ParameterBinder nextBinder = binder.withPageable(next);
+
+            pagePrefetcher.prefetch(createPrefetchKey(query, nextBinder),
+                    next, page, new ContentReader() {
+
+                        public List<?> readContent(Pageable pageable) {
+
+                            return readContentInSeparateEntityManager(query,
+                                    nextBinder);
+                        }
+                    });
+        }
+
+
+        /**
+         * Reads the content of the page requested the same way as
+         * {@link #readContent(AbstractHadesQuery, ParameterBinder)} but on a
+         * new {@link EntityManager} created from the factory of the one of the
+         * query. Thus it can be read concurrently to queries on the original
+         * {@link EntityManager}. The entities returned are detached.
+         * 
+         * @param query
+         * @param binder
+         * @return
+         */
+        private List<?> readContentInSeparateEntityManager(
+                AbstractHadesQuery query, ParameterBinder binder) {
+
+            EntityManager em =
+                    query.getEntityManager().getEntityManagerFactory()
+                            .createEntityManager();
+
+            try {
+                AbstractHadesQuery separate = query.withEntityManager(em);
+                List<?> content = readContent(separate, binder);
+                separate.fetchAssociations(content, binder);
+
+                return content;
+            } finally {
+                em.close();
+            }
+        }
+
+
+        /**
+         * Creates the {@link PagePrefetcher} key for the given query and
+         * bound parameters.
+         * 
+         * @param query
+         * @param binder
+         * @return
+         */
+        private static Object createPrefetchKey(AbstractHadesQuery query,
+                ParameterBinder binder) {
+
+            return PagePrefetcher.createKey(query, binder.getBindableValues(),
+                    binder.getPageable(), binder.getSort());
+        }
+
+
+        /**
+         * Reads the content of the page requested.
+         * 
+         * @param query
+         * @param binder
+         * @return
+         */
+        @SuppressWarnings("rawtypes")
+        protected List readContent(AbstractHadesQuery query,
+                ParameterBinder binder) {
+
+            return binder.bindAndPrepare(query.createJpaQuery(binder))
+                    .getResultList();
+        }
+
+
+        /**
+         * Returns whether the total may be selected alongside the content
+         * (see {@link QueryExecutionSettings#setInlineCountQueries(boolean)}).
+         * 
+         * @return
+         */
+        protected boolean isInlineCountSupported() {
+
+            return true;
+        }
+
+
+        /**
+         * Executes the content query only and defers the count query until
+         * the total number of elements is requested from the returned
+         * {@link org.synyx.hades.domain.Page} (see {@link LazyTotalPage}).
+         * 
+         * @param countCap
+         * @param query
+         * @param binder
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        private Object doExecuteWithLazyCount(final int countCap,
+                final AbstractHadesQuery query, final ParameterBinder binder) {
+
+            return PageableExecutionUtils.getLazyPage(
+                    readContent(query, binder), binder.getPageable(),
+                    countCap, new TotalSupplier() {
+
+                        public long getTotal() {
+
+                            return count(query, binder, countCap);
+                        }
+                    }, query.getEntityManager(), skippedCountQueries);
+        }
+
+
+        /**
+         * Executes the query counting at most the given number of elements.
+         * Selects up to {@code countCap + 1} identifiers to find out whether
+         * the cap is exceeded. Falls back to the exact count if the query
+         * cannot be capped.
+         * 
+         * @param countCap
+         * @param query
+         * @param binder
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        private Object doExecuteWithCappedCount(final int countCap,
+                final AbstractHadesQuery query, final ParameterBinder binder) {
+
+            return PageableExecutionUtils.getPage(readContent(query, binder),
+                    binder.getPageable(), countCap, new TotalSupplier() {
+
+                        public long getTotal() {
+
+                            return count(query, binder, countCap);
+                        }
+                    }, skippedCountQueries);
+        }
+
+
+        /**
+         * Executes the count query of the given {@link AbstractHadesQuery}.
+         * Counts at most {@code countCap + 1} elements if a cap is given and
+         * the query can be capped. Returns a cached count if available.
+         * 
+         * @param query
+         * @param binder
+         * @param countCap the maximum number of elements to count,
+         *            {@literal 0} for an exact count
+         * @return
+         */
+        private long count(AbstractHadesQuery query, ParameterBinder binder,
+                int countCap) {
+
+            Long cached = getCachedCount(query, binder, countCap);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            Query capped =
+                    countCap > 0 ? query.createCappedCountQuery() : null;
+
+            if (capped == null) {
+                return cacheCount(query, binder, countCap, (Long) binder.bind(
+                        query.createCountQuery()).getSingleResult());
+            }
+
+            return cacheCount(query, binder, countCap, binder.bind(capped)
+                    .setFirstResult(0).setMaxResults(countCap + 1)
+                    .getResultList().size());
+        }
+
+
+        /**
+         * Returns the cached count for the given query and bound parameters
+         * or {@literal null} if none cached or no {@link CountCache}
+         * configured.
+         * 
+         * @param query
+         * @param binder
+         * @param countCap
+         * @return
+         */
+        private Long getCachedCount(AbstractHadesQuery query,
+                ParameterBinder binder, int countCap) {
+
+            return countCache == null ? null : countCache.get(createKey(
+                    query, binder, countCap));
+        }
+
+
+        /**
+         * Caches the given count for the given query and bound parameters if a
+         * {@link CountCache} is configured.
+         * 
+         * @param query
+         * @param binder
+         * @param countCap
+         * @param count
+         * @return the given count
+         */
+        private long cacheCount(AbstractHadesQuery query,
+                ParameterBinder binder, int countCap, long count) {
+
+            if (countCache != null) {
+                countCache.put(createKey(query, binder, countCap), count);
+            }
+
+            return count;
+        }
+
+
+        /**
+         * Creates the {@link CountCache} key for the given query and bound
+         * parameters.
+         * 
+         * @param query
+         * @param binder
+         * @param countCap
+         * @return
+         */
+        private static Object createKey(AbstractHadesQuery query,
+                ParameterBinder binder, int countCap) {
+
+            return CountCache.createKey(query, countCap, binder
+                    .getBindableValues());
+        }
+
+
+        /**
+         * Executes the given {@link Query} selecting the entities alongside
+         * the total number of elements and caches the total. Falls back to the
+         * count query if the page is empty and thus no total was read.
+         * 
+         * @param inlineCountQuery
+         * @param query
+         * @param binder
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        private Object doExecuteWithInlineCount(Query inlineCountQuery,
+                final AbstractHadesQuery query, final ParameterBinder binder) {
+
+            List<Object[]> rows =
+                    binder.bindAndPrepare(inlineCountQuery).getResultList();
+            List<Object> content = new ArrayList<Object>(rows.size());
+
+            for (Object[] row : rows) {
+                content.add(row[0]);
+            }
+
+            if (!rows.isEmpty()) {
+                return new PageImpl<Object>(content, binder.getPageable(),
+                        cacheCount(query, binder, 0, ((Number) rows.get(0)[1])
+                                .longValue()));
+            }
+
+            return PageableExecutionUtils.getPage(content, binder.getPageable(),
+                    0, new TotalSupplier() {
+
+                        public long getTotal() {
+
+                            return count(query, binder, 0);
+                        }
+                    }, skippedCountQueries);
+        }
+
+
+        /**
+         * Submits the count query to the configured {@link ExecutorService}
+         * if available and parallel execution is allowed in the current
+         * transaction. Returns {@literal null} if the count query has to be
+         * executed sequentially.
+         * 
+         * @param query
+         * @param binder
+         * @return
+         */
+        private Future<Long> submitCountQuery(final AbstractHadesQuery query,
+                final ParameterBinder binder) {
+
+            if (countQueryExecutor == null || !isParallelExecutionAllowed()) {
+                return null;
+            }
+
+            try {
+                return countQueryExecutor.submit(new Callable<Long>() {
+
+                    public Long call() {
+
+                        return query
+                                .executeCountQueryInSeparateEntityManager(binder);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+        }
+
+
+        /**
+         * Returns whether the count query may be executed on a separate
+         * {@link EntityManager}. This is not the case inside a transaction
+         * that is not read-only as the separate {@link EntityManager} would
+         * not see the changes made inside of it.
+         * 
+         * @return
+         */
+        private boolean isParallelExecutionAllowed() {
+
+            return !TransactionSynchronizationManager
+                    .isActualTransactionActive()
+                    || TransactionSynchronizationManager
+                            .isCurrentTransactionReadOnly();
+        }
+
+
+        /**
+         * Waits for the given {@link Future} and returns its result.
+         * Unwraps runtime exceptions thrown during execution.
+         * 
+         * @param future
+         * @return
+         */
+        private long getResult(Future<Long> future) {
+
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted while waiting for count query!", e);
+            } catch (ExecutionException e) {
+
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * {@link PagedExecution} selecting the identifiers of the entities of the
+     * requested page first and loading the entities for these identifiers
+     * afterwards (see {@link org.synyx.hades.dao.DeferredJoin}). Falls back to
+     * reading the page with the original query if the query cannot select
+     * identifiers.
+     */
+    static class DeferredJoinPagedExecution extends PagedExecution {
+
+        /**
+         * Creates a new {@link DeferredJoinPagedExecution} applying the given
+         * {@link QueryExecutionSettings} and counting at most the given
+         * number of elements.
+         * 
+         * @param settings must not be {@literal null}
+         * @param countCap the maximum number of elements to count,
+         *            {@literal 0} for an exact count
+         */
+        public DeferredJoinPagedExecution(QueryExecutionSettings settings,
+                int countCap) {
+
+            super(settings, countCap);
+        }
+
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        protected List readContent(AbstractHadesQuery query,
+                ParameterBinder binder) {
+
+            Query idQuery = query.createIdQuery(binder);
+
+            if (idQuery == null) {
+                return super.readContent(query, binder);
+            }
+
+            List<?> ids = binder.bindAndPrepare(idQuery).getResultList();
+
+            if (ids.isEmpty()) {
+                return ids;
+            }
+
+            Map<Object, Object> entities = new HashMap<Object, Object>();
+
+            for (Object row : query.createJpaQueryForIds(
+                    new ArrayList<Object>(new LinkedHashSet<Object>(ids)))
+                    .getResultList()) {
+
+                Object[] idAndEntity = (Object[]) row;
+                entities.put(idAndEntity[0], idAndEntity[1]);
+            }
+
+            List<Object> result = new ArrayList<Object>(ids.size());
+
+            for (Object id : ids) {
+
+                Object entity = entities.get(id);
+
+                if (entity != null) {
+                    result.add(entity);
+                }
+            }
+
+            return result;
+        }
+
+
+        @Override
+        protected boolean isInlineCountSupported() {
+
+            return false;
+        }
+    }
+
+    /**
+     * Executes the {@link HadesQuery} to return a
+     * {@link org.synyx.hades.domain.Slice} of entities. Reads one additional
+     * entity to find out whether there is a following slice instead of
+     * issuing a count query.
+     */
+    static class SlicedExecution extends QueryExecution {
+
         @Override
         @SuppressWarnings("unchecked")
         protected Object doExecute(AbstractHadesQuery query,
                 ParameterBinder binder) {
 
-            // Execute query to compute total
-            Query projection = binder.bind(query.createCountQuery());
-            Long total = (Long) projection.getSingleResult();
+            Pageable pageable = binder.getPageable();
 
             Query jpaQuery =
                     binder.bindAndPrepare(query.createJpaQuery(binder));
 
-            return new PageImpl<Object>(jpaQuery.getResultList(),
-                    binder.getPageable(), total);
+            if (pageable == null) {
+                return new SliceImpl<Object>(jpaQuery.getResultList());
+            }
+
+            jpaQuery.setMaxResults(pageable.getPageSize() + 1);
+
+            List<Object> content = jpaQuery.getResultList();
+            boolean hasNext = content.size() > pageable.getPageSize();
+
+            return new SliceImpl<Object>(hasNext ? content.subList(0,
+                    pageable.getPageSize()) : content, pageable, hasNext);
         }
     }
 
@@ -123,6 +774,9 @@ abstract class QueryExecution {
     static class ModifyingExecution extends QueryExecution {
 
         private final EntityManager em;
+        private final CountCache countCache;
+        private final MaterializedCounts<?> materializedCounts;
+        private final PagePrefetcher pagePrefetcher;
 
 
         /**
@@ -134,6 +788,28 @@ abstract class QueryExecution {
          */
         public ModifyingExecution(Method method, EntityManager em) {
 
+            this(method, em, new QueryExecutionSettings());
+        }
+
+
+        /**
+         * Creates an execution that automatically clears the given
+         * {@link EntityManager} after execution if the given
+         * {@link EntityManager} is not {@literal null}. Clears the
+         * {@link CountCache} and {@link PagePrefetcher} of the given
+         * {@link QueryExecutionSettings} as well and invalidates its
+         * {@link MaterializedCounts}, as counts and pages might be outdated
+         * after execution.
+         * 
+         * @param method
+         * @param em can be {@literal null}
+         * @param settings must not be {@literal null}
+         */
+        public ModifyingExecution(Method method, EntityManager em,
+                QueryExecutionSettings settings) {
+
+            Assert.notNull(settings);
+
             Class<?> type = method.getReturnType();
 
             boolean isVoid = void.class.equals(type) || Void.class.equals(type);
@@ -144,6 +820,9 @@ abstract class QueryExecution {
                     "Modifying queries can only use void or int/Integer as return type!");
 
             this.em = em;
+            this.countCache = settings.getCountCache();
+            this.materializedCounts = settings.getMaterializedCounts();
+            this.pagePrefetcher = settings.getPagePrefetcher();
         }
 
 
@@ -158,6 +837,18 @@ abstract class QueryExecution {
                 em.clear();
             }
 
+            if (countCache != null) {
+                countCache.evict();
+            }
+
+            if (materializedCounts != null) {
+                materializedCounts.invalidate();
+            }
+
+            if (pagePrefetcher != null) {
+                pagePrefetcher.evict();
+            }
+
             return result;
         }
     }
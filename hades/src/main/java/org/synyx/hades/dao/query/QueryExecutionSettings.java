@@ -0,0 +1,440 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.FlushModeType;
+
+import org.springframework.util.Assert;
+
+
+/**
+ * Settings applied to the execution of all {@link QueryMethod}s of a DAO.
+ * Usually configured through
+ * {@link org.synyx.hades.dao.orm.GenericDaoFactory}.
+ * 
+ * @author Oliver Gierke
+ */
+public class QueryExecutionSettings {
+
+    private ExecutorService countQueryExecutor;
+    private boolean inlineCountQueries = false;
+    private boolean lazyCountQueries = false;
+    private CountCache countCache;
+    private AtomicLong skippedCountQueries;
+    private MaterializedCounts<?> materializedCounts;
+    private PagePrefetcher pagePrefetcher;
+    private boolean readOnlyQueries = false;
+    private Map<String, Object> readOnlyHints = Collections.emptyMap();
+    private FlushModeType flushMode;
+    private Integer queryTimeout;
+    private String queryTimeoutHint = QueryUtils.QUERY_TIMEOUT_HINT;
+    private TimeUnit queryTimeoutUnit = TimeUnit.MILLISECONDS;
+    private Integer fetchSize;
+    private String fetchSizeHint;
+
+
+    /**
+     * Returns the {@link ExecutorService} to execute count queries with in
+     * parallel to the content queries of paged executions. Returns
+     * {@literal null} if count queries shall be executed sequentially.
+     * 
+     * @return
+     */
+    public ExecutorService getCountQueryExecutor() {
+
+        return countQueryExecutor;
+    }
+
+
+    /**
+     * Configures an {@link ExecutorService} to execute count queries of query
+     * methods returning a {@link org.synyx.hades.domain.Page} concurrently to
+     * the content query. The count query will be executed on a separate
+     * {@link javax.persistence.EntityManager} created from the same
+     * {@link javax.persistence.EntityManagerFactory}. As this one cannot see
+     * changes not yet committed, parallel execution only takes place outside
+     * of transactions or inside read-only ones. Use an executor with a bounded
+     * pool and queue as rejected count queries will simply be executed
+     * sequentially.
+     * 
+     * @param countQueryExecutor can be {@literal null} to execute count
+     *            queries sequentially (default)
+     */
+    public void setCountQueryExecutor(ExecutorService countQueryExecutor) {
+
+        this.countQueryExecutor = countQueryExecutor;
+    }
+
+
+    /**
+     * Returns whether the count query of paged query methods shall be
+     * selected alongside the entities.
+     * 
+     * @return
+     */
+    public boolean isInlineCountQueries() {
+
+        return inlineCountQueries;
+    }
+
+
+    /**
+     * Configures whether query methods returning a
+     * {@link org.synyx.hades.domain.Page} shall select the result of their
+     * count query as uncorrelated subquery alongside the entities, so that the
+     * page and the total number of elements are read in a single round trip.
+     * Queries that cannot be rewritten this way (e.g. named queries or ones
+     * using {@literal distinct}) as well as persistence providers not
+     * supporting subqueries in the select clause fall back to a separate count
+     * query. Defaults to {@literal false}.
+     * 
+     * @param inlineCountQueries
+     */
+    public void setInlineCountQueries(boolean inlineCountQueries) {
+
+        this.inlineCountQueries = inlineCountQueries;
+    }
+
+
+    /**
+     * Returns whether the count query of paged query methods shall be
+     * deferred until the total number of elements is requested.
+     * 
+     * @return
+     */
+    public boolean isLazyCountQueries() {
+
+        return lazyCountQueries;
+    }
+
+
+    /**
+     * Configures whether query methods returning a
+     * {@link org.synyx.hades.domain.Page} shall defer their count query until
+     * the total number of elements is requested from the page for the first
+     * time (see {@link LazyTotalPage}). The total then has to be requested
+     * within the transaction the page was read in. Takes precedence over
+     * parallel and inlined count queries. Defaults to {@literal false}.
+     * 
+     * @param lazyCountQueries
+     */
+    public void setLazyCountQueries(boolean lazyCountQueries) {
+
+        this.lazyCountQueries = lazyCountQueries;
+    }
+
+
+    /**
+     * Returns the {@link CountCache} to cache the results of count queries in
+     * or {@literal null} if count queries shall not be cached.
+     * 
+     * @return
+     */
+    public CountCache getCountCache() {
+
+        return countCache;
+    }
+
+
+    /**
+     * Configures a {@link CountCache} to cache the results of the count
+     * queries of query methods returning a
+     * {@link org.synyx.hades.domain.Page}. Results are cached per query
+     * method and bound parameter values. The cache is cleared on execution of
+     * modifying query methods.
+     * 
+     * @param countCache can be {@literal null} to disable caching (default)
+     */
+    public void setCountCache(CountCache countCache) {
+
+        this.countCache = countCache;
+    }
+
+
+    /**
+     * Returns the counter to increment whenever a count query is skipped as
+     * the total number of elements could be derived from the content of a
+     * page. Returns {@literal null} if skipped count queries shall not be
+     * counted.
+     * 
+     * @return
+     */
+    public AtomicLong getSkippedCountQueries() {
+
+        return skippedCountQueries;
+    }
+
+
+    /**
+     * Configures the counter to increment whenever a count query is skipped.
+     * Usually shared by all query methods and the CRUD methods of a DAO.
+     * 
+     * @param skippedCountQueries can be {@literal null} to not count skipped
+     *            count queries (default)
+     */
+    public void setSkippedCountQueries(AtomicLong skippedCountQueries) {
+
+        this.skippedCountQueries = skippedCountQueries;
+    }
+
+
+    /**
+     * Returns the {@link MaterializedCounts} maintained for the DAO or
+     * {@literal null} if none.
+     * 
+     * @return
+     */
+    public MaterializedCounts<?> getMaterializedCounts() {
+
+        return materializedCounts;
+    }
+
+
+    /**
+     * Configures the {@link MaterializedCounts} maintained for the DAO. They
+     * are invalidated on execution of modifying query methods as the entities
+     * affected are unknown.
+     * 
+     * @param materializedCounts can be {@literal null} (default)
+     */
+    public void setMaterializedCounts(
+            MaterializedCounts<?> materializedCounts) {
+
+        this.materializedCounts = materializedCounts;
+    }
+
+
+    /**
+     * Returns the {@link PagePrefetcher} to load the page following a page
+     * read in the background or {@literal null} if pages shall not be
+     * prefetched.
+     * 
+     * @return
+     */
+    public PagePrefetcher getPagePrefetcher() {
+
+        return pagePrefetcher;
+    }
+
+
+    /**
+     * Configures a {@link PagePrefetcher} to load the page following the one
+     * returned by a query method in the background. Prefetched pages are
+     * keyed by query method, bound parameter values and
+     * {@link org.synyx.hades.domain.Pageable} and discarded on execution of
+     * modifying query methods.
+     * 
+     * @param pagePrefetcher can be {@literal null} to disable prefetching
+     *            (default)
+     */
+    public void setPagePrefetcher(PagePrefetcher pagePrefetcher) {
+
+        this.pagePrefetcher = pagePrefetcher;
+    }
+
+
+    /**
+     * Returns whether query methods shall load entities read-only unless
+     * annotated otherwise.
+     * 
+     * @return
+     */
+    public boolean isReadOnlyQueries() {
+
+        return readOnlyQueries;
+    }
+
+
+    /**
+     * Configures whether query methods shall load the entities they return
+     * read-only by applying the {@link #getReadOnlyHints()}. Methods can
+     * override this with {@link org.synyx.hades.dao.ReadOnly}. Defaults to
+     * {@literal false}.
+     * 
+     * @param readOnlyQueries
+     */
+    public void setReadOnlyQueries(boolean readOnlyQueries) {
+
+        this.readOnlyQueries = readOnlyQueries;
+    }
+
+
+    /**
+     * Returns the query hints to load entities read-only with.
+     * 
+     * @return
+     */
+    public Map<String, Object> getReadOnlyHints() {
+
+        return readOnlyHints;
+    }
+
+
+    /**
+     * Configures the persistence provider specific query hints to load
+     * entities read-only with. Defaults to none, so entities will be loaded
+     * as usual.
+     * 
+     * @param readOnlyHints must not be {@literal null}
+     */
+    public void setReadOnlyHints(Map<String, Object> readOnlyHints) {
+
+        Assert.notNull(readOnlyHints, "Read-only hints must not be null!");
+        this.readOnlyHints = readOnlyHints;
+    }
+
+
+    /**
+     * Returns the {@link FlushModeType} query methods shall be executed with
+     * or {@literal null} if they shall use the one of the
+     * {@link javax.persistence.EntityManager}.
+     * 
+     * @return
+     */
+    public FlushModeType getFlushMode() {
+
+        return flushMode;
+    }
+
+
+    /**
+     * Configures the {@link FlushModeType} the queries of query methods shall
+     * be executed with unless they declare one with
+     * {@link org.synyx.hades.dao.FlushMode}.
+     * 
+     * @param flushMode can be {@literal null} to use the one of the
+     *            {@link javax.persistence.EntityManager} (default)
+     */
+    public void setFlushMode(FlushModeType flushMode) {
+
+        this.flushMode = flushMode;
+    }
+
+
+    /**
+     * Returns the timeout in milliseconds query methods shall be executed
+     * with or {@literal null} if no timeout shall be applied.
+     * 
+     * @return
+     */
+    public Integer getQueryTimeout() {
+
+        return queryTimeout;
+    }
+
+
+    /**
+     * Configures the timeout in milliseconds the queries of query methods
+     * shall be executed with unless they declare one with
+     * {@link org.synyx.hades.dao.QueryTimeout}.
+     * 
+     * @param queryTimeout can be {@literal null} to not apply a timeout
+     *            (default)
+     */
+    public void setQueryTimeout(Integer queryTimeout) {
+
+        this.queryTimeout = queryTimeout;
+    }
+
+
+    /**
+     * Configures the query hint the persistence provider expects a query
+     * timeout in and the {@link TimeUnit} of its value. Defaults to
+     * {@value QueryUtils#QUERY_TIMEOUT_HINT} in milliseconds.
+     * 
+     * @param hint must not be {@literal null}
+     * @param unit must not be {@literal null}
+     */
+    public void setQueryTimeoutHint(String hint, TimeUnit unit) {
+
+        Assert.notNull(hint, "Query timeout hint must not be null!");
+        Assert.notNull(unit, "Time unit must not be null!");
+
+        this.queryTimeoutHint = hint;
+        this.queryTimeoutUnit = unit;
+    }
+
+
+    /**
+     * Returns the query hints to apply the given timeout with.
+     * 
+     * @param timeout the timeout in milliseconds, can be {@literal null}
+     * @return the hints or an empty {@link Map} if no timeout given
+     */
+    public Map<String, Object> getQueryTimeoutHints(Integer timeout) {
+
+        return QueryUtils.getQueryTimeoutHints(timeout, queryTimeoutHint,
+                queryTimeoutUnit);
+    }
+
+
+    /**
+     * Returns the JDBC fetch size query methods shall read their results with
+     * or {@literal null} if the driver's default shall be used.
+     * 
+     * @return
+     */
+    public Integer getFetchSize() {
+
+        return fetchSize;
+    }
+
+
+    /**
+     * Configures the JDBC fetch size query methods shall read their results
+     * with unless they declare one with {@link org.synyx.hades.dao.FetchSize}.
+     * 
+     * @param fetchSize can be {@literal null} to use the driver's default
+     *            (default)
+     */
+    public void setFetchSize(Integer fetchSize) {
+
+        Assert.isTrue(fetchSize == null || fetchSize > 0,
+                "Fetch size must be positive!");
+        this.fetchSize = fetchSize;
+    }
+
+
+    /**
+     * Configures the persistence provider specific query hint to apply the
+     * JDBC fetch size with. Defaults to none, so fetch sizes will be ignored.
+     * 
+     * @param fetchSizeHint can be {@literal null}
+     */
+    public void setFetchSizeHint(String fetchSizeHint) {
+
+        this.fetchSizeHint = fetchSizeHint;
+    }
+
+
+    /**
+     * Returns the query hints to apply the given JDBC fetch size with.
+     * 
+     * @param fetchSize can be {@literal null}
+     * @return the hints or an empty {@link Map} if no fetch size given or the
+     *         persistence provider does not support one
+     */
+    public Map<String, Object> getFetchSizeHints(Integer fetchSize) {
+
+        return QueryUtils.getFetchSizeHints(fetchSize, fetchSizeHint);
+    }
+}
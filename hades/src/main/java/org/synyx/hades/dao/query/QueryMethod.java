@@ -20,24 +20,40 @@ import static org.springframework.core.annotation.AnnotationUtils.*;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.QueryHint;
 
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.util.Assert;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
+import org.synyx.hades.dao.CappedCount;
+import org.synyx.hades.dao.DeferredJoin;
+import org.synyx.hades.dao.FetchJoin;
+import org.synyx.hades.dao.FetchSize;
+import org.synyx.hades.dao.FlushMode;
 import org.synyx.hades.dao.Modifying;
 import org.synyx.hades.dao.Query;
 import org.synyx.hades.dao.QueryHints;
+import org.synyx.hades.dao.QueryTimeout;
+import org.synyx.hades.dao.ReadOnly;
 import org.synyx.hades.dao.query.QueryExecution.CollectionExecution;
+import org.synyx.hades.dao.query.QueryExecution.DeferredJoinPagedExecution;
 import org.synyx.hades.dao.query.QueryExecution.ModifyingExecution;
 import org.synyx.hades.dao.query.QueryExecution.PagedExecution;
 import org.synyx.hades.dao.query.QueryExecution.SingleEntityExecution;
+import org.synyx.hades.dao.query.QueryExecution.SlicedExecution;
+import org.synyx.hades.domain.FetchPlan;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
 import org.synyx.hades.domain.Sort;
 import org.synyx.hades.util.ClassUtils;
 
@@ -52,11 +68,18 @@ import org.synyx.hades.util.ClassUtils;
  */
 public class QueryMethod {
 
+    static final Pattern SUBJECT = Pattern
+            .compile("^(?:find|read|get)(?!By)(\\p{Lu}.*?)By(?=\\p{Lu})");
+    private static final String SUBJECT_SPLIT = "And(?=\\p{Lu})";
+
     private final Method method;
     private final Parameters parameters;
     private final Class<?> domainClass;
 
     private final QueryExtractor extractor;
+    private final QueryExecutionSettings settings;
+    private final Projection projection;
+    private final FetchPlan fetchPlan;
 
 
     /**
@@ -70,9 +93,26 @@ public class QueryMethod {
     public QueryMethod(Method method, Class<?> domainClass,
             QueryExtractor extractor) {
 
+        this(method, domainClass, extractor, new QueryExecutionSettings());
+    }
+
+
+    /**
+     * Creates a new {@link QueryMethod} from the given parameters applying the
+     * given {@link QueryExecutionSettings} on execution.
+     * 
+     * @param method
+     * @param domainClass
+     * @param extractor
+     * @param settings
+     */
+    public QueryMethod(Method method, Class<?> domainClass,
+            QueryExtractor extractor, QueryExecutionSettings settings) {
+
         Assert.notNull(method, "Method must not be null!");
         Assert.notNull(domainClass, "Domain class must not be null!");
         Assert.notNull(extractor, "Query extractor must not be null!");
+        Assert.notNull(settings, "Query execution settings must not be null!");
 
         for (Class<?> type : Parameters.TYPES) {
             if (ClassUtils.getNumberOfOccurences(method, type) > 1) {
@@ -83,7 +123,8 @@ public class QueryMethod {
         }
 
         if (ClassUtils.hasParameterOfType(method, Pageable.class)) {
-            ClassUtils.assertReturnType(method, Page.class, List.class);
+            ClassUtils.assertReturnType(method, Page.class, Slice.class,
+                    List.class);
             if (ClassUtils.hasParameterOfType(method, Sort.class)) {
                 throw new IllegalStateException(
                         "Method must not have Pageable *and* Sort parameter. "
@@ -95,12 +136,42 @@ public class QueryMethod {
         this.parameters = new Parameters(method);
         this.domainClass = domainClass;
         this.extractor = extractor;
+        this.settings = settings;
+        this.projection =
+                isModifyingQuery() ? null : Projection.of(ClassUtils
+                        .getReturnedDomainClass(method), domainClass,
+                        getProjectedProperties());
 
         Assert.isTrue(
                 !(isModifyingQuery() && parameters.hasSpecialParameter()),
                 String.format("Modifying method must not contain %s!",
                         Parameters.TYPES));
 
+        Assert.isTrue(getCountCap() >= 0, "Count cap must not be negative!");
+
+        FetchJoin fetchJoin = method.getAnnotation(FetchJoin.class);
+        this.fetchPlan =
+                fetchJoin == null ? null : new FetchPlan(fetchJoin.value());
+
+        ReadOnly readOnly = method.getAnnotation(ReadOnly.class);
+
+        Assert.isTrue(!(isModifyingQuery() && readOnly != null && readOnly
+                .value()), "Modifying method must not be read-only!");
+
+        Assert.isTrue(fetchPlan == null
+                || !(isModifyingQuery() || projection != null),
+                "Fetch joins are only supported for methods returning "
+                        + "entities!");
+
+        if (fetchPlan != null) {
+            for (String attribute : fetchPlan) {
+                Assert.isTrue(isValidField(StringUtils.capitalize(attribute)),
+                        String.format("No attribute %s found on %s to fetch "
+                                + "join for method %s!", attribute,
+                                getDomainClass().getName(), method));
+            }
+        }
+
         if (parameters.hasPageableParameter() && !extractor.canExtractQuery()) {
             throw new IllegalArgumentException(
                     "You cannot use Pageable as method parameter if your "
@@ -142,7 +213,7 @@ public class QueryMethod {
      */
     boolean isValidField(String fieldName) {
 
-        Class<?> returnType = ClassUtils.getReturnedDomainClass(method);
+        Class<?> returnType = getDomainClass();
 
         if (null != ReflectionUtils.findMethod(returnType, "get" + fieldName)) {
             return true;
@@ -154,13 +225,70 @@ public class QueryMethod {
 
 
     /**
-     * Returns the name of the domain class the query returns.
+     * Returns the domain class the query is executed against. This is the
+     * domain class the query returns or the one of the DAO if the query
+     * returns a {@link Projection}.
      * 
      * @return
      */
     Class<?> getDomainClass() {
 
-        return ClassUtils.getReturnedDomainClass(method);
+        return projection == null ? ClassUtils.getReturnedDomainClass(method)
+                : domainClass;
+    }
+
+
+    /**
+     * Returns the {@link Projection} the query method returns or
+     * {@literal null} if it returns entities.
+     * 
+     * @return
+     */
+    Projection getProjection() {
+
+        return projection;
+    }
+
+
+    /**
+     * Rejects interface projections for queries declared explicitly as the
+     * values selected by them cannot be reliably mapped onto the properties
+     * of the interface.
+     * 
+     * @throws QueryCreationException
+     */
+    void assertNoInterfaceProjection() {
+
+        if (projection != null && projection.requiresConversion()) {
+            throw QueryCreationException.create(this,
+                    "Interface projections are only supported for queries "
+                            + "derived from the method name!");
+        }
+    }
+
+
+    /**
+     * Returns the properties declared between the prefix and the {@code By}
+     * keyword of the method name, e.g. {@code firstname} and {@code lastname}
+     * for {@code findFirstnameAndLastnameByEmailAddress}. Returns an empty list
+     * if the method name does not declare any.
+     * 
+     * @return
+     */
+    private List<String> getProjectedProperties() {
+
+        Matcher matcher = SUBJECT.matcher(method.getName());
+        List<String> result = new ArrayList<String>();
+
+        if (!matcher.find()) {
+            return result;
+        }
+
+        for (String property : matcher.group(1).split(SUBJECT_SPLIT)) {
+            result.add(StringUtils.uncapitalize(property));
+        }
+
+        return result;
     }
 
 
@@ -213,18 +341,176 @@ public class QueryMethod {
         }
 
         if (isPageQuery()) {
-            return new PagedExecution();
+
+            boolean deferredJoin =
+                    method.isAnnotationPresent(DeferredJoin.class);
+
+            return deferredJoin ? new DeferredJoinPagedExecution(settings,
+                    getCountCap()) : new PagedExecution(settings, getCountCap());
+        }
+
+        if (isSliceQuery()) {
+            return new SlicedExecution();
         }
 
         if (isModifyingQuery()) {
-            return getClearAutomatically() ? new ModifyingExecution(method, em)
-                    : new ModifyingExecution(method, null);
+            return new ModifyingExecution(method, getClearAutomatically() ? em
+                    : null, settings);
         }
 
         return new SingleEntityExecution();
     }
 
 
+    /**
+     * Returns the maximum number of elements the count query shall count as
+     * declared by {@link CappedCount} or {@literal 0} if the count is not
+     * capped.
+     * 
+     * @return
+     */
+    int getCountCap() {
+
+        CappedCount annotation = method.getAnnotation(CappedCount.class);
+        return annotation == null ? 0 : annotation.value();
+    }
+
+
+    /**
+     * Returns the {@link FetchPlan} declared by {@link FetchJoin} or
+     * {@literal null} if the associations shall be loaded as mapped.
+     * 
+     * @return
+     */
+    FetchPlan getFetchPlan() {
+
+        return fetchPlan;
+    }
+
+
+    /**
+     * Returns the query hints to apply to load the entities returned
+     * read-only. Returns an empty {@link Map} if the method is not declared
+     * {@link ReadOnly} and the DAO does not read entities read-only by
+     * default, as well as for modifying methods and projections.
+     * 
+     * @return
+     */
+    Map<String, Object> getReadOnlyHints() {
+
+        if (isModifyingQuery() || projection != null) {
+            return Collections.emptyMap();
+        }
+
+        ReadOnly annotation = method.getAnnotation(ReadOnly.class);
+        boolean readOnly =
+                annotation == null ? settings.isReadOnlyQueries() : annotation
+                        .value();
+
+        return readOnly ? settings.getReadOnlyHints() : Collections
+                .<String, Object> emptyMap();
+    }
+
+
+    /**
+     * Returns the {@link FlushModeType} to execute the queries of the method
+     * with. Looks up {@link FlushMode} on the method and the DAO interface
+     * declaring it and falls back to the one configured for the DAO. Returns
+     * {@literal null} if the queries shall be executed with the
+     * {@link FlushModeType} of the {@link EntityManager}.
+     * 
+     * @return
+     */
+    FlushModeType getFlushMode() {
+
+        FlushMode annotation = method.getAnnotation(FlushMode.class);
+
+        if (annotation == null) {
+            annotation =
+                    AnnotationUtils.findAnnotation(method.getDeclaringClass(),
+                            FlushMode.class);
+        }
+
+        return annotation == null ? settings.getFlushMode() : annotation
+                .value();
+    }
+
+
+    /**
+     * Returns the timeout in milliseconds to execute the queries of the method
+     * with. Looks up {@link QueryTimeout} on the method and the DAO interface
+     * declaring it and falls back to the one configured for the DAO. Returns
+     * {@literal null} if no timeout shall be applied.
+     * 
+     * @return
+     */
+    Integer getQueryTimeout() {
+
+        QueryTimeout annotation = method.getAnnotation(QueryTimeout.class);
+
+        if (annotation == null) {
+            annotation =
+                    AnnotationUtils.findAnnotation(method.getDeclaringClass(),
+                            QueryTimeout.class);
+        }
+
+        return annotation == null ? settings.getQueryTimeout() : Integer
+                .valueOf(annotation.value());
+    }
+
+
+    /**
+     * Returns the query hints to apply the timeout of the method with.
+     * 
+     * @see #getQueryTimeout()
+     * @return
+     */
+    Map<String, Object> getQueryTimeoutHints() {
+
+        return settings.getQueryTimeoutHints(getQueryTimeout());
+    }
+
+
+    /**
+     * Returns the JDBC fetch size to read the results of the method with.
+     * Looks up {@link FetchSize} on the method and the DAO interface declaring
+     * it and falls back to the one configured for the DAO. Returns
+     * {@literal null} if the driver's default shall be used.
+     * 
+     * @return
+     */
+    Integer getFetchSize() {
+
+        FetchSize annotation = method.getAnnotation(FetchSize.class);
+
+        if (annotation == null) {
+            annotation =
+                    AnnotationUtils.findAnnotation(method.getDeclaringClass(),
+                            FetchSize.class);
+        }
+
+        return annotation == null ? settings.getFetchSize() : Integer
+                .valueOf(annotation.value());
+    }
+
+
+    /**
+     * Returns the query hints to apply the fetch size of the method with.
+     * Returns an empty {@link Map} for modifying methods.
+     * 
+     * @see #getFetchSize()
+     * @return
+     */
+    Map<String, Object> getFetchSizeHints() {
+
+        if (isModifyingQuery()) {
+            return Collections.emptyMap();
+        }
+
+        return settings.getFetchSizeHints(getFetchSize());
+    }
+
+
     /**
      * Returns whether we should clear automatically for modifying queries.
      * 
@@ -264,6 +550,19 @@ public class QueryMethod {
     }
 
 
+    /**
+     * Returns whether the finder will return a {@link Slice} of results.
+     * 
+     * @return
+     */
+    private boolean isSliceQuery() {
+
+        Class<?> returnType = method.getReturnType();
+        return org.springframework.util.ClassUtils.isAssignable(Slice.class,
+                returnType);
+    }
+
+
     /**
      * Returns whether the finder is a modifying one.
      * 
@@ -299,6 +598,18 @@ public class QueryMethod {
     }
 
 
+    /**
+     * Returns the name of the {@link javax.persistence.NamedQuery} counting
+     * the results of the named query this method belongs to.
+     * 
+     * @return
+     */
+    String getNamedCountQueryName() {
+
+        return getNamedQueryName() + ".count";
+    }
+
+
     /**
      * Returns the {@link QueryExtractor}.
      * 
@@ -310,6 +621,17 @@ public class QueryMethod {
     }
 
 
+    /**
+     * Returns the {@link QueryExecutionSettings} to be applied.
+     * 
+     * @return
+     */
+    QueryExecutionSettings getSettings() {
+
+        return settings;
+    }
+
+
     /**
      * Returns all {@link QueryHint}s annotated at this class. Note, that
      * {@link QueryHints}
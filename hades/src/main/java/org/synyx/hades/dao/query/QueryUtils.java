@@ -17,15 +17,31 @@ package org.synyx.hades.dao.query;
 
 import static java.util.regex.Pattern.*;
 
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
 import org.synyx.hades.domain.Sort;
 import org.synyx.hades.domain.Sort.Property;
 import org.synyx.hades.util.ClassUtils;
@@ -41,13 +57,41 @@ public abstract class QueryUtils {
     public static final String COUNT_QUERY_STRING =
             "select count(%s) from %s x";
 
+    public static final String EXISTS_QUERY_STRING =
+            "select count(%s) from %s x where x.%s = :id";
+
     public static final String DELETE_ALL_QUERY_STRING = "delete from %s x";
     public static final String READ_ALL_QUERY = "select x from %s x";
+    public static final String QUERY_TIMEOUT_HINT =
+            "javax.persistence.query.timeout";
+    private static final String FETCH_QUERY_STRING =
+            "select distinct x from %s x left join fetch x.%s";
     private static final String DEFAULT_ALIAS = "x";
     private static final String COUNT_REPLACEMENT = "select count($3$5) $4$5$6";
+    private static final String CAPPED_COUNT_REPLACEMENT = "select $3$5%s $4$5$6";
+    private static final String ID_AND_ENTITY_REPLACEMENT =
+            "select $3$5.%s, $5 $4$5$6";
 
     private static final Pattern ALIAS_MATCH;
     private static final Pattern COUNT_MATCH;
+    private static final Pattern WHERE_MATCH = compile("\\swhere\\s",
+            CASE_INSENSITIVE);
+    private static final Pattern WHERE_END_MATCH = compile(
+            "\\s(group\\s+by|having|order\\s+by)\\s", CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY_MATCH = compile(
+            "\\sorder\\s+by\\s", CASE_INSENSITIVE);
+    private static final Pattern FETCH_JOIN_MATCH;
+    private static final Pattern DISTINCT_MATCH = compile(
+            "^(\\s*select\\s+)distinct\\s+(\\S+)\\s", CASE_INSENSITIVE);
+    private static final Pattern JOIN_MATCH = compile("\\sjoin\\s",
+            CASE_INSENSITIVE);
+    private static final Pattern FROM_MATCH = compile("(^|\\s)from\\s",
+            CASE_INSENSITIVE);
+    private static final String FETCH_JOIN_ALIAS = "hades_fetch_";
+    private static final String INLINE_COUNT_ALIAS_SUFFIX = "_c";
+    private static final Pattern SIMPLE_SELECT_MATCH = compile(
+            "^\\s*(select\\s+(\\w+)\\s+)?(from\\s.*)$", CASE_INSENSITIVE
+                    | DOTALL);
 
     private static final String IDENTIFIER = "[\\p{L}._$]+";
     private static final String IDENTIFIER_GROUP = String.format("(%s)",
@@ -73,6 +117,17 @@ public abstract class QueryUtils {
         builder.append("(.*)");
 
         COUNT_MATCH = compile(builder.toString(), CASE_INSENSITIVE);
+
+        builder = new StringBuilder();
+        builder.append("\\s((?:left\\s+(?:outer\\s+)?|inner\\s+)?join)");
+        builder.append("\\s+fetch\\s+"); // fetch keyword
+        builder.append("([\\p{L}_$][\\p{L}\\d._$]*)"); // association path
+        builder.append("(?:(\\s+as)?\\s+"); // optional "as" keyword
+        builder.append("(?!(?:where|left|inner|outer|join|group|having|"
+                + "order)\\b)"); // no keyword following the path
+        builder.append("([\\p{L}_$][\\p{L}\\d_$]*))?"); // optional alias
+
+        FETCH_JOIN_MATCH = compile(builder.toString(), CASE_INSENSITIVE);
     }
 
 
@@ -162,6 +217,73 @@ public abstract class QueryUtils {
     }
 
 
+    /**
+     * Adds a restriction to the given JPQL query to only select the elements
+     * sorting after the ones described by the given placeholders (keyset
+     * pagination). As JPQL does not support row value comparisons the
+     * restriction is expanded to {@code (x.a > ?1) or (x.a = ?1 and x.id > ?2)}
+     * . An already existing {@literal where} clause will be wrapped into
+     * parentheses to keep its semantics.
+     * 
+     * @param query must not be {@literal null} or empty
+     * @param sort the {@link Sort} to be used, has to contain a unique
+     *            property as last one
+     * @param alias
+     * @param placeholders the placeholders for the values of the last element
+     *            seen, one for each property of the given {@link Sort}
+     * @return
+     */
+    public static String applyKeyset(String query, Sort sort, String alias,
+            String... placeholders) {
+
+        Assert.hasText(query);
+        Assert.notNull(sort);
+        Assert.hasText(alias);
+
+        StringBuilder keyset = new StringBuilder();
+        StringBuilder equalities = new StringBuilder();
+        int index = 0;
+
+        for (Property property : sort) {
+
+            Assert.isTrue(index < placeholders.length, String.format(
+                    "No placeholder given for sort property %s!",
+                    property.getName()));
+
+            String path = String.format("%s.%s", alias, property.getName());
+            String placeholder = placeholders[index++];
+
+            if (keyset.length() > 0) {
+                keyset.append(" or ");
+            }
+
+            keyset.append("(").append(equalities);
+            keyset.append(String.format("%s %s %s", path,
+                    property.isAscending() ? ">" : "<", placeholder));
+            keyset.append(")");
+
+            equalities.append(String.format("%s = %s and ", path, placeholder));
+        }
+
+        Matcher where = WHERE_MATCH.matcher(query);
+        boolean hasWhere = where.find(findTopLevel(WHERE_MATCH, query, 0));
+        int endIndex =
+                findTopLevel(WHERE_END_MATCH, query, hasWhere ? where.end()
+                        : 0);
+
+        StringBuilder builder = new StringBuilder(query);
+
+        if (hasWhere) {
+            builder.insert(endIndex, String.format(") and (%s)", keyset));
+            builder.insert(where.end(), "(");
+        } else {
+            builder.insert(endIndex, String.format(" where %s", keyset));
+        }
+
+        return builder.toString();
+    }
+
+
     /**
      * Resolves the alias for the entity to be retrieved from the given JPA
      * query.
@@ -224,7 +346,110 @@ public abstract class QueryUtils {
 
 
     /**
-     * Creates a count projected query from the given orginal query.
+     * Creates a where-clause restricting the given id attribute to the given
+     * ids and appends it to the given query string. Uses an {@literal in}
+     * clause for simple ids and or-concatenated equality checks for compound
+     * ones as those cannot be used inside an {@literal in} clause. Binds the
+     * given ids to the query.
+     * 
+     * @param queryString
+     * @param idAttribute the name of the id attribute
+     * @param ids must not be {@literal null} or empty
+     * @param compound whether the ids are compound ones
+     * @param entityManager
+     * @return
+     */
+    public static Query applyAndBindIds(String queryString, String idAttribute,
+            Collection<?> ids, boolean compound, EntityManager entityManager) {
+
+        Assert.notNull(queryString);
+        Assert.hasText(idAttribute);
+        Assert.notEmpty(ids);
+        Assert.notNull(entityManager);
+
+        String path =
+                String.format("%s.%s", detectAlias(queryString), idAttribute);
+        StringBuilder builder = new StringBuilder(queryString);
+        builder.append(" where ");
+
+        if (!compound) {
+            builder.append(path).append(" in (");
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+
+            if (i > 0) {
+                builder.append(compound ? " or " : ", ");
+            }
+
+            builder.append(compound ? String.format("%s = ?%d", path, i + 1)
+                    : String.format("?%d", i + 1));
+        }
+
+        if (!compound) {
+            builder.append(")");
+        }
+
+        Query query = entityManager.createQuery(builder.toString());
+        int position = 1;
+
+        for (Object id : ids) {
+            query.setParameter(position++, id);
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Creates a query selecting the result of the given count query alongside
+     * the entities selected by the given original query. This allows reading
+     * a page of entities and the total number of elements in a single round
+     * trip. Returns {@literal null} if the original query does not simply
+     * select the entity aliased with the given alias, e.g. as it uses
+     * {@literal distinct} or selects multiple values. The alias of the count
+     * query is renamed so that the subquery is not correlated with the
+     * original query.
+     * 
+     * @param originalQuery must not be {@literal null} or empty
+     * @param countQuery must not be {@literal null} or empty
+     * @param alias
+     * @return
+     */
+    public static String createInlineCountQueryFor(String originalQuery,
+            String countQuery, String alias) {
+
+        Assert.hasText(originalQuery);
+        Assert.hasText(countQuery);
+
+        Matcher matcher = SIMPLE_SELECT_MATCH.matcher(originalQuery);
+
+        if (alias == null || !matcher.matches()) {
+            return null;
+        }
+
+        String selection = matcher.group(2);
+
+        if (selection != null && !selection.equals(alias)) {
+            return null;
+        }
+
+        String countAlias = detectAlias(countQuery);
+        String subquery =
+                countAlias == null ? countQuery : renameAlias(countQuery,
+                        countAlias, countAlias + INLINE_COUNT_ALIAS_SUFFIX);
+
+        return String.format("select %s, (%s) %s", alias, subquery,
+                matcher.group(3));
+    }
+
+
+    /**
+     * Creates a count projected query from the given orginal query. Removes
+     * the {@literal order by} clause, turns fetch joins into plain ones (or
+     * drops them if they cannot affect the count) and only keeps
+     * {@literal distinct} if the query contains joins that could produce
+     * duplicates.
      * 
      * @param originalQuery must not be {@literal null} or empty
      * @return
@@ -233,7 +458,728 @@ public abstract class QueryUtils {
 
         Assert.hasText(originalQuery);
 
-        Matcher matcher = COUNT_MATCH.matcher(originalQuery);
+        Matcher matcher = COUNT_MATCH.matcher(simplifyForCount(originalQuery));
         return matcher.replaceFirst(COUNT_REPLACEMENT);
     }
+
+
+    /**
+     * Creates a query from the given original query selecting the identifier
+     * of each entity instead of the entity itself. Executed with a maximum
+     * number of results it allows counting the entities up to a cap without
+     * scanning all matching rows. The query is simplified the same way as
+     * by {@link #createCountQueryFor(String)}.
+     * 
+     * @param originalQuery must not be {@literal null} or empty
+     * @param idAttribute the name of the identifier attribute, can be
+     *            {@literal null} to select the entity itself
+     * @return
+     */
+    public static String createCappedCountQueryFor(String originalQuery,
+            String idAttribute) {
+
+        Assert.hasText(originalQuery);
+
+        Matcher matcher = COUNT_MATCH.matcher(simplifyForCount(originalQuery));
+
+        String id =
+                idAttribute == null ? "" : Matcher.quoteReplacement("."
+                        + idAttribute);
+
+        return matcher.replaceFirst(String.format(CAPPED_COUNT_REPLACEMENT, id));
+    }
+
+
+    /**
+     * Creates a query from the given original query selecting the identifiers
+     * of the entities in the order defined by the original query. Fetch joins
+     * are removed the same way as by {@link #createCountQueryFor(String)}.
+     * Executed with an offset and a maximum number of results the database
+     * can page through the identifiers without reading the entity rows or
+     * fetched collections. Returns {@literal null} if the original query does
+     * not select the entity itself or would have to select distinct
+     * identifiers ordered by other attributes, which not all databases
+     * support.
+     * 
+     * @param originalQuery must not be {@literal null} or empty
+     * @param idAttribute must not be {@literal null} or empty
+     * @return
+     */
+    public static String createIdQueryFor(String originalQuery,
+            String idAttribute) {
+
+        Assert.hasText(originalQuery);
+        Assert.hasText(idAttribute);
+
+        boolean isDistinct = DISTINCT_MATCH.matcher(originalQuery).find();
+        String query =
+                removeRedundantDistinct(
+                        removeFetchJoins(originalQuery, isDistinct), isDistinct);
+
+        if (DISTINCT_MATCH.matcher(query).find()
+                && !removeOrderBy(query).equals(query)) {
+            return null;
+        }
+
+        Matcher matcher = COUNT_MATCH.matcher(query);
+
+        if (!matcher.find() || !isAliasSelected(matcher)) {
+            return null;
+        }
+
+        return matcher.replaceFirst(String.format(CAPPED_COUNT_REPLACEMENT,
+                Matcher.quoteReplacement("." + idAttribute)));
+    }
+
+
+    /**
+     * Creates a query from the given original query that only consists of its
+     * {@literal select} and {@literal from} clauses including all joins. Thus
+     * the entities can be loaded with the original fetch plan after their
+     * identifiers were selected by the query created by
+     * {@link #createIdQueryFor(String, String)}. Restrictions of the original
+     * query are dropped as the identifiers were already selected with them.
+     * 
+     * @param originalQuery must not be {@literal null} or empty
+     * @return
+     */
+    public static String createDeferredJoinQueryFor(String originalQuery) {
+
+        Assert.hasText(originalQuery);
+
+        return originalQuery.substring(0, findEndOfJoins(originalQuery));
+    }
+
+
+    /**
+     * Turns the given query selecting the entity aliased in its
+     * {@literal from} clause into one selecting the identifier of the entity
+     * as well. Thus the entities loaded by a deferred join query (see
+     * {@link #createDeferredJoinQueryFor(String)}) can be matched with the
+     * identifiers selected before without reading the identifiers from the
+     * entities, which might be proxies of the persistence provider.
+     * 
+     * @param query must not be {@literal null} or empty
+     * @param idAttribute must not be {@literal null} or empty
+     * @return
+     */
+    public static String createIdAndEntityQueryFor(String query,
+            String idAttribute) {
+
+        Assert.hasText(query);
+        Assert.hasText(idAttribute);
+
+        Matcher matcher = COUNT_MATCH.matcher(query);
+
+        if (!matcher.find() || !isAliasSelected(matcher)) {
+            throw new IllegalArgumentException(String.format(
+                    "Query %s does not select the entity itself!", query));
+        }
+
+        return matcher.replaceFirst(String.format(ID_AND_ENTITY_REPLACEMENT,
+                Matcher.quoteReplacement(idAttribute)));
+    }
+
+
+    /**
+     * Adds a {@literal left join fetch} for each of the given attributes of the
+     * entity aliased with the given alias to the joins of the given query.
+     * Attributes already fetch joined by the query are skipped. Turns the
+     * query into one selecting {@literal distinct} entities if requested, as
+     * fetch joining a collection returns an entity once per element
+     * otherwise.
+     * 
+     * @param query must not be {@literal null} or empty
+     * @param alias must not be {@literal null} or empty
+     * @param attributes must not be {@literal null}
+     * @param distinct whether to select distinct entities
+     * @return
+     */
+    public static String applyFetchJoins(String query, String alias,
+            Collection<String> attributes, boolean distinct) {
+
+        Assert.hasText(query);
+        Assert.hasText(alias);
+        Assert.notNull(attributes);
+
+        Set<String> fetched = new HashSet<String>();
+        Matcher matcher = FETCH_JOIN_MATCH.matcher(query);
+
+        while (matcher.find()) {
+            fetched.add(matcher.group(2));
+        }
+
+        int end = findEndOfJoins(query);
+        StringBuilder builder = new StringBuilder(query.substring(0, end));
+
+        for (String attribute : attributes) {
+
+            String path = String.format("%s.%s", alias, attribute);
+
+            if (!fetched.contains(path)) {
+                builder.append(" left join fetch ").append(path);
+            }
+        }
+
+        builder.append(query.substring(end));
+
+        return distinct ? applyDistinct(builder.toString(), alias) : builder
+                .toString();
+    }
+
+
+    /**
+     * Creates the queries to load the given attributes of the given entities
+     * with a single fetch joining query per attribute. Only considers entities
+     * managed by the given {@link EntityManager} whose attribute has not been
+     * loaded yet. This allows fetching collections for a page of entities
+     * without fetch joining them into the query reading the page, which would
+     * multiply the rows to be paged through. Callers are expected to apply the
+     * settings of the query reading the entities to the returned queries
+     * before executing them.
+     * 
+     * @param em must not be {@literal null}
+     * @param domainClass must not be {@literal null}
+     * @param entities must not be {@literal null}
+     * @param attributes must not be {@literal null}
+     * @return the queries to execute, never {@literal null}
+     */
+    public static List<Query> createFetchQueries(EntityManager em,
+            Class<?> domainClass, List<?> entities,
+            Collection<String> attributes) {
+
+        Assert.notNull(em);
+        Assert.notNull(domainClass);
+        Assert.notNull(entities);
+        Assert.notNull(attributes);
+
+        SingularAttribute<?, ?> idAttribute = getIdAttribute(em, domainClass);
+
+        if (idAttribute == null || entities.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        PersistenceUnitUtil util =
+                em.getEntityManagerFactory().getPersistenceUnitUtil();
+        List<Query> queries = new ArrayList<Query>();
+
+        for (String attribute : attributes) {
+
+            List<Object> ids = new ArrayList<Object>();
+
+            for (Object entity : entities) {
+                if (domainClass.isInstance(entity) && em.contains(entity)
+                        && !util.isLoaded(entity, attribute)) {
+                    ids.add(getId(entity, idAttribute));
+                }
+            }
+
+            if (!ids.isEmpty()) {
+                queries.add(applyAndBindIds(
+                        String.format(FETCH_QUERY_STRING,
+                                ClassUtils.getEntityName(domainClass),
+                                attribute), idAttribute.getName(), ids,
+                        false, em));
+            }
+        }
+
+        return queries;
+    }
+
+
+    /**
+     * Returns whether the attribute with the given name of the given entity
+     * is a collection.
+     * 
+     * @param em must not be {@literal null}
+     * @param domainClass must not be {@literal null}
+     * @param attribute must not be {@literal null} or empty
+     * @return
+     * @throws IllegalArgumentException if the domain class is not an entity or
+     *             does not have an attribute with the given name
+     */
+    public static boolean isCollectionAttribute(EntityManager em,
+            Class<?> domainClass, String attribute) {
+
+        Assert.notNull(em);
+        Assert.notNull(domainClass);
+        Assert.hasText(attribute);
+
+        return em.getMetamodel().entity(domainClass).getAttribute(attribute)
+                .isCollection();
+    }
+
+
+    /**
+     * Returns the name of the id attribute of the given domain class or
+     * {@literal null} if it is not an entity with a single id attribute.
+     * 
+     * @param em must not be {@literal null}
+     * @param domainClass must not be {@literal null}
+     * @return
+     */
+    public static String getIdAttributeName(EntityManager em,
+            Class<?> domainClass) {
+
+        Assert.notNull(em);
+        Assert.notNull(domainClass);
+
+        SingularAttribute<?, ?> attribute = getIdAttribute(em, domainClass);
+        return attribute == null ? null : attribute.getName();
+    }
+
+
+    /**
+     * Returns the query hints to apply the given timeout in milliseconds with.
+     * Converts the timeout into the given {@link TimeUnit} the persistence
+     * provider expects for the given hint, rounding up to not end up with a
+     * timeout of zero which would disable it.
+     * 
+     * @param timeout the timeout in milliseconds, can be {@literal null}
+     * @param hint must not be {@literal null}
+     * @param unit must not be {@literal null}
+     * @return the hints or an empty {@link Map} if no timeout given
+     */
+    public static Map<String, Object> getQueryTimeoutHints(Integer timeout,
+            String hint, TimeUnit unit) {
+
+        Assert.notNull(hint);
+        Assert.notNull(unit);
+
+        if (timeout == null) {
+            return Collections.emptyMap();
+        }
+
+        long converted = unit.convert(timeout, TimeUnit.MILLISECONDS);
+
+        if (unit.toMillis(converted) < timeout) {
+            converted++;
+        }
+
+        return Collections.<String, Object> singletonMap(hint,
+                (int) converted);
+    }
+
+
+    /**
+     * Returns the query hints to apply the given JDBC fetch size with.
+     * 
+     * @param fetchSize can be {@literal null}
+     * @param hint the persistence provider specific hint, can be
+     *            {@literal null} if the provider does not support one
+     * @return the hints or an empty {@link Map} if no fetch size or hint given
+     */
+    public static Map<String, Object> getFetchSizeHints(Integer fetchSize,
+            String hint) {
+
+        if (fetchSize == null || hint == null) {
+            return Collections.emptyMap();
+        }
+
+        return Collections.<String, Object> singletonMap(hint, fetchSize);
+    }
+
+
+    /**
+     * Returns the id attribute of the given domain class or {@literal null}
+     * if it is not an entity with a single id attribute.
+     * 
+     * @param em
+     * @param domainClass
+     * @return
+     */
+    private static SingularAttribute<?, ?> getIdAttribute(EntityManager em,
+            Class<?> domainClass) {
+
+        EntityType<?> type;
+
+        try {
+            type = em.getMetamodel().entity(domainClass);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (!type.hasSingleIdAttribute()) {
+            return null;
+        }
+
+        for (SingularAttribute<?, ?> attribute : type.getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns the value of the given id attribute of the given entity. Reads
+     * the value from the entity itself as not all persistence providers return
+     * the plain id from {@link PersistenceUnitUtil#getIdentifier(Object)}.
+     * Prefers the getter of the attribute over its field as the fields of lazy
+     * loading proxies are not populated.
+     * 
+     * @param entity
+     * @param idAttribute
+     * @return
+     */
+    private static Object getId(Object entity,
+            SingularAttribute<?, ?> idAttribute) {
+
+        PropertyDescriptor descriptor =
+                BeanUtils.getPropertyDescriptor(entity.getClass(),
+                        idAttribute.getName());
+
+        if (descriptor != null && descriptor.getReadMethod() != null) {
+            Method getter = descriptor.getReadMethod();
+            ReflectionUtils.makeAccessible(getter);
+            return ReflectionUtils.invokeMethod(getter, entity);
+        }
+
+        Member member = idAttribute.getJavaMember();
+
+        if (member instanceof Field) {
+            Field field = (Field) member;
+            ReflectionUtils.makeAccessible(field);
+            return ReflectionUtils.getField(field, entity);
+        }
+
+        Method method = (Method) member;
+        ReflectionUtils.makeAccessible(method);
+        return ReflectionUtils.invokeMethod(method, entity);
+    }
+
+
+    /**
+     * Returns the index right after the last join of the given query, i.e.
+     * the start of its {@literal where}, {@literal group by},
+     * {@literal having} or {@literal order by} clause or its length if it
+     * has none of them.
+     * 
+     * @param query
+     * @return
+     */
+    private static int findEndOfJoins(String query) {
+
+        Matcher from = FROM_MATCH.matcher(query);
+
+        if (!from.find()) {
+            return query.length();
+        }
+
+        return Math.min(findTopLevel(WHERE_MATCH, query, from.end()),
+                findTopLevel(WHERE_END_MATCH, query, from.end()));
+    }
+
+
+    /**
+     * Turns the given query into one selecting distinct entities. Leaves
+     * queries already selecting distinct results or selecting more than a
+     * single value untouched.
+     * 
+     * @param query
+     * @param alias
+     * @return
+     */
+    private static String applyDistinct(String query, String alias) {
+
+        if (DISTINCT_MATCH.matcher(query).find()) {
+            return query;
+        }
+
+        Matcher matcher = SIMPLE_SELECT_MATCH.matcher(query);
+
+        if (!matcher.matches()) {
+            return query;
+        }
+
+        String selection = matcher.group(2) == null ? alias : matcher.group(2);
+
+        return String.format("select distinct %s %s", selection,
+                matcher.group(3));
+    }
+
+
+    /**
+     * Removes all parts of the given query that are irrelevant for counting
+     * its results: the {@literal order by} clause, fetch joins and a
+     * {@literal distinct} that cannot have any effect.
+     * 
+     * @param query
+     * @return
+     */
+    private static String simplifyForCount(String query) {
+
+        boolean isDistinct = DISTINCT_MATCH.matcher(query).find();
+
+        return removeRedundantDistinct(
+                removeFetchJoins(removeOrderBy(query), isDistinct), isDistinct);
+    }
+
+
+    /**
+     * Removes the {@literal distinct} keyword from the given query if it
+     * selects the entity itself and cannot select duplicates anyway.
+     * 
+     * @param query
+     * @param isDistinct whether the query selects distinct results
+     * @return
+     */
+    private static String removeRedundantDistinct(String query,
+            boolean isDistinct) {
+
+        if (!isDistinct || requiresDistinct(query)) {
+            return query;
+        }
+
+        // Only the distinct selection of the entity itself is redundant
+        Matcher distinct = DISTINCT_MATCH.matcher(query);
+
+        if (distinct.find() && distinct.group(2).equals(detectAlias(query))) {
+            return distinct.replaceFirst("$1$2 ");
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Returns whether the query matched by the given {@link #COUNT_MATCH}
+     * {@link Matcher} selects the entity aliased in its {@literal from}
+     * clause.
+     * 
+     * @param matcher
+     * @return
+     */
+    private static boolean isAliasSelected(Matcher matcher) {
+
+        String selection = matcher.group(2);
+
+        if (selection == null) {
+            return true;
+        }
+
+        if (matcher.group(3) != null) {
+            selection = selection.substring(matcher.group(3).length());
+        }
+
+        return selection.trim().equals(matcher.group(5));
+    }
+
+
+    /**
+     * Returns the index of the first top-level match of the given
+     * {@link Pattern} in the given query starting at the given index or the
+     * length of the query if none found.
+     * 
+     * @param pattern
+     * @param query
+     * @param start
+     * @return
+     */
+    private static int findTopLevel(Pattern pattern, String query, int start) {
+
+        Matcher matcher = pattern.matcher(query);
+
+        while (matcher.find(start)) {
+
+            if (isTopLevel(query, matcher.start())) {
+                return matcher.start();
+            }
+
+            start = matcher.end();
+        }
+
+        return query.length();
+    }
+
+
+    /**
+     * Removes the {@literal order by} clause of the given query. Ignores
+     * {@literal order by} clauses of subqueries.
+     * 
+     * @param query
+     * @return
+     */
+    private static String removeOrderBy(String query) {
+
+        Matcher matcher = ORDER_BY_MATCH.matcher(query);
+
+        while (matcher.find()) {
+            if (isTopLevel(query, matcher.start())) {
+                return query.substring(0, matcher.start());
+            }
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Turns the fetch joins of the given query into plain joins. Fetch joins
+     * without an alias get one generated as JPQL requires it for plain joins.
+     * Left outer fetch joins without alias are removed entirely for distinct
+     * queries as they cannot affect the result count then.
+     * 
+     * @param query
+     * @param distinct whether the query selects distinct results
+     * @return
+     */
+    private static String removeFetchJoins(String query, boolean distinct) {
+
+        Matcher matcher = FETCH_JOIN_MATCH.matcher(query);
+        StringBuffer buffer = new StringBuffer();
+        int generatedAliases = 0;
+
+        while (matcher.find()) {
+
+            String join = matcher.group(1);
+            String alias = matcher.group(4);
+            boolean outer = join.toLowerCase().startsWith("left");
+            String replacement;
+
+            if (alias != null) {
+                String as = matcher.group(3) == null ? "" : matcher.group(3);
+                replacement =
+                        String.format(" %s %s%s %s", join, matcher.group(2),
+                                as, alias);
+            } else if (distinct && outer) {
+                replacement = "";
+            } else {
+                replacement =
+                        String.format(" %s %s %s%d", join, matcher.group(2),
+                                FETCH_JOIN_ALIAS, generatedAliases++);
+            }
+
+            matcher.appendReplacement(buffer,
+                    Matcher.quoteReplacement(replacement));
+        }
+
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+
+
+    /**
+     * Returns whether the given query might select duplicate results, i.e.
+     * whether it joins associations or declares more than one range variable.
+     * 
+     * @param query
+     * @return
+     */
+    private static boolean requiresDistinct(String query) {
+
+        if (JOIN_MATCH.matcher(query).find()) {
+            return true;
+        }
+
+        Matcher from = FROM_MATCH.matcher(query);
+
+        if (!from.find()) {
+            return true;
+        }
+
+        Matcher end = WHERE_END_MATCH.matcher(query);
+        Matcher where = WHERE_MATCH.matcher(query);
+
+        int fromEnd = query.length();
+
+        if (where.find(from.end())) {
+            fromEnd = where.start();
+        } else if (end.find(from.end())) {
+            fromEnd = end.start();
+        }
+
+        for (int i = from.end(); i < fromEnd; i++) {
+            if (query.charAt(i) == ',' && isTopLevel(query, i)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Replaces all usages of the given alias in the given query with the
+     * given new one. Ignores string literals as well as paths and parameters
+     * named like the alias.
+     * 
+     * @param query
+     * @param alias
+     * @param newAlias
+     * @return
+     */
+    private static String renameAlias(String query, String alias,
+            String newAlias) {
+
+        Matcher matcher =
+                compile(String.format("(?<![\\w.:?$])%s(?![\\w$])",
+                        Pattern.quote(alias))).matcher(query);
+        StringBuffer buffer = new StringBuffer();
+
+        while (matcher.find()) {
+
+            String replacement =
+                    isInLiteral(query, matcher.start()) ? alias : newAlias;
+            matcher.appendReplacement(buffer,
+                    Matcher.quoteReplacement(replacement));
+        }
+
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+
+
+    /**
+     * Returns whether the given index of the given query is part of a string
+     * literal.
+     * 
+     * @param query
+     * @param index
+     * @return
+     */
+    private static boolean isInLiteral(String query, int index) {
+
+        boolean inLiteral = false;
+
+        for (int i = 0; i < index; i++) {
+            if (query.charAt(i) == '\'') {
+                inLiteral = !inLiteral;
+            }
+        }
+
+        return inLiteral;
+    }
+
+
+    /**
+     * Returns whether the given index of the given query is neither part of
+     * a subquery nor a string literal.
+     * 
+     * @param query
+     * @param index
+     * @return
+     */
+    private static boolean isTopLevel(String query, int index) {
+
+        int depth = 0;
+        boolean inLiteral = false;
+
+        for (int i = 0; i < index; i++) {
+
+            char c = query.charAt(i);
+
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            } else if (!inLiteral && c == '(') {
+                depth++;
+            } else if (!inLiteral && c == ')') {
+                depth--;
+            }
+        }
+
+        return depth == 0 && !inLiteral;
+    }
 }
@@ -15,6 +15,7 @@
  */
 package org.synyx.hades.dao.query;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -23,6 +24,8 @@ import javax.persistence.QueryHint;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.synyx.hades.domain.FetchPlan;
+import org.synyx.hades.domain.KeysetPageRequest;
 
 
 /**
@@ -40,7 +43,13 @@ final class SimpleHadesQuery extends AbstractHadesQuery {
     private final String queryString;
     private final String countQuery;
     private final String alias;
+    private final Class<?> domainClass;
     private final List<QueryHint> hints;
+    private final FetchPlan fetchPlan;
+
+    private volatile boolean inlineCountSupported = true;
+    private volatile String cappedCountQuery;
+    private volatile String deferredJoinQuery;
 
 
     /**
@@ -52,7 +61,9 @@ final class SimpleHadesQuery extends AbstractHadesQuery {
         super(method, em);
         this.queryString = queryString;
         this.alias = QueryUtils.detectAlias(queryString);
+        this.domainClass = method.getDomainClass();
         this.hints = method.getHints();
+        this.fetchPlan = method.getFetchPlan();
         this.countQuery =
                 method.getCountQuery() == null ? QueryUtils
                         .createCountQueryFor(queryString) : method
@@ -83,10 +94,99 @@ final class SimpleHadesQuery extends AbstractHadesQuery {
     @Override
     protected Query createQuery(EntityManager em, ParameterBinder binder) {
 
+        return createQuery(em, binder, false);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.query.AbstractHadesQuery#createInlineCountQuery(javax
+     * .persistence.EntityManager, org.synyx.hades.dao.query.ParameterBinder)
+     */
+    @Override
+    protected Query createInlineCountQuery(EntityManager em,
+            ParameterBinder binder) {
+
+        if (!inlineCountSupported) {
+            return null;
+        }
+
+        try {
+            return createQuery(em, binder, true);
+        } catch (IllegalArgumentException e) {
+
+            LOG.info("Persistence provider cannot select count query {} "
+                    + "alongside the entities! Falling back to separate "
+                    + "count query.", countQuery);
+
+            inlineCountSupported = false;
+            return null;
+        }
+    }
+
+
+    /**
+     * Creates the query applying keyset restrictions and sorting. Selects the
+     * result of the count query alongside the entities if requested and
+     * possible. Returns {@literal null} if the count query cannot be inlined.
+     * 
+     * @param em
+     * @param binder
+     * @param inlineCount
+     * @return
+     */
+    private Query createQuery(EntityManager em, ParameterBinder binder,
+            boolean inlineCount) {
+
+        KeysetPageRequest keyset = binder.getKeysetPageable();
+
         String query =
-                QueryUtils.applySorting(queryString, binder.getSort(), alias);
+                applyFetchPlan(em, queryString, binder.getPageable() == null);
+        query =
+                keyset == null ? query : QueryUtils.applyKeyset(query, keyset
+                        .getSort(), alias, binder.getKeysetPlaceholders());
+        query = QueryUtils.applySorting(query, binder.getSort(), alias);
+
+        if (inlineCount) {
+
+            query =
+                    QueryUtils.createInlineCountQueryFor(query, countQuery,
+                            alias);
+
+            if (query == null) {
+                inlineCountSupported = false;
+                return null;
+            }
+        }
+
+        Query jpaQuery = applyReadHints(applyHints(em.createQuery(query)));
 
-        return applyHints(em.createQuery(query));
+        return keyset == null ? jpaQuery : binder.bindKeyset(jpaQuery);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.query.AbstractHadesQuery#fetchAssociations(javax.
+     * persistence.EntityManager, java.util.List,
+     * org.synyx.hades.dao.query.ParameterBinder)
+     */
+    @Override
+    protected void fetchAssociations(EntityManager em, List<?> entities,
+            ParameterBinder binder) {
+
+        if (fetchPlan == null || binder.getPageable() == null) {
+            return;
+        }
+
+        for (Query query : QueryUtils.createFetchQueries(em, domainClass,
+                entities, fetchPlan.getAttributes())) {
+            applyReadSettings(query).getResultList();
+        }
     }
 
 
@@ -103,6 +203,123 @@ final class SimpleHadesQuery extends AbstractHadesQuery {
     }
 
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.query.AbstractHadesQuery#createCappedCountQuery(javax
+     * .persistence.EntityManager)
+     */
+    @Override
+    protected Query createCappedCountQuery(EntityManager em) {
+
+        if (cappedCountQuery == null) {
+            cappedCountQuery =
+                    QueryUtils.createCappedCountQueryFor(queryString,
+                            getIdAttributeName(em));
+        }
+
+        return applyHints(em.createQuery(cappedCountQuery));
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.query.AbstractHadesQuery#createIdQuery(javax.persistence
+     * .EntityManager, org.synyx.hades.dao.query.ParameterBinder)
+     */
+    @Override
+    protected Query createIdQuery(EntityManager em, ParameterBinder binder) {
+
+        String idAttribute = getIdAttributeName(em);
+
+        if (idAttribute == null || binder.getKeysetPageable() != null) {
+            return null;
+        }
+
+        String idQuery =
+                QueryUtils.createIdQueryFor(QueryUtils.applySorting(
+                        queryString, binder.getSort(), alias), idAttribute);
+
+        return idQuery == null ? null : applyHints(em.createQuery(idQuery));
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.synyx.hades.dao.query.AbstractHadesQuery#createQueryForIds(javax.
+     * persistence.EntityManager, java.util.List)
+     */
+    @Override
+    protected Query createQueryForIds(EntityManager em, List<?> ids) {
+
+        if (deferredJoinQuery == null) {
+            deferredJoinQuery =
+                    QueryUtils.createIdAndEntityQueryFor(applyFetchPlan(em,
+                            QueryUtils.createDeferredJoinQueryFor(queryString),
+                            true), getIdAttributeName(em));
+        }
+
+        return applyReadHints(applyHints(QueryUtils.applyAndBindIds(
+                deferredJoinQuery, getIdAttributeName(em), ids, false, em)));
+    }
+
+
+    /**
+     * Returns the name of the id attribute of the domain class or
+     * {@literal null} if it is not an entity with a single id attribute.
+     * 
+     * @param em
+     * @return
+     */
+    private String getIdAttributeName(EntityManager em) {
+
+        return QueryUtils.getIdAttributeName(em, domainClass);
+    }
+
+
+    /**
+     * Adds fetch joins for the attributes of the {@link FetchPlan} to the
+     * given query. Collections are only joined if requested, the query
+     * selects distinct entities then.
+     * 
+     * @param em
+     * @param query
+     * @param includeCollections
+     * @return
+     */
+    private String applyFetchPlan(EntityManager em, String query,
+            boolean includeCollections) {
+
+        if (fetchPlan == null) {
+            return query;
+        }
+
+        List<String> attributes = new ArrayList<String>();
+        boolean distinct = false;
+
+        for (String attribute : fetchPlan) {
+
+            if (QueryUtils.isCollectionAttribute(em, domainClass, attribute)) {
+
+                if (!includeCollections) {
+                    continue;
+                }
+
+                distinct = true;
+            }
+
+            attributes.add(attribute);
+        }
+
+        return QueryUtils.applyFetchJoins(query, alias, attributes, distinct);
+    }
+
+
     /**
      * Applies the declared query hints to the given query.
      * 
@@ -135,8 +352,13 @@ final class SimpleHadesQuery extends AbstractHadesQuery {
 
         String query = queryMethod.getAnnotatedQuery();
 
-        return query == null ? null : new SimpleHadesQuery(queryMethod, em,
-                query);
+        if (query == null) {
+            return null;
+        }
+
+        queryMethod.assertNoInterfaceProjection();
+
+        return new SimpleHadesQuery(queryMethod, em, query);
     }
 
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+/**
+ * {@link PageRequest} that caps the count of the total number of elements to
+ * the given number. Thus the cost of the count query is bounded no matter how
+ * many elements match. If more elements are available the {@link Page}
+ * returned will report a lower bound of the total (see
+ * {@link Page#isTotalCapped()}).
+ * 
+ * @author Oliver Gierke
+ */
+public class CappedPageRequest extends PageRequest {
+
+    private final int countCap;
+
+
+    /**
+     * Creates a new {@link CappedPageRequest}.
+     * 
+     * @param page
+     * @param size
+     * @param countCap the maximum number of elements to count, must be
+     *            greater than zero
+     */
+    public CappedPageRequest(final int page, final int size, final int countCap) {
+
+        this(page, size, null, countCap);
+    }
+
+
+    /**
+     * Creates a new {@link CappedPageRequest} with sort parameters applied.
+     * 
+     * @param page
+     * @param size
+     * @param sort
+     * @param countCap the maximum number of elements to count, must be
+     *            greater than zero
+     */
+    public CappedPageRequest(final int page, final int size, final Sort sort,
+            final int countCap) {
+
+        super(page, size, sort);
+
+        if (0 >= countCap) {
+            throw new IllegalArgumentException(
+                    "Count cap must not be less than or equal to zero!");
+        }
+
+        this.countCap = countCap;
+    }
+
+
+    /**
+     * Returns the maximum number of elements to count.
+     * 
+     * @return
+     */
+    public int getCountCap() {
+
+        return countCap;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.PageRequest#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof CappedPageRequest)) {
+            return false;
+        }
+
+        CappedPageRequest that = (CappedPageRequest) obj;
+
+        return super.equals(that) && this.countCap == that.countCap;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.PageRequest#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        return 31 * super.hashCode() + countCap;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+/**
+ * {@link Specification} whose number of matching entities can be maintained
+ * incrementally as it is able to evaluate itself against a single entity in
+ * memory. Usually declared for frequently counted predicates through
+ * {@link org.synyx.hades.dao.MaterializedCount}.
+ * 
+ * @author Oliver Gierke
+ */
+public interface CountPredicate<T> extends Specification<T> {
+
+    /**
+     * Returns whether the given entity matches the {@link Specification}.
+     * Has to be consistent with the {@link javax.persistence.criteria.Predicate}
+     * created by {@link #toPredicate(javax.persistence.criteria.Root,
+     * javax.persistence.criteria.CriteriaQuery,
+     * javax.persistence.criteria.CriteriaBuilder)}.
+     * 
+     * @param entity will never be {@literal null}
+     * @return
+     */
+    boolean matches(T entity);
+}
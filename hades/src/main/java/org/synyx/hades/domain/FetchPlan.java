@@ -0,0 +1,142 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * The associations to be loaded alongside the entities read by a query.
+ * Associations are given by the names of the attributes of the entity read.
+ * To-one associations are fetch joined. Collections are fetch joined as well
+ * unless the query reads a page, as joining them would multiply the rows to
+ * be paged through. They are loaded with a single additional query for all
+ * entities of the page then.
+ * 
+ * @author Oliver Gierke
+ */
+public class FetchPlan implements Iterable<String> {
+
+    private final List<String> attributes;
+
+
+    /**
+     * Creates a new {@link FetchPlan} for the given attributes.
+     * 
+     * @param attributes must not be {@literal null} or empty and must not
+     *            contain {@literal null}, empty or nested attribute names
+     */
+    public FetchPlan(String... attributes) {
+
+        this(attributes == null ? null : Arrays.asList(attributes));
+    }
+
+
+    /**
+     * Creates a new {@link FetchPlan} for the given attributes.
+     * 
+     * @param attributes must not be {@literal null} or empty and must not
+     *            contain {@literal null}, empty or nested attribute names
+     */
+    public FetchPlan(List<String> attributes) {
+
+        if (attributes == null || attributes.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "You have to provide at least one attribute to fetch!");
+        }
+
+        for (String attribute : attributes) {
+            if (attribute == null || "".equals(attribute.trim())
+                    || attribute.contains(".")) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid attribute to fetch: %s!", attribute));
+            }
+        }
+
+        this.attributes =
+                Collections.unmodifiableList(new ArrayList<String>(attributes));
+    }
+
+
+    /**
+     * Returns the names of the attributes to fetch.
+     * 
+     * @return
+     */
+    public List<String> getAttributes() {
+
+        return attributes;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Iterable#iterator()
+     */
+    public Iterator<String> iterator() {
+
+        return attributes.iterator();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof FetchPlan)) {
+            return false;
+        }
+
+        return attributes.equals(((FetchPlan) obj).attributes);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        return attributes.hashCode();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return "FetchPlan" + attributes;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.synyx.hades.domain.Sort.Property;
+
+
+/**
+ * {@link Pageable} to navigate through a result set by the values of the last
+ * element of the previous page (keyset or seek pagination) instead of an
+ * offset. Pages are thus selected by a {@literal where} clause restricting the
+ * result to elements sorting after the last element seen, so that reading a
+ * deep page costs the same as reading the first one.
+ * <p>
+ * As the result has to be ordered deterministically the id property is used
+ * as unique tie breaker and appended to the {@link Sort} returned by
+ * {@link #getSort()} if not contained already. The sort properties must not be
+ * {@literal null} for any element as those could not be compared.
+ * <p>
+ * Start with a {@link KeysetPageRequest} for the first page and use
+ * {@link #next(Object, Object...)} with the id and the sort property values of
+ * the last element of a page to get the request for the following one.
+ * 
+ * @author Oliver Gierke
+ */
+public class KeysetPageRequest implements Pageable {
+
+    private final int page;
+    private final int size;
+    private final Sort sort;
+    private final String idProperty;
+    private final Object[] lastValues;
+
+
+    /**
+     * Creates a new {@link KeysetPageRequest} for the first page.
+     * 
+     * @param size must be greater than zero
+     * @param sort can be {@literal null}
+     * @param idProperty the name of the unique id property, must not be
+     *            {@literal null} or empty
+     */
+    public KeysetPageRequest(final int size, final Sort sort,
+            final String idProperty) {
+
+        this(0, size, sort, idProperty, null);
+    }
+
+
+    /**
+     * Creates a new {@link KeysetPageRequest}.
+     * 
+     * @param page
+     * @param size
+     * @param sort
+     * @param idProperty
+     * @param lastValues
+     */
+    private KeysetPageRequest(final int page, final int size, final Sort sort,
+            final String idProperty, final Object[] lastValues) {
+
+        if (0 >= size) {
+            throw new IllegalArgumentException(
+                    "Page size must not be less than or equal to zero!");
+        }
+
+        if (null == idProperty || "".equals(idProperty.trim())) {
+            throw new IllegalArgumentException(
+                    "Id property must not be null or empty!");
+        }
+
+        this.page = page;
+        this.size = size;
+        this.sort = withIdProperty(sort, idProperty);
+        this.idProperty = idProperty;
+        this.lastValues = lastValues;
+    }
+
+
+    /**
+     * Returns the {@link KeysetPageRequest} for the page following the element
+     * with the given id and sort property values.
+     * 
+     * @param lastId the id of the last element of the current page, must not
+     *            be {@literal null}
+     * @param lastValues the values of the properties of the original
+     *            {@link Sort} of the last element of the current page in the
+     *            order they were declared
+     * @return
+     */
+    public KeysetPageRequest next(final Object lastId,
+            final Object... lastValues) {
+
+        if (null == lastId) {
+            throw new IllegalArgumentException("Last id must not be null!");
+        }
+
+        List<Object> values = new ArrayList<Object>();
+        int index = 0;
+
+        for (Property property : sort) {
+
+            if (idProperty.equals(property.getName())) {
+                values.add(lastId);
+                continue;
+            }
+
+            if (index >= lastValues.length) {
+                throw new IllegalArgumentException(String.format(
+                        "No value given for sort property %s!",
+                        property.getName()));
+            }
+
+            values.add(lastValues[index++]);
+        }
+
+        if (index != lastValues.length) {
+            throw new IllegalArgumentException(
+                    "More values given than sort properties declared!");
+        }
+
+        return new KeysetPageRequest(page + 1, size, sort, idProperty,
+                values.toArray());
+    }
+
+
+    /**
+     * Returns the name of the id property used as tie breaker.
+     * 
+     * @return
+     */
+    public String getIdProperty() {
+
+        return idProperty;
+    }
+
+
+    /**
+     * Returns whether the request points to a page following a previous one
+     * and thus has values of the last element seen.
+     * 
+     * @return
+     */
+    public boolean hasLastValues() {
+
+        return null != lastValues;
+    }
+
+
+    /**
+     * Returns the values of the last element seen in the order of the
+     * properties of {@link #getSort()}. Returns {@literal null} for the first
+     * page.
+     * 
+     * @return
+     */
+    public Object[] getLastValues() {
+
+        return null == lastValues ? null : lastValues.clone();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Pageable#getPageNumber()
+     */
+    public int getPageNumber() {
+
+        return page;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Pageable#getPageSize()
+     */
+    public int getPageSize() {
+
+        return size;
+    }
+
+
+    /**
+     * Returns {@literal 0} as the page is not selected by an offset but by the
+     * values of the last element seen.
+     * 
+     * @see org.synyx.hades.domain.Pageable#getFirstItem()
+     */
+    public int getFirstItem() {
+
+        return 0;
+    }
+
+
+    /**
+     * Returns the {@link Sort} including the id property as tie breaker.
+     * 
+     * @see org.synyx.hades.domain.Pageable#getSort()
+     */
+    public Sort getSort() {
+
+        return sort;
+    }
+
+
+    /**
+     * Appends the given id property to the given {@link Sort} if not contained
+     * already.
+     * 
+     * @param sort
+     * @param idProperty
+     * @return
+     */
+    private static Sort withIdProperty(Sort sort, String idProperty) {
+
+        List<Property> properties = new ArrayList<Property>();
+
+        if (null != sort) {
+            for (Property property : sort) {
+                if (idProperty.equals(property.getName())) {
+                    return sort;
+                }
+                properties.add(property);
+            }
+        }
+
+        properties.add(new Property(idProperty));
+
+        return new Sort(properties);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof KeysetPageRequest)) {
+            return false;
+        }
+
+        KeysetPageRequest that = (KeysetPageRequest) obj;
+
+        boolean pageEqual = this.page == that.page;
+        boolean sizeEqual = this.size == that.size;
+        boolean sortEqual = this.sort.equals(that.sort);
+        boolean valuesEqual = Arrays.equals(this.lastValues, that.lastValues);
+
+        return pageEqual && sizeEqual && sortEqual && valuesEqual;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        int result = 17;
+
+        result = 31 * result + page;
+        result = 31 * result + size;
+        result = 31 * result + sort.hashCode();
+        result = 31 * result + Arrays.hashCode(lastValues);
+
+        return result;
+    }
+}
@@ -16,10 +16,6 @@
 
 package org.synyx.hades.domain;
 
-import java.util.Iterator;
-import java.util.List;
-
-
 /**
  * A page is a sublist of a list of objects. It allows gain information about
  * the position of it in the containing entire list.
@@ -27,24 +23,7 @@ import java.util.List;
  * @author Oliver Gierke
  * @param <T>
  */
-public interface Page<T> extends Iterable<T> {
-
-    /**
-     * Returns the number of the current page. Is zero based and less that
-     * {@code Page#getTotalPages()}.
-     * 
-     * @return the number of the current page
-     */
-    int getNumber();
-
-
-    /**
-     * Returns the size of the page.
-     * 
-     * @return the size of the page
-     */
-    int getSize();
-
+public interface Page<T> extends Slice<T> {
 
     /**
      * Returns the number of total pages.
@@ -54,14 +33,6 @@ public interface Page<T> extends Iterable<T> {
     int getTotalPages();
 
 
-    /**
-     * Returns the number of elements currently on this page.
-     * 
-     * @return the number of elements currently on this page
-     */
-    int getNumberOfElements();
-
-
     /**
      * Returns the total amount of elements.
      * 
@@ -71,41 +42,10 @@ public interface Page<T> extends Iterable<T> {
 
 
     /**
-     * Returns if there is a previous page.
-     * 
-     * @return if there is a previous page
-     */
-    boolean hasPreviousPage();
-
-
-    /**
-     * Returns if there is a next page.
-     * 
-     * @return if there is a next page
-     */
-    boolean hasNextPage();
-
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Iterable#iterator()
-     */
-    Iterator<T> iterator();
-
-
-    /**
-     * Returns the page content as {@link List}.
-     * 
-     * @return
-     */
-    List<T> asList();
-
-
-    /**
-     * Returns the sorting parameters for the page.
+     * Returns whether counting the total amount of elements was capped and
+     * {@link #getTotalElements()} thus only returns a lower bound.
      * 
-     * @return
+     * @return whether the total amount of elements is a lower bound only
      */
-    Sort getSort();
-}
\ No newline at end of file
+    boolean isTotalCapped();
+}
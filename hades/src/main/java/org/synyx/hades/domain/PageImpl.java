@@ -33,6 +33,7 @@ public class PageImpl<T> implements Page<T> {
     private List<T> content = new ArrayList<T>();
     private Pageable pageable;
     private long total;
+    private boolean totalCapped;
 
 
     /**
@@ -45,12 +46,28 @@ public class PageImpl<T> implements Page<T> {
     public PageImpl(final List<T> content, final Pageable pageable,
             final long total) {
 
+        this(content, pageable, total, false);
+    }
+
+
+    /**
+     * Constructor of {@code PageImpl} for a potentially capped total.
+     * 
+     * @param content the content of this page
+     * @param pageable the paging information
+     * @param total the total amount of items available or a lower bound of it
+     * @param totalCapped whether the given total is a lower bound only
+     */
+    public PageImpl(final List<T> content, final Pageable pageable,
+            final long total, final boolean totalCapped) {
+
         if (null == content) {
             throw new IllegalArgumentException("Content must not be null!");
         }
 
         this.content.addAll(content);
         this.total = total;
+        this.totalCapped = totalCapped;
 
         this.pageable =
                 null == pageable ? new PageRequest(0, content.size())
@@ -143,10 +160,25 @@ public class PageImpl<T> implements Page<T> {
      */
     public boolean hasNextPage() {
 
+        if (totalCapped && content.size() == getSize()) {
+            return true;
+        }
+
         return ((getNumber() + 1) * getSize()) < total;
     }
 
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Page#isTotalCapped()
+     */
+    public boolean isTotalCapped() {
+
+        return totalCapped;
+    }
+
+
     /*
      * (non-Javadoc)
      * 
@@ -217,7 +249,9 @@ public class PageImpl<T> implements Page<T> {
 
         PageImpl<?> that = (PageImpl<?>) obj;
 
-        boolean totalEqual = this.total == that.total;
+        boolean totalEqual =
+                this.total == that.total
+                        && this.totalCapped == that.totalCapped;
         boolean contentEqual = this.content.equals(that.content);
         boolean pageableEqual = this.pageable.equals(that.pageable);
 
@@ -236,6 +270,7 @@ public class PageImpl<T> implements Page<T> {
         int result = 17;
 
         result = 31 * result + (int) (total ^ total >>> 32);
+        result = 31 * result + (totalCapped ? 1 : 0);
         result = 31 * result + pageable.hashCode();
         result = 31 * result + content.hashCode();
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A slice is a sublist of a list of objects. In contrast to a {@link Page} it
+ * does not know about the total number of elements but only whether there is
+ * a following slice. Thus it can be created without issuing an additional
+ * count query.
+ * 
+ * @author Oliver Gierke
+ * @param <T>
+ */
+public interface Slice<T> extends Iterable<T> {
+
+    /**
+     * Returns the number of the current slice. Is zero based.
+     * 
+     * @return the number of the current slice
+     */
+    int getNumber();
+
+
+    /**
+     * Returns the size of the slice.
+     * 
+     * @return the size of the slice
+     */
+    int getSize();
+
+
+    /**
+     * Returns the number of elements currently on this slice.
+     * 
+     * @return the number of elements currently on this slice
+     */
+    int getNumberOfElements();
+
+
+    /**
+     * Returns if there is a previous slice.
+     * 
+     * @return if there is a previous slice
+     */
+    boolean hasPreviousPage();
+
+
+    /**
+     * Returns if there is a next slice.
+     * 
+     * @return if there is a next slice
+     */
+    boolean hasNextPage();
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Iterable#iterator()
+     */
+    Iterator<T> iterator();
+
+
+    /**
+     * Returns the slice content as {@link List}.
+     * 
+     * @return
+     */
+    List<T> asList();
+
+
+    /**
+     * Returns the sorting parameters for the slice.
+     * 
+     * @return
+     */
+    Sort getSort();
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Basic {@code Slice} implementation.
+ * 
+ * @author Oliver Gierke
+ * @param <T> the type of which the slice consists.
+ */
+public class SliceImpl<T> implements Slice<T> {
+
+    private List<T> content = new ArrayList<T>();
+    private Pageable pageable;
+    private boolean hasNext;
+
+
+    /**
+     * Constructor of {@code SliceImpl}.
+     * 
+     * @param content the content of this slice
+     * @param pageable the paging information
+     * @param hasNext whether there is a slice following the current one
+     */
+    public SliceImpl(final List<T> content, final Pageable pageable,
+            final boolean hasNext) {
+
+        if (null == content) {
+            throw new IllegalArgumentException("Content must not be null!");
+        }
+
+        this.content.addAll(content);
+        this.hasNext = hasNext;
+
+        this.pageable =
+                null == pageable ? new PageRequest(0, Math.max(1, content
+                        .size())) : pageable;
+    }
+
+
+    /**
+     * Creates a new {@link SliceImpl} with the given content. This will result
+     * in the created {@link Slice} being identical to the entire {@link List}.
+     * 
+     * @param content
+     */
+    public SliceImpl(final List<T> content) {
+
+        this(content, null, false);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getNumber()
+     */
+    public int getNumber() {
+
+        return pageable.getPageNumber();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getSize()
+     */
+    public int getSize() {
+
+        return pageable.getPageSize();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getNumberOfElements()
+     */
+    public int getNumberOfElements() {
+
+        return content.size();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#hasPreviousPage()
+     */
+    public boolean hasPreviousPage() {
+
+        return getNumber() > 0;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#hasNextPage()
+     */
+    public boolean hasNextPage() {
+
+        return hasNext;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#iterator()
+     */
+    public Iterator<T> iterator() {
+
+        return content.iterator();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#asList()
+     */
+    public List<T> asList() {
+
+        return Collections.unmodifiableList(content);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.synyx.hades.domain.Slice#getSort()
+     */
+    public Sort getSort() {
+
+        return pageable.getSort();
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        String contentType = "UNKNOWN";
+
+        if (content.size() > 0) {
+            contentType = content.get(0).getClass().getName();
+        }
+
+        return String.format("Slice %d containing %s instances", getNumber(),
+                contentType);
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof SliceImpl<?>)) {
+            return false;
+        }
+
+        SliceImpl<?> that = (SliceImpl<?>) obj;
+
+        boolean hasNextEqual = this.hasNext == that.hasNext;
+        boolean contentEqual = this.content.equals(that.content);
+        boolean pageableEqual = this.pageable.equals(that.pageable);
+
+        return hasNextEqual && contentEqual && pageableEqual;
+    }
+
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        int result = 17;
+
+        result = 31 * result + (hasNext ? 1 : 0);
+        result = 31 * result + pageable.hashCode();
+        result = 31 * result + content.hashCode();
+
+        return result;
+    }
+}
@@ -120,7 +120,9 @@ public class Sort implements Iterable<org.synyx.hades.domain.Sort.Property> {
 
         Sort that = (Sort) obj;
 
-        boolean orderEqual = this.order.equals(that.order);
+        boolean orderEqual =
+                this.order == null ? that.order == null : this.order
+                        .equals(that.order);
         boolean propertiesEqual = this.properties.equals(that.properties);
 
         return orderEqual && propertiesEqual;
@@ -137,7 +139,7 @@ public class Sort implements Iterable<org.synyx.hades.domain.Sort.Property> {
 
         int result = 17;
 
-        result = 31 * result + order.hashCode();
+        result = 31 * result + (null == order ? 0 : order.hashCode());
         result = 31 * result + properties.hashCode();
 
         return result;
@@ -249,7 +251,7 @@ public class Sort implements Iterable<org.synyx.hades.domain.Sort.Property> {
 
             int result = 17;
 
-            result = 31 * result + order.hashCode();
+            result = 31 * result + (null == order ? 0 : order.hashCode());
             result = 31 * result + property.hashCode();
 
             return result;
@@ -18,12 +18,16 @@ package org.synyx.hades.dao;
 
 import java.util.List;
 
+import javax.persistence.FlushModeType;
 import javax.persistence.QueryHint;
 
 import org.springframework.transaction.annotation.Transactional;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
 import org.synyx.hades.domain.User;
+import org.synyx.hades.domain.UserDto;
+import org.synyx.hades.domain.UserNames;
 
 
 /**
@@ -46,6 +50,19 @@ public interface UserDao extends GenericDao<User, Integer>, UserDaoCustom {
     List<User> findByLastname(final String lastname);
 
 
+    /**
+     * Retrieve a page of users by their lastname. Uses the named query
+     * {@literal User.findByLastname} and counts the users with the named
+     * query {@literal User.findByLastname.count}, both declared in
+     * {@literal META-INF/orm.xml}.
+     * 
+     * @param lastname
+     * @param pageable
+     * @return
+     */
+    Page<User> findByLastname(final String lastname, final Pageable pageable);
+
+
     /**
      * Redeclaration of
      * {@link GenericDao#readByPrimaryKey(java.io.Serializable)} to change
@@ -70,6 +87,33 @@ public interface UserDao extends GenericDao<User, Integer>, UserDaoCustom {
     Page<User> findAllPaged(final Pageable pageable);
 
 
+    @Query("select u from User u ")
+    Slice<User> findAllSliced(final Pageable pageable);
+
+
+    @Query("select distinct u from User u left join fetch u.roles order by u.lastname")
+    Page<User> findAllWithRoles(final Pageable pageable);
+
+
+    @DeferredJoin
+    @Query("select distinct u from User u left join fetch u.roles order by u.lastname")
+    Page<User> findAllWithRolesDeferred(final Pageable pageable);
+
+
+    @FetchJoin("roles")
+    List<User> findByFirstnameLike(final String firstname);
+
+
+    @FetchJoin("roles")
+    @Query("select u from User u order by u.lastname")
+    Page<User> findAllFetchingRoles(final Pageable pageable);
+
+
+    @CappedCount(1)
+    @Query("select u from User u ")
+    Page<User> findAllCapped(final Pageable pageable);
+
+
     /**
      * Retrieves users by the given email and lastname. Acts as a dummy method
      * declaration to test finder query creation.
@@ -158,6 +202,20 @@ public interface UserDao extends GenericDao<User, Integer>, UserDaoCustom {
             @Param("lastname") String lastname);
 
 
+    /**
+     * Method where parameters will be applied by name combined with a
+     * {@link Pageable} parameter.
+     * 
+     * @param firstname
+     * @param lastname
+     * @param pageable
+     * @return
+     */
+    @Query("select u from User u where u.lastname = :lastname or u.firstname = :firstname")
+    Page<User> findByLastnameOrFirstname(@Param("firstname") String firstname,
+            @Param("lastname") String lastname, Pageable pageable);
+
+
     /**
      * Method to check query creation and named parameter usage go well hand in
      * hand.
@@ -173,8 +231,46 @@ public interface UserDao extends GenericDao<User, Integer>, UserDaoCustom {
     List<User> findByLastnameLikeOrderByFirstnameDesc(String lastname);
 
 
+    @ReadOnly
+    List<User> findByLastnameLike(String lastname);
+
+
+    @FlushMode(FlushModeType.COMMIT)
+    List<User> findByEmailAddressLike(String emailAddress);
+
+
     List<User> findByLastnameNotLike(String lastname);
 
 
     List<User> findByLastnameNot(String lastname);
+
+
+    /**
+     * Selects the lastnames of the users with the given firstname only.
+     * 
+     * @param firstname
+     * @return
+     */
+    List<String> findLastnameByFirstname(String firstname);
+
+
+    /**
+     * Projects the users with the given email address onto {@link UserDto}s
+     * using a constructor expression.
+     * 
+     * @param emailAddress
+     * @return
+     */
+    List<UserDto> findFirstnameAndLastnameByEmailAddress(String emailAddress);
+
+
+    /**
+     * Projects a page of users not having the given firstname onto
+     * {@link UserNames} proxies selecting the properties of its getters.
+     * 
+     * @param firstname
+     * @param pageable
+     * @return
+     */
+    Page<UserNames> findByFirstnameNot(String firstname, Pageable pageable);
 }
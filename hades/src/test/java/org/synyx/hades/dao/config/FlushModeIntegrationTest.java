@@ -0,0 +1,63 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.config;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.util.ReflectionTestUtils.*;
+
+import javax.persistence.FlushModeType;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.synyx.hades.dao.orm.GenericDaoFactoryBean;
+
+
+/**
+ * Integration test for XML configuration of the {@link FlushModeType}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:namespace/flush-mode-context.xml")
+public class FlushModeIntegrationTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+
+    @Test
+    public void appliesFlushModeOfDaoConfig() {
+
+        GenericDaoFactoryBean<?> factory =
+                context.getBean("&userDao", GenericDaoFactoryBean.class);
+
+        assertEquals(FlushModeType.COMMIT, getField(factory, "flushMode"));
+    }
+
+
+    @Test
+    public void prefersFlushModeOfDao() {
+
+        GenericDaoFactoryBean<?> factory =
+                context.getBean("&roleDao", GenericDaoFactoryBean.class);
+
+        assertEquals(FlushModeType.AUTO, getField(factory, "flushMode"));
+    }
+}
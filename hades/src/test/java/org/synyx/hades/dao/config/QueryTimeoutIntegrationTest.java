@@ -0,0 +1,61 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.config;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.util.ReflectionTestUtils.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.synyx.hades.dao.orm.GenericDaoFactoryBean;
+
+
+/**
+ * Integration test for XML configuration of the query timeout.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:namespace/query-timeout-context.xml")
+public class QueryTimeoutIntegrationTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+
+    @Test
+    public void appliesQueryTimeoutOfDaoConfig() {
+
+        GenericDaoFactoryBean<?> factory =
+                context.getBean("&userDao", GenericDaoFactoryBean.class);
+
+        assertEquals(2000, getField(factory, "queryTimeout"));
+    }
+
+
+    @Test
+    public void prefersQueryTimeoutOfDao() {
+
+        GenericDaoFactoryBean<?> factory =
+                context.getBean("&roleDao", GenericDaoFactoryBean.class);
+
+        assertEquals(500, getField(factory, "queryTimeout"));
+    }
+}
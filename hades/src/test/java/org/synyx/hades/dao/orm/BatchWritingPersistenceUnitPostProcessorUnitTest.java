@@ -0,0 +1,98 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+
+
+/**
+ * Unit test for {@link BatchWritingPersistenceUnitPostProcessor}.
+ * 
+ * @author Oliver Gierke
+ */
+public class BatchWritingPersistenceUnitPostProcessorUnitTest {
+
+    MutablePersistenceUnitInfo pui;
+
+
+    @Before
+    public void setUp() {
+
+        pui = new MutablePersistenceUnitInfo();
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBatchSize() throws Exception {
+
+        new BatchWritingPersistenceUnitPostProcessor(0);
+    }
+
+
+    @Test
+    public void registersProviderSpecificPropertiesOnly() throws Exception {
+
+        pui.setPersistenceProviderClassName(
+                "org.hibernate.ejb.HibernatePersistence");
+        new BatchWritingPersistenceUnitPostProcessor(50)
+                .postProcessPersistenceUnitInfo(pui);
+
+        Properties properties = pui.getProperties();
+        assertThat(properties.getProperty("hibernate.jdbc.batch_size"),
+                is("50"));
+        assertThat(properties.getProperty("hibernate.order_inserts"),
+                is("true"));
+        assertThat(properties.containsKey("eclipselink.jdbc.batch-writing"),
+                is(false));
+    }
+
+
+    @Test
+    public void registersPropertiesForAllProvidersIfNoneConfigured()
+            throws Exception {
+
+        new BatchWritingPersistenceUnitPostProcessor(50)
+                .postProcessPersistenceUnitInfo(pui);
+
+        Properties properties = pui.getProperties();
+        assertThat(properties.getProperty("hibernate.jdbc.batch_size"),
+                is("50"));
+        assertThat(properties.getProperty("eclipselink.jdbc.batch-writing"),
+                is("JDBC"));
+        assertThat(properties.getProperty("openjpa.jdbc.DBDictionary"),
+                is("batchLimit=50"));
+    }
+
+
+    @Test
+    public void doesNotOverrideConfiguredProperties() throws Exception {
+
+        pui.addProperty("hibernate.jdbc.batch_size", "20");
+        new BatchWritingPersistenceUnitPostProcessor(50)
+                .postProcessPersistenceUnitInfo(pui);
+
+        Properties properties = pui.getProperties();
+        assertThat(properties.getProperty("hibernate.jdbc.batch_size"),
+                is("20"));
+    }
+}
@@ -17,21 +17,42 @@ package org.synyx.hades.dao.orm;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
+import static org.synyx.hades.domain.UserSpecifications.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
+import org.hibernate.engine.EntityEntry;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.engine.Status;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
+import org.synyx.hades.dao.EntityCallback;
 import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.UserDao;
+import org.synyx.hades.dao.UserDaoImpl;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Role;
 import org.synyx.hades.domain.SampleEntity;
 import org.synyx.hades.domain.SampleEntityPK;
+import org.synyx.hades.domain.Specification;
+import org.synyx.hades.domain.User;
+import org.synyx.hades.domain.VersionedEntity;
 
 
 /**
@@ -71,8 +92,530 @@ public class GenericJpaDaoIntegrationTest {
         assertThat(dao.count(), is(0L));
     }
 
+
+    @Test
+    public void checksExistenceForCompoundKeyEntity() throws Exception {
+
+        dao.saveAndFlush(new SampleEntity("foo", "bar"));
+        dao.saveAndFlush(new SampleEntity("foo", "baz"));
+
+        SampleEntityPK first = new SampleEntityPK("foo", "bar");
+        SampleEntityPK second = new SampleEntityPK("foo", "baz");
+        SampleEntityPK missing = new SampleEntityPK("bar", "foo");
+
+        assertThat(dao.exists(first), is(true));
+        assertThat(dao.exists(missing), is(false));
+
+        Set<SampleEntityPK> result =
+                dao.existingIds(Arrays.asList(first, second, missing));
+
+        assertThat(result.size(), is(2));
+        assertThat(result.contains(first), is(true));
+        assertThat(result.contains(second), is(true));
+    }
+
+
+    @Test
+    public void readsAllByCompoundIdsInChunks() throws Exception {
+
+        GenericJpaDao<SampleEntity, SampleEntityPK> jpaDao =
+                new GenericJpaDao<SampleEntity, SampleEntityPK>();
+        jpaDao.setEntityManager(em);
+        jpaDao.setDomainClass(SampleEntity.class);
+        jpaDao.setInClauseLimit(2);
+
+        List<SampleEntityPK> ids = new ArrayList<SampleEntityPK>();
+
+        for (int i = 0; i < 5; i++) {
+            jpaDao.save(new SampleEntity("foo", "bar" + i));
+            ids.add(0, new SampleEntityPK("foo", "bar" + i));
+        }
+
+        jpaDao.flush();
+        em.clear();
+
+        List<SampleEntity> result = jpaDao.readAll(ids);
+
+        assertThat(result.size(), is(5));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(result.get(i), is(new SampleEntity("foo", "bar"
+                    + (4 - i))));
+        }
+
+        assertThat(jpaDao.existingIds(ids).size(), is(5));
+    }
+
+
+    @Test
+    public void deletesCompoundKeyEntitiesInChunksWithoutLoadingThem()
+            throws Exception {
+
+        GenericJpaDao<SampleEntity, SampleEntityPK> jpaDao =
+                new GenericJpaDao<SampleEntity, SampleEntityPK>();
+        jpaDao.setEntityManager(em);
+        jpaDao.setDomainClass(SampleEntity.class);
+        jpaDao.setInClauseLimit(2);
+
+        List<SampleEntityPK> ids = new ArrayList<SampleEntityPK>();
+
+        for (int i = 0; i < 5; i++) {
+            jpaDao.save(new SampleEntity("foo", "bar" + i));
+            ids.add(new SampleEntityPK("foo", "bar" + i));
+        }
+
+        jpaDao.flush();
+        assertThat(jpaDao.isBulkDeletable(), is(true));
+
+        SampleEntity managed = jpaDao.readByPrimaryKey(ids.get(0));
+        jpaDao.deleteByPrimaryKeys(ids.subList(0, 4));
+
+        assertThat(em.contains(managed), is(false));
+        assertThat(jpaDao.count(), is(1L));
+
+        em.clear();
+        jpaDao.delete(new SampleEntity("foo", "bar4"));
+        assertThat(jpaDao.count(), is(0L));
+    }
+
+
+    @Test
+    public void doesNotUseBulkDeletesForEntitiesWithJoinTables()
+            throws Exception {
+
+        GenericJpaDao<User, Integer> jpaDao = new GenericJpaDao<User, Integer>();
+        jpaDao.setEntityManager(em);
+        jpaDao.setDomainClass(User.class);
+
+        assertThat(jpaDao.isBulkDeletable(), is(false));
+    }
+
+
+    @Test
+    public void doesNotDeleteStaleVersionedEntities() throws Exception {
+
+        GenericJpaDao<VersionedEntity, Long> jpaDao =
+                new GenericJpaDao<VersionedEntity, Long>();
+        jpaDao.setEntityManager(em);
+        jpaDao.setDomainClass(VersionedEntity.class);
+
+        assertThat(jpaDao.isBulkDeletable(), is(false));
+
+        VersionedEntity stale = jpaDao.saveAndFlush(new VersionedEntity("foo"));
+        em.clear();
+
+        jpaDao.readByPrimaryKey(stale.getId()).setName("bar");
+        jpaDao.flush();
+        em.clear();
+
+        try {
+            jpaDao.delete(stale);
+            jpaDao.flush();
+            fail("Expected OptimisticLockException!");
+        } catch (OptimisticLockException e) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void detachesStreamedEntitiesInChunks() throws Exception {
+
+        GenericJpaDao<SampleEntity, SampleEntityPK> jpaDao =
+                new GenericJpaDao<SampleEntity, SampleEntityPK>();
+        jpaDao.setEntityManager(em);
+        jpaDao.setDomainClass(SampleEntity.class);
+        jpaDao.setFetchSize(2);
+
+        for (int i = 0; i < 5; i++) {
+            em.persist(new SampleEntity("foo", "bar" + i));
+        }
+
+        em.flush();
+        em.clear();
+
+        final List<SampleEntity> result = new ArrayList<SampleEntity>();
+
+        jpaDao.readAllInBatches(null, new EntityCallback<SampleEntity>() {
+
+            public void doWith(SampleEntity entity) {
+
+                assertThat(em.contains(entity), is(true));
+
+                if (result.size() % 2 == 0) {
+                    for (SampleEntity processed : result) {
+                        assertThat(em.contains(processed), is(false));
+                    }
+                }
+
+                result.add(entity);
+            }
+        });
+
+        assertThat(result.size(), is(5));
+
+        for (SampleEntity entity : result) {
+            assertThat(em.contains(entity), is(false));
+        }
+    }
+
+
+    @Test
+    public void flushesChangesOfStreamedEntitiesBeforeDetaching()
+            throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+        userDao.setFetchSize(2);
+
+        for (int i = 0; i < 5; i++) {
+            userDao.save(new User("Oliver", "Gierke" + i, i + "@synyx.de"));
+        }
+
+        userDao.flush();
+        em.clear();
+
+        userDao.readAllInBatches(null, new EntityCallback<User>() {
+
+            public void doWith(User entity) {
+
+                entity.setFirstname("Dave");
+            }
+        });
+
+        em.clear();
+
+        assertThat(userDao.readAll(userHasFirstname("Dave")).size(), is(5));
+    }
+
+
+    @Test
+    public void readsDeferredJoinPagesContainingProxies() throws Exception {
+
+        UserDao userDao =
+                GenericDaoFactory.create(em).getDao(UserDao.class,
+                        new UserDaoImpl());
+
+        User first = new User("Oliver", "Gierke", "gierke@synyx.de");
+        User second = new User("Dave", "Matthews", "dave@matthews.com");
+        em.persist(first);
+        em.persist(second);
+        em.flush();
+        em.clear();
+
+        User proxy = em.getReference(User.class, first.getId());
+
+        assertThat(proxy.getClass(), is(not((Object) User.class)));
+        assertThat(userDao.findAllWithRolesDeferred(new PageRequest(0, 2))
+                .asList(), is(Arrays.asList(first, second)));
+    }
+
+
+    @Test
+    public void keepsDistinctDeclaredBySpecificationForCountQueries()
+            throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"));
+
+        final List<CriteriaQuery<?>> queries = new ArrayList<CriteriaQuery<?>>();
+
+        Specification<User> spec = new Specification<User>() {
+
+            public Predicate toPredicate(Root<User> root,
+                    CriteriaQuery<?> query, CriteriaBuilder builder) {
+
+                queries.add(query.distinct(true));
+                return builder.equal(root.get("firstname"), "Oliver");
+            }
+        };
+
+        assertThat(userDao.count(spec), is(1L));
+        assertThat(queries.get(0).isDistinct(), is(true));
+    }
+
+
+    @Test
+    public void countsDistinctEntitiesForToManyJoinsOfAdditionalRoots()
+            throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+
+        Role foo = new Role("foo");
+        Role bar = new Role("bar");
+        em.persist(foo);
+        em.persist(bar);
+
+        User user = new User("Oliver", "Gierke", "gierke@synyx.de");
+        user.addRole(foo);
+        user.addRole(bar);
+        userDao.saveAndFlush(user);
+
+        Specification<User> spec = new Specification<User>() {
+
+            public Predicate toPredicate(Root<User> root,
+                    CriteriaQuery<?> query, CriteriaBuilder builder) {
+
+                Root<User> other = query.from(User.class);
+                other.join("roles");
+
+                return builder.equal(root, other);
+            }
+        };
+
+        assertThat(userDao.count(spec), is(1L));
+    }
+
+
+    @Test
+    public void savesCollectionInChunks() throws Exception {
+
+        GenericDaoFactory factory = GenericDaoFactory.create(em);
+        factory.setBatchSize(2);
+        dao = factory.getDao(SampleEntityDao.class);
+
+        List<SampleEntity> entities = new ArrayList<SampleEntity>();
+
+        for (int i = 0; i < 5; i++) {
+            entities.add(new SampleEntity("foo", "bar" + i));
+        }
+
+        List<SampleEntity> result = dao.save(entities);
+
+        assertThat(result.size(), is(5));
+        assertThat(dao.count(), is(5L));
+
+        for (SampleEntity entity : result) {
+            assertThat(em.contains(entity), is(false));
+        }
+    }
+
     private static interface SampleEntityDao extends
             GenericDao<SampleEntity, SampleEntityPK> {
 
     }
+
+
+    @Test
+    public void doesNotFlushChangesToEntitiesReadReadOnly() throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+        userDao.setReadOnlyQueries(true);
+
+        User user =
+                userDao.saveAndFlush(new User("Oliver", "Gierke",
+                        "gierke@synyx.de"));
+        em.clear();
+
+        userDao.readAll().get(0).setFirstname("Dave");
+        userDao.flush();
+        em.clear();
+
+        assertThat(em.find(User.class, user.getId()).getFirstname(),
+                is("Oliver"));
+    }
+
+
+    @Test
+    public void doesNotFlushChangesToEntitiesReadByReadOnlyQueryMethod()
+            throws Exception {
+
+        UserDao userDao =
+                GenericDaoFactory.create(em).getDao(UserDao.class,
+                        new UserDaoImpl());
+
+        User user =
+                userDao.saveAndFlush(new User("Oliver", "Gierke",
+                        "gierke@synyx.de"));
+        em.clear();
+
+        userDao.findByLastnameLike("Gierke").get(0).setFirstname("Dave");
+        userDao.flush();
+        em.clear();
+
+        assertThat(em.find(User.class, user.getId()).getFirstname(),
+                is("Oliver"));
+        em.clear();
+
+        userDao.findByLastname("Gierke").get(0).setFirstname("Dave");
+        userDao.flush();
+        em.clear();
+
+        assertThat(em.find(User.class, user.getId()).getFirstname(),
+                is("Dave"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSavingEntitiesReadReadOnly() throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+        userDao.setReadOnlyQueries(true);
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"));
+        em.clear();
+
+        User user = userDao.readAll().get(0);
+        user.setFirstname("Dave");
+        userDao.save(user);
+    }
+
+
+    @Test
+    public void rejectsSavingEntitiesReadByReadOnlyQueryMethod()
+            throws Exception {
+
+        UserDao userDao =
+                GenericDaoFactory.create(em).getDao(UserDao.class,
+                        new UserDaoImpl());
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"));
+        em.clear();
+
+        User user = userDao.findByLastname("Gierke").get(0);
+        user.setFirstname("Dave");
+        assertThat(userDao.save(user).getFirstname(), is("Dave"));
+        em.clear();
+
+        try {
+            userDao.save(userDao.findByLastnameLike("Gierke").get(0));
+            fail("Expected IllegalArgumentException!");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+
+    @Test
+    public void doesNotTrackEntitiesReadReadOnlyForChanges() throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+
+        for (int i = 0; i < 5; i++) {
+            userDao.save(new User("Oliver", "Gierke" + i, i + "@synyx.de"));
+        }
+
+        userDao.flush();
+        em.clear();
+
+        assertThat(userDao.readAll().size(), is(5));
+        assertThat(getNumberOfEntitiesTrackedForChanges(), is(5));
+        em.clear();
+
+        userDao.setReadOnlyQueries(true);
+
+        assertThat(userDao.readAll().size(), is(5));
+        assertThat(getNumberOfEntitiesTrackedForChanges(), is(0));
+    }
+
+
+    /**
+     * Returns the number of entities in the Hibernate persistence context
+     * that are dirty checked on flush.
+     * 
+     * @return
+     */
+    private int getNumberOfEntitiesTrackedForChanges() {
+
+        int result = 0;
+
+        for (Object entry : ((SessionImplementor) em.getDelegate())
+                .getPersistenceContext().getEntityEntries().values()) {
+            if (Status.MANAGED.equals(((EntityEntry) entry).getStatus())) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+
+    @Test
+    public void doesNotFlushBeforeReadsInCommitFlushMode() throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+        userDao.setFlushMode(FlushModeType.COMMIT);
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"))
+                .setLastname("Matthews");
+
+        assertThat(userDao.readAll(userHasLastname("Matthews")).isEmpty(),
+                is(true));
+
+        userDao.setFlushMode(FlushModeType.AUTO);
+
+        assertThat(userDao.readAll(userHasLastname("Matthews")).size(), is(1));
+    }
+
+
+    @Test
+    public void executesQueryMethodWithDeclaredFlushMode() throws Exception {
+
+        UserDao userDao =
+                GenericDaoFactory.create(em).getDao(UserDao.class,
+                        new UserDaoImpl());
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"))
+                .setEmailAddress("oliver@synyx.de");
+
+        assertThat(userDao.findByEmailAddressLike("oliver@synyx.de").isEmpty(),
+                is(true));
+        assertThat(userDao.findByEmailAddress("oliver@synyx.de"),
+                is(notNullValue()));
+    }
+
+
+    @Test
+    public void executesQueriesWithQueryTimeout() throws Exception {
+
+        GenericJpaDao<User, Integer> userDao = new GenericJpaDao<User, Integer>();
+        userDao.setEntityManager(em);
+        userDao.setDomainClass(User.class);
+        userDao.setQueryTimeout(1000);
+
+        User user =
+                userDao.saveAndFlush(new User("Oliver", "Gierke",
+                        "gierke@synyx.de"));
+
+        assertThat(userDao.readByPrimaryKey(user.getId()), is(user));
+        assertThat(userDao.readAll(userHasLastname("Gierke")).size(), is(1));
+        assertThat(userDao.count(), is(1L));
+
+        userDao.deleteAll();
+
+        assertThat(userDao.count(), is(0L));
+    }
+
+
+    @Test
+    public void countsSkippedCountQueriesPerDao() throws Exception {
+
+        GenericDaoFactory factory = GenericDaoFactory.create(em);
+        UserDao userDao = factory.getDao(UserDao.class, new UserDaoImpl());
+        UserDao otherDao = factory.getDao(UserDao.class, new UserDaoImpl());
+
+        userDao.saveAndFlush(new User("Oliver", "Gierke", "gierke@synyx.de"));
+
+        assertThat(userDao.readAll(new PageRequest(0, 10)).getTotalElements(),
+                is(1L));
+        assertThat(userDao.findByLastname("Gierke", new PageRequest(0, 10))
+                .getTotalElements(), is(1L));
+
+        assertThat(GenericDaoFactory.getSkippedCountQueries(userDao), is(2L));
+        assertThat(GenericDaoFactory.getSkippedCountQueries(otherDao), is(0L));
+    }
 }
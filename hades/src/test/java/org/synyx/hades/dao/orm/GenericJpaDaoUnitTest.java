@@ -0,0 +1,278 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.ejb.HibernateEntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.query.CountCache;
+import org.synyx.hades.domain.FetchPlan;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Specification;
+import org.synyx.hades.domain.User;
+
+
+/**
+ * Unit test for {@link GenericJpaDao}. Verifies hints on {@link Query} as
+ * {@link GenericJpaDao} sets them through that interface, which Mockito does
+ * not match with the covariant {@link TypedQuery#setHint(String, Object)}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GenericJpaDaoUnitTest {
+
+    private static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+    GenericJpaDao<User, Integer> dao;
+
+    @Mock
+    HibernateEntityManager em;
+    @Mock
+    CriteriaBuilder builder;
+    @Mock
+    CriteriaQuery<User> criteriaQuery;
+    @Mock
+    CriteriaQuery<Long> countCriteriaQuery;
+    @Mock
+    Root<User> root;
+    @Mock
+    Expression<Long> countExpression;
+    @Mock
+    TypedQuery<User> query;
+    @Mock
+    TypedQuery<Long> countQuery;
+    @Mock
+    Specification<User> spec;
+
+    User user = new User();
+
+
+    @Before
+    public void setUp() {
+
+        when(em.getCriteriaBuilder()).thenReturn(builder);
+        when(em.createQuery(anyString(), eq(User.class))).thenReturn(query);
+        when(em.createQuery(anyString(), eq(Long.class)))
+                .thenReturn(countQuery);
+        when(em.createQuery(criteriaQuery)).thenReturn(query);
+        when(em.createQuery(countCriteriaQuery)).thenReturn(countQuery);
+
+        when(builder.createQuery(User.class)).thenReturn(criteriaQuery);
+        when(builder.createQuery(Long.class)).thenReturn(countCriteriaQuery);
+        when(builder.count(root)).thenReturn(countExpression);
+        when(criteriaQuery.from(User.class)).thenReturn(root);
+        when(countCriteriaQuery.from(User.class)).thenReturn(root);
+
+        when(query.getResultList()).thenReturn(Arrays.asList(user, user));
+        when(countQuery.getSingleResult()).thenReturn(5L);
+
+        user.setId(1);
+
+        dao = new GenericJpaDao<User, Integer>();
+        dao.setEntityManager(em);
+        dao.setDomainClass(User.class);
+        dao.setFetchSize(100);
+    }
+
+
+    @Test
+    public void appliesFetchSizeToReadAllQuery() throws Exception {
+
+        dao.readAll();
+
+        verify((Query) query).setHint(FETCH_SIZE_HINT, 100);
+    }
+
+
+    @Test
+    public void appliesFetchSizeToSpecificationQuery() throws Exception {
+
+        dao.readAll(spec);
+
+        verify((Query) query).setHint(FETCH_SIZE_HINT, 100);
+    }
+
+
+    @Test
+    public void appliesFetchSizeToPageQueryButNotToCountQuery()
+            throws Exception {
+
+        dao.readAll(spec, new PageRequest(0, 2));
+
+        verify((Query) query).setHint(FETCH_SIZE_HINT, 100);
+        verify(countQuery).getSingleResult();
+        verify((Query) countQuery, never()).setHint(eq(FETCH_SIZE_HINT),
+                any());
+    }
+
+
+    @Test
+    public void doesNotApplyFetchSizeToCountQueries() throws Exception {
+
+        dao.count();
+        dao.count(spec);
+
+        verify(countQuery, times(2)).getSingleResult();
+        verify((Query) countQuery, never()).setHint(eq(FETCH_SIZE_HINT),
+                any());
+    }
+
+
+    @Test
+    public void doesNotApplyFetchSizeIfNotConfigured() throws Exception {
+
+        dao.setFetchSize(null);
+        dao.readAll(spec);
+
+        verify((Query) query, never()).setHint(eq(FETCH_SIZE_HINT),
+                any());
+    }
+
+
+    @Test
+    public void cachesCountsOfSpecificationsImplementingEquals()
+            throws Exception {
+
+        dao.setCountCache(new CountCache(1, TimeUnit.MINUTES));
+
+        dao.count(new EqualSpecification());
+        dao.count(new EqualSpecification());
+
+        verify(countQuery, times(1)).getSingleResult();
+    }
+
+
+    @Test
+    public void doesNotCacheCountsOfSpecificationsComparedByIdentity()
+            throws Exception {
+
+        CountCache countCache = new CountCache(1, TimeUnit.MINUTES);
+        dao.setCountCache(countCache);
+
+        Specification<User> spec = new Specification<User>() {
+
+            public Predicate toPredicate(Root<User> root,
+                    CriteriaQuery<?> query, CriteriaBuilder cb) {
+
+                return null;
+            }
+        };
+
+        dao.count(spec);
+        dao.count(spec);
+
+        verify(countQuery, times(2)).getSingleResult();
+        assertThat(countCache.size(), is(0));
+    }
+
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void appliesFetchSizeToQueriesFetchingAssociations()
+            throws Exception {
+
+        Attribute roles = mock(Attribute.class);
+        when(roles.isCollection()).thenReturn(true);
+
+        SingularAttribute id = mock(SingularAttribute.class);
+        when(id.getName()).thenReturn("id");
+        when(id.isId()).thenReturn(true);
+
+        EntityType type = mock(EntityType.class);
+        when(type.getAttribute("roles")).thenReturn(roles);
+        when(type.hasSingleIdAttribute()).thenReturn(true);
+        when(type.getSingularAttributes()).thenReturn(
+                Collections.singleton(id));
+
+        Metamodel metamodel = mock(Metamodel.class);
+        when(metamodel.entity(User.class)).thenReturn(type);
+        when(em.getMetamodel()).thenReturn(metamodel);
+
+        PersistenceUnitUtil util = mock(PersistenceUnitUtil.class);
+        EntityManagerFactory factory = mock(EntityManagerFactory.class);
+        when(factory.getPersistenceUnitUtil()).thenReturn(util);
+        when(em.getEntityManagerFactory()).thenReturn(factory);
+        when(em.contains(user)).thenReturn(true);
+
+        Query fetchQuery = mock(Query.class);
+        when(
+                em.createQuery("select distinct x from User x "
+                        + "left join fetch x.roles where x.id in (?1, ?2)"))
+                .thenReturn(fetchQuery);
+
+        dao.readAll(spec, new PageRequest(0, 2), new FetchPlan("roles"));
+
+        verify((Query) query).setHint(FETCH_SIZE_HINT, 100);
+        verify(fetchQuery).setHint(FETCH_SIZE_HINT, 100);
+        verify(fetchQuery).getResultList();
+    }
+
+    /**
+     * {@link Specification} without restrictions that implements
+     * {@link Object#equals(Object)}.
+     * 
+     * @author Oliver Gierke
+     */
+    private static class EqualSpecification implements Specification<User> {
+
+        public Predicate toPredicate(Root<User> root, CriteriaQuery<?> query,
+                CriteriaBuilder cb) {
+
+            return null;
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+
+            return obj instanceof EqualSpecification;
+        }
+
+
+        @Override
+        public int hashCode() {
+
+            return EqualSpecification.class.hashCode();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.SQLTimeoutException;
+
+import javax.persistence.PersistenceException;
+import javax.persistence.QueryTimeoutException;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.QueryTimeoutExceededException;
+
+
+/**
+ * Unit test for {@link QueryTimeoutInterceptor}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class QueryTimeoutInterceptorUnitTest {
+
+    QueryTimeoutInterceptor interceptor = new QueryTimeoutInterceptor();
+
+    @Mock
+    MethodInvocation invocation;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        when(invocation.getMethod()).thenReturn(
+                GenericDao.class.getMethod("readAll"));
+    }
+
+
+    @Test
+    public void translatesQueryTimeoutException() throws Throwable {
+
+        assertTranslated(new QueryTimeoutException());
+    }
+
+
+    @Test
+    public void translatesExceptionCausedBySqlTimeout() throws Throwable {
+
+        assertTranslated(new PersistenceException(new SQLTimeoutException()));
+    }
+
+
+    @Test
+    public void doesNotTranslateOtherExceptions() throws Throwable {
+
+        RuntimeException exception = new PersistenceException();
+        when(invocation.proceed()).thenThrow(exception);
+
+        try {
+            interceptor.invoke(invocation);
+            fail("Expected PersistenceException!");
+        } catch (PersistenceException e) {
+            assertThat(e, is(sameInstance(exception)));
+        }
+
+        assertThat(interceptor.getQueryTimeouts(), is(0L));
+    }
+
+
+    @Test
+    public void doesNotTranslateQueryTimeoutExceededExceptionTwice()
+            throws Throwable {
+
+        RuntimeException exception =
+                new QueryTimeoutExceededException("foo",
+                        new QueryTimeoutException());
+        when(invocation.proceed()).thenThrow(exception);
+
+        try {
+            interceptor.invoke(invocation);
+            fail("Expected QueryTimeoutExceededException!");
+        } catch (QueryTimeoutExceededException e) {
+            assertThat(e, is(sameInstance(exception)));
+        }
+
+        assertThat(interceptor.getQueryTimeouts(), is(0L));
+    }
+
+
+    private void assertTranslated(RuntimeException exception)
+            throws Throwable {
+
+        when(invocation.proceed()).thenThrow(exception);
+
+        try {
+            interceptor.invoke(invocation);
+            fail("Expected QueryTimeoutExceededException!");
+        } catch (QueryTimeoutExceededException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) exception)));
+        }
+
+        assertThat(interceptor.getQueryTimeouts(), is(1L));
+        assertThat(new QueryTimeoutInterceptor().getQueryTimeouts(), is(0L));
+    }
+}
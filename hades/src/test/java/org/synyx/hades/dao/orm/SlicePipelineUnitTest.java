@@ -0,0 +1,200 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.orm;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.SliceCallback;
+import org.synyx.hades.dao.orm.SlicePipeline.SliceReader;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Slice;
+import org.synyx.hades.domain.SliceImpl;
+
+
+/**
+ * Unit test for {@link SlicePipeline}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SlicePipelineUnitTest {
+
+    @Mock
+    EntityManagerFactory factory;
+    @Mock
+    EntityManager em;
+
+    ExecutorService executor;
+    AtomicInteger reads;
+
+
+    @Before
+    public void setUp() {
+
+        when(factory.createEntityManager()).thenReturn(em);
+        executor = Executors.newSingleThreadExecutor();
+        reads = new AtomicInteger();
+    }
+
+
+    @After
+    public void tearDown() {
+
+        executor.shutdownNow();
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveLookAhead() throws Exception {
+
+        new SlicePipeline<Integer>(factory, executor, 0);
+    }
+
+
+    @Test
+    public void handsAllSlicesToCallbackInOrder() throws Exception {
+
+        final List<Integer> processed = new ArrayList<Integer>();
+
+        new SlicePipeline<Integer>(factory, executor, 1).run(new PageRequest(
+                0, 1), new NumberReader(5), new SliceCallback<Integer>() {
+
+            public void doWith(Slice<Integer> slice) {
+
+                processed.addAll(slice.asList());
+            }
+        });
+
+        assertThat(processed, is(Arrays.asList(0, 1, 2, 3, 4)));
+        assertThat(reads.get(), is(5));
+        assertBackgroundEntityManagerClosed();
+    }
+
+
+    @Test
+    public void rethrowsFailuresRaisedWhileReading() throws Exception {
+
+        final IllegalStateException failure = new IllegalStateException();
+        final List<Integer> processed = new ArrayList<Integer>();
+
+        try {
+            new SlicePipeline<Integer>(factory, executor, 1).run(
+                    new PageRequest(0, 1), new NumberReader(5) {
+
+                        @Override
+                        public Slice<Integer> readSlice(EntityManager em,
+                                Pageable pageable) {
+
+                            if (pageable.getPageNumber() == 2) {
+                                throw failure;
+                            }
+
+                            return super.readSlice(em, pageable);
+                        }
+                    }, new SliceCallback<Integer>() {
+
+                        public void doWith(Slice<Integer> slice) {
+
+                            processed.addAll(slice.asList());
+                        }
+                    });
+            fail("Expected failure to be rethrown!");
+        } catch (IllegalStateException e) {
+            assertThat(e, is(failure));
+        }
+
+        assertThat(processed, is(Arrays.asList(0, 1)));
+        assertBackgroundEntityManagerClosed();
+    }
+
+
+    @Test
+    public void stopsReadingIfCallbackFails() throws Exception {
+
+        try {
+            new SlicePipeline<Integer>(factory, executor, 1).run(
+                    new PageRequest(0, 1), new NumberReader(100),
+                    new SliceCallback<Integer>() {
+
+                        public void doWith(Slice<Integer> slice) {
+
+                            throw new UnsupportedOperationException();
+                        }
+                    });
+            fail("Expected callback failure to be rethrown!");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertBackgroundEntityManagerClosed();
+        assertThat(reads.get() <= 3, is(true));
+    }
+
+
+    private void assertBackgroundEntityManagerClosed()
+            throws InterruptedException {
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        verify(em).close();
+    }
+
+    /**
+     * Reads slices containing the page number as single element.
+     * 
+     * @author Oliver Gierke
+     */
+    private class NumberReader implements SliceReader<Integer> {
+
+        private final int total;
+
+
+        public NumberReader(int total) {
+
+            this.total = total;
+        }
+
+
+        public Slice<Integer> readSlice(EntityManager em, Pageable pageable) {
+
+            reads.incrementAndGet();
+            int number = pageable.getPageNumber();
+
+            return new SliceImpl<Integer>(Arrays.asList(number), pageable,
+                    number + 1 < total);
+        }
+    }
+}
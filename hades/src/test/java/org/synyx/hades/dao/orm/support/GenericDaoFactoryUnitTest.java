@@ -17,10 +17,12 @@
 package org.synyx.hades.dao.orm.support;
 
 import static junit.framework.Assert.*;
+import static org.mockito.Mockito.*;
 
 import java.io.IOException;
 
 import javax.persistence.EntityManager;
+import javax.persistence.QueryTimeoutException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +31,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.transaction.annotation.Transactional;
 import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.QueryTimeoutExceededException;
 import org.synyx.hades.dao.orm.GenericDaoFactory;
 import org.synyx.hades.daocustom.CustomGenericDaoFactory;
 import org.synyx.hades.daocustom.UserCustomExtendedDao;
@@ -129,6 +132,40 @@ public class GenericDaoFactoryUnitTest {
         dao.customMethod(1);
     }
 
+    @Test
+    public void countsQueryTimeoutsPerDao() throws Exception {
+
+        when(entityManager.find(User.class, 1)).thenThrow(
+                new QueryTimeoutException());
+
+        SimpleSampleDao dao = factory.getDao(SimpleSampleDao.class);
+        SimpleSampleDao otherDao = factory.getDao(SimpleSampleDao.class);
+
+        try {
+            dao.readByPrimaryKey(1);
+            fail("Expected QueryTimeoutExceededException!");
+        } catch (QueryTimeoutExceededException e) {
+            // expected
+        }
+
+        assertEquals(1, GenericDaoFactory.getQueryTimeouts(dao));
+        assertEquals(0, GenericDaoFactory.getQueryTimeouts(otherDao));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQueryTimeoutsOfDaoNotCreatedByFactory() {
+
+        GenericDaoFactory.getQueryTimeouts(mock(SimpleSampleDao.class));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSkippedCountQueriesOfDaoNotCreatedByFactory() {
+
+        GenericDaoFactory.getSkippedCountQueries(mock(SimpleSampleDao.class));
+    }
+
     private interface SimpleSampleDao extends GenericDao<User, Integer> {
 
         @Transactional
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.springframework.transaction.support.TransactionSynchronization.*;
+import static org.synyx.hades.dao.query.CountCache.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * Unit test for {@link CountCache}.
+ * 
+ * @author Oliver Gierke
+ */
+public class CountCacheUnitTest {
+
+    @After
+    public void tearDown() {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+
+    @Test
+    public void cachesCountsByKey() throws Exception {
+
+        CountCache cache = new CountCache(1, TimeUnit.MINUTES);
+        cache.put(createKey("query", Arrays.asList("foo")), 5L);
+
+        assertThat(cache.get(createKey("query", Arrays.asList("foo"))), is(5L));
+        assertThat(cache.get(createKey("query", Arrays.asList("bar"))),
+                is(nullValue()));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+
+    @Test
+    public void expiresCounts() throws Exception {
+
+        CountCache cache = new CountCache(1, TimeUnit.MILLISECONDS);
+        cache.put(createKey("query"), 5L);
+
+        Thread.sleep(10);
+
+        assertThat(cache.get(createKey("query")), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+
+    @Test
+    public void evictsLeastRecentlyUsedCounts() throws Exception {
+
+        CountCache cache = new CountCache(1, TimeUnit.MINUTES, 2);
+        cache.put(createKey("first"), 1L);
+        cache.put(createKey("second"), 2L);
+        cache.get(createKey("first"));
+        cache.put(createKey("third"), 3L);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(createKey("first")), is(1L));
+        assertThat(cache.get(createKey("second")), is(nullValue()));
+        assertThat(cache.get(createKey("third")), is(3L));
+    }
+
+
+    @Test
+    public void clearsAllCounts() throws Exception {
+
+        CountCache cache = new CountCache(1, TimeUnit.MINUTES);
+        cache.put(createKey("query"), 5L);
+        cache.clear();
+
+        assertThat(cache.get(createKey("query")), is(nullValue()));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTimeToLive() throws Exception {
+
+        new CountCache(0, TimeUnit.SECONDS);
+    }
+
+
+    @Test
+    public void bypassesCacheUntilWritingTransactionCompletes()
+            throws Exception {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        CountCache cache = new CountCache(1, TimeUnit.MINUTES);
+        cache.put(createKey("query"), 5L);
+        cache.evict();
+
+        assertThat(cache.size(), is(0));
+
+        cache.put(createKey("query"), 6L);
+
+        assertThat(cache.get(createKey("query")), is(nullValue()));
+        assertThat(cache.size(), is(0));
+
+        completeTransaction();
+
+        cache.put(createKey("query"), 6L);
+
+        assertThat(cache.get(createKey("query")), is(6L));
+    }
+
+
+    @Test
+    public void evictsCountsCachedConcurrentlyAfterTransactionCompletes()
+            throws Exception {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        final CountCache cache = new CountCache(1, TimeUnit.MINUTES);
+        cache.evict();
+
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+
+                cache.put(createKey("query"), 5L);
+            }
+        };
+
+        reader.start();
+        reader.join();
+
+        assertThat(cache.size(), is(1));
+
+        completeTransaction();
+
+        assertThat(cache.size(), is(0));
+    }
+
+
+    private static void completeTransaction() {
+
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(STATUS_COMMITTED);
+        }
+    }
+}
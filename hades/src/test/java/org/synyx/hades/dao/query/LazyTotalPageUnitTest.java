@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.synyx.hades.dao.query.PageableExecutionUtils.TotalSupplier;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.PageRequest;
+
+
+/**
+ * Unit test for {@link LazyTotalPage}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LazyTotalPageUnitTest {
+
+    @Mock
+    private TotalSupplier supplier;
+    @Mock
+    private EntityManager em;
+
+
+    @After
+    public void tearDown() {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+
+    @Test
+    public void defersCountUntilTotalIsRequested() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(20L);
+        when(em.isOpen()).thenReturn(true);
+
+        LazyTotalPage<String> page = createPage();
+
+        assertThat(page.getNumberOfElements(), is(2));
+        assertThat(page.asList(), is(Arrays.asList("Foo", "Bar")));
+        assertThat(page.isTotalComputed(), is(false));
+        verifyZeroInteractions(supplier);
+
+        assertThat(page.getTotalElements(), is(20L));
+        assertThat(page.getTotalPages(), is(10));
+        assertThat(page.hasNextPage(), is(true));
+        assertThat(page.isTotalComputed(), is(true));
+        verify(supplier, times(1)).getTotal();
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTotalAfterTransactionCompleted() throws Exception {
+
+        TransactionSynchronizationManager.initSynchronization();
+        when(em.isOpen()).thenReturn(true);
+
+        LazyTotalPage<String> page = createPage();
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+                .getSynchronizations()) {
+            synchronization
+                    .afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        page.getTotalElements();
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTotalAfterEntityManagerWasClosed() throws Exception {
+
+        when(em.isOpen()).thenReturn(false);
+        createPage().getTotalElements();
+    }
+
+
+    @Test
+    public void keepsTotalComputedBeforeInvalidation() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(20L);
+        when(em.isOpen()).thenReturn(true);
+
+        LazyTotalPage<String> page = createPage();
+        page.getTotalElements();
+        page.invalidate();
+
+        assertThat(page.getTotalElements(), is(20L));
+    }
+
+
+    @Test
+    public void returnsPlainPageIfContentProvesTotal() throws Exception {
+
+        Page<String> page =
+                PageableExecutionUtils.getLazyPage(Arrays.asList("Foo"),
+                        new PageRequest(0, 2), 0, supplier, em);
+
+        assertThat(page, is(instanceOf(PageImpl.class)));
+        assertThat(page.getTotalElements(), is(1L));
+        verifyZeroInteractions(supplier);
+    }
+
+
+    @Test
+    public void considersPagesWithSameContentEqual() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(20L);
+        when(em.isOpen()).thenReturn(true);
+
+        LazyTotalPage<String> first = createPage();
+        LazyTotalPage<String> second = createPage();
+
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+        verifyZeroInteractions(supplier);
+
+        first.getTotalElements();
+        second.getTotalElements();
+
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+
+        LazyTotalPage<String> other =
+                (LazyTotalPage<String>) PageableExecutionUtils.getLazyPage(
+                        Arrays.asList("Foo", "Baz"), new PageRequest(0, 2), 0,
+                        supplier, em);
+
+        assertThat(first, is(not(other)));
+    }
+
+
+    private LazyTotalPage<String> createPage() {
+
+        return (LazyTotalPage<String>) PageableExecutionUtils.getLazyPage(
+                Arrays.asList("Foo", "Bar"), new PageRequest(0, 2), 0,
+                supplier, em);
+    }
+}
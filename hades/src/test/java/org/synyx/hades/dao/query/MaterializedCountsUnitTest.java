@@ -0,0 +1,237 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.synyx.hades.domain.Specification;
+import org.synyx.hades.domain.User;
+import org.synyx.hades.domain.UserSpecifications;
+import org.synyx.hades.domain.UserSpecifications.UserIsOliver;
+
+
+/**
+ * Unit test for {@link MaterializedCounts}.
+ * 
+ * @author Oliver Gierke
+ */
+public class MaterializedCountsUnitTest {
+
+    private static final UserIsOliver OLIVERS = new UserIsOliver();
+
+    private MaterializedCounts<User> counts;
+
+    private User oliver = new User("Oliver", "Gierke", "gierke@synyx.de");
+    private User dave = new User("Dave", "Matthews", "dave@matthews.com");
+
+
+    @Before
+    public void setUp() {
+
+        counts = new MaterializedCounts<User>(60000, Arrays.asList(OLIVERS));
+    }
+
+
+    @After
+    public void tearDown() {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(counts);
+    }
+
+
+    @Test
+    public void materializesTotalAndPredicatesOnly() throws Exception {
+
+        assertThat(counts.isMaterialized(null), is(true));
+        assertThat(counts.isMaterialized(new UserIsOliver()), is(true));
+        assertThat(counts.isMaterialized(UserSpecifications
+                .userHasFirstname("Oliver")), is(false));
+    }
+
+
+    @Test
+    public void requiresReconciliationBeforeServingCounts() throws Exception {
+
+        assertThat(counts.getCount(null), is(nullValue()));
+
+        counts.persisted(oliver);
+        assertThat(counts.getCount(null), is(nullValue()));
+
+        reconcile(null, 5);
+        assertThat(counts.getCount(null), is(5L));
+        assertThat(counts.getCount(OLIVERS), is(nullValue()));
+    }
+
+
+    @Test
+    public void updatesCountersIncrementally() throws Exception {
+
+        reconcile(null, 5);
+        reconcile(OLIVERS, 1);
+
+        counts.persisted(oliver);
+        counts.persisted(dave);
+        counts.removed(oliver);
+
+        assertThat(counts.getCount(null), is(6L));
+        assertThat(counts.getCount(OLIVERS), is(1L));
+    }
+
+
+    @Test
+    public void requiresReconciliationOfPredicatesAfterMergeAndBulkDelete()
+            throws Exception {
+
+        reconcile(null, 5);
+        reconcile(OLIVERS, 1);
+
+        counts.merged(oliver);
+        assertThat(counts.getCount(null), is(5L));
+        assertThat(counts.getCount(OLIVERS), is(nullValue()));
+
+        reconcile(OLIVERS, 1);
+        counts.removed(2);
+        assertThat(counts.getCount(null), is(3L));
+        assertThat(counts.getCount(OLIVERS), is(nullValue()));
+
+        counts.invalidate();
+        assertThat(counts.getCount(null), is(nullValue()));
+    }
+
+
+    @Test
+    public void requiresReconciliationAfterInterval() throws Exception {
+
+        counts = new MaterializedCounts<User>(1);
+        reconcile(null, 5);
+
+        Thread.sleep(10);
+
+        assertThat(counts.getCount(null), is(nullValue()));
+    }
+
+
+    @Test
+    public void appliesChangesOnCommitOnly() throws Exception {
+
+        reconcile(null, 5);
+
+        TransactionSynchronizationManager.initSynchronization();
+        counts.persisted(dave);
+
+        // Transaction has pending changes
+        assertThat(counts.getCount(null), is(nullValue()));
+        reconcile(null, 6);
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(counts.getCount(null), is(6L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        counts.persisted(dave);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(counts.getCount(null), is(6L));
+    }
+
+
+    @Test
+    public void ignoresCountsReadBeforeCounterChanged() throws Exception {
+
+        reconcile(null, 5);
+
+        long version = counts.getVersion(null);
+        counts.persisted(dave);
+        counts.reconcile(null, 5, version);
+
+        assertThat(counts.getCount(null), is(6L));
+    }
+
+
+    @Test
+    public void ignoresCountsReadWhileChangesAreCommitted() throws Exception {
+
+        reconcile(null, 5);
+
+        TransactionSynchronizationManager.initSynchronization();
+        counts.persisted(dave);
+
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.beforeCommit(false);
+        }
+
+        // Concurrent transaction sees the committed entity already
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+
+                reconcile(null, 6);
+            }
+        };
+
+        reader.start();
+        reader.join();
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(
+                    TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(counts.getCount(null), is(6L));
+    }
+
+
+    private void reconcile(Specification<User> spec, long count) {
+
+        counts.reconcile(spec, count, counts.getVersion(spec));
+    }
+
+
+    private void completeTransaction(int status) {
+
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.beforeCommit(false);
+            }
+
+            synchronization.afterCompletion(status);
+        }
+
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
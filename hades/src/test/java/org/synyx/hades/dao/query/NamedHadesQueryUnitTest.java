@@ -0,0 +1,103 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Method;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.UserDao;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.User;
+
+
+/**
+ * Unit test for {@link NamedHadesQuery}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NamedHadesQueryUnitTest {
+
+    private static final String QUERY = "select u from User u";
+
+    private QueryMethod method;
+
+    @Mock
+    private EntityManager em;
+    @Mock
+    private QueryExtractor extractor;
+    @Mock
+    private Query query;
+    @Mock
+    private Query countQuery;
+
+
+    @Before
+    public void setUp() throws SecurityException, NoSuchMethodException {
+
+        when(extractor.canExtractQuery()).thenReturn(true);
+        when(extractor.extractQueryString(query)).thenReturn(QUERY);
+        when(em.createNamedQuery("User.findByLastname")).thenReturn(query);
+
+        Method paged =
+                UserDao.class.getMethod("findByLastname", String.class,
+                        Pageable.class);
+        method = new QueryMethod(paged, User.class, extractor);
+    }
+
+
+    @Test
+    public void derivesCountQueryOnlyOnce() throws Exception {
+
+        when(em.createNamedQuery("User.findByLastname.count")).thenThrow(
+                new IllegalArgumentException());
+        when(em.createQuery("select count(u) from User u")).thenReturn(
+                countQuery);
+
+        AbstractHadesQuery hadesQuery =
+                (AbstractHadesQuery) NamedHadesQuery.lookupFrom(method, em);
+
+        assertThat(hadesQuery.createCountQuery(), is(countQuery));
+        assertThat(hadesQuery.createCountQuery(), is(countQuery));
+        verify(extractor, times(1)).extractQueryString(query);
+    }
+
+
+    @Test
+    public void prefersNamedCountQuery() throws Exception {
+
+        when(em.createNamedQuery("User.findByLastname.count")).thenReturn(
+                countQuery);
+
+        AbstractHadesQuery hadesQuery =
+                (AbstractHadesQuery) NamedHadesQuery.lookupFrom(method, em);
+
+        assertThat(hadesQuery.createCountQuery(), is(countQuery));
+        verify(extractor, never()).extractQueryString(query);
+        verify(em, never()).createQuery(anyString());
+    }
+}
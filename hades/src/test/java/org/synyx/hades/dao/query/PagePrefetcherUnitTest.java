@@ -0,0 +1,316 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.springframework.transaction.support.TransactionSynchronization.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.synyx.hades.dao.query.PagePrefetcher.ContentReader;
+import org.synyx.hades.domain.CappedPageRequest;
+import org.synyx.hades.domain.KeysetPageRequest;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
+import org.synyx.hades.domain.Sort;
+
+
+/**
+ * Unit test for {@link PagePrefetcher}.
+ * 
+ * @author Oliver Gierke
+ */
+public class PagePrefetcherUnitTest {
+
+    private static final ContentReader READER = new ContentReader() {
+
+        public List<?> readContent(Pageable pageable) {
+
+            return Arrays.asList("Page " + pageable.getPageNumber());
+        }
+    };
+
+    private ExecutorService executor;
+    private PagePrefetcher prefetcher;
+
+
+    @Before
+    public void setUp() {
+
+        executor = Executors.newSingleThreadExecutor();
+        prefetcher = new PagePrefetcher(executor, 1, TimeUnit.MINUTES);
+    }
+
+
+    @After
+    public void tearDown() {
+
+        executor.shutdownNow();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+
+    @Test
+    public void derivesNextPageableForPageRequests() throws Exception {
+
+        PageRequest pageable = new PageRequest(0, 1);
+        Page<String> page = createPage(pageable, 3);
+
+        assertThat(PagePrefetcher.getNextPageable(page, pageable),
+                is((Pageable) new PageRequest(1, 1)));
+
+        CappedPageRequest capped = new CappedPageRequest(0, 1, 10);
+        assertThat(PagePrefetcher.getNextPageable(createPage(capped, 3),
+                capped), is((Pageable) new CappedPageRequest(1, 1, 10)));
+    }
+
+
+    @Test
+    public void doesNotDeriveNextPageableForLastPagesOrKeysetRequests()
+            throws Exception {
+
+        PageRequest pageable = new PageRequest(0, 1);
+        assertThat(PagePrefetcher.getNextPageable(createPage(pageable, 1),
+                pageable), is(nullValue()));
+
+        KeysetPageRequest keyset = new KeysetPageRequest(1, new Sort("id"), "id");
+        assertThat(PagePrefetcher.getNextPageable(createPage(keyset, 3),
+                keyset), is(nullValue()));
+    }
+
+
+    @Test
+    public void servesPrefetchedPage() throws Exception {
+
+        Page<String> current = createPage(new PageRequest(0, 1), 3);
+        PageRequest next = new PageRequest(1, 1);
+
+        prefetcher.prefetch(PagePrefetcher.createKey("query", next), next,
+                current, READER);
+        awaitPrefetches();
+
+        Page<Object> page =
+                prefetcher.getPage(PagePrefetcher.createKey("query", next));
+
+        assertThat(page.asList(), is(Arrays.<Object> asList("Page 1")));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.getNumber(), is(1));
+        assertThat(prefetcher.getHits(), is(1L));
+    }
+
+
+    @Test
+    public void discardsPagesOnClear() throws Exception {
+
+        PageRequest next = new PageRequest(1, 1);
+        prefetcher.prefetch("key", next, createPage(new PageRequest(0, 1), 3),
+                READER);
+        prefetcher.clear();
+
+        assertThat(prefetcher.getPage("key"), is(nullValue()));
+        assertThat(prefetcher.size(), is(0));
+        assertThat(prefetcher.getMisses(), is(1L));
+    }
+
+
+    @Test
+    public void doesNotWaitForPagesNotBeingReadYet() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean read = new AtomicBoolean();
+
+        executor.submit(new Callable<Void>() {
+
+            public Void call() throws Exception {
+
+                latch.await();
+                return null;
+            }
+        });
+
+        prefetcher.prefetch("key", new PageRequest(1, 1), createPage(
+                new PageRequest(0, 1), 3), new ContentReader() {
+
+            public List<?> readContent(Pageable pageable) {
+
+                read.set(true);
+                return READER.readContent(pageable);
+            }
+        });
+
+        assertThat(prefetcher.getPage("key"), is(nullValue()));
+        assertThat(prefetcher.size(), is(0));
+
+        latch.countDown();
+        awaitPrefetches();
+
+        assertThat(read.get(), is(false));
+    }
+
+
+    @Test
+    public void doesNotInterruptPagesBeingReadOnClear() throws Exception {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+
+        prefetcher.prefetch("key", new PageRequest(1, 1), createPage(
+                new PageRequest(0, 1), 3), new ContentReader() {
+
+            public List<?> readContent(Pageable pageable) {
+
+                started.countDown();
+
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+
+                return READER.readContent(pageable);
+            }
+        });
+
+        started.await();
+        prefetcher.clear();
+        latch.countDown();
+        awaitPrefetches();
+
+        assertThat(interrupted.get(), is(false));
+        assertThat(prefetcher.getPage("key"), is(nullValue()));
+    }
+
+
+    @Test
+    public void expiresPages() throws Exception {
+
+        prefetcher = new PagePrefetcher(executor, 1, TimeUnit.MILLISECONDS);
+        prefetcher.prefetch("key", new PageRequest(1, 1), createPage(
+                new PageRequest(0, 1), 3), READER);
+
+        Thread.sleep(10);
+
+        assertThat(prefetcher.getPage("key"), is(nullValue()));
+    }
+
+
+    @Test
+    public void doesNotPrefetchInsideReadWriteTransactions() throws Exception {
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        prefetcher.prefetch("key", new PageRequest(1, 1), createPage(
+                new PageRequest(0, 1), 3), READER);
+
+        assertThat(prefetcher.size(), is(0));
+    }
+
+
+    @Test
+    public void doesNotPrefetchUntilWritingTransactionCompletes()
+            throws Exception {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        prefetcher.prefetch("key", new PageRequest(1, 1), createPage(
+                new PageRequest(0, 1), 3), READER);
+        prefetcher.evict();
+
+        assertThat(prefetcher.size(), is(0));
+
+        prefetchConcurrently("key");
+        assertThat(prefetcher.size(), is(0));
+
+        completeTransaction();
+        prefetchConcurrently("key");
+        awaitPrefetches();
+
+        assertThat(prefetcher.getPage("key"), is(notNullValue()));
+    }
+
+
+    /**
+     * Prefetches a page under the given key from a thread not taking part in
+     * the current transaction.
+     * 
+     * @param key
+     * @throws Exception
+     */
+    private void prefetchConcurrently(final Object key) throws Exception {
+
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+
+                prefetcher.prefetch(key, new PageRequest(1, 1), createPage(
+                        new PageRequest(0, 1), 3), READER);
+            }
+        };
+
+        thread.start();
+        thread.join();
+    }
+
+
+    private static void completeTransaction() {
+
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(STATUS_COMMITTED);
+        }
+    }
+
+
+    private void awaitPrefetches() throws Exception {
+
+        executor.submit(new Runnable() {
+
+            public void run() {
+
+            }
+        }).get();
+    }
+
+
+    private Page<String> createPage(Pageable pageable, long total) {
+
+        return new PageImpl<String>(Arrays.asList("Page"), pageable, total);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.synyx.hades.dao.query.PageableExecutionUtils.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.query.PageableExecutionUtils.TotalSupplier;
+import org.synyx.hades.domain.CappedPageRequest;
+import org.synyx.hades.domain.KeysetPageRequest;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageRequest;
+
+
+/**
+ * Unit test for {@link PageableExecutionUtils}.
+ * 
+ * @author Oliver Gierke
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PageableExecutionUtilsUnitTest {
+
+    @Mock
+    private TotalSupplier supplier;
+
+
+    @Test
+    public void derivesTotalFromPartiallyFilledFirstPage() throws Exception {
+
+        AtomicLong skippedCountQueries = new AtomicLong();
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo", "Bar"), new PageRequest(0, 10), 0,
+                        supplier, skippedCountQueries);
+
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(skippedCountQueries.get(), is(1L));
+        verifyZeroInteractions(supplier);
+    }
+
+
+    @Test
+    public void derivesTotalFromPartiallyFilledLaterPage() throws Exception {
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo"), new PageRequest(2, 10), supplier);
+
+        assertThat(page.getTotalElements(), is(21L));
+        assertThat(page.hasNextPage(), is(false));
+        verifyZeroInteractions(supplier);
+    }
+
+
+    @Test
+    public void derivesTotalFromEmptyFirstPage() throws Exception {
+
+        Page<String> page =
+                getPage(Collections.<String> emptyList(),
+                        new PageRequest(0, 10), supplier);
+
+        assertThat(page.getTotalElements(), is(0L));
+        verifyZeroInteractions(supplier);
+    }
+
+
+    @Test
+    public void countsForCompletelyFilledPage() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(20L);
+
+        AtomicLong skippedCountQueries = new AtomicLong();
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo", "Bar"), new PageRequest(0, 2), 0,
+                        supplier, skippedCountQueries);
+
+        assertThat(page.getTotalElements(), is(20L));
+        assertThat(skippedCountQueries.get(), is(0L));
+        verify(supplier).getTotal();
+    }
+
+
+    @Test
+    public void countsForEmptyLaterPage() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(5L);
+
+        Page<String> page =
+                getPage(Collections.<String> emptyList(),
+                        new PageRequest(2, 10), supplier);
+
+        assertThat(page.getTotalElements(), is(5L));
+        verify(supplier).getTotal();
+    }
+
+
+    @Test
+    public void countsForPartiallyFilledKeysetPageFollowingFirstOne()
+            throws Exception {
+
+        when(supplier.getTotal()).thenReturn(15L);
+
+        KeysetPageRequest pageable =
+                new KeysetPageRequest(10, null, "id").next(4711L);
+        Page<String> page = getPage(Arrays.asList("Foo"), pageable, supplier);
+
+        assertThat(page.getTotalElements(), is(15L));
+        verify(supplier).getTotal();
+    }
+
+
+    @Test
+    public void reportsCappedTotalIfCapIsExceeded() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(11L);
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo", "Bar"), new PageRequest(0, 2), 10,
+                        supplier);
+
+        assertThat(page.getTotalElements(), is(11L));
+        assertThat(page.isTotalCapped(), is(true));
+        assertThat(page.hasNextPage(), is(true));
+    }
+
+
+    @Test
+    public void reportsExactTotalIfCapIsNotExceeded() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(10L);
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo", "Bar"), new PageRequest(0, 2), 10,
+                        supplier);
+
+        assertThat(page.getTotalElements(), is(10L));
+        assertThat(page.isTotalCapped(), is(false));
+    }
+
+
+    @Test
+    public void cappedTotalCoversPagesBeyondTheCap() throws Exception {
+
+        when(supplier.getTotal()).thenReturn(11L);
+
+        Page<String> page =
+                getPage(Arrays.asList("Foo", "Bar"), new PageRequest(10, 2),
+                        10, supplier);
+
+        assertThat(page.getTotalElements(), is(22L));
+        assertThat(page.isTotalCapped(), is(true));
+        assertThat(page.hasNextPage(), is(true));
+    }
+
+
+    @Test
+    public void prefersCapOfCappedPageRequest() throws Exception {
+
+        assertThat(getCountCap(new CappedPageRequest(0, 10, 100), 50), is(100));
+        assertThat(getCountCap(new PageRequest(0, 10), 50), is(50));
+        assertThat(getCountCap(null, 0), is(0));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.dao.query;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.synyx.hades.dao.ProjectedProperty;
+import org.synyx.hades.domain.AnnotatedUserDto;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageImpl;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Role;
+import org.synyx.hades.domain.User;
+import org.synyx.hades.domain.UserDto;
+import org.synyx.hades.domain.UserNames;
+
+
+/**
+ * Unit test for {@link Projection}.
+ * 
+ * @author Oliver Gierke
+ */
+public class ProjectionUnitTest {
+
+    @Test
+    public void detectsProjections() throws Exception {
+
+        assertThat(Projection.isProjection(String.class, User.class), is(true));
+        assertThat(Projection.isProjection(UserDto.class, User.class),
+                is(true));
+        assertThat(Projection.isProjection(UserNames.class, User.class),
+                is(true));
+
+        assertThat(Projection.isProjection(User.class, User.class), is(false));
+        assertThat(Projection.isProjection(Object.class, User.class),
+                is(false));
+        assertThat(Projection.isProjection(Role.class, User.class), is(false));
+        assertThat(Projection.isProjection(List.class, User.class), is(false));
+        assertThat(Projection.isProjection(void.class, User.class), is(false));
+        assertThat(Projection.of(User.class, User.class), is(nullValue()));
+    }
+
+
+    @Test
+    public void createsSelectionForSimpleValueType() throws Exception {
+
+        Projection projection =
+                Projection.of(String.class, User.class, Arrays
+                        .asList("lastname"));
+
+        assertThat(projection.getSelection("x"), is("x.lastname"));
+        assertThat(projection.requiresConversion(), is(false));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMultiplePropertiesForSimpleValueType() throws Exception {
+
+        Projection.of(String.class, User.class, Arrays.asList("firstname",
+                "lastname"));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSelectionForSimpleValueTypeWithoutProperty()
+            throws Exception {
+
+        Projection.of(String.class, User.class).getSelection("x");
+    }
+
+
+    @Test
+    public void createsConstructorExpressionForClass() throws Exception {
+
+        Projection projection = Projection.of(UserDto.class, User.class);
+
+        assertThat(projection.getProperties(), is(Arrays.asList("firstname",
+                "lastname")));
+        assertThat(projection.getSelection("u"), is("new "
+                + UserDto.class.getName() + "(u.firstname, u.lastname)"));
+    }
+
+
+    @Test
+    public void takesConstructorPropertiesFromAnnotations() throws Exception {
+
+        Projection projection =
+                Projection.of(AnnotatedUserDto.class, User.class);
+
+        assertThat(projection.getProperties(), is(Arrays.asList("lastname",
+                "emailAddress")));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPartiallyAnnotatedConstructors() throws Exception {
+
+        Projection.of(PartiallyAnnotatedDto.class, User.class);
+    }
+
+
+    @Test
+    public void derivesPropertiesFromInterfaceGetters() throws Exception {
+
+        Projection projection = Projection.of(UserNames.class, User.class);
+
+        assertThat(projection.getProperties(), is(Arrays.asList("firstname",
+                "lastname")));
+        assertThat(projection.getSelection("x"), is("x.firstname, x.lastname"));
+        assertThat(projection.requiresConversion(), is(true));
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void convertsRowsIntoInterfaceProxies() throws Exception {
+
+        Projection projection = Projection.of(UserNames.class, User.class);
+
+        List<UserNames> result =
+                (List<UserNames>) projection.convert(Collections
+                        .singletonList(new Object[] { "Dave", "Matthews" }),
+                        null);
+
+        UserNames names = result.get(0);
+        assertThat(names.getFirstname(), is("Dave"));
+        assertThat(names.getLastname(), is("Matthews"));
+        assertThat(names, is(projection.convert(new Object[] { "Dave",
+                "Matthews" }, null)));
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void convertsPageKeepingTotal() throws Exception {
+
+        Projection projection =
+                Projection.of(UserNames.class, User.class, Arrays
+                        .asList("lastname"));
+        PageRequest pageable = new PageRequest(1, 1);
+
+        Page<UserNames> page =
+                (Page<UserNames>) projection.convert(new PageImpl<Object>(
+                        Arrays.<Object> asList("Matthews"), pageable, 3),
+                        pageable);
+
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.getNumber(), is(1));
+        assertThat(page.asList().get(0).getLastname(), is("Matthews"));
+    }
+
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void rejectsAccessToPropertiesNotSelected() throws Exception {
+
+        Projection projection =
+                Projection.of(UserNames.class, User.class, Arrays
+                        .asList("lastname"));
+
+        ((UserNames) projection.convert("Matthews", null)).getFirstname();
+    }
+
+    static class PartiallyAnnotatedDto {
+
+        public PartiallyAnnotatedDto(
+                @ProjectedProperty("firstname") String firstname,
+                String lastname) {
+
+        }
+    }
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 
 import java.lang.reflect.Method;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Embeddable;
 import javax.persistence.Entity;
@@ -208,6 +209,31 @@ public class QueryCreatorUnitTest {
     }
 
 
+    @Test
+    public void selectsPropertiesDeclaredBeforeByKeyword() throws Exception {
+
+        method = getClass().getMethod("findNameAndAgeByOrganization",
+                String.class);
+        QueryMethod queryMethod =
+                new QueryMethod(method, SampleEntity.class, extractor);
+
+        assertThat(new QueryCreator(queryMethod).constructQuery(),
+                is("select x.name, x.age from FooEntity x "
+                        + "where x.organization = ?1"));
+    }
+
+
+    @Test(expected = QueryCreationException.class)
+    public void rejectsInvalidProjectedProperty() throws Exception {
+
+        method = getClass().getMethod("findFooByName", String.class);
+        QueryMethod queryMethod =
+                new QueryMethod(method, SampleEntity.class, extractor);
+
+        new QueryCreator(queryMethod).constructQuery();
+    }
+
+
     /**
      * Asserts that the query created for the given {@link Method} results in a
      * query ending with the given {@link String}.
@@ -315,6 +341,31 @@ public class QueryCreatorUnitTest {
         return null;
     }
 
+
+    public List<SampleNames> findNameAndAgeByOrganization(String organization) {
+
+        return null;
+    }
+
+
+    public List<String> findFooByName(String name) {
+
+        return null;
+    }
+
+    /**
+     * Sample interface projection.
+     * 
+     * @author Oliver Gierke
+     */
+    interface SampleNames {
+
+        String getName();
+
+
+        int getAge();
+    }
+
     /**
      * Sample class for keyword split check.
      * 
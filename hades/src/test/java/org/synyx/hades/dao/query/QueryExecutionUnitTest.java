@@ -15,20 +15,35 @@
  */
 package org.synyx.hades.dao.query;
 
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.synyx.hades.dao.query.QueryExecution.DeferredJoinPagedExecution;
 import org.synyx.hades.dao.query.QueryExecution.ModifyingExecution;
+import org.synyx.hades.dao.query.QueryExecution.PagedExecution;
+import org.synyx.hades.domain.Page;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
 
 
 /**
@@ -46,15 +61,31 @@ public class QueryExecutionUnitTest {
     @Mock
     ParameterBinder binder;
     @Mock
+    ParameterBinder nextBinder;
+    @Mock
     Query query;
 
+    @Mock
+    Query countQuery;
+
     Method method;
+    ExecutorService executor;
 
 
     @Before
     public void setUp() throws Exception {
 
         method = Dummy.class.getMethod("voidMethod");
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+
+    @After
+    public void tearDown() {
+
+        executor.shutdownNow();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
     }
 
 
@@ -86,6 +117,25 @@ public class QueryExecutionUnitTest {
     }
 
 
+    @Test
+    public void modifyingExecutionClearsCountCacheIfSet() throws Exception {
+
+        Query param = any();
+        when(binder.bind(param)).thenReturn(query);
+
+        CountCache cache = new CountCache(1, TimeUnit.MINUTES);
+        cache.put(CountCache.createKey("query"), 5L);
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setCountCache(cache);
+
+        new ModifyingExecution(method, null, settings).execute(hadesQuery,
+                binder);
+
+        assertThat(cache.size(), is(0));
+    }
+
+
     @Test
     public void allowsMethodReturnTypesForModifyingQuery() throws Exception {
 
@@ -102,6 +152,224 @@ public class QueryExecutionUnitTest {
         new ModifyingExecution(Dummy.class.getMethod("longMethod"), em);
     }
 
+    @Test
+    public void pagedExecutionCountsInParallelOutsideOfTransaction()
+            throws Exception {
+
+        prepareFullPage();
+        when(hadesQuery.executeCountQueryInSeparateEntityManager(binder))
+                .thenReturn(42L);
+
+        Page<?> page =
+                (Page<?>) new PagedExecution(executor).execute(hadesQuery,
+                        binder);
+
+        assertThat(page.getTotalElements(), is(42L));
+        verify(hadesQuery, never()).createCountQuery();
+    }
+
+
+    @Test
+    public void pagedExecutionCountsInParallelInReadOnlyTransaction()
+            throws Exception {
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        prepareFullPage();
+        when(hadesQuery.executeCountQueryInSeparateEntityManager(binder))
+                .thenReturn(42L);
+
+        Page<?> page =
+                (Page<?>) new PagedExecution(executor).execute(hadesQuery,
+                        binder);
+
+        assertThat(page.getTotalElements(), is(42L));
+        verify(hadesQuery, never()).createCountQuery();
+    }
+
+
+    @Test
+    public void pagedExecutionCountsSequentiallyInReadWriteTransaction()
+            throws Exception {
+
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        prepareFullPage();
+        when(hadesQuery.createCountQuery()).thenReturn(countQuery);
+        when(binder.bind(countQuery)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(21L);
+
+        Page<?> page =
+                (Page<?>) new PagedExecution(executor).execute(hadesQuery,
+                        binder);
+
+        assertThat(page.getTotalElements(), is(21L));
+        verify(hadesQuery, never()).executeCountQueryInSeparateEntityManager(
+                binder);
+    }
+
+
+    @Test
+    public void pagedExecutionReadsTotalFromInlineCountQuery()
+            throws Exception {
+
+        when(hadesQuery.createJpaQueryWithInlineCount(binder))
+                .thenReturn(query);
+        when(binder.bindAndPrepare(query)).thenReturn(query);
+        when(binder.getPageable()).thenReturn(new PageRequest(0, 2));
+        when(query.getResultList()).thenReturn(
+                Arrays.asList(new Object[] { "Foo", 42L }, new Object[] {
+                        "Bar", 42L }));
+
+        Page<?> page =
+                (Page<?>) new PagedExecution(null, true).execute(hadesQuery,
+                        binder);
+
+        assertThat(page.getTotalElements(), is(42L));
+        assertThat(page.getNumberOfElements(), is(2));
+        assertThat(page.asList().get(0), is((Object) "Foo"));
+        verify(hadesQuery, never()).createCountQuery();
+        verify(hadesQuery, never()).createJpaQuery(binder);
+    }
+
+
+    @Test
+    public void pagedExecutionReadsTotalFromCountCache() throws Exception {
+
+        prepareFullPage();
+        when(hadesQuery.createCountQuery()).thenReturn(countQuery);
+        when(binder.bind(countQuery)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(42L);
+        when(binder.getBindableValues()).thenReturn(
+                Arrays.<Object> asList("Foo"));
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setCountCache(new CountCache(1, TimeUnit.MINUTES));
+        PagedExecution execution = new PagedExecution(settings, 0);
+
+        assertThat(((Page<?>) execution.execute(hadesQuery, binder))
+                .getTotalElements(), is(42L));
+        assertThat(((Page<?>) execution.execute(hadesQuery, binder))
+                .getTotalElements(), is(42L));
+        verify(countQuery, times(1)).getSingleResult();
+    }
+
+
+    @Test
+    public void pagedExecutionServesPrefetchedNextPage() throws Exception {
+
+        prepareFullPage();
+        when(hadesQuery.createCountQuery()).thenReturn(countQuery);
+        when(binder.bind(countQuery)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(42L);
+
+        PageRequest next = new PageRequest(1, 2);
+        when(binder.withPageable(next)).thenReturn(nextBinder);
+        when(nextBinder.getPageable()).thenReturn(next);
+        ParameterBinder thirdBinder = mock(ParameterBinder.class);
+        when(nextBinder.withPageable((Pageable) anyObject())).thenReturn(
+                thirdBinder);
+        AbstractHadesQuery separate = prepareSeparateQuery();
+        Query nextQuery = mock(Query.class);
+        when(separate.createJpaQuery(nextBinder)).thenReturn(nextQuery);
+        when(nextBinder.bindAndPrepare(nextQuery)).thenReturn(nextQuery);
+        when(nextQuery.getResultList()).thenReturn(Arrays.asList("Baz", "Qux"));
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setPagePrefetcher(new PagePrefetcher(executor, 1,
+                TimeUnit.MINUTES));
+        PagedExecution execution = new PagedExecution(settings, 0);
+
+        execution.execute(hadesQuery, binder);
+        awaitPrefetches();
+        Page<?> page = (Page<?>) execution.execute(hadesQuery, nextBinder);
+
+        assertThat(page.asList(), is((List) Arrays.asList("Baz", "Qux")));
+        assertThat(page.getTotalElements(), is(42L));
+        verify(hadesQuery, never()).createJpaQuery(nextBinder);
+        verify(separate).fetchAssociations(page.asList(), nextBinder);
+    }
+
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void deferredJoinPagedExecutionPrefetchesWithDeferredJoin()
+            throws Exception {
+
+        prepareFullPage();
+        when(hadesQuery.createCountQuery()).thenReturn(countQuery);
+        when(binder.bind(countQuery)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(42L);
+
+        PageRequest next = new PageRequest(1, 2);
+        when(binder.withPageable(next)).thenReturn(nextBinder);
+        when(nextBinder.getPageable()).thenReturn(next);
+        ParameterBinder thirdBinder = mock(ParameterBinder.class);
+        when(nextBinder.withPageable((Pageable) anyObject())).thenReturn(
+                thirdBinder);
+
+        AbstractHadesQuery separate = prepareSeparateQuery();
+        Query idQuery = mock(Query.class);
+        Query entityQuery = mock(Query.class);
+        when(separate.createIdQuery(nextBinder)).thenReturn(idQuery);
+        when(nextBinder.bindAndPrepare(idQuery)).thenReturn(idQuery);
+        when(idQuery.getResultList()).thenReturn(Arrays.asList(3, 4));
+        when(separate.createJpaQueryForIds((List) Arrays.asList(3, 4)))
+                .thenReturn(entityQuery);
+        when(entityQuery.getResultList()).thenReturn(
+                Arrays.asList(new Object[] { 4, "Qux" }, new Object[] { 3,
+                        "Baz" }));
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setPagePrefetcher(new PagePrefetcher(executor, 1,
+                TimeUnit.MINUTES));
+        PagedExecution execution =
+                new DeferredJoinPagedExecution(settings, 0);
+
+        execution.execute(hadesQuery, binder);
+        awaitPrefetches();
+        Page<?> page = (Page<?>) execution.execute(hadesQuery, nextBinder);
+
+        assertThat(page.asList(), is((List) Arrays.asList("Baz", "Qux")));
+        verify(separate, never()).createJpaQuery(nextBinder);
+    }
+
+
+    private AbstractHadesQuery prepareSeparateQuery() {
+
+        EntityManagerFactory factory = mock(EntityManagerFactory.class);
+        EntityManager separateEm = mock(EntityManager.class);
+        AbstractHadesQuery separate = mock(AbstractHadesQuery.class);
+
+        when(hadesQuery.getEntityManager()).thenReturn(em);
+        when(em.getEntityManagerFactory()).thenReturn(factory);
+        when(factory.createEntityManager()).thenReturn(separateEm);
+        when(hadesQuery.withEntityManager(separateEm)).thenReturn(separate);
+
+        return separate;
+    }
+
+
+    private void awaitPrefetches() throws Exception {
+
+        executor.submit(new Runnable() {
+
+            public void run() {
+
+            }
+        }).get();
+    }
+
+
+    private void prepareFullPage() {
+
+        when(hadesQuery.createJpaQuery(binder)).thenReturn(query);
+        when(binder.bindAndPrepare(query)).thenReturn(query);
+        when(binder.getPageable()).thenReturn(new PageRequest(0, 2));
+        when(query.getResultList()).thenReturn(Arrays.asList("Foo", "Bar"));
+    }
+
     static class StubQueryExecution extends QueryExecution {
 
         @Override
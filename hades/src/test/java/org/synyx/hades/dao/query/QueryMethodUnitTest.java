@@ -20,8 +20,12 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.persistence.FlushModeType;
 import javax.persistence.QueryHint;
 
 import org.junit.Before;
@@ -29,10 +33,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.synyx.hades.dao.FetchJoin;
+import org.synyx.hades.dao.FetchSize;
 import org.synyx.hades.dao.GenericDao;
 import org.synyx.hades.dao.Modifying;
+import org.synyx.hades.dao.QueryTimeout;
+import org.synyx.hades.dao.ReadOnly;
 import org.synyx.hades.dao.UserDao;
 import org.synyx.hades.dao.query.QueryExecution.CollectionExecution;
+import org.synyx.hades.dao.query.QueryExecution.PagedExecution;
+import org.synyx.hades.dao.query.QueryExecution.SlicedExecution;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.Pageable;
 import org.synyx.hades.domain.Sort;
@@ -278,6 +288,260 @@ public class QueryMethodUnitTest {
         assertThat(hints.get(0).value(), is("bar"));
     }
 
+
+
+    @Test
+    public void usesSlicedExecutionForSliceReturnType() throws Exception {
+
+        when(extractor.canExtractQuery()).thenReturn(true);
+
+        QueryMethod method =
+                new QueryMethod(UserDao.class.getMethod("findAllSliced",
+                        Pageable.class), DOMAIN_CLASS, extractor);
+        assertThat(method.getExecution(null), is(SlicedExecution.class));
+
+        method =
+                new QueryMethod(UserDao.class.getMethod("findAllPaged",
+                        Pageable.class), DOMAIN_CLASS, extractor);
+        assertThat(method.getExecution(null), is(PagedExecution.class));
+    }
+
+
+    @Test
+    public void appliesReadOnlyHintsAsDeclared() throws Exception {
+
+        Map<String, Object> hints = Collections.<String, Object> singletonMap(
+                "readOnly", true);
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setReadOnlyHints(hints);
+
+        assertThat(getReadOnlyHints("findByFirstname", settings), is(hints));
+        assertThat(getReadOnlyHints("findByLastname", settings).isEmpty(),
+                is(true));
+        assertThat(getReadOnlyHints("findByEmailAddress", settings).isEmpty(),
+                is(true));
+
+        settings.setReadOnlyQueries(true);
+
+        assertThat(getReadOnlyHints("findByEmailAddress", settings), is(hints));
+        assertThat(getReadOnlyHints("findByLastname", settings).isEmpty(),
+                is(true));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReadOnlyModifyingMethod() throws Exception {
+
+        new QueryMethod(ReadOnlyDao.class.getMethod("updateMethod",
+                String.class), DOMAIN_CLASS, extractor);
+    }
+
+
+    @Test
+    public void prefersDeclaredFlushMode() throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getFlushMode(), is(nullValue()));
+
+        settings.setFlushMode(FlushModeType.AUTO);
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getFlushMode(), is(FlushModeType.AUTO));
+        assertThat(new QueryMethod(UserDao.class.getMethod(
+                "findByEmailAddressLike", String.class), DOMAIN_CLASS,
+                extractor, settings).getFlushMode(), is(FlushModeType.COMMIT));
+    }
+
+
+    @Test
+    public void prefersDeclaredQueryTimeout() throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getQueryTimeout(), is(nullValue()));
+
+        settings.setQueryTimeout(2000);
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getQueryTimeout(), is(2000));
+        assertThat(getQueryTimeoutMethod("findByFirstname", settings)
+                .getQueryTimeout(), is(500));
+        assertThat(getQueryTimeoutMethod("findByLastname", settings)
+                .getQueryTimeout(), is(1000));
+    }
+
+
+    @Test
+    public void appliesQueryTimeoutWithConfiguredHint() throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+
+        assertThat(getQueryTimeoutMethod("findByFirstname", settings)
+                .getQueryTimeoutHints(), is(Collections
+                .<String, Object> singletonMap(
+                        QueryUtils.QUERY_TIMEOUT_HINT, 500)));
+
+        settings.setQueryTimeoutHint("eclipselink.jdbc.timeout",
+                TimeUnit.SECONDS);
+
+        assertThat(getQueryTimeoutMethod("findByFirstname", settings)
+                .getQueryTimeoutHints(), is(Collections
+                .<String, Object> singletonMap("eclipselink.jdbc.timeout", 1)));
+    }
+
+
+    @Test
+    public void prefersDeclaredFetchSize() throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getFetchSize(), is(nullValue()));
+
+        settings.setFetchSize(100);
+
+        assertThat(new QueryMethod(daoMethod, DOMAIN_CLASS, extractor, settings)
+                .getFetchSize(), is(100));
+        assertThat(getFetchSizeMethod("findByFirstname", settings)
+                .getFetchSize(), is(1000));
+        assertThat(getFetchSizeMethod("findByLastname", settings)
+                .getFetchSize(), is(500));
+    }
+
+
+    @Test
+    public void appliesFetchSizeWithConfiguredHintOnly() throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+
+        assertThat(getFetchSizeMethod("findByFirstname", settings)
+                .getFetchSizeHints().isEmpty(), is(true));
+
+        settings.setFetchSizeHint("org.hibernate.fetchSize");
+
+        assertThat(getFetchSizeMethod("findByFirstname", settings)
+                .getFetchSizeHints(), is(Collections
+                .<String, Object> singletonMap("org.hibernate.fetchSize",
+                        1000)));
+    }
+
+
+    @Test
+    public void acceptsFetchJoinOfExistingAttribute() throws Exception {
+
+        QueryMethod method =
+                new QueryMethod(FetchJoinDao.class.getMethod(
+                        "findByFirstname", String.class), DOMAIN_CLASS,
+                        extractor);
+
+        assertThat(method.getFetchPlan().getAttributes(),
+                hasItem("roles"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFetchJoinOfUnknownAttribute() throws Exception {
+
+        new QueryMethod(FetchJoinDao.class.getMethod("findByLastname",
+                String.class), DOMAIN_CLASS, extractor);
+    }
+
+
+    private QueryMethod getFetchSizeMethod(String name,
+            QueryExecutionSettings settings) throws Exception {
+
+        return new QueryMethod(FetchSizeDao.class.getMethod(name,
+                String.class), DOMAIN_CLASS, extractor, settings);
+    }
+
+
+    private QueryMethod getQueryTimeoutMethod(String name,
+            QueryExecutionSettings settings) throws Exception {
+
+        return new QueryMethod(QueryTimeoutDao.class.getMethod(name,
+                String.class), DOMAIN_CLASS, extractor, settings);
+    }
+
+
+    private Map<String, Object> getReadOnlyHints(String name,
+            QueryExecutionSettings settings) throws Exception {
+
+        return new QueryMethod(ReadOnlyDao.class.getMethod(name, String.class),
+                DOMAIN_CLASS, extractor, settings).getReadOnlyHints();
+    }
+
+    /**
+     * Interface to define DAO methods loading entities read-only.
+     * 
+     * @author Oliver Gierke
+     */
+    static interface ReadOnlyDao {
+
+        @ReadOnly
+        List<User> findByFirstname(String firstname);
+
+
+        @ReadOnly(false)
+        List<User> findByLastname(String lastname);
+
+
+        List<User> findByEmailAddress(String emailAddress);
+
+
+        @ReadOnly
+        @Modifying
+        void updateMethod(String firstname);
+    }
+
+    /**
+     * Interface to define DAO methods executed with a query timeout.
+     * 
+     * @author Oliver Gierke
+     */
+    @QueryTimeout(1000)
+    static interface QueryTimeoutDao {
+
+        @QueryTimeout(500)
+        List<User> findByFirstname(String firstname);
+
+
+        List<User> findByLastname(String lastname);
+    }
+
+    /**
+     * Interface to define DAO methods reading entities with a JDBC fetch size.
+     * 
+     * @author Oliver Gierke
+     */
+    @FetchSize(500)
+    static interface FetchSizeDao {
+
+        @FetchSize(1000)
+        List<User> findByFirstname(String firstname);
+
+
+        List<User> findByLastname(String lastname);
+    }
+
+    /**
+     * Interface to define DAO methods fetch joining associations.
+     * 
+     * @author Oliver Gierke
+     */
+    static interface FetchJoinDao {
+
+        @FetchJoin("roles")
+        List<User> findByFirstname(String firstname);
+
+
+        @FetchJoin("rolez")
+        List<User> findByLastname(String lastname);
+    }
+
     /**
      * Interface to define invalid DAO methods for testing.
      * 
@@ -15,12 +15,22 @@
  */
 package org.synyx.hades.dao.query;
 
+import static java.util.concurrent.TimeUnit.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
 import static org.synyx.hades.dao.query.QueryUtils.*;
 
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
 import org.hamcrest.Matcher;
 import org.junit.Test;
+import org.synyx.hades.domain.Order;
+import org.synyx.hades.domain.Sort;
 
 
 /**
@@ -66,14 +76,166 @@ public class QueryUtilsUnitTest {
     }
 
 
+    @Test
+    public void appendsFetchJoinsToJoinsOfQuery() throws Exception {
+
+        assertThat(applyFetchJoins("select u from User u where u.foo = ?1 "
+                + "order by u.id", "u", Arrays.asList("manager", "roles"),
+                false), is("select u from User u left join fetch u.manager "
+                + "left join fetch u.roles where u.foo = ?1 order by u.id"));
+        assertThat(applyFetchJoins("from User u join u.roles r",
+                "u", Arrays.asList("manager"), false),
+                is("from User u join u.roles r left join fetch u.manager"));
+    }
+
+
+    @Test
+    public void skipsAttributesAlreadyFetchJoined() throws Exception {
+
+        assertThat(applyFetchJoins("select u from User u "
+                + "left join fetch u.roles", "u",
+                Arrays.asList("roles", "manager"), false),
+                is("select u from User u left join fetch u.roles "
+                        + "left join fetch u.manager"));
+    }
+
+
+    @Test
+    public void selectsDistinctEntitiesForFetchJoinedCollectionsIfRequested()
+            throws Exception {
+
+        assertThat(applyFetchJoins("select u from User u order by u.id", "u",
+                Arrays.asList("roles"), true),
+                is("select distinct u from User u left join fetch u.roles "
+                        + "order by u.id"));
+        assertThat(applyFetchJoins("from User u", "u",
+                Arrays.asList("roles"), true),
+                is("select distinct u from User u left join fetch u.roles"));
+        assertThat(applyFetchJoins("select distinct u from User u", "u",
+                Arrays.asList("roles"), true),
+                is("select distinct u from User u left join fetch u.roles"));
+    }
+
+
     /**
      * @see #351
      */
     @Test
     public void createsCountQueryForDistinctQueries() throws Exception {
 
+        assertCountQuery(
+                "select distinct u from User u join u.roles r where r.foo = ?",
+                "select count(distinct u) from User u join u.roles r where r.foo = ?");
+    }
+
+
+    @Test
+    public void dropsDistinctIfQueryCannotSelectDuplicates() throws Exception {
+
         assertCountQuery("select distinct u from User u where u.foo = ?",
-                "select count(distinct u) from User u where u.foo = ?");
+                "select count(u) from User u where u.foo = ?");
+        assertCountQuery(
+                "select distinct u from User u, Role r where r.foo = u.foo",
+                "select count(distinct u) from User u, Role r where r.foo = u.foo");
+    }
+
+
+    @Test
+    public void removesOrderByFromCountQuery() throws Exception {
+
+        assertCountQuery("select u from User u where u.foo = ?1 order by "
+                + "u.lastname desc, u.firstname",
+                "select count(u) from User u where u.foo = ?1");
+        assertCountQuery("select u from User u where u.foo in (select r.foo "
+                + "from Role r order by r.foo)", "select count(u) from User u "
+                + "where u.foo in (select r.foo from Role r order by r.foo)");
+        assertCountQuery(
+                "select u from User u where u.foo = 'order by' order by u.id",
+                "select count(u) from User u where u.foo = 'order by'");
+    }
+
+
+    @Test
+    public void turnsFetchJoinsIntoPlainJoins() throws Exception {
+
+        assertCountQuery("select u from User u join fetch u.roles r where "
+                + "r.foo = ?1", "select count(u) from User u join u.roles r "
+                + "where r.foo = ?1");
+        assertCountQuery("select u from User u left outer join fetch u.roles "
+                + "as r", "select count(u) from User u left outer join "
+                + "u.roles as r");
+        assertCountQuery("select u from User u inner join fetch u.roles",
+                "select count(u) from User u inner join u.roles hades_fetch_0");
+    }
+
+
+    @Test
+    public void removesOuterFetchJoinsWithoutAliasOfDistinctQueries()
+            throws Exception {
+
+        assertCountQuery("select distinct u from User u left join fetch "
+                + "u.roles where u.foo = ?1 order by u.id",
+                "select count(u) from User u where u.foo = ?1");
+        assertCountQuery("select distinct u from User u join fetch u.roles",
+                "select count(distinct u) from User u join u.roles "
+                        + "hades_fetch_0");
+    }
+
+
+    @Test
+    public void createsIdQueryKeepingOrderBy() throws Exception {
+
+        assertThat(createIdQueryFor("select distinct u from User u left join "
+                + "fetch u.roles where u.foo = ?1 order by u.lastname", "id"),
+                is("select u.id from User u where u.foo = ?1 order by "
+                        + "u.lastname"));
+        assertThat(createIdQueryFor("from User u join fetch u.roles r", "id"),
+                is("select u.id from User u join u.roles r"));
+    }
+
+
+    @Test
+    public void doesNotCreateIdQueryForProjectionsOrOrderedDistinctJoins()
+            throws Exception {
+
+        assertThat(createIdQueryFor("select u.lastname from User u", "id"),
+                is(nullValue()));
+        assertThat(createIdQueryFor("select distinct u from User u join "
+                + "u.roles r order by u.lastname", "id"), is(nullValue()));
+    }
+
+
+    @Test
+    public void createsDeferredJoinQueryFromSelectAndFromClause()
+            throws Exception {
+
+        assertThat(createDeferredJoinQueryFor("select distinct u from User u "
+                + "left join fetch u.roles where u.foo = ?1 order by u.id"),
+                is("select distinct u from User u left join fetch u.roles"));
+        assertThat(createDeferredJoinQueryFor("select u from User u "
+                + "order by u.id"), is("select u from User u"));
+        assertThat(createDeferredJoinQueryFor("select u from User u where "
+                + "u.id in (select x.id from User x where x.foo = ?1)"),
+                is("select u from User u"));
+    }
+
+
+    @Test
+    public void createsQuerySelectingIdAndEntity() throws Exception {
+
+        assertThat(createIdAndEntityQueryFor("select distinct u from User u "
+                + "left join fetch u.roles", "id"),
+                is("select distinct u.id, u from User u left join fetch "
+                        + "u.roles"));
+        assertThat(createIdAndEntityQueryFor("from User u", "id"),
+                is("select u.id, u from User u"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIdAndEntityQueryForProjections() throws Exception {
+
+        createIdAndEntityQueryFor("select u.lastname from User u", "id");
     }
 
 
@@ -166,6 +328,164 @@ public class QueryUtilsUnitTest {
     }
 
 
+    @Test
+    public void bindsIdsToInClause() throws Exception {
+
+        EntityManager em = mock(EntityManager.class);
+        Query query = mock(Query.class);
+        when(em.createQuery(anyString())).thenReturn(query);
+
+        applyAndBindIds("delete from User u", "id", Arrays.asList(1, 2),
+                false, em);
+
+        verify(em).createQuery("delete from User u where u.id in (?1, ?2)");
+        verify(query).setParameter(1, 1);
+        verify(query).setParameter(2, 2);
+    }
+
+
+    @Test
+    public void bindsCompoundIdsToOrConcatenatedEqualityChecks()
+            throws Exception {
+
+        EntityManager em = mock(EntityManager.class);
+        Query query = mock(Query.class);
+        when(em.createQuery(anyString())).thenReturn(query);
+
+        applyAndBindIds("delete from User u", "id", Arrays.asList("a", "b"),
+                true, em);
+
+        verify(em).createQuery(
+                "delete from User u where u.id = ?1 or u.id = ?2");
+        verify(query).setParameter(1, "a");
+        verify(query).setParameter(2, "b");
+    }
+
+
+    @Test
+    public void appliesKeysetRestrictionToQueryWithoutWhereClause()
+            throws Exception {
+
+        Sort sort = new Sort("lastname", "id");
+
+        assertThat(applyKeyset(QUERY, sort, "u", "?1", "?2"),
+                is("select u from User u where (u.lastname > ?1) or "
+                        + "(u.lastname = ?1 and u.id > ?2)"));
+    }
+
+
+    @Test
+    public void wrapsExistingWhereClauseWhenApplyingKeyset() throws Exception {
+
+        Sort sort = new Sort(Order.DESCENDING, "id");
+
+        assertThat(applyKeyset("select u from User u where u.foo = ?1 or "
+                + "u.bar = ?2 order by u.foo", sort, "u", ":keyset0"),
+                is("select u from User u where (u.foo = ?1 or u.bar = ?2) "
+                        + "and ((u.id < :keyset0)) order by u.foo"));
+    }
+
+
+    @Test
+    public void appliesKeysetRestrictionOutsideOfSubqueries() throws Exception {
+
+        Sort sort = new Sort("id");
+
+        assertThat(applyKeyset("select u from User u where u.id in (select "
+                + "r.user.id from Role r group by r.user.id) order by u.id",
+                sort, "u", "?1"),
+                is("select u from User u where (u.id in (select r.user.id "
+                        + "from Role r group by r.user.id)) and "
+                        + "((u.id > ?1)) order by u.id"));
+
+        assertThat(applyKeyset("select u, (select count(r) from Role r "
+                + "where r.name = ?1) from User u order by u.id", sort, "u",
+                "?2"), is("select u, (select count(r) from Role r where "
+                + "r.name = ?1) from User u where (u.id > ?2) order by u.id"));
+    }
+
+
+    @Test
+    public void createsInlineCountQuery() throws Exception {
+
+        String query = "select u from User u where u.foo = ?1";
+
+        assertThat(createInlineCountQueryFor(query, createCountQueryFor(query),
+                "u"), is("select u, (select count(u_c) from User u_c where "
+                + "u_c.foo = ?1) from User u where u.foo = ?1"));
+        assertThat(createInlineCountQueryFor(SIMPLE_QUERY, COUNT_QUERY, "u"),
+                is("select u, (select count(u_c) from User u_c) from User u"));
+    }
+
+
+    @Test
+    public void renamesAliasOfInlineCountQueryOnly() throws Exception {
+
+        String query =
+                "select u from User u where u.name = 'u' and u.u = :u and "
+                        + "u.id in (select r.user.id from Role r where "
+                        + "r.user = u)";
+
+        assertThat(createInlineCountQueryFor(query, createCountQueryFor(query),
+                "u"), is("select u, (select count(u_c) from User u_c where "
+                + "u_c.name = 'u' and u_c.u = :u and u_c.id in (select "
+                + "r.user.id from Role r where r.user = u_c)) " + query
+                .substring(9)));
+    }
+
+
+    @Test
+    public void doesNotCreateInlineCountQueryForComplexSelections()
+            throws Exception {
+
+        assertThat(createInlineCountQueryFor("select distinct u from User u",
+                COUNT_QUERY, "u"), is(nullValue()));
+        assertThat(createInlineCountQueryFor("select u.lastname from User u",
+                COUNT_QUERY, "u"), is(nullValue()));
+    }
+
+
+    @Test
+    public void createsCappedCountQuery() throws Exception {
+
+        assertThat(createCappedCountQueryFor(QUERY, "id"),
+                is("select u.id from User u"));
+        assertThat(createCappedCountQueryFor(SIMPLE_QUERY, "id"),
+                is("select u.id from User u"));
+        assertThat(createCappedCountQueryFor(QUERY_WITH_AS, null),
+                is("select u from User as u where u.username = ?"));
+        assertThat(createCappedCountQueryFor("select distinct u from User u "
+                + "join u.roles r where r.foo = ?1 order by u.lastname", "id"),
+                is("select distinct u.id from User u join u.roles r where "
+                        + "r.foo = ?1"));
+    }
+
+
+    @Test
+    public void convertsQueryTimeoutIntoHintUnitRoundingUp() throws Exception {
+
+        assertThat(getQueryTimeoutHints(null, "hint", SECONDS).isEmpty(),
+                is(true));
+        assertThat(getQueryTimeoutHints(1500, "hint", MILLISECONDS).get("hint"),
+                is((Object) 1500));
+        assertThat(getQueryTimeoutHints(1500, "hint", SECONDS).get("hint"),
+                is((Object) 2));
+        assertThat(getQueryTimeoutHints(2000, "hint", SECONDS).get("hint"),
+                is((Object) 2));
+    }
+
+
+    @Test
+    public void createsFetchSizeHintsOnlyIfHintAndFetchSizeGiven()
+            throws Exception {
+
+        assertThat(getFetchSizeHints(null, "hint").isEmpty(), is(true));
+        assertThat(getFetchSizeHints(100, null).isEmpty(), is(true));
+        assertThat(getFetchSizeHints(100, "hint").get("hint"),
+                is((Object) 100));
+    }
+
+
     private void assertCountQuery(String originalQuery, String countQuery) {
 
         assertThat(createCountQueryFor(originalQuery), is(countQuery));
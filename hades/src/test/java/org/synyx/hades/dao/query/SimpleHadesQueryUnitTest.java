@@ -21,10 +21,19 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import javax.persistence.QueryHint;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -33,6 +42,8 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.synyx.hades.dao.QueryHints;
 import org.synyx.hades.dao.UserDao;
+import org.synyx.hades.domain.PageRequest;
+import org.synyx.hades.domain.Pageable;
 import org.synyx.hades.domain.User;
 
 
@@ -89,4 +100,69 @@ public class SimpleHadesQueryUnitTest {
 
         assertThat(hadesQuery.createCountQuery(em), is(query));
     }
+
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void appliesQuerySettingsToQueriesFetchingAssociations()
+            throws Exception {
+
+        QueryExecutionSettings settings = new QueryExecutionSettings();
+        settings.setFlushMode(FlushModeType.COMMIT);
+        settings.setQueryTimeout(500);
+        settings.setQueryTimeoutHint("javax.persistence.query.timeout",
+                TimeUnit.MILLISECONDS);
+        settings.setFetchSize(100);
+        settings.setFetchSizeHint("org.hibernate.fetchSize");
+        settings.setReadOnlyQueries(true);
+        settings.setReadOnlyHints(Collections.<String, Object> singletonMap(
+                "org.hibernate.readOnly", true));
+
+        when(extractor.canExtractQuery()).thenReturn(true);
+        method =
+                new QueryMethod(UserDao.class.getMethod(
+                        "findAllFetchingRoles", Pageable.class), User.class,
+                        extractor, settings);
+
+        User user = new User();
+        user.setId(1);
+
+        SingularAttribute id = mock(SingularAttribute.class);
+        when(id.getName()).thenReturn("id");
+        when(id.isId()).thenReturn(true);
+
+        EntityType type = mock(EntityType.class);
+        when(type.hasSingleIdAttribute()).thenReturn(true);
+        when(type.getSingularAttributes()).thenReturn(
+                Collections.singleton(id));
+
+        Metamodel metamodel = mock(Metamodel.class);
+        when(metamodel.entity(User.class)).thenReturn(type);
+        when(em.getMetamodel()).thenReturn(metamodel);
+
+        PersistenceUnitUtil util = mock(PersistenceUnitUtil.class);
+        EntityManagerFactory factory = mock(EntityManagerFactory.class);
+        when(factory.getPersistenceUnitUtil()).thenReturn(util);
+        when(em.getEntityManagerFactory()).thenReturn(factory);
+        when(em.contains(user)).thenReturn(true);
+
+        Query fetchQuery = mock(Query.class);
+        when(
+                em.createQuery("select distinct x from User x "
+                        + "left join fetch x.roles where x.id in (?1)"))
+                .thenReturn(fetchQuery);
+
+        SimpleHadesQuery hadesQuery =
+                new SimpleHadesQuery(method, em, "select u from User u");
+        hadesQuery.fetchAssociations(em, Arrays.asList(user),
+                new ParameterBinder(method.getParameters(),
+                        new PageRequest(0, 10)));
+
+        verify(fetchQuery).setParameter(1, 1);
+        verify(fetchQuery).setFlushMode(FlushModeType.COMMIT);
+        verify(fetchQuery).setHint("javax.persistence.query.timeout", 500);
+        verify(fetchQuery).setHint("org.hibernate.fetchSize", 100);
+        verify(fetchQuery).setHint("org.hibernate.readOnly", true);
+        verify(fetchQuery).getResultList();
+    }
 }
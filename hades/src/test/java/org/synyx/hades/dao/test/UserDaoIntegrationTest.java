@@ -39,16 +39,29 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
+import org.synyx.hades.dao.EntityCallback;
+import org.synyx.hades.dao.GenericDao;
+import org.synyx.hades.dao.MaterializedCount;
 import org.synyx.hades.dao.UserDao;
+import org.synyx.hades.dao.UserDaoImpl;
+import org.synyx.hades.dao.orm.GenericDaoFactory;
+import org.synyx.hades.dao.query.LazyTotalPage;
+import org.synyx.hades.domain.CappedPageRequest;
+import org.synyx.hades.domain.FetchPlan;
+import org.synyx.hades.domain.KeysetPageRequest;
 import org.synyx.hades.domain.Order;
 import org.synyx.hades.domain.Page;
 import org.synyx.hades.domain.PageImpl;
 import org.synyx.hades.domain.PageRequest;
 import org.synyx.hades.domain.Pageable;
 import org.synyx.hades.domain.Role;
+import org.synyx.hades.domain.Slice;
 import org.synyx.hades.domain.Sort;
 import org.synyx.hades.domain.Specification;
 import org.synyx.hades.domain.User;
+import org.synyx.hades.domain.UserDto;
+import org.synyx.hades.domain.UserNames;
+import org.synyx.hades.domain.UserSpecifications.UserIsOliver;
 
 
 /**
@@ -225,6 +238,22 @@ public class UserDaoIntegrationTest {
     }
 
 
+    @Test
+    public void deletesByPrimaryKeys() throws Exception {
+
+        flushTestUsers();
+
+        long before = userDao.count();
+
+        userDao.deleteByPrimaryKey(id);
+        userDao.deleteByPrimaryKeys(Arrays.asList(thirdUser.getId(), id * 27));
+
+        assertThat(userDao.count(), is(before - 2));
+        assertThat(userDao.exists(id), is(false));
+        assertThat(userDao.exists(secondUser.getId()), is(true));
+    }
+
+
     @Test
     public void deleteEmptyCollectionDoesNotDeleteAnything() {
 
@@ -505,6 +534,35 @@ public class UserDaoIntegrationTest {
     }
 
 
+    /**
+     * Flushes the test users with the first one having two roles and the
+     * second one having one and clears the persistence context.
+     */
+    private void flushTestUsersWithRoles() {
+
+        Role role = new Role("USER");
+        Role admin = new Role("ADMIN");
+        em.persist(role);
+        em.persist(admin);
+
+        firstUser.addRole(role);
+        firstUser.addRole(admin);
+        secondUser.addRole(role);
+
+        flushTestUsers();
+        em.clear();
+    }
+
+
+    private void assertRolesLoaded(List<User> users) {
+
+        for (User user : users) {
+            assertThat(em.getEntityManagerFactory().getPersistenceUnitUtil()
+                    .isLoaded(user, "roles"), is(true));
+        }
+    }
+
+
     @Test
     public void executesMethodWithNamedParametersCorrectly() throws Exception {
 
@@ -657,6 +715,544 @@ public class UserDaoIntegrationTest {
     }
 
 
+    @Test
+    public void checksExistenceBySpecification() throws Exception {
+
+        flushTestUsers();
+
+        assertThat(userDao.exists(userHasFirstname("Oliver")), is(true));
+        assertThat(userDao.exists(userHasFirstname("Foo")), is(false));
+        assertThat(userDao.exists((Specification<User>) null), is(true));
+    }
+
+
+    @Test
+    public void returnsExistingIdsOnly() throws Exception {
+
+        flushTestUsers();
+
+        Set<Integer> result =
+                userDao.existingIds(Arrays.asList(id, secondUser.getId(),
+                        id * 27));
+
+        assertThat(result.size(), is(2));
+        assertThat(result, hasItems(id, secondUser.getId()));
+    }
+
+
+    @Test
+    public void returnsEmptySetForNoIdsGiven() throws Exception {
+
+        assertThat(userDao.existingIds(new ArrayList<Integer>()).isEmpty(),
+                is(true));
+    }
+
+
+    @Test
+    public void readsAllByIdsInGivenOrder() throws Exception {
+
+        flushTestUsers();
+        em.clear();
+
+        List<User> result =
+                userDao.readAll(Arrays.asList(thirdUser.getId(), id * 27, id,
+                        secondUser.getId()));
+
+        assertThat(result.size(), is(3));
+        assertThat(result.get(0), is(thirdUser));
+        assertThat(result.get(1), is(firstUser));
+        assertThat(result.get(2), is(secondUser));
+    }
+
+
+    @Test
+    public void readsAllByIdsFromPersistenceContext() throws Exception {
+
+        flushTestUsers();
+
+        User managed = userDao.readByPrimaryKey(id);
+        List<User> result =
+                userDao.readAll(Arrays.asList(id, secondUser.getId(), id));
+
+        assertThat(result.size(), is(3));
+        assertThat(result.get(0), is(sameInstance(managed)));
+        assertThat(result.get(1), is(secondUser));
+        assertThat(result.get(2), is(sameInstance(managed)));
+    }
+
+
+    @Test
+    public void streamsEntitiesToCallback() throws Exception {
+
+        flushTestUsers();
+
+        final List<User> result = new ArrayList<User>();
+
+        userDao.readAllInBatches(null, new EntityCallback<User>() {
+
+            public void doWith(User entity) {
+
+                result.add(entity);
+            }
+        });
+
+        assertThat(result.size(), is(3));
+        assertSameElements(result,
+                Arrays.asList(firstUser, secondUser, thirdUser));
+    }
+
+
+    @Test
+    public void streamsEntitiesMatchingSpecification() throws Exception {
+
+        flushTestUsers();
+
+        final List<User> result = new ArrayList<User>();
+
+        userDao.readAllInBatches(userHasFirstname("Oliver"),
+                new EntityCallback<User>() {
+
+                    public void doWith(User entity) {
+
+                        result.add(entity);
+                    }
+                });
+
+        assertThat(result.size(), is(1));
+        assertThat(result.get(0), is(firstUser));
+    }
+
+
+    @Test
+    public void pagesThroughAllEntitiesByKeyset() throws Exception {
+
+        flushTestUsers();
+
+        KeysetPageRequest pageable =
+                new KeysetPageRequest(2, new Sort("lastname"), "id");
+
+        Page<User> page = userDao.readAll(pageable);
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.hasNextPage(), is(true));
+
+        page = userDao.readAll(pageable.next(firstUser.getId(), "Gierke"));
+        assertThat(page.asList(), is(Arrays.asList(thirdUser)));
+        assertThat(page.getNumber(), is(1));
+        assertThat(page.hasNextPage(), is(false));
+    }
+
+
+    @Test
+    public void pagesThroughSpecificationResultByKeysetUsingIdAsTieBreaker()
+            throws Exception {
+
+        firstUser.setLastname("Arrasz");
+        flushTestUsers();
+
+        Specification<User> spec =
+                where(userHasLastname("Arrasz")).or(
+                        userHasFirstname("Dave"));
+        KeysetPageRequest pageable =
+                new KeysetPageRequest(1, new Sort(Order.DESCENDING,
+                        "lastname"), "id");
+
+        User[] expected = { thirdUser, firstUser, secondUser };
+
+        if (secondUser.getId() < firstUser.getId()) {
+            expected = new User[] { thirdUser, secondUser, firstUser };
+        }
+
+        for (User user : expected) {
+
+            Page<User> page = userDao.readAll(spec, pageable);
+            assertThat(page.asList(), is(Arrays.asList(user)));
+            assertThat(page.getTotalElements(), is(3L));
+
+            pageable = pageable.next(user.getId(), user.getLastname());
+        }
+
+        assertThat(userDao.readAll(spec, pageable).getNumberOfElements(),
+                is(0));
+    }
+
+
+    @Test
+    public void pagesThroughQueryMethodResultByKeyset() throws Exception {
+
+        flushTestUsers();
+
+        KeysetPageRequest pageable =
+                new KeysetPageRequest(2, new Sort("lastname"), "id");
+        pageable = pageable.next(secondUser.getId(), "Arrasz");
+
+        Page<User> page = userDao.findAllPaged(pageable);
+        assertThat(page.asList(), is(Arrays.asList(firstUser, thirdUser)));
+        assertThat(page.getTotalElements(), is(3L));
+
+        page = userDao.findByLastnameOrFirstname("Dave", "Gierke", pageable);
+        assertThat(page.asList(), is(Arrays.asList(firstUser, thirdUser)));
+
+        List<User> users =
+                userDao.findByFirstname("Oliver",
+                        pageable.next(firstUser.getId(), "Gierke"));
+        assertThat(users.isEmpty(), is(true));
+    }
+
+
+    @Test
+    public void readsSliceWithoutTotal() throws Exception {
+
+        flushTestUsers();
+
+        Slice<User> slice =
+                userDao.readSlice(null, new PageRequest(0, 2, new Sort(
+                        "lastname")));
+        assertThat(slice.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(slice.hasNextPage(), is(true));
+        assertThat(slice.hasPreviousPage(), is(false));
+
+        slice =
+                userDao.readSlice(null, new PageRequest(1, 2, new Sort(
+                        "lastname")));
+        assertThat(slice.asList(), is(Arrays.asList(thirdUser)));
+        assertThat(slice.hasNextPage(), is(false));
+        assertThat(slice.hasPreviousPage(), is(true));
+    }
+
+
+    @Test
+    public void selectsSingleProperty() throws Exception {
+
+        flushTestUsers();
+
+        assertThat(userDao.findLastnameByFirstname("Oliver"), is(Arrays
+                .asList("Gierke")));
+    }
+
+
+    @Test
+    public void projectsOntoClassWithConstructorExpression() throws Exception {
+
+        flushTestUsers();
+
+        List<UserDto> result =
+                userDao.findFirstnameAndLastnameByEmailAddress("gierke@synyx.de");
+
+        assertThat(result.size(), is(1));
+        assertThat(result.get(0).getFirstname(), is("Oliver"));
+        assertThat(result.get(0).getLastname(), is("Gierke"));
+    }
+
+
+    @Test
+    public void projectsPageOntoInterface() throws Exception {
+
+        flushTestUsers();
+
+        Page<UserNames> page =
+                userDao.findByFirstnameNot("Oliver", new PageRequest(0, 1,
+                        new Sort("lastname")));
+
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(page.getNumberOfElements(), is(1));
+        assertThat(page.asList().get(0).getFirstname(), is("Joachim"));
+        assertThat(page.asList().get(0).getLastname(), is("Arrasz"));
+    }
+
+
+    @Test
+    public void projectsSpecificationResult() throws Exception {
+
+        flushTestUsers();
+
+        List<UserNames> names =
+                userDao.readAll(userHasFirstname("Oliver"), UserNames.class);
+
+        assertThat(names.size(), is(1));
+        assertThat(names.get(0).getLastname(), is("Gierke"));
+
+        List<UserDto> dtos = userDao.readAll(null, UserDto.class);
+
+        assertThat(dtos.size(), is(3));
+        assertThat(dtos.get(0), is(instanceOf(UserDto.class)));
+    }
+
+
+    @Test(expected = DataAccessException.class)
+    public void rejectsSpecificationProjectionOntoEntity() throws Exception {
+
+        userDao.readAll(null, User.class);
+    }
+
+
+    @Test
+    public void readsSliceOfSpecificationResult() throws Exception {
+
+        flushTestUsers();
+
+        Specification<User> spec =
+                where(userHasFirstname("Oliver")).or(
+                        userHasLastname("Arrasz"));
+
+        Slice<User> slice = userDao.readSlice(spec, new PageRequest(0, 2));
+        assertThat(slice.getNumberOfElements(), is(2));
+        assertThat(slice.hasNextPage(), is(false));
+    }
+
+
+    @Test
+    public void executesSlicingQueryMethod() throws Exception {
+
+        flushTestUsers();
+
+        Slice<User> slice =
+                userDao.findAllSliced(new PageRequest(0, 2, new Sort(
+                        "lastname")));
+        assertThat(slice.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(slice.hasNextPage(), is(true));
+
+        slice =
+                userDao.findAllSliced(new PageRequest(1, 2, new Sort(
+                        "lastname")));
+        assertThat(slice.asList(), is(Arrays.asList(thirdUser)));
+        assertThat(slice.hasNextPage(), is(false));
+    }
+
+
+    @Test
+    public void readsPageAndTotalInSingleQuery() throws Exception {
+
+        flushTestUsers();
+
+        GenericDaoFactory factory = GenericDaoFactory.create(em);
+        factory.setInlineCountQueries(true);
+        UserDao dao = factory.getDao(UserDao.class, new UserDaoImpl());
+
+        Page<User> page =
+                dao.findAllPaged(new PageRequest(0, 2, new Sort("lastname")));
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+
+        page = dao.findByFirstname(new PageRequest(0, 1), "Oliver");
+        assertThat(page.asList(), is(Arrays.asList(firstUser)));
+        assertThat(page.getTotalElements(), is(1L));
+
+        page = dao.findAllPaged(new PageRequest(3, 2));
+        assertThat(page.getNumberOfElements(), is(0));
+        assertThat(page.getTotalElements(), is(3L));
+    }
+
+
+    @Test
+    public void defersCountQueryOfLazyPages() throws Exception {
+
+        flushTestUsers();
+
+        GenericDaoFactory factory = GenericDaoFactory.create(em);
+        factory.setLazyCountQueries(true);
+        UserDao dao = factory.getDao(UserDao.class, new UserDaoImpl());
+
+        Page<User> page = dao.readAll(new PageRequest(0, 1));
+        assertThat(page, is(instanceOf(LazyTotalPage.class)));
+        assertThat(page.getNumberOfElements(), is(1));
+        assertThat(page.getTotalElements(), is(3L));
+
+        page = dao.findAllPaged(new PageRequest(0, 2));
+        assertThat(page, is(instanceOf(LazyTotalPage.class)));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.hasNextPage(), is(true));
+    }
+
+
+    @Test
+    public void countsPagedQueryUsingFetchJoinAndOrderBy() throws Exception {
+
+        flushTestUsers();
+
+        Page<User> page = userDao.findAllWithRoles(new PageRequest(0, 2));
+
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+    }
+
+
+    @Test
+    public void pagesFetchJoinedQueryByIdentifiers() throws Exception {
+
+        Role role = new Role("USER");
+        Role admin = new Role("ADMIN");
+        em.persist(role);
+        em.persist(admin);
+
+        firstUser.addRole(role);
+        firstUser.addRole(admin);
+        secondUser.addRole(role);
+
+        flushTestUsers();
+        em.clear();
+
+        Page<User> page =
+                userDao.findAllWithRolesDeferred(new PageRequest(0, 2));
+
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(em.getEntityManagerFactory().getPersistenceUnitUtil()
+                .isLoaded(page.asList().get(1), "roles"), is(true));
+        assertThat(page.asList().get(1).getRole().size(), is(2));
+
+        page = userDao.findAllWithRolesDeferred(new PageRequest(1, 2));
+        assertThat(page.asList(), is(Arrays.asList(thirdUser)));
+    }
+
+
+    @Test
+    public void fetchesAssociationsOfFetchPlan() throws Exception {
+
+        flushTestUsersWithRoles();
+
+        List<User> users = userDao.findByFirstnameLike("Oliver");
+
+        assertThat(users, is(Arrays.asList(firstUser)));
+        assertRolesLoaded(users);
+        assertThat(users.get(0).getRole().size(), is(2));
+    }
+
+
+    @Test
+    public void fetchesCollectionsOfFetchPlanForPage() throws Exception {
+
+        flushTestUsersWithRoles();
+
+        Page<User> page = userDao.findAllFetchingRoles(new PageRequest(0, 2));
+
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+        assertRolesLoaded(page.asList());
+        assertThat(page.asList().get(1).getRole().size(), is(2));
+    }
+
+
+    @Test
+    public void readsSpecificationWithFetchPlan() throws Exception {
+
+        flushTestUsersWithRoles();
+
+        List<User> users =
+                userDao.readAll(userHasFirstname("Oliver"), new FetchPlan(
+                        "roles"));
+
+        assertThat(users, is(Arrays.asList(firstUser)));
+        assertRolesLoaded(users);
+
+        Page<User> page =
+                userDao.readAll(null,
+                        new PageRequest(0, 2, new Sort("lastname")),
+                        new FetchPlan("roles"));
+
+        assertThat(page.asList(), is(Arrays.asList(secondUser, firstUser)));
+        assertThat(page.getTotalElements(), is(3L));
+        assertRolesLoaded(page.asList());
+    }
+
+
+    @Test
+    public void countsPagedNamedQueryWithNamedCountQuery() throws Exception {
+
+        flushTestUsers();
+
+        Page<User> page =
+                userDao.findByLastname("Gierke", new PageRequest(0, 1));
+
+        assertThat(page.asList(), is(Arrays.asList(firstUser)));
+        assertThat(page.getTotalElements(), is(1L));
+    }
+
+
+    @Test
+    public void cachesCountsUntilDaoWrites() throws Exception {
+
+        flushTestUsers();
+
+        GenericDaoFactory factory = GenericDaoFactory.create(em);
+        factory.setCountCacheTimeToLive(60000);
+        UserDao dao = factory.getDao(UserDao.class, new UserDaoImpl());
+
+        assertThat(dao.count(), is(3L));
+        assertThat(dao.findAllPaged(new PageRequest(0, 1)).getTotalElements(),
+                is(3L));
+
+        // Changes not applied through the DAO are not seen
+        em.persist(new User("Foo", "Bar", "foo@bar.de"));
+        em.flush();
+
+        assertThat(dao.count(), is(3L));
+        assertThat(dao.findAllPaged(new PageRequest(0, 1)).getTotalElements(),
+                is(3L));
+
+        dao.save(new User("Bar", "Foo", "bar@foo.de"));
+        em.flush();
+
+        assertThat(dao.count(), is(5L));
+        assertThat(dao.findAllPaged(new PageRequest(0, 1)).getTotalElements(),
+                is(5L));
+    }
+
+
+    @Test
+    public void servesCountsFromMaterializedCounters() throws Exception {
+
+        flushTestUsers();
+
+        MaterializedUserDao dao =
+                GenericDaoFactory.create(em).getDao(MaterializedUserDao.class);
+
+        assertThat(dao.count(), is(3L));
+        assertThat(dao.count(new UserIsOliver()), is(1L));
+        assertThat(dao.count(userHasFirstname("Oliver")), is(1L));
+
+        // Changes not applied through the DAO are not seen
+        em.persist(new User("Oliver", "Bar", "foo@bar.de"));
+        em.flush();
+
+        assertThat(dao.count(), is(3L));
+        assertThat(dao.count(new UserIsOliver()), is(1L));
+        assertThat(dao.count(userHasFirstname("Oliver")), is(2L));
+
+        // Uncommitted changes of the DAO are read from the database
+        dao.save(new User("Oliver", "Foo", "bar@foo.de"));
+        em.flush();
+
+        assertThat(dao.count(), is(5L));
+        assertThat(dao.count(new UserIsOliver()), is(3L));
+    }
+
+
+    @Test
+    public void capsCountOfPagedQueries() throws Exception {
+
+        flushTestUsers();
+
+        Page<User> page = userDao.readAll(new CappedPageRequest(0, 1, 1));
+        assertThat(page.getNumberOfElements(), is(1));
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(page.isTotalCapped(), is(true));
+        assertThat(page.hasNextPage(), is(true));
+
+        page = userDao.findAllPaged(new CappedPageRequest(0, 1, 5));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.isTotalCapped(), is(false));
+
+        page = userDao.findAllCapped(new PageRequest(0, 1));
+        assertThat(page.getTotalElements(), is(2L));
+        assertThat(page.isTotalCapped(), is(true));
+
+        page = userDao.findAllCapped(new CappedPageRequest(0, 1, 5));
+        assertThat(page.getTotalElements(), is(3L));
+        assertThat(page.isTotalCapped(), is(false));
+    }
+
+
     private Page<User> executeSpecWithSort(Sort sort) {
 
         flushTestUsers();
@@ -669,4 +1265,16 @@ public class UserDaoIntegrationTest {
         assertThat(result.getTotalElements(), is(2L));
         return result;
     }
+
+    /**
+     * DAO maintaining counters for all {@link User}s and the ones named
+     * Oliver.
+     * 
+     * @author Oliver Gierke
+     */
+    @MaterializedCount(predicates = UserIsOliver.class)
+    public static interface MaterializedUserDao extends
+            GenericDao<User, Integer> {
+
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import org.synyx.hades.dao.ProjectedProperty;
+
+
+/**
+ * Class projection of a {@link User} declaring the properties passed to its
+ * constructor explicitly.
+ * 
+ * @author Oliver Gierke
+ */
+public class AnnotatedUserDto {
+
+    private final String name;
+    private final String email;
+
+
+    public AnnotatedUserDto(@ProjectedProperty("lastname") String name,
+            @ProjectedProperty("emailAddress") String email) {
+
+        this.name = name;
+        this.email = email;
+    }
+
+
+    public String getName() {
+
+        return name;
+    }
+
+
+    public String getEmail() {
+
+        return email;
+    }
+}
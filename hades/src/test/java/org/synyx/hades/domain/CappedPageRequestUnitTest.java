@@ -0,0 +1,59 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.synyx.hades.domain.UnitTestUtils.*;
+
+import org.junit.Test;
+
+
+/**
+ * Unit test for {@link CappedPageRequest}.
+ * 
+ * @author Oliver Gierke
+ */
+public class CappedPageRequestUnitTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void preventsZeroCap() throws Exception {
+
+        new CappedPageRequest(0, 10, 0);
+    }
+
+
+    @Test
+    public void exposesCap() throws Exception {
+
+        CappedPageRequest request = new CappedPageRequest(1, 10, 1000);
+
+        assertThat(request.getPageNumber(), is(1));
+        assertThat(request.getPageSize(), is(10));
+        assertThat(request.getCountCap(), is(1000));
+    }
+
+
+    @Test
+    public void equalsHonoursCap() throws Exception {
+
+        CappedPageRequest request = new CappedPageRequest(0, 10, 1000);
+
+        assertEqualsAndHashcode(request, new CappedPageRequest(0, 10, 1000));
+        assertNotEqualsAndHashcode(request, new CappedPageRequest(0, 10, 500));
+        assertNotEqualsAndHashcode(request, new CappedPageRequest(1, 10, 1000));
+    }
+}
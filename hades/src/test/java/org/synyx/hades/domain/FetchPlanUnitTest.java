@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.synyx.hades.domain.UnitTestUtils.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+
+/**
+ * Unit test for {@link FetchPlan}.
+ * 
+ * @author Oliver Gierke
+ */
+public class FetchPlanUnitTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyAttributes() throws Exception {
+
+        new FetchPlan(Collections.<String> emptyList());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullAttribute() throws Exception {
+
+        new FetchPlan("roles", null);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNestedAttribute() throws Exception {
+
+        new FetchPlan("manager.roles");
+    }
+
+
+    @Test
+    public void exposesAttributesInOrder() throws Exception {
+
+        FetchPlan plan = new FetchPlan("roles", "manager");
+
+        assertThat(plan.getAttributes(), is(Arrays.asList("roles", "manager")));
+        assertThat(plan.iterator().next(), is("roles"));
+    }
+
+
+    @Test
+    public void equalsRegardsAttributes() throws Exception {
+
+        assertEqualsAndHashcode(new FetchPlan("roles"), new FetchPlan(Arrays
+                .asList("roles")));
+        assertNotEqualsAndHashcode(new FetchPlan("roles"), new FetchPlan(
+                "roles", "manager"));
+    }
+}
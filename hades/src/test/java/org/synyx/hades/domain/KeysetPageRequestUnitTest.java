@@ -0,0 +1,121 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.synyx.hades.domain.UnitTestUtils.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.synyx.hades.domain.Sort.Property;
+
+
+/**
+ * Unit test for {@link KeysetPageRequest}.
+ * 
+ * @author Oliver Gierke
+ */
+public class KeysetPageRequestUnitTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void preventsZeroSize() {
+
+        new KeysetPageRequest(0, null, "id");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void preventsMissingIdProperty() {
+
+        new KeysetPageRequest(10, null, null);
+    }
+
+
+    @Test
+    public void appendsIdPropertyToSortAsTieBreaker() throws Exception {
+
+        KeysetPageRequest request =
+                new KeysetPageRequest(10, new Sort("lastname"), "id");
+
+        assertThat(request.getSort(), is(new Sort(Arrays.asList(
+                new Property("lastname"), new Property("id")))));
+        assertThat(new KeysetPageRequest(10, null, "id").getSort(),
+                is(new Sort(Arrays.asList(new Property("id")))));
+    }
+
+
+    @Test
+    public void doesNotAppendIdPropertyIfAlreadySorted() throws Exception {
+
+        Sort sort = new Sort(Order.DESCENDING, "id", "lastname");
+
+        assertThat(new KeysetPageRequest(10, sort, "id").getSort(), is(sort));
+    }
+
+
+    @Test
+    public void nextRequestCarriesLastValuesInSortOrder() throws Exception {
+
+        KeysetPageRequest request =
+                new KeysetPageRequest(10, new Sort("lastname", "firstname"),
+                        "id");
+
+        assertThat(request.hasLastValues(), is(false));
+        assertThat(request.getFirstItem(), is(0));
+
+        KeysetPageRequest next = request.next(4711L, "Gierke", "Oliver");
+
+        assertThat(next.hasLastValues(), is(true));
+        assertThat(Arrays.asList(next.getLastValues()), is(Arrays
+                .<Object> asList("Gierke", "Oliver", 4711L)));
+        assertThat(next.getPageNumber(), is(1));
+        assertThat(next.getFirstItem(), is(0));
+        assertThat(next.getSort(), is(request.getSort()));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingSortValues() throws Exception {
+
+        new KeysetPageRequest(10, new Sort("lastname"), "id").next(4711L);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManySortValues() throws Exception {
+
+        new KeysetPageRequest(10, new Sort("lastname"), "id").next(4711L,
+                "Gierke", "Oliver");
+    }
+
+
+    @Test
+    public void equalsRegardsLastValues() throws Exception {
+
+        KeysetPageRequest request =
+                new KeysetPageRequest(10, new Sort("lastname"), "id");
+
+        assertEqualsAndHashcode(request, new KeysetPageRequest(10, new Sort(
+                "lastname"), "id"));
+        assertEqualsAndHashcode(request.next(1L, "Gierke"), request.next(1L,
+                "Gierke"));
+        assertNotEqualsAndHashcode(request, request.next(1L, "Gierke"));
+        assertNotEqualsAndHashcode(request.next(1L, "Gierke"), request.next(
+                2L, "Gierke"));
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.synyx.hades.domain;
 
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
 import static org.synyx.hades.domain.UnitTestUtils.*;
 
 import java.util.Arrays;
@@ -66,6 +68,24 @@ public class PageImplUnitTest {
 
         assertNotEqualsAndHashcode(page, new PageImpl<String>(content,
                 new PageRequest(0, 15), 100));
+
+        assertNotEqualsAndHashcode(page, new PageImpl<String>(content,
+                pageable, 100, true));
+    }
+
+
+    @Test
+    public void cappedFullPageHasNextPage() throws Exception {
+
+        Pageable pageable = new PageRequest(4, 1);
+        List<String> content = Arrays.asList("Foo");
+
+        assertThat(new PageImpl<String>(content, pageable, 5).hasNextPage(),
+                is(false));
+        assertThat(new PageImpl<String>(content, pageable, 5, true)
+                .hasNextPage(), is(true));
+        assertThat(new PageImpl<String>(content, pageable, 5, true)
+                .isTotalCapped(), is(true));
     }
 
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.synyx.hades.domain.UnitTestUtils.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Unit test for {@link SliceImpl}.
+ * 
+ * @author Oliver Gierke
+ */
+public class SliceImplUnitTest {
+
+    @Test
+    public void assertEqualsForComplexSetup() throws Exception {
+
+        Pageable pageable = new PageRequest(0, 10);
+        List<String> content = Arrays.asList("Foo");
+
+        SliceImpl<String> slice =
+                new SliceImpl<String>(content, pageable, true);
+
+        assertEqualsAndHashcode(slice, slice);
+        assertEqualsAndHashcode(slice, new SliceImpl<String>(content,
+                pageable, true));
+
+        assertNotEqualsAndHashcode(slice, new SliceImpl<String>(content,
+                pageable, false));
+        assertNotEqualsAndHashcode(slice, new SliceImpl<String>(content,
+                new PageRequest(1, 10), true));
+    }
+
+
+    @Test
+    public void exposesPagingInformation() throws Exception {
+
+        Slice<String> slice =
+                new SliceImpl<String>(Arrays.asList("Foo"), new PageRequest(
+                        1, 10), true);
+
+        assertThat(slice.getNumber(), is(1));
+        assertThat(slice.getSize(), is(10));
+        assertThat(slice.getNumberOfElements(), is(1));
+        assertThat(slice.hasPreviousPage(), is(true));
+        assertThat(slice.hasNextPage(), is(true));
+    }
+
+
+    @Test
+    public void createsSliceForEmptyContent() throws Exception {
+
+        Slice<String> slice =
+                new SliceImpl<String>(Collections.<String> emptyList());
+
+        assertThat(slice.getNumberOfElements(), is(0));
+        assertThat(slice.hasNextPage(), is(false));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void preventsNullContent() throws Exception {
+
+        new SliceImpl<Object>(null);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+/**
+ * Class projection of a {@link User} carrying its names only.
+ * 
+ * @author Oliver Gierke
+ */
+public class UserDto {
+
+    private final String firstname;
+    private final String lastname;
+
+
+    public UserDto(String firstname, String lastname) {
+
+        this.firstname = firstname;
+        this.lastname = lastname;
+    }
+
+
+    public String getFirstname() {
+
+        return firstname;
+    }
+
+
+    public String getLastname() {
+
+        return lastname;
+    }
+}
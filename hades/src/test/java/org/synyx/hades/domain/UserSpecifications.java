@@ -1,12 +1,12 @@
 /*
  * Copyright 2008-2010 the original author or authors.
- *
+ * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- *
+ * 
  *      http://www.apache.org/licenses/LICENSE-2.0
- *
+ * 
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -52,6 +52,28 @@ public class UserSpecifications {
     }
 
 
+    /**
+     * A {@link CountPredicate} to match {@link User}s with the firstname
+     * {@literal Oliver}.
+     * 
+     * @author Oliver Gierke
+     */
+    public static class UserIsOliver implements CountPredicate<User> {
+
+        public Predicate toPredicate(Root<User> root, CriteriaQuery<?> query,
+                CriteriaBuilder builder) {
+
+            return builder.equal(root.get("firstname"), "Oliver");
+        }
+
+
+        public boolean matches(User entity) {
+
+            return "Oliver".equals(entity.getFirstname());
+        }
+    }
+
+
     private static <T> Specification<T> simplePropertySpec(
             final String property, final Object value) {
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2008-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.synyx.hades.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Version;
+
+
+/**
+ * Sample entity using optimistic locking.
+ * 
+ * @author Oliver Gierke
+ */
+@Entity
+public class VersionedEntity extends AbstractPersistable<Long> {
+
+    private static final long serialVersionUID = 2848474520837410478L;
+
+    @Version
+    private Long version;
+
+    private String name;
+
+
+    public VersionedEntity() {
+
+    }
+
+
+    public VersionedEntity(String name) {
+
+        this.name = name;
+    }
+
+
+    public String getName() {
+
+        return name;
+    }
+
+
+    public void setName(String name) {
+
+        this.name = name;
+    }
+}